@@ -109,6 +109,32 @@ public abstract class Email {
 
 	public abstract void send() throws Exception;
 	
+	/**
+	 * Send the email asynchronously, when supported by the provider (see {@link ApplicationProperty#EmailQueueEnabled}).
+	 * Failures are only logged. The default implementation sends the email right away.
+	 */
+	public void sendLater() throws Exception {
+		sendLater(null);
+	}
+	
+	/**
+	 * Send the email asynchronously, when supported by the provider (see {@link ApplicationProperty#EmailQueueEnabled}).
+	 * The listener (if any) is notified once the email has been delivered or when it has failed to be sent.
+	 * The default implementation sends the email right away.
+	 */
+	public void sendLater(DeliveryListener listener) throws Exception {
+		send();
+		if (listener != null) listener.onDelivered();
+	}
+	
+	/**
+	 * Outcome of an email sent by {@link Email#sendLater(DeliveryListener)}, called from the thread that has sent the email
+	 */
+	public static interface DeliveryListener {
+		public void onDelivered();
+		public void onFailure(Exception exception);
+	}
+	
 	public abstract void setInReplyTo(String messageId) throws Exception;
 	
 	public abstract String getMessageId() throws Exception;
@@ -0,0 +1,253 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.commons;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Asynchronous outbound mail queue, used by {@link JavaMailWrapper#sendLater()}.
+ * Queued messages are sent by a single daemon thread in batches (of at most {@link ApplicationProperty#EmailQueueBatchSize} messages),
+ * using one SMTP connection per batch. A message that fails to be sent is retried later (see {@link ApplicationProperty#EmailQueueRetryDelay}),
+ * until it is sent or {@link ApplicationProperty#EmailQueueAttempts} attempts are made. The delivery listener of a message (if any)
+ * is notified from the queue thread once the message is sent, or once it has failed for good.
+ * 
+ * @author Tomas Muller
+ */
+public class JavaMailQueue extends Thread {
+	private static Log sLog = LogFactory.getLog(JavaMailQueue.class);
+	private static JavaMailQueue sInstance = null;
+	
+	private List<QueuedMessage> iQueue = new LinkedList<QueuedMessage>();
+	private volatile boolean iActive = true;
+	private long iSent = 0, iFailed = 0;
+	
+	private JavaMailQueue() {
+		super("JavaMailQueue");
+		setDaemon(true);
+	}
+	
+	public static synchronized JavaMailQueue getInstance() {
+		if (sInstance == null) {
+			sInstance = new JavaMailQueue();
+			sInstance.start();
+		}
+		return sInstance;
+	}
+	
+	/**
+	 * Put a message in the queue, the message must be ready to be sent (see {@link MimeMessage#saveChanges()})
+	 */
+	public void add(Session session, MimeMessage message) {
+		add(session, message, null);
+	}
+	
+	/**
+	 * Put a message in the queue, the message must be ready to be sent (see {@link MimeMessage#saveChanges()})
+	 * @param listener to be notified once the message is sent or has failed to be sent (can be null)
+	 */
+	public void add(Session session, MimeMessage message, Email.DeliveryListener listener) {
+		synchronized (iQueue) {
+			iQueue.add(new QueuedMessage(session, message, listener));
+			iQueue.notify();
+		}
+	}
+	
+	/** Number of messages waiting to be sent */
+	public int getNrQueued() {
+		synchronized (iQueue) {
+			return iQueue.size();
+		}
+	}
+	
+	/** Number of messages sent */
+	public synchronized long getNrSent() { return iSent; }
+	
+	/** Number of messages that failed to be sent (after all the attempts) */
+	public synchronized long getNrFailed() { return iFailed; }
+	
+	/**
+	 * Take the next batch of messages that are ready to be sent, wait when there are none
+	 */
+	private List<QueuedMessage> next() throws InterruptedException {
+		synchronized (iQueue) {
+			int batchSize = Math.max(1, ApplicationProperty.EmailQueueBatchSize.intValue());
+			while (true) {
+				long now = System.currentTimeMillis();
+				long wait = 0;
+				List<QueuedMessage> batch = new ArrayList<QueuedMessage>();
+				for (Iterator<QueuedMessage> i = iQueue.iterator(); i.hasNext() && batch.size() < batchSize; ) {
+					QueuedMessage message = i.next();
+					if (message.iNextAttempt <= now) {
+						batch.add(message); i.remove();
+					} else if (wait == 0 || message.iNextAttempt - now < wait) {
+						wait = message.iNextAttempt - now;
+					}
+				}
+				if (!batch.isEmpty() || !iActive) return batch;
+				iQueue.wait(wait);
+			}
+		}
+	}
+	
+	@Override
+	public void run() {
+		sLog.debug("Mail queue is up and running.");
+		try {
+			while (true) {
+				List<QueuedMessage> batch = next();
+				if (batch.isEmpty()) break;
+				send(batch);
+			}
+		} catch (InterruptedException e) {
+		}
+		sLog.debug("Mail queue is down.");
+	}
+	
+	/**
+	 * Send a batch of messages, using one connection for all the messages of the same mail session
+	 */
+	private void send(List<QueuedMessage> batch) {
+		Map<Session, List<QueuedMessage>> sessions = new LinkedHashMap<Session, List<QueuedMessage>>();
+		for (QueuedMessage message: batch) {
+			List<QueuedMessage> messages = sessions.get(message.iSession);
+			if (messages == null) {
+				messages = new ArrayList<QueuedMessage>();
+				sessions.put(message.iSession, messages);
+			}
+			messages.add(message);
+		}
+		for (Map.Entry<Session, List<QueuedMessage>> entry: sessions.entrySet()) {
+			long t0 = System.currentTimeMillis();
+			Transport transport = null;
+			int sent = 0, processed = 0;
+			try {
+				Address[] recipients = entry.getValue().get(0).iMessage.getAllRecipients();
+				transport = entry.getKey().getTransport(recipients[0]);
+				transport.connect();
+				for (QueuedMessage message: entry.getValue()) {
+					try {
+						transport.sendMessage(message.iMessage, message.iMessage.getAllRecipients());
+						synchronized (this) { iSent ++; }
+						sent ++;
+						message.delivered();
+					} catch (MessagingException e) {
+						failed(message, e);
+					}
+					processed ++;
+				}
+			} catch (Exception e) {
+				// failed to connect: retry all the messages of the batch that have not been processed yet
+				for (QueuedMessage message: entry.getValue().subList(processed, entry.getValue().size()))
+					failed(message, e);
+			} finally {
+				if (transport != null) try { transport.close(); } catch (MessagingException e) {}
+			}
+			sLog.debug("Sent " + sent + " of " + entry.getValue().size() + " queued emails in " + (System.currentTimeMillis() - t0) + " ms.");
+		}
+	}
+	
+	private void failed(QueuedMessage message, Exception exception) {
+		message.iAttempt ++;
+		if (message.iAttempt < ApplicationProperty.EmailQueueAttempts.intValue() && iActive) {
+			sLog.warn("Failed to send email " + message + " (attempt " + message.iAttempt + "): " + exception.getMessage());
+			message.iNextAttempt = System.currentTimeMillis() + 1000l * message.iAttempt * ApplicationProperty.EmailQueueRetryDelay.intValue();
+			synchronized (iQueue) {
+				iQueue.add(message);
+				iQueue.notify();
+			}
+		} else {
+			sLog.error("Failed to send email " + message + ": " + exception.getMessage(), exception);
+			synchronized (this) { iFailed ++; }
+			message.failed(exception);
+		}
+	}
+	
+	/**
+	 * Stop the queue: messages that are ready to be sent are sent (no more retries), the rest is dropped
+	 */
+	public static void stopQueue() {
+		JavaMailQueue queue = sInstance;
+		if (queue == null) return;
+		synchronized (queue.iQueue) {
+			queue.iActive = false;
+			for (QueuedMessage message: queue.iQueue)
+				message.iNextAttempt = 0;
+			queue.iQueue.notify();
+		}
+		try {
+			queue.join(60000);
+		} catch (InterruptedException e) {}
+		sInstance = null;
+	}
+	
+	private static class QueuedMessage {
+		private Session iSession;
+		private MimeMessage iMessage;
+		private int iAttempt = 0;
+		private long iNextAttempt = 0;
+		private Email.DeliveryListener iListener;
+		
+		private QueuedMessage(Session session, MimeMessage message, Email.DeliveryListener listener) {
+			iSession = session; iMessage = message; iListener = listener;
+		}
+		
+		private void delivered() {
+			if (iListener != null)
+				try {
+					iListener.onDelivered();
+				} catch (Exception e) {
+					sLog.warn("Failed to process email delivery of " + this + ": " + e.getMessage(), e);
+				}
+		}
+		
+		private void failed(Exception exception) {
+			if (iListener != null)
+				try {
+					iListener.onFailure(exception);
+				} catch (Exception e) {
+					sLog.warn("Failed to process email failure of " + this + ": " + e.getMessage(), e);
+				}
+		}
+		
+		@Override
+		public String toString() {
+			try {
+				return "'" + iMessage.getSubject() + "'";
+			} catch (MessagingException e) {
+				return "";
+			}
+		}
+	}
+}
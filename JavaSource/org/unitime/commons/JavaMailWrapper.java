@@ -140,17 +140,21 @@ public class JavaMailWrapper extends Email {
         iBody.addBodyPart(attachement);
 	}
 	
+	protected void prepare() throws MessagingException, UnsupportedEncodingException {
+		if (iMail.getFrom() == null || iMail.getFrom().length == 0)
+	        setFrom(ApplicationProperty.EmailSenderAddress.value(), ApplicationProperty.EmailSenderName.value());
+        if (iMail.getReplyTo() == null || iMail.getReplyTo().length == 0)
+        	setReplyTo(ApplicationProperty.EmailReplyToAddress.value(), ApplicationProperty.EmailReplyToName.value());
+        iMail.setSentDate(new Date());
+        iMail.setContent(iBody);
+        iMail.saveChanges();
+	}
+	
 	@Override
 	public void send() throws MessagingException, UnsupportedEncodingException {
 		long t0 = System.currentTimeMillis();
 		try {
-			if (iMail.getFrom() == null || iMail.getFrom().length == 0)
-		        setFrom(ApplicationProperty.EmailSenderAddress.value(), ApplicationProperty.EmailSenderName.value());
-	        if (iMail.getReplyTo() == null || iMail.getReplyTo().length == 0)
-	        	setReplyTo(ApplicationProperty.EmailReplyToAddress.value(), ApplicationProperty.EmailReplyToName.value());
-	        iMail.setSentDate(new Date());
-	        iMail.setContent(iBody);
-	        iMail.saveChanges();
+			prepare();
 	        Transport.send(iMail);
 		} finally {
 			long t = System.currentTimeMillis() - t0;
@@ -161,6 +165,20 @@ public class JavaMailWrapper extends Email {
 		}
 	}
 	
+	/**
+	 * The message is prepared right away (so that {@link JavaMailWrapper#getMessageId()} is available), but it is sent by the {@link JavaMailQueue}.
+	 */
+	@Override
+	public void sendLater(DeliveryListener listener) throws MessagingException, UnsupportedEncodingException {
+		if (!ApplicationProperty.EmailQueueEnabled.isTrue()) {
+			send();
+			if (listener != null) listener.onDelivered();
+		} else {
+			prepare();
+			JavaMailQueue.getInstance().add(iMailSession, iMail, listener);
+		}
+	}
+	
 	@Override
 	public void setInReplyTo(String messageId) throws MessagingException {
 		if (messageId != null)
@@ -28,6 +28,7 @@ import net.sf.ehcache.CacheManager;
 import org.apache.log4j.Appender;
 import org.apache.log4j.Logger;
 import org.unitime.commons.Debug;
+import org.unitime.commons.JavaMailQueue;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.events.EventExpirationService;
 import org.unitime.timetable.model.ApplicationConfig;
@@ -122,6 +123,8 @@ public class InitServlet extends HttpServlet implements Servlet {
 	         
 	         QueueProcessor.stopProcessor();
 	         
+	         JavaMailQueue.stopQueue();
+	         
 	         Debug.info(" - Removing Message Log Appender ... ");
 	         Appender mlog = Logger.getRootLogger().getAppender("mlog");
 	         if (mlog != null) {
@@ -73,6 +73,7 @@ import org.unitime.timetable.model.dao.SubjectAreaDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.permissions.Permission;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.InstrOfferingPermIdGenerator;
 import org.unitime.timetable.util.LookupTables;
@@ -416,6 +417,7 @@ public class CourseOfferingEditAction extends Action {
 
             hibSession.flush();
             tx.commit();
+            ProjectedDemandEngine.invalidate(sessionContext.getUser().getCurrentAcademicSessionId());
 
             hibSession.refresh(co);
 
@@ -542,6 +544,7 @@ public class CourseOfferingEditAction extends Action {
             
             hibSession.flush();
             tx.commit();
+            ProjectedDemandEngine.invalidate(sessionContext.getUser().getCurrentAcademicSessionId());
 
             hibSession.refresh(co);
 
@@ -68,6 +68,7 @@ import org.unitime.timetable.model.dao.CourseOfferingDAO;
 import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.LookupTables;
 
@@ -528,6 +529,7 @@ public class CrossListsModifyAction extends Action {
                     null);
 	        
             tx.commit();
+            ProjectedDemandEngine.invalidate(sessionContext.getUser().getCurrentAcademicSessionId());
 	        hibSession.flush();
 	        hibSession.clear();
 	        hibSession.refresh(io);
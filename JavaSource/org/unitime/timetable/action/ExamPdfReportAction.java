@@ -134,6 +134,8 @@ public class ExamPdfReportAction extends Action {
 			String delete = null;
 			if (sessionContext.getUser().getExternalUserId().equals(item.getOwnerId()) && (item.started() == null || item.finished() != null)) {
 				delete = "<img src='images/action_delete.png' border='0' onClick=\"if (confirm('Do you really want to remove this report?')) document.location='examPdfReport.do?remove="+item.getId()+"'; event.cancelBubble=true;\">";
+			} else if (sessionContext.getUser().getExternalUserId().equals(item.getOwnerId()) && !item.isCancelled()) {
+				delete = "<img src='images/action_delete.png' border='0' onClick=\"if (confirm('Do you really want to cancel this report?')) document.location='examPdfReport.do?remove="+item.getId()+"'; event.cancelBubble=true;\">";
 			}
 			WebTableLine line = table.addLine(item.log().isEmpty() ? null : "onClick=\"document.location='examPdfReport.do?log=" + item.getId() + "';\"",
 					new String[] {
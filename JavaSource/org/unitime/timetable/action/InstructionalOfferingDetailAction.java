@@ -64,6 +64,7 @@ import org.unitime.timetable.model.comparators.InstrOfferingConfigComparator;
 import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 import org.unitime.timetable.webutil.BackTracker;
 import org.unitime.timetable.webutil.DistributionPrefsTableBuilder;
 
@@ -306,6 +307,7 @@ public class InstructionalOfferingDetailAction extends Action {
 	        hibSession.delete(io);
 	        
 	        tx.commit();
+	        ProjectedDemandEngine.invalidate(sessionContext.getUser().getCurrentAcademicSessionId());
             hibSession.flush();
             hibSession.clear();
             
@@ -183,8 +183,10 @@ public class RollForwardSessionAction extends Action {
 				request.setAttribute("logname", name);
 				request.setAttribute("logid", item.getId().toString());
 				request.setAttribute("log", item.log());
-				((RollForwardQueueItem)item).getForm().copyTo(form);
-				saveErrors(request, ((RollForwardQueueItem)item).getErrors());
+				if (item instanceof RollForwardQueueItem) {
+					((RollForwardQueueItem)item).getForm().copyTo(form);
+					saveErrors(request, ((RollForwardQueueItem)item).getErrors());
+				}
 				line.setBgColor("rgb(168,187,225)");
 			}
 		}
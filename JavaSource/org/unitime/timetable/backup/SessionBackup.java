@@ -25,6 +25,7 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
@@ -38,6 +39,11 @@ import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 import org.apache.commons.logging.Log;
@@ -49,6 +55,9 @@ import org.dom4j.Document;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
 import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.engine.spi.SessionImplementor;
@@ -65,6 +74,7 @@ import org.hibernate.type.TimestampType;
 import org.hibernate.type.Type;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Assignment;
 import org.unitime.timetable.model.AssignmentInfo;
 import org.unitime.timetable.model.ChangeLog;
@@ -245,117 +255,34 @@ public class SessionBackup implements SessionBackupInterface {
             }
             iProgress.incProgress();
             
-            Map<String, Set<Serializable>> allExportedIds = new HashMap<String, Set<Serializable>>();
-            for (String name: new TreeSet<String>(data.keySet())) {
-            	List<QueueItem> list = data.get(name);
-            	Map<String, TableData.Table.Builder> tables = new HashMap<String, TableData.Table.Builder>();
-            	for (QueueItem current: list) {
-            		if (current.size() == 0) continue;
-            		iProgress.info("Loading " + current);
-            		List<Object> objects = current.list();
-            		if (objects == null || objects.isEmpty()) continue;
-            		iProgress.setPhase(current.abbv() + " [" + objects.size() + "]", objects.size());
-            		objects: for (Object object: objects) {
-            			iProgress.incProgress();
-            			
-            			// Get meta data (check for sub-classes)
-            			ClassMetadata meta = iHibSessionFactory.getClassMetadata(object.getClass());
-            			if (meta == null) meta = current.meta();
-            			if (meta.hasSubclasses()) {
-            	            for (Iterator i=iHibSessionFactory.getAllClassMetadata().entrySet().iterator();i.hasNext();) {
-            	                Map.Entry entry = (Map.Entry)i.next();
-            	                ClassMetadata classMetadata = (ClassMetadata)entry.getValue();
-            	                if (classMetadata.getMappedClass().isInstance(object) && !classMetadata.hasSubclasses()) {
-            	                	meta = classMetadata; break;
-            	                }
-            	            }
-            			}
-            			
-            			// Get unique identifier
-            			Serializable id = meta.getIdentifier(object, (SessionImplementor)iHibSession);
-            			
-            			// Check if already exported
-            			Set<Serializable> exportedIds = allExportedIds.get(meta.getEntityName());
-            			if (exportedIds == null) {
-            				exportedIds = new HashSet<Serializable>();
-            				allExportedIds.put(meta.getEntityName(), exportedIds);
-            			}
-            			if (!exportedIds.add(id)) continue;
-            			
-            			// Check relation to an academic session (if exists)
-            			for (String property: meta.getPropertyNames()) {
-            				Type type = meta.getPropertyType(property);
-                        	if (type instanceof EntityType && type.getReturnedClass().equals(Session.class)) {
-                        		Session s = (Session)meta.getPropertyValue(object, property);
-                        		if (s != null && !s.getUniqueId().equals(iSessionId)) {
-                        			iProgress.warn(meta.getEntityName().substring(meta.getEntityName().lastIndexOf('.') + 1) + "@" + id + " belongs to a different academic session (" + s + ")");
-                        			continue objects; // wrong session
-                        		}
-                        	}
-            			}
-
-            			// Get appropriate table
-            			TableData.Table.Builder table = tables.get(meta.getEntityName());
-            			if (table == null) {
-            				table = TableData.Table.newBuilder();
-            				tables.put(meta.getEntityName(), table);
-            				table.setName(meta.getEntityName());
-            			}
-
-            			// Export object
-            			TableData.Record.Builder record = TableData.Record.newBuilder();
-            			record.setId(id.toString());
-            			for (String property: meta.getPropertyNames()) {
-            				Type type = meta.getPropertyType(property);
-            				Object value = meta.getPropertyValue(object, property);
-            				if (value == null) continue;
-            				TableData.Element.Builder element = TableData.Element.newBuilder();
-            				element.setName(property);
-            				if (type instanceof PrimitiveType) {
-            					element.addValue(((PrimitiveType)type).toString(value));
-            				} else if (type instanceof StringType) {	
-            					element.addValue(((StringType)type).toString((String)value));
-            				} else if (type instanceof BinaryType) {	
-            					element.addValueBytes(ByteString.copyFrom((byte[])value));
-            				} else if (type instanceof TimestampType) {
-            					element.addValue(((TimestampType)type).toString((Date)value));
-            				} else if (type instanceof DateType) {
-            					element.addValue(((DateType)type).toString((Date)value));
-            				} else if (type instanceof EntityType) {
-    							List<Object> ids = current.relation(property, id, false);
-    							if (ids != null)
-    								for (Object i: ids)
-    									element.addValue(i.toString());
-    							iHibSession.evict(value);
-            				} else if (type instanceof CustomType && value instanceof Document) {
-            					if (object instanceof CurriculumClassification && property.equals("students")) continue;
-            					StringWriter w = new StringWriter();
-            					XMLWriter x = new XMLWriter(w, OutputFormat.createCompactFormat());
-            					x.write((Document)value);
-            					x.flush(); x.close();
-            					element.addValue(w.toString());
-            				} else if (type instanceof CollectionType) {
-    							List<Object> ids = current.relation(property, id, false);
-    							if (ids != null)
-    								for (Object i: ids)
-    									element.addValue(i.toString());
-            				} else if (type instanceof EmbeddedComponentType && property.equalsIgnoreCase("uniqueCourseNbr")) {
-            					continue;
-            				} else {
-            					iProgress.warn("Unknown data type: " + type + " (property " + meta.getEntityName() + "." + property + ", class " + value.getClass() + ")");
-            					continue;
-            				}
-            				record.addElement(element.build());
-            				
+            List<String> names = new ArrayList<String>(new TreeSet<String>(data.keySet()));
+            Map<String, Set<String>> allExportedIds = new HashMap<String, Set<String>>();
+            int nrThreads = Math.max(1, ApplicationProperty.SessionBackupThreads.intValue());
+            if (nrThreads <= 1) {
+            	for (String name: names) {
+            		for (TableData.Table table: export(iHibSession, data.get(name), allExportedIds, true).getTables())
+            			add(table);
+            	}
+            } else {
+            	iProgress.setPhase("Exporting tables (" + nrThreads + " threads)", names.size());
+            	ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+            	try {
+            		LinkedList<Future<ExportedTables>> pending = new LinkedList<Future<ExportedTables>>();
+            		Iterator<String> next = names.iterator();
+            		while (next.hasNext() || !pending.isEmpty()) {
+            			// keep a limited number of tables in memory, the tables are written in the same order as when exported sequentially
+            			while (next.hasNext() && pending.size() < 2 * nrThreads)
+            				pending.add(executor.submit(new ExportTask(data.get(next.next()))));
+            			ExportedTables exported = get(pending.poll());
+            			iProgress.info("Exported " + exported.getName() + " [" + exported.getRecordCount() + " records] in " + new DecimalFormat("0.00").format(exported.getTime() / 1000.0) + " s");
+            			for (TableData.Table table: exported.getTables()) {
+            				table = filter(table, allExportedIds);
+            				if (table != null) add(table);
             			}
-            			table.addRecord(record.build());
-            			iHibSession.evict(object);
+            			iProgress.incProgress();
             		}
-            		current.clearCache();
-            	}
-            	
-            	for (TableData.Table.Builder table: tables.values()) {
-            		add(table.build());
+            	} finally {
+            		executor.shutdownNow();
             	}
             }
             
@@ -388,6 +315,214 @@ public class SessionBackup implements SessionBackupInterface {
         }
 	}
 	
+	/**
+	 * Export all the records of the given queue items (all having the same entity name)
+	 * @param hibSession hibernate session to be used
+	 * @param list queue items
+	 * @param allExportedIds already exported ids (entity name: set of ids), records that were already exported are skipped
+	 * @param progress when true, progress phase is updated for each queue item
+	 */
+	private ExportedTables export(org.hibernate.Session hibSession, List<QueueItem> list, Map<String, Set<String>> allExportedIds, boolean progress) throws IOException {
+		long t0 = System.currentTimeMillis();
+		Map<String, TableData.Table.Builder> tables = new HashMap<String, TableData.Table.Builder>();
+		for (QueueItem current: list) {
+			if (current.size() == 0) continue;
+			if (progress) iProgress.info("Loading " + current);
+			ScrollableResults objects = current.scroll(hibSession);
+			if (objects == null) continue;
+			try {
+				if (progress) iProgress.setPhase(current.abbv() + " [" + current.size() + "]", current.size());
+				objects: while (objects.next()) {
+					Object object = objects.get(0);
+					if (progress) iProgress.incProgress();
+					
+					// Get meta data (check for sub-classes)
+					ClassMetadata meta = iHibSessionFactory.getClassMetadata(object.getClass());
+					if (meta == null) meta = current.meta();
+					if (meta.hasSubclasses()) {
+						for (Iterator i=iHibSessionFactory.getAllClassMetadata().entrySet().iterator();i.hasNext();) {
+							Map.Entry entry = (Map.Entry)i.next();
+							ClassMetadata classMetadata = (ClassMetadata)entry.getValue();
+							if (classMetadata.getMappedClass().isInstance(object) && !classMetadata.hasSubclasses()) {
+								meta = classMetadata; break;
+							}
+						}
+					}
+					
+					// Get unique identifier
+					Serializable id = meta.getIdentifier(object, (SessionImplementor)hibSession);
+					
+					// Check if already exported
+					Set<String> exportedIds = allExportedIds.get(meta.getEntityName());
+					if (exportedIds == null) {
+						exportedIds = new HashSet<String>();
+						allExportedIds.put(meta.getEntityName(), exportedIds);
+					}
+					if (!exportedIds.add(id.toString())) continue;
+					
+					// Check relation to an academic session (if exists)
+					for (String property: meta.getPropertyNames()) {
+						Type type = meta.getPropertyType(property);
+						if (type instanceof EntityType && type.getReturnedClass().equals(Session.class)) {
+							Session s = (Session)meta.getPropertyValue(object, property);
+							if (s != null && !s.getUniqueId().equals(iSessionId)) {
+								iProgress.warn(meta.getEntityName().substring(meta.getEntityName().lastIndexOf('.') + 1) + "@" + id + " belongs to a different academic session (" + s + ")");
+								continue objects; // wrong session
+							}
+						}
+					}
+					
+					// Get appropriate table
+					TableData.Table.Builder table = tables.get(meta.getEntityName());
+					if (table == null) {
+						table = TableData.Table.newBuilder();
+						tables.put(meta.getEntityName(), table);
+						table.setName(meta.getEntityName());
+					}
+					
+					// Export object
+					TableData.Record.Builder record = TableData.Record.newBuilder();
+					record.setId(id.toString());
+					for (String property: meta.getPropertyNames()) {
+						Type type = meta.getPropertyType(property);
+						Object value = meta.getPropertyValue(object, property);
+						if (value == null) continue;
+						TableData.Element.Builder element = TableData.Element.newBuilder();
+						element.setName(property);
+						if (type instanceof PrimitiveType) {
+							element.addValue(((PrimitiveType)type).toString(value));
+						} else if (type instanceof StringType) {	
+							element.addValue(((StringType)type).toString((String)value));
+						} else if (type instanceof BinaryType) {	
+							element.addValueBytes(ByteString.copyFrom((byte[])value));
+						} else if (type instanceof TimestampType) {
+							element.addValue(((TimestampType)type).toString((Date)value));
+						} else if (type instanceof DateType) {
+							element.addValue(((DateType)type).toString((Date)value));
+						} else if (type instanceof EntityType) {
+							List<Object> ids = current.relation(hibSession, property, id, false);
+							if (ids != null)
+								for (Object i: ids)
+									element.addValue(i.toString());
+							hibSession.evict(value);
+						} else if (type instanceof CustomType && value instanceof Document) {
+							if (object instanceof CurriculumClassification && property.equals("students")) continue;
+							StringWriter w = new StringWriter();
+							XMLWriter x = new XMLWriter(w, OutputFormat.createCompactFormat());
+							x.write((Document)value);
+							x.flush(); x.close();
+							element.addValue(w.toString());
+						} else if (type instanceof CollectionType) {
+							List<Object> ids = current.relation(hibSession, property, id, false);
+							if (ids != null)
+								for (Object i: ids)
+									element.addValue(i.toString());
+						} else if (type instanceof EmbeddedComponentType && property.equalsIgnoreCase("uniqueCourseNbr")) {
+							continue;
+						} else {
+							iProgress.warn("Unknown data type: " + type + " (property " + meta.getEntityName() + "." + property + ", class " + value.getClass() + ")");
+							continue;
+						}
+						record.addElement(element.build());
+						
+					}
+					table.addRecord(record.build());
+					hibSession.evict(object);
+				}
+			} finally {
+				objects.close();
+			}
+			current.clearCache();
+		}
+		
+		List<TableData.Table> ret = new ArrayList<TableData.Table>();
+		for (TableData.Table.Builder table: tables.values())
+			ret.add(table.build());
+		return new ExportedTables(list.isEmpty() ? "" : list.get(0).abbv(), ret, System.currentTimeMillis() - t0);
+	}
+	
+	/**
+	 * Remove records that have been already exported (by some other export task) from the given table
+	 * @return filtered table, null if there are no records left
+	 */
+	private TableData.Table filter(TableData.Table table, Map<String, Set<String>> allExportedIds) {
+		Set<String> exportedIds = allExportedIds.get(table.getName());
+		if (exportedIds == null) {
+			exportedIds = new HashSet<String>();
+			allExportedIds.put(table.getName(), exportedIds);
+		}
+		boolean duplicates = false;
+		for (TableData.Record record: table.getRecordList())
+			if (exportedIds.contains(record.getId())) { duplicates = true; break; }
+		if (!duplicates) {
+			for (TableData.Record record: table.getRecordList())
+				exportedIds.add(record.getId());
+			return table;
+		}
+		TableData.Table.Builder filtered = TableData.Table.newBuilder();
+		filtered.setName(table.getName());
+		for (TableData.Record record: table.getRecordList())
+			if (exportedIds.add(record.getId())) filtered.addRecord(record);
+		return filtered.getRecordCount() == 0 ? null : filtered.build();
+	}
+	
+	private ExportedTables get(Future<ExportedTables> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Backup interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IOException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+	
+	/**
+	 * Export of one entity, done on its own read-only hibernate session
+	 */
+	class ExportTask implements Callable<ExportedTables> {
+		List<QueueItem> iItems;
+		
+		ExportTask(List<QueueItem> items) {
+			iItems = items;
+		}
+
+		@Override
+		public ExportedTables call() throws Exception {
+			org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+			try {
+				hibSession.setCacheMode(CacheMode.IGNORE);
+				hibSession.setFlushMode(FlushMode.MANUAL);
+				hibSession.setDefaultReadOnly(true);
+				// records exported by other tasks are removed when the tables are written
+				return export(hibSession, iItems, new HashMap<String, Set<String>>(), false);
+			} finally {
+				hibSession.close();
+			}
+		}
+	}
+	
+	static class ExportedTables {
+		String iName;
+		List<TableData.Table> iTables;
+		long iTime;
+		
+		ExportedTables(String name, List<TableData.Table> tables, long time) {
+			iName = name; iTables = tables; iTime = time;
+		}
+		
+		String getName() { return iName; }
+		List<TableData.Table> getTables() { return iTables; }
+		long getTime() { return iTime; }
+		int getRecordCount() {
+			int count = 0;
+			for (TableData.Table table: iTables)
+				count += table.getRecordCount();
+			return count;
+		}
+	}
+	
 	enum Relation {
 		None, Parent, One, Many, Empty
 	}
@@ -520,19 +655,19 @@ public class SessionBackup implements SessionBackupInterface {
 			}
 		}
 		
-		List<Object> list() {
+		ScrollableResults scroll(org.hibernate.Session hibSession) {
 			if (relation() == Relation.Empty) return null;
 			if (AssignmentInfo.class.getName().equals(name())) return null;
 			if (ConstraintInfo.class.getName().equals(name())) return null;
 			if (ChangeLog.class.getName().equals(name())) return null;
-			return iHibSession.createQuery(
+			return hibSession.createQuery(
 					"select " + (distinct() ? "" : "distinct ") + hqlName() + " from " + hqlFrom() + " where " + hqlWhere()
-					).setLong("sessionId", iSessionId).list();
+					).setLong("sessionId", iSessionId).setFetchSize(1000).scroll(ScrollMode.FORWARD_ONLY);
 		}
 		
 		Map<String, Map<Serializable, List<Object>>> iRelationCache = new HashMap<String, Map<Serializable,List<Object>>>();
 		
-		List<Object> relation(String property, Serializable id, boolean data) {
+		List<Object> relation(org.hibernate.Session hibSession, String property, Serializable id, boolean data) {
 			Map<Serializable, List<Object>> relation = iRelationCache.get(property);
 			if (relation == null) {
 				Type type = meta().getPropertyType(property);
@@ -552,7 +687,7 @@ public class SessionBackup implements SessionBackupInterface {
 					}
 				}
 				relation = new HashMap<Serializable, List<Object>>();
-				for (Object[] o: (List<Object[]>)iHibSession.createQuery(
+				for (Object[] o: (List<Object[]>)hibSession.createQuery(
 						"select distinct " + hqlName() + "." + meta().getIdentifierPropertyName() + (data ? ", p" : ", p." + idProperty) + 
 						" from " + hqlFrom() + " inner join " + hqlName() + "." + property + " p where " + hqlWhere()
 						).setLong("sessionId", iSessionId).list()) {
@@ -31,7 +31,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -78,6 +80,7 @@ import org.hibernate.type.Type;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.ChangeLog;
 import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.CourseOffering;
@@ -110,6 +113,14 @@ import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
 
 /**
+ * Restore of an academic session from a backup file.<br>
+ * Only the relations (by their ids) of the backup records are kept until the end of the restore, but all the restored
+ * entities (and the hibernate session they are saved into) stay in memory, as the relations are resolved and the entities
+ * are saved only after all the tables have been read. The memory needed is therefore proportional to the size of the
+ * restored session, it is not bounded.<br>
+ * There is no separate streaming or JDBC insert path: the entities are saved through hibernate, the session is only flushed every
+ * {@link ApplicationProperty#SessionRestoreFlushInterval} saved entities so that the inserts can be sent in JDBC batches (see hibernate.jdbc.batch_size).
+ * 
  * @author Tomas Muller
  */
 public class SessionRestore implements SessionRestoreInterface {
@@ -120,6 +131,7 @@ public class SessionRestore implements SessionRestoreInterface {
 	private boolean iIsClone = false;
 
 	private Map<String, Map<String, Entity>> iEntities = new Hashtable<String, Map<String, Entity>>();
+	private Map<String, List<Entity>> iEntitiesById = new HashMap<String, List<Entity>>();
 	private List<Entity> iAllEntitites = new ArrayList<Entity>();
 	private Map<String, Student> iStudents = new Hashtable<String, Student>();
 	private PrintWriter iDebug = null;
@@ -193,6 +205,12 @@ public class SessionRestore implements SessionRestoreInterface {
 				iEntities.put(entity.getName(), entityOfThisType);
 			}
 			entityOfThisType.put(entity.getId(), entity);
+			List<Entity> entitiesWithThisId = iEntitiesById.get(entity.getId());
+			if (entitiesWithThisId == null) {
+				entitiesWithThisId = new ArrayList<Entity>(1);
+				iEntitiesById.put(entity.getId(), entitiesWithThisId);
+			}
+			entitiesWithThisId.add(entity);
 		}
 		if (entity.getObject() instanceof Student) {
 			Student student = (Student)entity.getObject();
@@ -221,6 +239,9 @@ public class SessionRestore implements SessionRestoreInterface {
 		for (TableData.Record record: table.getRecordList()) {
 			iProgress.incProgress();
 			Object object = metadata.getMappedClass().newInstance();
+			// only relations (by their ids) are kept for later, all the other values are set on the object right away
+			TableData.Record.Builder relations = TableData.Record.newBuilder();
+			relations.setId(record.getId());
 			for (String property: metadata.getPropertyNames()) {
 				TableData.Element element = null;
 				for (TableData.Element e: record.getElementList())
@@ -268,14 +289,16 @@ public class SessionRestore implements SessionRestoreInterface {
 				} else if (type instanceof CustomType && type.getReturnedClass().equals(Document.class)) {
 					value = new SAXReader().read(new StringReader(element.getValue(0)));
 				} else if (type instanceof EntityType) {
+					relations.addElement(element);
 				} else if (type instanceof CollectionType) {
+					relations.addElement(element);
 				} else {
 					message("Unknown type " + type.getClass().getName() + " (property " + metadata.getEntityName() + "." + property + ", class " + type.getReturnedClass() + ")", record.getId());
 				}
 				if (value != null)
 					metadata.setPropertyValue(object, property, value);
 			}
-			add(new Entity(metadata, record, object, record.getId()));
+			add(new Entity(metadata, relations.build(), object, record.getId()));
 		}
 	}
 	
@@ -334,10 +357,10 @@ public class SessionRestore implements SessionRestoreInterface {
 			Entity entity = entities.get(id);
 			if (entity != null) return entity.getObject();
 		}
-        for (Map.Entry<String, Map<String, Entity>> entry: iEntities.entrySet()) {
-        	Entity o = entry.getValue().get(id);
-        	if (o != null && clazz.isInstance(o.getObject())) return o.getObject();
-		}
+        List<Entity> entitiesWithThisId = iEntitiesById.get(id);
+        if (entitiesWithThisId != null)
+        	for (Entity o: entitiesWithThisId)
+        		if (clazz.isInstance(o.getObject())) return o.getObject();
         if (clazz.equals(Session.class))
         	return ((Entity)iEntities.get(Session.class.getName()).values().iterator().next()).getObject();
         if (clazz.equals(Student.class))
@@ -421,22 +444,18 @@ public class SessionRestore implements SessionRestoreInterface {
     		}
     		
     		iProgress.setPhase("Saving (not-null)", iAllEntitites.size());
-    		List<Entity> save = new ArrayList<Entity>(iAllEntitites);
-    		boolean saved = true;
-    		while (!save.isEmpty() && saved) {
-    			saved = false;
-    			for (Iterator<Entity> i = save.iterator(); i.hasNext(); ) {
-    				Entity e = i.next();
-    				if (e.canSave() == null) {
-    					iProgress.incProgress();
-    					e.fixRelationsNullOnly();
-    					iHibSession.save(e.getObject());
-    					i.remove();
-    					saved = true;
-    				}
+    		int flushInterval = Math.max(1, ApplicationProperty.SessionRestoreFlushInterval.intValue()), unflushed = 0;
+    		for (Entity e: saveOrder()) {
+    			if (e.canSave() != null) continue;
+    			iProgress.incProgress();
+    			e.fixRelationsNullOnly();
+    			iHibSession.save(e.getObject());
+    			if (++unflushed >= flushInterval) {
+    				iHibSession.flush();
+    				unflushed = 0;
     			}
-    			iHibSession.flush();
     		}
+    		iHibSession.flush();
 
     		iProgress.setPhase("Saving (all)", iAllEntitites.size());
     		for (Entity e: iAllEntitites) {
@@ -463,6 +482,58 @@ public class SessionRestore implements SessionRestoreInterface {
         }
 	}
 	
+	/**
+	 * Order the entities that are to be saved so that every entity comes after all the entities that it requires
+	 * (not-null relations), keeping the order in which the entities were read as much as possible.
+	 * Entities with a not-null relation that cannot be resolved (or that are part of a cycle) are not included.
+	 */
+	protected List<Entity> saveOrder() {
+		Map<Object, Entity> owners = new IdentityHashMap<Object, Entity>();
+		for (Entity e: iAllEntitites)
+			owners.put(e.getObject(), e);
+		Map<Entity, List<Entity>> dependents = new IdentityHashMap<Entity, List<Entity>>();
+		Map<Entity, Integer> pending = new IdentityHashMap<Entity, Integer>();
+		LinkedList<Entity> ready = new LinkedList<Entity>();
+		entities: for (Entity e: iAllEntitites) {
+			int count = 0;
+			for (Object value: e.getRequiredValues()) {
+				if (value == null) continue entities;
+				if (iHibSession.contains(value)) continue;
+				Entity owner = owners.get(value);
+				if (owner == null || owner == e) continue entities;
+				List<Entity> list = dependents.get(owner);
+				if (list == null) {
+					list = new ArrayList<Entity>();
+					dependents.put(owner, list);
+				}
+				list.add(e);
+				count ++;
+			}
+			if (count == 0)
+				ready.add(e);
+			else
+				pending.put(e, count);
+		}
+		List<Entity> order = new ArrayList<Entity>(iAllEntitites.size());
+		Entity e = null;
+		while ((e = ready.poll()) != null) {
+			order.add(e);
+			List<Entity> list = dependents.remove(e);
+			if (list != null)
+				for (Entity d: list) {
+					Integer count = pending.get(d);
+					if (count == null) continue;
+					if (count <= 1) {
+						pending.remove(d);
+						ready.add(d);
+					} else {
+						pending.put(d, count - 1);
+					}
+				}
+		}
+		return order;
+	}
+	
 	protected class Entity {
 		private ClassMetadata iMetaData;
 		private TableData.Record iRecord;
@@ -504,6 +575,23 @@ public class SessionRestore implements SessionRestoreInterface {
 			return getAbbv() + "@" + getId();
 		}
 		
+		/**
+		 * Values of all not-null relations (a value is null if it cannot be resolved)
+		 */
+		public List<Object> getRequiredValues() {
+			List<Object> values = new ArrayList<Object>();
+			for (int i = 0; i < getMetaData().getPropertyNames().length; i++) {
+				if (getMetaData().getPropertyNullability()[i]) continue;
+				Type type = getMetaData().getPropertyTypes()[i];
+				if (type instanceof EntityType) {
+					TableData.Element element = getElement(getMetaData().getPropertyNames()[i]);
+					if (element == null) continue;
+					values.add(get(type.getReturnedClass(), element.getValue(0)));
+				}
+			}
+			return values;
+		}
+		
 		public String canSave() {
 			for (int i = 0; i < getMetaData().getPropertyNames().length; i++) {
 				if (getMetaData().getPropertyNullability()[i]) continue;
@@ -34,6 +34,7 @@ import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.SubjectArea;
 import org.unitime.timetable.model.TimetableManager;
 import org.unitime.timetable.model.dao.SubjectAreaDAO;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 
 /**
  * 
@@ -128,6 +129,8 @@ public class LastLikeCourseDemandImport extends BaseImport {
 	                setLong("sessionId", session.getUniqueId()).executeUpdate();
             
             commitTransaction();
+            
+            ProjectedDemandEngine.invalidate(session.getUniqueId());
 		} catch (Exception e) {
 			fatal("Exception: " + e.getMessage(), e);
 			rollbackTransaction();
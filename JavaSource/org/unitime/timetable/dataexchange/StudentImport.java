@@ -40,6 +40,7 @@ import org.unitime.timetable.model.StudentAccomodation;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentGroup;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 
 /**
  * @author Tomas Muller, Timothy Almon
@@ -142,6 +143,8 @@ public class StudentImport extends BaseImport {
  	 	        StudentSectioningQueue.studentChanged(getHibSession(), null, session.getUniqueId(), updatedStudents);
             
             commitTransaction();
+            
+            ProjectedDemandEngine.invalidate(session.getUniqueId());
 		} catch (Exception e) {
 			fatal("Exception: " + e.getMessage(), e);
 			rollbackTransaction();
@@ -52,6 +52,7 @@ import org.unitime.timetable.model.StudentAccomodation;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentGroup;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 import org.unitime.timetable.util.Constants;
 
 /**
@@ -692,6 +693,8 @@ public class StudentSectioningImport extends BaseImport {
  	 	        StudentSectioningQueue.studentChanged(getHibSession(), null, session.getUniqueId(), updatedStudents);
  	        
             commitTransaction();
+            
+            ProjectedDemandEngine.invalidate(session.getUniqueId());
         } catch (Exception e) {
             fatal("Exception: "+e.getMessage(),e);
             rollbackTransaction();
@@ -126,6 +126,21 @@ public enum ApplicationProperty {
 	@Description("Configuration: data folder (defaults to Tomcat/data/unitime)")
 	DataDir("unitime.data.dir"),
 
+	@Type(Integer.class)
+	@DefaultValue("1")
+	@Description("Queue Processor: number of worker threads executing queued tasks (e.g., PDF exam reports, data exchange, scripts); with more than one thread, tasks are no longer executed one after the other (e.g., two data imports may run at the same time)")
+	QueueProcessorThreads("unitime.queue.threads"),
+
+	@Type(Integer.class)
+	@DefaultValue("1")
+	@Description("Queue Processor: maximal number of tasks of a single user that can be executed at the same time")
+	QueueProcessorMaxTasksPerUser("unitime.queue.maxTasksPerUser"),
+
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Queue Processor: keep metadata of finished tasks in the data folder, so that they are still listed after a restart")
+	QueueProcessorPersistFinished("unitime.queue.persist"),
+
 	@DefaultValue("custom.properties")
 	@Description("Configuration: custom application properties file")
 	@ReadOnly
@@ -359,6 +374,11 @@ public enum ApplicationProperty {
 	@Description("Room Filter: distance limit (in meters) for nearby locations")
 	EventNearByDistance("tmtbl.events.nearByDistance"),
 
+	@Type(Integer.class)
+	@DefaultValue("900")
+	@Description("Room Filter: time to live (in seconds) of the in-memory room catalogue of an academic session, the catalogue is also dropped when a room, a building, a room feature, or a room group is changed (0 means that the catalogue is always reloaded)")
+	EventRoomCatalogueTTL("tmtbl.events.roomCatalogue.ttl"),
+
 	@Type(Integer.class)
 	@DefaultValue("0")
 	@Description("Rooms: default break time for a room of type % (% is the room type reference)")
@@ -531,6 +551,16 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: enable student email confirmations")
 	OnlineSchedulingEmailConfirmation("unitime.enrollment.email"),
 
+	@Type(Integer.class)
+	@DefaultValue("4")
+	@Description("Online Student Scheduling: number of threads used by mass updates of students (mass cancel, student status change), set to 1 to update students one by one")
+	OnlineSchedulingMassUpdateThreads("unitime.enrollment.massUpdate.threads"),
+
+	@Type(Integer.class)
+	@DefaultValue("50")
+	@Description("Online Student Scheduling: number of students in a chunk of a mass update that is processed by a single thread")
+	OnlineSchedulingMassUpdateChunkSize("unitime.enrollment.massUpdate.chunkSize"),
+
 	@Type(Boolean.class)
 	@Description("Online Student Scheduling: allow student to select over-expected sections (even if there is a choise avoiding them)")
 	OnlineSchedulingAllowOverExpected("unitime.sectioning.allowOverExpected"),
@@ -548,6 +578,16 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling Log: besides of the database, also log the actions in the given file (if set)")
 	OnlineSchedulingLogFile("unitime.sectioning.log.file"),
 
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Online Student Scheduling Log: persist the records as soon as there is at least the given number of them held in memory")
+	OnlineSchedulingLogBatchSize("unitime.sectioning.log.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Online Student Scheduling Log: maximal time (in seconds) a record is held in memory before it is persisted")
+	OnlineSchedulingLogFlushInterval("unitime.sectioning.log.flushInterval"),
+
 	@Description("Online Student Scheduling: override for the solver parameter %")
 	@Parameter("solver parameter")
 	OnlineSchedulingParameter("unitime.sectioning.config.%"),
@@ -804,6 +844,11 @@ public enum ApplicationProperty {
 	@Description("Examination PDF Reports: pre-load cross-listed examinations")
 	ExaminationPdfReportsPreloadCrosslistedExams("tmtbl.exam.pdfReports.useSolution.preloadCrosslistedExams"),
 
+	@Type(Integer.class)
+	@DefaultValue("4")
+	@Description("Examination PDF Reports: number of reports that can be generated in parallel")
+	ExaminationPdfReportsThreads("unitime.exam.pdfReports.threads"),
+
 	@Type(Boolean.class)
 	@DefaultValue("true")
 	@Description("Examination PDF Reports: skip suffixed subparts of the same instructional type (e.g., Lec 1a if there is a Lec 1) in the verification report")
@@ -1092,12 +1137,42 @@ public enum ApplicationProperty {
 	@Description("Room Timetable: allow to see all the rooms (when set to false)")
 	EventRoomTimetableAllRooms("unitime.event_timetable.event_rooms_only"),
 
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Events: time to live (in seconds) of a day in the room occupancy index used by the room availability checks, changes that are not made through the event pages are picked up when a day is reloaded (0 means that a day is always reloaded)")
+	EventRoomOccupancyIndexTTL("unitime.events.occupancyIndex.ttl"),
+
 	@Type(Class.class)
 	@Implements(Email.class)
 	@DefaultValue("org.unitime.commons.JavaMailWrapper")
 	@Description("Email Configuration: provider class")
 	EmailProvider("unitime.email.class"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Email Configuration: emails that can be sent later (e.g., student notifications of a mass cancellation) are put in a queue and sent asynchronously, in batches")
+	EmailQueueEnabled("unitime.email.queue"),
+
+	@Type(Integer.class)
+	@DefaultValue("50")
+	@Description("Email Configuration: maximal number of queued emails sent using one SMTP connection")
+	EmailQueueBatchSize("unitime.email.queue.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("3")
+	@Description("Email Configuration: number of attempts to send a queued email")
+	EmailQueueAttempts("unitime.email.queue.attempts"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Email Configuration: delay in seconds before a queued email that failed to be sent is retried (multiplied by the number of failed attempts)")
+	EmailQueueRetryDelay("unitime.email.queue.retryDelay"),
+
+	@Type(Integer.class)
+	@DefaultValue("5")
+	@Description("Templates: number of seconds a cached FreeMarker template is used before it is checked for changes")
+	TemplateUpdateDelay("unitime.templates.updateDelay"),
+
 	@DefaultValue("127.0.0.1")
 	@Description("Email Configuration: SMTP host")
 	@Replaces({"tmtbl.smtp.host"})
@@ -1431,6 +1506,16 @@ public enum ApplicationProperty {
 	@Description("Solver: serialize uniuqe ids in the XML Export")
 	SolverXMLExportConvertIds("unitime.solution.export.id-conv"),
 
+	/**
+	 * Incremental solution commit.
+	 * When enabled (default), committing a solution is done in one pass against the previously committed solution of the same owner:
+	 * class events of the classes with the same meetings are kept untouched, only the changed classes are updated.
+	 */
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Solver: when a solution is committed, only update class events of the classes that have changed against the previously committed solution")
+	SolutionCommitIncremental("unitime.solution.commit.incremental"),
+
 	/**
 	 * Solution passivation time.
 	 * Number of minutes after which an inactive solution can be passivated to disk to save memory.
@@ -1441,6 +1526,16 @@ public enum ApplicationProperty {
 	@Description("Solver: passivate solution after given number of minutes of inactivity (disable passivation by setting to zero)")
 	SolverPasivationTime("unitime.solver.passivation.time"),
 
+	/**
+	 * Solution passivation time of a particular solver type.
+	 * Number of minutes after which an inactive solution of the given type (course, exam, or student) can be passivated,
+	 * defaults to {@link ApplicationProperty#SolverPasivationTime}.
+	 */
+	@Type(Integer.class)
+	@Description("Solver: passivate % solution after given number of minutes of inactivity (defaults to unitime.solver.passivation.time, disable passivation by setting to zero)")
+	@Parameter("solver type (course, exam, or student)")
+	SolverPasivationTimeForType("unitime.solver.passivation.time.%"),
+
 	@Type(Integer.class)
 	@DefaultValue("300")
 	@Description("Online Student Scheduling: sectioning queue load interval in seconds")
@@ -1510,6 +1605,31 @@ public enum ApplicationProperty {
 	@Description("Message Log: message log cleanup interval in minutes")
 	MessageLogCleanupInterval("unitime.message.log.cleanup.interval"),
 
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Query Log, Message Log: persist the records as soon as there is at least the given number of them held in memory")
+	AuditLogBatchSize("unitime.audit.log.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Query Log, Message Log: maximal time (in seconds) a record is held in memory before it is persisted")
+	AuditLogFlushInterval("unitime.audit.log.flushInterval"),
+
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Query Log, Message Log, Online Student Scheduling Log: when the database is failing or slow, spill the records into a local file (in the data folder) instead of dropping them")
+	AuditLogSpill("unitime.audit.log.spill"),
+
+	@Type(Integer.class)
+	@DefaultValue("10")
+	@Description("Query Log, Message Log, Online Student Scheduling Log: the database is considered slow when persisting a chunk of records takes more than the given number of seconds")
+	AuditLogSlowFlush("unitime.audit.log.slowFlush"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Query Log, Message Log, Online Student Scheduling Log: time (in seconds) after which a slow or failing database is tried again")
+	AuditLogRetryInterval("unitime.audit.log.retryInterval"),
+
 	/**
 	 * For various PDF exports, if you need other fonts than the ones bundled in the iText library (e.g., because of their poor unicode support),
 	 * set the following unitime.pdf.font properties. The fonts will be embedded in the exported PDF.
@@ -1692,6 +1812,16 @@ public enum ApplicationProperty {
 	@DefaultValue("org.unitime.timetable.backup.SessionRestore")
 	@Description("Implementation of the session restore interface.")
 	SessionRestoreInterface("unitime.session_restore.class"),
+
+	@Type(Integer.class)
+	@DefaultValue("1")
+	@Description("Session backup: number of threads exporting the tables in parallel (each on its own read-only hibernate session), 1 to export the tables sequentially")
+	SessionBackupThreads("unitime.session_backup.threads"),
+
+	@Type(Integer.class)
+	@DefaultValue("1000")
+	@Description("Session restore: number of saved entities after which the hibernate session is flushed (inserts are written in JDBC batches)")
+	SessionRestoreFlushInterval("unitime.session_restore.flushInterval"),
 	
 	
 	@Type(String.class)
@@ -209,6 +209,8 @@ public class ApproveEventBackend extends EventAction<ApproveEventRpcRequest, Sav
 			
 			tx.commit(); tx = null;
 			
+			RoomOccupancyIndex.update(session, affectedMeetings, null);
+			
 			new EventEmail(request, response).send(context);
 			
 			return response;
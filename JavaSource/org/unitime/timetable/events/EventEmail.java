@@ -67,6 +67,7 @@ import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.NameFormat;
+import org.unitime.timetable.util.TemplateEngine;
 
 import biweekly.Biweekly;
 import biweekly.ICalendar;
@@ -74,7 +75,6 @@ import biweekly.property.CalendarScale;
 import biweekly.property.Method;
 import biweekly.property.Status;
 import biweekly.property.Version;
-import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
@@ -290,11 +290,7 @@ public class EventEmail {
 	}
 	
 	private String message() throws IOException, TemplateException {
-		Configuration cfg = new Configuration();
-		cfg.setClassForTemplateLoading(EventEmail.class, "");
-		cfg.setLocale(Localization.getJavaLocale());
-		cfg.setOutputEncoding("utf-8");
-		Template template = cfg.getTemplate("confirmation.ftl");
+		Template template = TemplateEngine.getTemplate(EventEmail.class, "", "confirmation.ftl");
 		Map<String, Object> input = new HashMap<String, Object>();
 		input.put("msg", MESSAGES);
 		input.put("const", CONSTANTS);
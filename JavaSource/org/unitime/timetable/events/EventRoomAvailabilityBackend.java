@@ -19,13 +19,13 @@
 */
 package org.unitime.timetable.events;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
-import org.hibernate.Query;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.defaults.UserProperty;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
@@ -75,37 +75,24 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 		String nameFormat = context.getUser().getProperty(UserProperty.NameFormat);
 		
 		if (request.hasDates() && request.hasLocations()) {
+			RoomOccupancyIndex index = RoomOccupancyIndex.getInstance(session);
+			org.hibernate.Session hibSession = EventDAO.getInstance().getSession();
 			for (int idx = 0; idx < request.getLocations().size(); idx += 1000) {
-			
-				String dates = "";
-				for (int i = 0; i < request.getDates().size(); i++)
-					dates += (dates.isEmpty() ? "" : ",") + ":d" + i;
 				
-				String locations = "";
-				for (int i = idx; i + idx < request.getLocations().size() && i < 1000; i++)
-					locations += (locations.isEmpty() ? "" : ",") + ":l" + i;
+				List<Location> locations = (List<Location>)hibSession.createQuery(
+						"from Location where session.uniqueId = :sessionId and permanentId in (:permanentIds)")
+						.setParameterList("permanentIds", request.getLocations().subList(idx, Math.min(idx + 1000, request.getLocations().size())))
+						.setLong("sessionId", request.getSessionId()).setCacheable(true).list();
 				
-				Query query = EventDAO.getInstance().getSession().createQuery(
-						"select m from Meeting m, Location l " +
-						"where m.startPeriod<:stopTime and m.stopPeriod>:startTime and m.approvalStatus <= 1 and " +
-						"l.session.uniqueId = :sessionId and l.permanentId in (" + locations + ") and l.ignoreRoomCheck = false and " +
-						"m.locationPermanentId = l.permanentId and m.meetingDate in ("+dates+")");
+				List<Long> permanentIds = new ArrayList<Long>();
+				for (Location location: locations)
+					if (!location.isIgnoreRoomCheck()) permanentIds.add(location.getPermanentId());
 				
-				query.setInteger("startTime", request.getStartSlot());
-				query.setInteger("stopTime", request.getEndSlot());
-				query.setLong("sessionId", request.getSessionId());
-				for (int i = 0; i < request.getDates().size(); i++) {
-					Date date = CalendarUtils.dateOfYear2date(session.getSessionStartYear(), request.getDates().get(i));
-					query.setDate("d" + i, date);
-				}
-				for (int i = idx; i + idx < request.getLocations().size() && i < 1000; i++)
-					query.setLong("l" + i, request.getLocations().get(idx + i));
+				Set<Long> meetingIds = index.getMeetingIds(hibSession, permanentIds, request.getDates(), request.getStartSlot(), request.getEndSlot(), request.getEventId(), null);
 				
-				for (Meeting m: (List<Meeting>)query.list()) {
+				for (Meeting m: RoomOccupancyIndex.getMeetings(hibSession, meetingIds)) {
 					MeetingConflictInterface conflict = new MeetingConflictInterface();
 
-					if (request.hasEventId() && m.getEvent().getUniqueId().equals(request.getEventId())) continue;
-
 					conflict.setEventId(m.getEvent().getUniqueId());
 					conflict.setName(m.getEvent().getEventName());
 					conflict.setType(EventInterface.EventType.values()[m.getEvent().getEventType()]);
@@ -170,12 +157,7 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 					response.addOverlap(CalendarUtils.date2dayOfYear(session.getSessionStartYear(), m.getMeetingDate()), m.getLocationPermanentId(), conflict);
 				}
 				
-				query = EventDAO.getInstance().getSession().createQuery(
-						"from Location where session.uniqueId = :sessionId and permanentId in (" + locations + ")");
-				for (int i = idx; i + idx < request.getLocations().size() && i < 1000; i++)
-					query.setLong("l" + i, request.getLocations().get(idx + i));
-
-				for (Location location: (List<Location>)query.setLong("sessionId", request.getSessionId()).setCacheable(true).list()) {
+				for (Location location: locations) {
 					if (context.hasPermission(location, request.getEventType() == EventType.Unavailabile ? Right.EventLocationUnavailable : Right.EventLocation)) {
 						Set<MeetingConflictInterface> conflicts = generateUnavailabilityMeetings(location, request.getDates(), request.getStartSlot(), request.getEndSlot());
 						if (conflicts != null && !conflicts.isEmpty())
@@ -282,22 +264,15 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 					available = false;
 				}
 				
-				if (!location.isIgnoreRoomCheck())
-					for (Meeting m: (List<Meeting>)EventDAO.getInstance().getSession().createQuery(
-							"select m from Meeting m, Location l "+
-							"where m.startPeriod < :stopTime and m.stopPeriod > :startTime and m.approvalStatus <= 1 and " +
-							"m.locationPermanentId = l.permanentId and l.uniqueId = :locationdId and m.meetingDate = :meetingDate and m.uniqueId != :meetingId")
-							.setInteger("startTime", meeting.getStartSlot())
-							.setInteger("stopTime", meeting.getEndSlot())
-							.setDate("meetingDate", meeting.getMeetingDate())
-							.setLong("locationdId", meeting.getLocation().getId())
-							.setLong("meetingId", meeting.getId() == null ? -1 : meeting.getId())
-							.list()) {
+				if (location != null && !location.isIgnoreRoomCheck()) {
+					org.hibernate.Session hibSession = EventDAO.getInstance().getSession();
+					Set<Long> meetingIds = RoomOccupancyIndex.getInstance(session).getMeetingIds(hibSession, location.getPermanentId(),
+							CalendarUtils.date2dayOfYear(session.getSessionStartYear(), meeting.getMeetingDate()),
+							meeting.getStartSlot(), meeting.getEndSlot(), request.getEventId(), meeting.getId());
+					for (Meeting m: RoomOccupancyIndex.getMeetings(hibSession, meetingIds)) {
 						
 						MeetingConflictInterface conflict = new MeetingConflictInterface();
 						
-						if (request.hasEventId() && m.getEvent().getUniqueId().equals(request.getEventId())) continue;
-
 						conflict.setEventId(m.getEvent().getUniqueId());
 						conflict.setName(m.getEvent().getEventName());
 						conflict.setType(EventInterface.EventType.values()[m.getEvent().getEventType()]);
@@ -314,6 +289,7 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 						
 						meeting.addConflict(conflict);
 					}
+				}
 				
 				if (location != null && location.getEventAvailability() != null && location.getEventAvailability().length() == Constants.SLOTS_PER_DAY * Constants.DAY_CODES.length) {
 					check: for (int slot = meeting.getStartSlot(); slot < meeting.getEndSlot(); slot++) {
@@ -0,0 +1,566 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.events;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.ifs.util.DistanceMetric;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Building;
+import org.unitime.timetable.model.ChangeLog;
+import org.unitime.timetable.model.Department;
+import org.unitime.timetable.model.DepartmentRoomFeature;
+import org.unitime.timetable.model.GlobalRoomFeature;
+import org.unitime.timetable.model.Location;
+import org.unitime.timetable.model.Room;
+import org.unitime.timetable.model.RoomDept;
+import org.unitime.timetable.model.RoomFeature;
+import org.unitime.timetable.model.RoomFeatureType;
+import org.unitime.timetable.model.RoomGroup;
+import org.unitime.timetable.model.RoomTypeOption;
+import org.unitime.timetable.model.TravelTime;
+import org.unitime.timetable.model.dao.LocationDAO;
+
+/**
+ * In-memory catalogue of the rooms of an academic session, used by the {@link RoomFilterBackend}.
+ * Each location is kept as a flat {@link Entry} with its features, groups, and departments as bit sets (indexes
+ * into the feature, group, and department tables of the catalogue), so that the room filter and the suggestions
+ * can be computed without any database round trips. Locations with coordinates are also put in a spatial grid
+ * (see {@link #getNearbyCandidates(Double, Double, Long, double)}), so that the nearby filter only needs to compute
+ * the distances to the rooms that can actually be close enough.<br>
+ * The catalogue is reloaded when a room, a building, a room feature, or a room group change is committed (the last such change
+ * log record is checked at most every {@link #sChangeCheckInterval} milliseconds) and it is also reloaded after
+ * {@link ApplicationProperty#EventRoomCatalogueTTL} seconds, to pick up changes that were not logged.
+ * 
+ * @author Tomas Muller
+ */
+public class RoomCatalogue {
+	private static final long sChangeCheckInterval = 5000;
+	private static final String[] sChangeSources = new String[] {
+		ChangeLog.Source.ROOM_EDIT.name(), ChangeLog.Source.ROOM_DEPT_EDIT.name(), ChangeLog.Source.ROOM_FEATURE_EDIT.name(),
+		ChangeLog.Source.ROOM_GROUP_EDIT.name(), ChangeLog.Source.BUILDING_EDIT.name(), ChangeLog.Source.DEPARTMENT_EDIT.name(),
+		ChangeLog.Source.DATA_IMPORT_EXT_BUILDING_ROOM.name()
+	};
+	private static Map<Long, RoomCatalogue> sCatalogues = new ConcurrentHashMap<Long, RoomCatalogue>();
+	private static ConcurrentHashMap<Long, Object> sLocks = new ConcurrentHashMap<Long, Object>();
+	
+	private Long iSessionId;
+	private long iLoaded;
+	private Long iLastChangeId;
+	private volatile long iLastCheck;
+	private volatile boolean iOutdated = false;
+	private List<Entry> iEntries = new ArrayList<Entry>();
+	private Map<Long, Entry> iEntryById = new HashMap<Long, Entry>();
+	private List<Feature> iFeatures = new ArrayList<Feature>();
+	private List<Group> iGroups = new ArrayList<Group>();
+	private List<Dept> iDepartments = new ArrayList<Dept>();
+	private Map<String, Entry> iBuildings = new HashMap<String, Entry>();
+	private List<String> iFeatureTypes = new ArrayList<String>();
+	private DistanceMetric iMetric;
+	private Map<Long, Set<Long>> iTravelTimes = new HashMap<Long, Set<Long>>();
+	private boolean iLegacy;
+	private double iCellSize;
+	private Map<Long, List<Entry>> iGrid = new HashMap<Long, List<Entry>>();
+	private List<Entry> iNotGridded = new ArrayList<Entry>();
+	
+	private RoomCatalogue(Long sessionId) {
+		iSessionId = sessionId;
+	}
+	
+	/**
+	 * Room catalogue of the given academic session (the catalogue is loaded when not present or outdated).
+	 * Only the threads asking for the same academic session wait for the catalogue to load.
+	 */
+	public static RoomCatalogue getInstance(Long sessionId) {
+		RoomCatalogue catalogue = sCatalogues.get(sessionId);
+		if (catalogue != null && catalogue.isUpToDate()) return catalogue;
+		Object lock = sLocks.get(sessionId);
+		if (lock == null) {
+			lock = new Object();
+			Object other = sLocks.putIfAbsent(sessionId, lock);
+			if (other != null) lock = other;
+		}
+		synchronized (lock) {
+			catalogue = sCatalogues.get(sessionId);
+			if (catalogue == null || !catalogue.isUpToDate()) {
+				catalogue = new RoomCatalogue(sessionId);
+				catalogue.load();
+				sCatalogues.put(sessionId, catalogue);
+			}
+			return catalogue;
+		}
+	}
+	
+	/** Drop the room catalogue of the given academic session */
+	public static void invalidate(Long sessionId) {
+		sCatalogues.remove(sessionId);
+	}
+	
+	/** Drop all room catalogues */
+	public static void invalidateAll() {
+		sCatalogues.clear();
+	}
+	
+	protected boolean isExpired() {
+		return System.currentTimeMillis() - iLoaded >= 1000l * ApplicationProperty.EventRoomCatalogueTTL.intValue();
+	}
+	
+	/**
+	 * The catalogue is up to date when it is not expired and there has been no (committed) room change logged since it was loaded
+	 */
+	protected boolean isUpToDate() {
+		if (iOutdated) return false;
+		if (isExpired()) { iOutdated = true; return false; }
+		if (System.currentTimeMillis() - iLastCheck < sChangeCheckInterval) return true;
+		org.hibernate.Session hibSession = LocationDAO.getInstance().createNewSession();
+		try {
+			Long lastChangeId = getLastChangeId(hibSession);
+			iLastCheck = System.currentTimeMillis();
+			if (lastChangeId != null && !lastChangeId.equals(iLastChangeId)) iOutdated = true;
+		} finally {
+			hibSession.close();
+		}
+		return !iOutdated;
+	}
+	
+	private Long getLastChangeId(org.hibernate.Session hibSession) {
+		return (Long)hibSession.createQuery(
+				"select max(c.uniqueId) from ChangeLog c where c.session.uniqueId = :sessionId and c.sourceString in (:sources)"
+				).setLong("sessionId", iSessionId).setParameterList("sources", sChangeSources).uniqueResult();
+	}
+	
+	private void load() {
+		org.hibernate.Session hibSession = LocationDAO.getInstance().createNewSession();
+		try {
+			iLoaded = System.currentTimeMillis();
+			iLastChangeId = getLastChangeId(hibSession);
+			iLastCheck = iLoaded;
+			
+			for (RoomFeatureType type: (List<RoomFeatureType>)hibSession.createQuery("from RoomFeatureType").setCacheable(true).list())
+				if (type.isShowInEventManagement()) iFeatureTypes.add(type.getReference());
+			
+			Map<Long, Integer> features = new HashMap<Long, Integer>();
+			for (RoomFeature rf: (List<RoomFeature>)hibSession.createQuery(
+					"select f from GlobalRoomFeature f where f.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).setCacheable(true).list()) {
+				features.put(rf.getUniqueId(), iFeatures.size());
+				iFeatures.add(new Feature(rf));
+			}
+			for (RoomFeature rf: (List<RoomFeature>)hibSession.createQuery(
+					"select f from DepartmentRoomFeature f where f.department.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).setCacheable(true).list()) {
+				features.put(rf.getUniqueId(), iFeatures.size());
+				iFeatures.add(new Feature(rf));
+			}
+			
+			Map<Long, Integer> groups = new HashMap<Long, Integer>();
+			for (RoomGroup rg: (List<RoomGroup>)hibSession.createQuery(
+					"from RoomGroup where session.uniqueId = :sessionId").setLong("sessionId", iSessionId).setCacheable(true).list()) {
+				groups.put(rg.getUniqueId(), iGroups.size());
+				iGroups.add(new Group(rg));
+			}
+			
+			Map<Long, Integer> departments = new HashMap<Long, Integer>();
+			for (Department d: (List<Department>)hibSession.createQuery(
+					"from Department where session.uniqueId = :sessionId").setLong("sessionId", iSessionId).setCacheable(true).list()) {
+				departments.put(d.getUniqueId(), iDepartments.size());
+				iDepartments.add(new Dept(d));
+			}
+			
+			for (Building b: (List<Building>)hibSession.createQuery(
+					"from Building where session.uniqueId = :sessionId").setLong("sessionId", iSessionId).setCacheable(true).list()) {
+				iBuildings.put(b.getAbbreviation(), new Entry(-b.getUniqueId(), b.getCoordinateX(), b.getCoordinateY()));
+			}
+			
+			Map<String, RoomTypeOption> options = new HashMap<String, RoomTypeOption>();
+			for (RoomTypeOption option: (List<RoomTypeOption>)hibSession.createQuery(
+					"from RoomTypeOption where department.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).setCacheable(true).list()) {
+				options.put(option.getRoomType().getUniqueId() + ":" + option.getDepartment().getUniqueId(), option);
+			}
+			
+			// fetch the location collections one at a time (to avoid a cartesian product)
+			hibSession.createQuery("select distinct l from Location l left join fetch l.features where l.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).list();
+			hibSession.createQuery("select distinct l from Location l left join fetch l.roomGroups where l.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).list();
+			hibSession.createQuery("select distinct l from Location l left join fetch l.examTypes where l.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).list();
+			for (Location location: (List<Location>)hibSession.createQuery(
+					"select distinct l from Location l left join fetch l.roomDepts where l.session.uniqueId = :sessionId").setLong("sessionId", iSessionId).list()) {
+				Entry entry = new Entry(location, location.getEventDepartment() == null ? null : options.get(location.getRoomType().getUniqueId() + ":" + location.getEventDepartment().getUniqueId()));
+				for (RoomFeature rf: location.getFeatures()) {
+					Integer index = features.get(rf.getUniqueId());
+					if (index != null) entry.iFeatures.set(index);
+				}
+				for (RoomGroup rg: location.getRoomGroups()) {
+					Integer index = groups.get(rg.getUniqueId());
+					if (index != null) entry.iGroups.set(index);
+				}
+				for (RoomDept rd: location.getRoomDepts()) {
+					Integer index = departments.get(rd.getDepartment().getUniqueId());
+					if (index == null) continue;
+					entry.iDepartments.set(index);
+					if (rd.isControl()) entry.iControl.set(index);
+				}
+				if (location.getEventDepartment() != null) {
+					Integer index = departments.get(location.getEventDepartment().getUniqueId());
+					if (index != null) entry.iEventDepartment = index;
+				}
+				iEntries.add(entry);
+				iEntryById.put(entry.getId(), entry);
+			}
+			
+			DataProperties config = new DataProperties();
+			config.setProperty("Distances.Ellipsoid", ApplicationProperty.DistanceEllipsoid.value());
+			config.setProperty("Distances.Speed", ApplicationProperty.EventDistanceSpeed.value());
+			iMetric = new DistanceMetric(config);
+			TravelTime.populateTravelTimes(iMetric, iSessionId, hibSession);
+			for (Map.Entry<Long, Map<Long, Integer>> e1: iMetric.getTravelTimes().entrySet())
+				for (Long id2: e1.getValue().keySet()) {
+					travelTime(e1.getKey(), id2);
+					travelTime(id2, e1.getKey());
+				}
+		} finally {
+			hibSession.close();
+		}
+		
+		iLegacy = iMetric.isLegacy();
+		double distance = ApplicationProperty.EventNearByDistance.doubleValue();
+		iCellSize = Math.max(iLegacy ? distance : distance / 110000.0, 0.00001);
+		for (Entry entry: iEntries) {
+			if (!entry.hasCoordinates()) continue;
+			if (iLegacy && (entry.getX() < 0.0 || entry.getY() < 0.0)) {
+				// legacy metric: negative coordinates mean unknown location, the distance is then a constant
+				iNotGridded.add(entry);
+			} else {
+				Long cell = cell(cell(entry.getX()), cell(entry.getY()));
+				List<Entry> entries = iGrid.get(cell);
+				if (entries == null) {
+					entries = new ArrayList<Entry>();
+					iGrid.put(cell, entries);
+				}
+				entries.add(entry);
+			}
+		}
+	}
+	
+	private void travelTime(Long id1, Long id2) {
+		Set<Long> ids = iTravelTimes.get(id1);
+		if (ids == null) {
+			ids = new HashSet<Long>();
+			iTravelTimes.put(id1, ids);
+		}
+		ids.add(id2);
+	}
+	
+	private long cell(double coordinate) {
+		return (long)Math.floor(coordinate / iCellSize);
+	}
+	
+	private static Long cell(long x, long y) {
+		return (x << 32) ^ (y & 0xffffffffl);
+	}
+	
+	/** Academic session id */
+	public Long getSessionId() { return iSessionId; }
+	
+	/** All locations of the academic session */
+	public List<Entry> getEntries() { return iEntries; }
+	
+	/** Location of the given unique id (null if not known) */
+	public Entry getEntry(Long locationId) { return iEntryById.get(locationId); }
+	
+	/** Room features of the academic session (global features first), {@link Entry#getFeatures()} are indexes into this list */
+	public List<Feature> getFeatures() { return iFeatures; }
+	
+	/** Room groups of the academic session, {@link Entry#getGroups()} are indexes into this list */
+	public List<Group> getGroups() { return iGroups; }
+	
+	/** Departments of the academic session, {@link Entry#getDepartments()} are indexes into this list */
+	public List<Dept> getDepartments() { return iDepartments; }
+	
+	/** Department of the given index (null if the index is negative) */
+	public Dept getDepartment(int index) { return index < 0 ? null : iDepartments.get(index); }
+	
+	/** References of the room feature types that are to be shown in the event management */
+	public List<String> getFeatureTypes() { return iFeatureTypes; }
+	
+	/** Coordinates of a building (given by its abbreviation, the returned entry has the negated building id) */
+	public Entry getBuilding(String abbreviation) { return iBuildings.get(abbreviation); }
+	
+	/** Distance metric (with the travel times of the academic session) */
+	public DistanceMetric getDistanceMetric() { return iMetric; }
+	
+	/** Distance in meters between two locations with coordinates */
+	public double getDistance(Entry e1, Entry e2) {
+		if (!e1.hasCoordinates() || !e2.hasCoordinates()) return Double.POSITIVE_INFINITY;
+		return iMetric.getDistanceInMeters(e1.getId(), e1.getX(), e1.getY(), e2.getId(), e2.getX(), e2.getY());
+	}
+	
+	/**
+	 * Locations that may be within the given distance from the given point: all the locations from the spatial grid cells
+	 * that intersect with a bounding box around the point (the box is conservative, it contains all the points that are within the distance),
+	 * all the locations with a travel time to the given location, and all the locations that are not in the grid (legacy metric, unknown coordinates).
+	 * The actual distance still needs to be checked.
+	 */
+	public Collection<Entry> getNearbyCandidates(Double x, Double y, Long id, double distance) {
+		if (x == null || y == null) return Collections.emptyList();
+		Set<Entry> ret = new HashSet<Entry>(iNotGridded);
+		if (iLegacy && (x < 0.0 || y < 0.0)) {
+			// legacy metric: the point has an unknown location, the distance to any other location is a constant
+			for (List<Entry> entries: iGrid.values())
+				ret.addAll(entries);
+			return ret;
+		}
+		if (id != null && iTravelTimes.containsKey(id))
+			for (Long other: iTravelTimes.get(id)) {
+				Entry entry = iEntryById.get(other);
+				if (entry != null && entry.hasCoordinates()) ret.add(entry);
+			}
+		double dx, dy;
+		if (iLegacy) {
+			dx = dy = distance;
+		} else {
+			dx = distance / 110000.0;
+			double lat = Math.min(90.0, Math.abs(x) + dx);
+			double cos = Math.cos(Math.toRadians(lat));
+			dy = (cos < 0.01 ? 180.0 : dx / cos);
+		}
+		long x1 = cell(x - dx), x2 = cell(x + dx), y1 = cell(y - dy), y2 = cell(y + dy);
+		if ((x2 - x1 + 1) * (y2 - y1 + 1) > iGrid.size()) {
+			for (List<Entry> entries: iGrid.values())
+				ret.addAll(entries);
+		} else {
+			for (long cx = x1; cx <= x2; cx++)
+				for (long cy = y1; cy <= y2; cy++) {
+					List<Entry> entries = iGrid.get(cell(cx, cy));
+					if (entries != null) ret.addAll(entries);
+				}
+		}
+		return ret;
+	}
+	
+	@Override
+	public String toString() {
+		return "RoomCatalogue{session=" + iSessionId + ", locations=" + iEntries.size() + ", features=" + iFeatures.size() + ", groups=" + iGroups.size() + ", cells=" + iGrid.size() + "}";
+	}
+	
+	/**
+	 * A location (or a building, in the case of {@link RoomCatalogue#getBuilding(String)}) of the catalogue
+	 */
+	public static class Entry {
+		private Long iId, iPermanentId;
+		private String iLabel, iDisplayName, iRoomNumber;
+		private Integer iCapacity;
+		private Long iTypeId;
+		private String iTypeReference, iTypeLabel, iRoomTypeLabel;
+		private int iTypeOrd;
+		private Long iBuildingId;
+		private String iBuildingAbbv, iBuildingName, iBuildingAbbrName;
+		private Double iX, iY;
+		private BitSet iFeatures = new BitSet(), iGroups = new BitSet(), iDepartments = new BitSet(), iControl = new BitSet();
+		private int iEventDepartment = -1;
+		private boolean iEventRoom, iFinalExams, iMidtermExams, iIgnoreRoomCheck;
+		private int iBreakTime;
+		private String iEventMessage;
+		
+		Entry(Long id, Double x, Double y) {
+			iId = id; iX = x; iY = y;
+		}
+		
+		Entry(Location location, RoomTypeOption option) {
+			iId = location.getUniqueId();
+			iPermanentId = location.getPermanentId();
+			iLabel = location.getLabel();
+			iDisplayName = location.getDisplayName();
+			iCapacity = location.getCapacity();
+			iTypeId = location.getRoomType().getUniqueId();
+			iTypeReference = location.getRoomType().getReference();
+			iTypeLabel = location.getRoomType().getLabel();
+			iTypeOrd = location.getRoomType().getOrd();
+			iRoomTypeLabel = location.getRoomTypeLabel();
+			if (location instanceof Room) {
+				Room room = (Room)location;
+				iRoomNumber = room.getRoomNumber();
+				iBuildingId = room.getBuilding().getUniqueId();
+				iBuildingAbbv = room.getBuilding().getAbbreviation();
+				iBuildingName = room.getBuilding().getName();
+				iBuildingAbbrName = room.getBuilding().getAbbrName();
+			}
+			iX = location.getCoordinateX();
+			iY = location.getCoordinateY();
+			// same as Location.getEffectiveEventStatus(), getEffectiveBreakTime(), and getEventMessage(), but using the pre-loaded room type option
+			RoomTypeOption.Status status = (location.getEventStatus() != null ? RoomTypeOption.Status.values()[location.getEventStatus()] :
+				location.getEventDepartment() == null || option == null ? RoomTypeOption.Status.NoEventManagement : option.getEventStatus());
+			iEventRoom = location.getEventDepartment() != null && location.getEventDepartment().isAllowEvents() && status != RoomTypeOption.Status.NoEventManagement;
+			if (location.getBreakTime() != null)
+				iBreakTime = location.getBreakTime();
+			else if (location.getEventDepartment() == null || option == null || option.getBreakTime() == null)
+				iBreakTime = ApplicationProperty.RoomDefaultBreakTime.intValue(iTypeReference);
+			else
+				iBreakTime = option.getBreakTime();
+			if (location.getNote() != null && !location.getNote().isEmpty())
+				iEventMessage = location.getNote();
+			else if (location.getEventDepartment() != null && option != null)
+				iEventMessage = option.getMessage();
+			iFinalExams = location.hasFinalExamsEnabled();
+			iMidtermExams = location.hasMidtermExamsEnabled();
+			iIgnoreRoomCheck = location.isIgnoreRoomCheck();
+		}
+		
+		public Long getId() { return iId; }
+		public Long getPermanentId() { return iPermanentId; }
+		public String getLabel() { return iLabel; }
+		public String getDisplayName() { return iDisplayName; }
+		/** Room number (null when not a room) */
+		public String getRoomNumber() { return iRoomNumber; }
+		public Integer getCapacity() { return iCapacity; }
+		public Long getTypeId() { return iTypeId; }
+		public String getTypeReference() { return iTypeReference; }
+		public String getTypeLabel() { return iTypeLabel; }
+		public int getTypeOrd() { return iTypeOrd; }
+		public String getRoomTypeLabel() { return iRoomTypeLabel; }
+		/** True if a room (it has a building) */
+		public boolean isRoom() { return iBuildingId != null; }
+		public Long getBuildingId() { return iBuildingId; }
+		public String getBuildingAbbreviation() { return iBuildingAbbv; }
+		public String getBuildingName() { return iBuildingName; }
+		public String getBuildingAbbrName() { return iBuildingAbbrName; }
+		public Double getX() { return iX; }
+		public Double getY() { return iY; }
+		public boolean hasCoordinates() { return iX != null && iY != null; }
+		/** Room features (indexes into {@link RoomCatalogue#getFeatures()}) */
+		public BitSet getFeatures() { return iFeatures; }
+		/** Room groups (indexes into {@link RoomCatalogue#getGroups()}) */
+		public BitSet getGroups() { return iGroups; }
+		/** Room departments (indexes into {@link RoomCatalogue#getDepartments()}) */
+		public BitSet getDepartments() { return iDepartments; }
+		/** Controlling room departments (indexes into {@link RoomCatalogue#getDepartments()}) */
+		public BitSet getControllingDepartments() { return iControl; }
+		/** Event department (index into {@link RoomCatalogue#getDepartments()}, -1 if there is none) */
+		public int getEventDepartment() { return iEventDepartment; }
+		/** Event department allows events and the effective event status is not {@link RoomTypeOption.Status#NoEventManagement} */
+		public boolean isEventRoom() { return iEventRoom; }
+		public boolean hasFinalExamsEnabled() { return iFinalExams; }
+		public boolean hasMidtermExamsEnabled() { return iMidtermExams; }
+		public boolean isIgnoreRoomCheck() { return iIgnoreRoomCheck; }
+		public int getEffectiveBreakTime() { return iBreakTime; }
+		public String getEventMessage() { return iEventMessage; }
+		
+		@Override
+		public int hashCode() { return iId.hashCode(); }
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof Entry)) return false;
+			return iId.equals(((Entry)o).getId());
+		}
+		
+		@Override
+		public String toString() { return iLabel == null ? String.valueOf(iId) : iLabel; }
+	}
+	
+	/**
+	 * A room feature
+	 */
+	public static class Feature {
+		private Long iId;
+		private String iLabel, iAbbv, iTypeReference, iDeptCode;
+		private boolean iGlobal, iShowInEventManagement;
+		
+		Feature(RoomFeature rf) {
+			iId = rf.getUniqueId();
+			iLabel = rf.getLabel();
+			iAbbv = rf.getAbbv();
+			iGlobal = (rf instanceof GlobalRoomFeature);
+			if (rf instanceof DepartmentRoomFeature)
+				iDeptCode = ((DepartmentRoomFeature)rf).getDepartment().getDeptCode();
+			iTypeReference = (rf.getFeatureType() == null ? null : rf.getFeatureType().getReference());
+			iShowInEventManagement = (rf.getFeatureType() == null || rf.getFeatureType().isShowInEventManagement());
+		}
+		
+		public Long getId() { return iId; }
+		public String getLabel() { return iLabel; }
+		public String getAbbv() { return iAbbv; }
+		public boolean isGlobal() { return iGlobal; }
+		/** Department code of a departmental feature (null for a global feature) */
+		public String getDeptCode() { return iDeptCode; }
+		/** Feature type reference (null when the feature has no type) */
+		public String getTypeReference() { return iTypeReference; }
+		public boolean isShowInEventManagement() { return iShowInEventManagement; }
+	}
+	
+	/**
+	 * A room group
+	 */
+	public static class Group {
+		private Long iId;
+		private String iName, iAbbv, iDeptCode;
+		private boolean iGlobal;
+		
+		Group(RoomGroup rg) {
+			iId = rg.getUniqueId();
+			iName = rg.getName();
+			iAbbv = rg.getAbbv();
+			iGlobal = rg.isGlobal();
+			iDeptCode = (rg.getDepartment() == null ? null : rg.getDepartment().getDeptCode());
+		}
+		
+		public Long getId() { return iId; }
+		public String getName() { return iName; }
+		public String getAbbv() { return iAbbv; }
+		public boolean isGlobal() { return iGlobal; }
+		public String getDeptCode() { return iDeptCode; }
+	}
+	
+	/**
+	 * A department
+	 */
+	public static class Dept {
+		private Long iId;
+		private String iDeptCode, iAbbreviation, iName, iExternalMgrAbbv, iExternalMgrLabel;
+		private boolean iExternalManager, iAllowEvents;
+		
+		Dept(Department d) {
+			iId = d.getUniqueId();
+			iDeptCode = d.getDeptCode();
+			iAbbreviation = d.getAbbreviation();
+			iName = d.getName();
+			iExternalManager = (d.isExternalManager() != null && d.isExternalManager());
+			iExternalMgrAbbv = d.getExternalMgrAbbv();
+			iExternalMgrLabel = d.getExternalMgrLabel();
+			iAllowEvents = (d.isAllowEvents() != null && d.isAllowEvents());
+		}
+		
+		public Long getId() { return iId; }
+		public String getDeptCode() { return iDeptCode; }
+		public String getAbbreviation() { return iAbbreviation; }
+		public String getName() { return iName; }
+		public boolean isExternalManager() { return iExternalManager; }
+		public String getExternalMgrAbbv() { return iExternalMgrAbbv; }
+		public String getExternalMgrLabel() { return iExternalMgrLabel; }
+		public boolean isAllowEvents() { return iAllowEvents; }
+	}
+}
@@ -21,6 +21,7 @@ package org.unitime.timetable.events;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -31,29 +32,19 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
-import org.cpsolver.ifs.util.DataProperties;
-import org.cpsolver.ifs.util.DistanceMetric;
 import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.events.RoomCatalogue.Dept;
+import org.unitime.timetable.events.RoomCatalogue.Entry;
+import org.unitime.timetable.events.RoomCatalogue.Feature;
+import org.unitime.timetable.events.RoomCatalogue.Group;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
 import org.unitime.timetable.gwt.server.Query;
 import org.unitime.timetable.gwt.server.Query.TermMatcher;
 import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcResponse;
 import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcResponse.Entity;
 import org.unitime.timetable.gwt.shared.EventInterface.RoomFilterRpcRequest;
-import org.unitime.timetable.model.Building;
-import org.unitime.timetable.model.Department;
-import org.unitime.timetable.model.DepartmentRoomFeature;
-import org.unitime.timetable.model.GlobalRoomFeature;
 import org.unitime.timetable.model.Location;
-import org.unitime.timetable.model.Room;
-import org.unitime.timetable.model.RoomDept;
-import org.unitime.timetable.model.RoomFeature;
-import org.unitime.timetable.model.RoomFeatureType;
-import org.unitime.timetable.model.RoomGroup;
-import org.unitime.timetable.model.RoomTypeOption;
-import org.unitime.timetable.model.TravelTime;
-import org.unitime.timetable.model.dao.RoomDAO;
-import org.unitime.timetable.model.dao.RoomFeatureTypeDAO;
+import org.unitime.timetable.model.dao.LocationDAO;
 import org.unitime.timetable.model.dao.TimetableManagerDAO;
 import org.unitime.timetable.security.rights.Right;
 
@@ -62,7 +53,6 @@ import org.unitime.timetable.security.rights.Right;
  */
 @GwtRpcImplements(RoomFilterRpcRequest.class)
 public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
-	private DistanceMetric iMetrics;
 	private static double EPSILON = 0.000001;
 	private static DecimalFormat sCDF = new DecimalFormat("0.000000");
 	private static DecimalFormat sNF = new DecimalFormat("0000");
@@ -74,26 +64,19 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 	@Override
 	public void load(RoomFilterRpcRequest request, FilterRpcResponse response, EventContext context) {
 		Set<String> departments = request.getOptions("department");
+		RoomCatalogue catalogue = RoomCatalogue.getInstance(request.getSessionId());
 		
 		Set<Long> userDepts = null;
-		if (request.hasOption("user")) {
-			userDepts = new HashSet<Long>(
-					TimetableManagerDAO.getInstance().getSession().createQuery(
-							"select d.uniqueId from TimetableManager m inner join m.departments d where " +
-							"m.externalUniqueId = :user and d.session.uniqueId = :sessionId")
-							.setLong("sessionId", request.getSessionId())
-							.setString("user", request.getOption("user"))
-							.setCacheable(true).list()
-					);
-		}
+		if (request.hasOption("user"))
+			userDepts = getUserDepartments(request.getSessionId(), request.getOption("user"));
 		
 		fixRoomFeatureTypes(request);
 		
 		Map<Long, Entity> types = new HashMap<Long, Entity>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "type")) {
-			Entity type = types.get(location.getRoomType().getUniqueId());
+		for (Entry location: entries(catalogue, request.getOptions(), null, -1, null, "type")) {
+			Entity type = types.get(location.getTypeId());
 			if (type == null) {
-				type = new Entity(location.getRoomType().getUniqueId(), location.getRoomType().getReference(), location.getRoomType().getLabel(), "order", sNF.format(location.getRoomType().getOrd()));
+				type = new Entity(location.getTypeId(), location.getTypeReference(), location.getTypeLabel(), "order", sNF.format(location.getTypeOrd()));
 				types.put(type.getUniqueId(), type);
 			}
 			type.incCount();
@@ -101,19 +84,20 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		response.add("type", new TreeSet<Entity>(types.values()));
 		
 		Map<String, Map<Long, Entity>> featuresByType = new HashMap<String, Map<Long, Entity>>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, null)) {
-			for (RoomFeature rf: location.getFeatures()) {
-				if (rf instanceof GlobalRoomFeature || (rf instanceof DepartmentRoomFeature && departments != null && departments.contains(((DepartmentRoomFeature)rf).getDepartment().getDeptCode()))) {
-					if (rf.getFeatureType() == null || rf.getFeatureType().isShowInEventManagement()) {
-						String type = (rf.getFeatureType() == null ? "feature" : rf.getFeatureType().getReference());
+		for (Entry location: entries(catalogue, request.getOptions(), null, -1, null, null)) {
+			for (int f = location.getFeatures().nextSetBit(0); f >= 0; f = location.getFeatures().nextSetBit(f + 1)) {
+				Feature rf = catalogue.getFeatures().get(f);
+				if (rf.isGlobal() || (departments != null && departments.contains(rf.getDeptCode()))) {
+					if (rf.isShowInEventManagement()) {
+						String type = (rf.getTypeReference() == null ? "feature" : rf.getTypeReference());
 						Map<Long, Entity> features = featuresByType.get(type);
 						if (features == null) {
 							features = new HashMap<Long, Entity>();
 							featuresByType.put(type, features);
 						}
-						Entity feature = features.get(rf.getUniqueId());
+						Entity feature = features.get(rf.getId());
 						if (feature == null) {
-							feature = new Entity(rf.getUniqueId(), rf.getAbbv(), rf.getLabel());
+							feature = new Entity(rf.getId(), rf.getAbbv(), rf.getLabel());
 							features.put(feature.getUniqueId(), feature);
 						}
 						feature.incCount();
@@ -126,12 +110,13 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		}
 		
 		Map<Long, Entity> groups = new HashMap<Long, Entity>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "group")) {
-			for (RoomGroup rg: location.getRoomGroups()) {
-				if (rg.isGlobal() || (departments != null && departments.contains(rg.getDepartment().getDeptCode()))) {
-					Entity group = groups.get(rg.getUniqueId());
+		for (Entry location: entries(catalogue, request.getOptions(), null, -1, null, "group")) {
+			for (int g = location.getGroups().nextSetBit(0); g >= 0; g = location.getGroups().nextSetBit(g + 1)) {
+				Group rg = catalogue.getGroups().get(g);
+				if (rg.isGlobal() || (departments != null && departments.contains(rg.getDeptCode()))) {
+					Entity group = groups.get(rg.getId());
 					if (group == null) {
-						group = new Entity(rg.getUniqueId(), rg.getAbbv(), rg.getName());
+						group = new Entity(rg.getId(), rg.getAbbv(), rg.getName());
 						groups.put(group.getUniqueId(), group);
 					}
 					group.incCount();
@@ -141,12 +126,11 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		response.add("group", new TreeSet<Entity>(groups.values()));
 		
 		Map<Long, Entity> buildings = new HashMap<Long, Entity>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "building")) {
-			if (location instanceof Room) {
-				Room room = (Room)location;
-				Entity building = buildings.get(room.getBuilding().getUniqueId());
+		for (Entry location: entries(catalogue, request.getOptions(), null, -1, null, "building")) {
+			if (location.isRoom()) {
+				Entity building = buildings.get(location.getBuildingId());
 				if (building == null) {
-					building = new Entity(room.getBuilding().getUniqueId(), room.getBuilding().getAbbreviation(), room.getBuilding().getAbbrName());
+					building = new Entity(location.getBuildingId(), location.getBuildingAbbreviation(), location.getBuildingAbbrName());
 					buildings.put(building.getUniqueId(), building);
 				}
 				building.incCount();
@@ -160,33 +144,35 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		Map<Long, Entity> depts = new HashMap<Long, Entity>();
 		boolean eventRooms = (request.hasOptions("flag") && (request.getOptions("flag").contains("event") || request.getOptions("flag").contains("Event")));
 		boolean allRooms = (request.hasOptions("flag") && (request.getOptions("flag").contains("all") || request.getOptions("flag").contains("All")));
-		for (Location location: locations(request.getSessionId(), request.getOptions(), null, -1, null, "department")) {
-			Department evtDept = (location.getEventDepartment() != null && location.getEventDepartment().isAllowEvents() ? location.getEventDepartment() : null);
+		for (Entry location: entries(catalogue, request.getOptions(), null, -1, null, "department")) {
+			Dept eventDept = catalogue.getDepartment(location.getEventDepartment());
+			Dept evtDept = (eventDept != null && eventDept.isAllowEvents() ? eventDept : null);
 			boolean isManaged = false;
 			if (eventRooms) {
-				Entity department = depts.get(location.getEventDepartment().getUniqueId());
+				Entity department = depts.get(eventDept.getId());
 				if (department == null) {
-					department = new Entity(location.getEventDepartment().getUniqueId(), location.getEventDepartment().getDeptCode(), location.getEventDepartment().getDeptCode() + " - " + location.getEventDepartment().getName());
+					department = new Entity(eventDept.getId(), eventDept.getDeptCode(), eventDept.getDeptCode() + " - " + eventDept.getName());
 					depts.put(department.getUniqueId(), department);
 				}
 				department.incCount();
-				if (userDepts != null && userDepts.contains(location.getEventDepartment().getUniqueId())) isManaged = true;
+				if (userDepts != null && userDepts.contains(eventDept.getId())) isManaged = true;
 			} else {
-				for (RoomDept rd: location.getRoomDepts()) {
-					if (evtDept != null && rd.getDepartment().equals(evtDept)) evtDept = null;
-					Entity department = depts.get(rd.getDepartment().getUniqueId());
+				for (int d = location.getDepartments().nextSetBit(0); d >= 0; d = location.getDepartments().nextSetBit(d + 1)) {
+					Dept rd = catalogue.getDepartment(d);
+					if (evtDept != null && rd.equals(evtDept)) evtDept = null;
+					Entity department = depts.get(rd.getId());
 					if (department == null) {
-						department = new Entity(rd.getDepartment().getUniqueId(), rd.getDepartment().getDeptCode(),
-								rd.getDepartment().getDeptCode() + " - " + rd.getDepartment().getName() + (rd.getDepartment().isExternalManager() ? " (" + rd.getDepartment().getExternalMgrLabel() + ")" : ""));
+						department = new Entity(rd.getId(), rd.getDeptCode(),
+								rd.getDeptCode() + " - " + rd.getName() + (rd.isExternalManager() ? " (" + rd.getExternalMgrLabel() + ")" : ""));
 						depts.put(department.getUniqueId(), department);
 					}
 					department.incCount();
-					if (userDepts != null && userDepts.contains(rd.getDepartment().getUniqueId())) isManaged = true;
+					if (userDepts != null && userDepts.contains(rd.getId())) isManaged = true;
 				}
 				if (evtDept != null && allRooms) {
-					Entity department = depts.get(evtDept.getUniqueId());
+					Entity department = depts.get(evtDept.getId());
 					if (department == null) {
-						department = new Entity(evtDept.getUniqueId(), evtDept.getDeptCode(),
+						department = new Entity(evtDept.getId(), evtDept.getDeptCode(),
 								evtDept.getDeptCode() + " - " + evtDept.getName() + (evtDept.isExternalManager() ? " (" + evtDept.getExternalMgrLabel() + ")" : ""));
 						depts.put(department.getUniqueId(), department);
 					}
@@ -209,21 +195,36 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		response.add("department", new TreeSet<Entity>(depts.values()));
 	}
 	
+	private Set<Long> getUserDepartments(Long sessionId, String user) {
+		return new HashSet<Long>(
+				TimetableManagerDAO.getInstance().getSession().createQuery(
+						"select d.uniqueId from TimetableManager m inner join m.departments d where " +
+						"m.externalUniqueId = :user and d.session.uniqueId = :sessionId")
+						.setLong("sessionId", sessionId)
+						.setString("user", user)
+						.setCacheable(true).list()
+				);
+	}
+	
 	private void fixRoomFeatureTypes(RoomFilterRpcRequest request) {
-		for (RoomFeatureType type: RoomFeatureTypeDAO.getInstance().findAll())
-			if (type.isShowInEventManagement() && request.hasOptions(type.getReference().replace(' ', '_')))
-				for (String option: request.getOptions(type.getReference().replace(' ', '_')))
+		for (String type: RoomCatalogue.getInstance(request.getSessionId()).getFeatureTypes())
+			if (request.hasOptions(type.replace(' ', '_')))
+				for (String option: request.getOptions(type.replace(' ', '_')))
 					request.addOption("feature", option);
 	}
 	
 	public List<Location> locations(Long sessionId, RoomFilterRpcRequest filter, int limit, Map<Long, Double> room2distance) {
 		fixRoomFeatureTypes(filter);
-		return locations(sessionId, filter.getOptions(), new Query(filter.getText()), 1000, room2distance, null);
+		org.hibernate.Session hibSession = LocationDAO.getInstance().getSession();
+		List<Location> locations = new ArrayList<Location>();
+		for (Entry entry: entries(RoomCatalogue.getInstance(sessionId), filter.getOptions(), new Query(filter.getText()), 1000, room2distance, null)) {
+			Location location = LocationDAO.getInstance().get(entry.getId(), hibSession);
+			if (location != null) locations.add(location);
+		}
+		return locations;
 	}
 	
-	private List<Location> locations(Long sessionId, Map<String, Set<String>> options, Query query, int limit, Map<Long, Double> room2distance, String ignoreCommand) {
-		org.hibernate.Session hibSession = RoomDAO.getInstance().getSession();
-
+	private List<Entry> entries(RoomCatalogue catalogue, Map<String, Set<String>> options, Query query, int limit, Map<Long, Double> room2distance, String ignoreCommand) {
 		Set<String> type = (options == null || "type".equals(ignoreCommand) ? null : options.get("type"));
 		Set<String> feature = (options == null || "feature".equals(ignoreCommand) ? null : options.get("feature"));
 		Set<String> group = (options == null || "group".equals(ignoreCommand) ? null : options.get("group"));
@@ -266,66 +267,69 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 			}
 		}
 		
-		List<Location> locations = null;
-		if (department != null && department.contains("Managed") && user != null && !user.isEmpty()) {
-			locations = (List<Location>)hibSession.createQuery("select distinct l from Location l" +
-					(eventRooms ? " inner join l.eventDepartment.timetableManagers m" : " inner join l.roomDepts rd inner join rd.department.timetableManagers m") +
-					(group != null && !group.isEmpty() ? " left join fetch l.roomGroups g" : "") +
-					(feature != null && !feature.isEmpty() ? " left join fetch l.features f" : "") +
-					(department.contains("Final") || department.contains("Midterm") ?" left join fetch l.examTypes x" : "") +
-					(eventRooms ? " ,RoomTypeOption o" : "") +
-					" where l.session.uniqueId = :sessionId and m.externalUniqueId = :user" +
-					(eventRooms ? " and l.eventDepartment.allowEvents = true and ((l.eventStatus is null and o.status != 0 and o.roomType = l.roomType and o.department = l.eventDepartment) or l.eventStatus != 0)" : ""))
-					.setLong("sessionId", sessionId)
-					.setString("user", user.iterator().next())
-					.setCacheable(true).list();
-		} else {
-			locations = (List<Location>)hibSession.createQuery("select distinct l from Location l" +
-					(department != null && !department.isEmpty() ? 
-							(department.contains("Final") || department.contains("Midterm") ?" left join fetch l.examTypes x" : " left join fetch l.roomDepts rd") : "") +
-					(group != null && !group.isEmpty() ? " left join fetch l.roomGroups g" : "") +
-					(feature != null && !feature.isEmpty() ? " left join fetch l.features f" : "") +
-					(eventRooms ? " ,RoomTypeOption o" : "") +
-					" where l.session.uniqueId = :sessionId" +
-					(eventRooms ? " and l.eventDepartment.allowEvents = true and ((l.eventStatus is null and o.status != 0 and o.roomType = l.roomType and o.department = l.eventDepartment) or l.eventStatus != 0)" : ""))
-					.setLong("sessionId", sessionId)
-					.setCacheable(true).list();
+		// required features: for each feature label, the matching catalogue features
+		List<BitSet> featureMasks = new ArrayList<BitSet>();
+		if (feature != null)
+			for (String f: feature) {
+				BitSet mask = new BitSet();
+				for (int i = 0; i < catalogue.getFeatures().size(); i++) {
+					Feature rf = catalogue.getFeatures().get(i);
+					if (!f.equals(rf.getLabel())) continue;
+					if (rf.isGlobal() || (groupFeaturedept != null && groupFeaturedept.contains(rf.getDeptCode())))
+						mask.set(i);
+				}
+				featureMasks.add(mask);
+			}
+		BitSet groupMask = null;
+		if (group != null && !group.isEmpty()) {
+			groupMask = new BitSet();
+			for (int i = 0; i < catalogue.getGroups().size(); i++) {
+				Group rg = catalogue.getGroups().get(i);
+				if (!group.contains(rg.getName())) continue;
+				if (rg.isGlobal() || (groupFeaturedept != null && groupFeaturedept.contains(rg.getDeptCode())))
+					groupMask.set(i);
+			}
 		}
+		BitSet deptMask = new BitSet();
+		if (department != null)
+			for (int i = 0; i < catalogue.getDepartments().size(); i++)
+				if (department.contains(catalogue.getDepartments().get(i).getDeptCode())) deptMask.set(i);
 		
-		Set<String> featureTypes = new HashSet<String>();
-		for (RoomFeatureType ft: RoomFeatureTypeDAO.getInstance().findAll())
-			if (ft.isShowInEventManagement()) featureTypes.add(ft.getReference().toLowerCase().replace(' ', '_'));
+		Set<Long> userDepts = null;
+		if (department != null && department.contains("Managed") && user != null && !user.isEmpty())
+			userDepts = getUserDepartments(catalogue.getSessionId(), user.iterator().next());
 		
-		List<Location> ret = new ArrayList<Location>();
-		locations: for (Location location: locations) {
-			if (ids != null && !ids.isEmpty() && !ids.contains(location.getUniqueId().toString())) continue;
-			if (size != null && !size.isEmpty() && (location.getCapacity() < min || location.getCapacity() > max)) continue;
-			if (query != null && !query.match(new LocationMatcher(location, featureTypes))) continue;
-			if (type != null && !type.isEmpty() && !type.contains(location.getRoomType().getLabel())) continue;
-			if (building != null && !building.isEmpty() && (!(location instanceof Room) || !building.contains(((Room)location).getBuilding().getAbbreviation()))) continue;
-			if (feature != null && !feature.isEmpty()) {
-				for (String f: feature) {
+		List<Entry> locations = new ArrayList<Entry>();
+		for (Entry location: catalogue.getEntries()) {
+			if (eventRooms && !location.isEventRoom()) continue;
+			if (userDepts != null) {
+				if (eventRooms) {
+					Dept eventDept = catalogue.getDepartment(location.getEventDepartment());
+					if (eventDept == null || !userDepts.contains(eventDept.getId())) continue;
+				} else {
 					boolean found = false;
-					for (RoomFeature rf: location.getFeatures())
-						if (rf instanceof GlobalRoomFeature) {
-							if (f.equals(rf.getLabel())) { found = true; break; }
-						} else if (rf instanceof DepartmentRoomFeature && groupFeaturedept != null && !groupFeaturedept.isEmpty()) {
-							if (f.equals(rf.getLabel()) && groupFeaturedept.contains(((DepartmentRoomFeature)rf).getDepartment().getDeptCode())) { found = true; break; }
-						}
-					if (!found) continue locations;
+					for (int d = location.getDepartments().nextSetBit(0); d >= 0; d = location.getDepartments().nextSetBit(d + 1))
+						if (userDepts.contains(catalogue.getDepartment(d).getId())) { found = true; break; }
+					if (!found) continue;
 				}
 			}
-			if (group != null && !group.isEmpty()) {
-				boolean found = false;
-				for (RoomGroup rg: location.getRoomGroups()) {
-					if (rg.isGlobal()) {
-						if (group.contains(rg.getName())) { found = true; break; }
-					} else if (groupFeaturedept != null && !groupFeaturedept.isEmpty()) {
-						if (group.contains(rg.getName()) && groupFeaturedept.contains(rg.getDepartment().getDeptCode())) { found = true; break; }	
-					}
-				}
-				if (!found) continue;
-			}
+			locations.add(location);
+		}
+		
+		Set<String> featureTypes = new HashSet<String>();
+		for (String ft: catalogue.getFeatureTypes())
+			featureTypes.add(ft.toLowerCase().replace(' ', '_'));
+		
+		List<Entry> ret = new ArrayList<Entry>();
+		Set<Entry> other = new HashSet<Entry>();
+		locations: for (Entry location: locations) {
+			if (ids != null && !ids.isEmpty() && !ids.contains(location.getId().toString())) continue;
+			if (size != null && !size.isEmpty() && (location.getCapacity() < min || location.getCapacity() > max)) continue;
+			if (query != null && !query.match(new LocationMatcher(catalogue, location, featureTypes))) continue;
+			if (type != null && !type.isEmpty() && !type.contains(location.getTypeLabel())) continue;
+			for (BitSet mask: featureMasks)
+				if (!location.getFeatures().intersects(mask)) continue locations;
+			if (groupMask != null && !location.getGroups().intersects(groupMask)) continue;
 			if (department == null || department.isEmpty()) {
 			} else if (department.contains("Final")) {
 				if (!location.hasFinalExamsEnabled()) continue;
@@ -333,14 +337,17 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 				if (!location.hasMidtermExamsEnabled()) continue;
 			} else if (!department.contains("Managed")) {
 				boolean found = false;
-				if ((eventRooms || allRooms) && location.getEventDepartment() != null && location.getEventDepartment().isAllowEvents() && department.contains(location.getEventDepartment().getDeptCode()))
+				if ((eventRooms || allRooms) && location.getEventDepartment() >= 0 && catalogue.getDepartment(location.getEventDepartment()).isAllowEvents() && deptMask.get(location.getEventDepartment()))
+					found = true;
+				if (!found && !eventRooms && location.getDepartments().intersects(deptMask))
 					found = true;
-				if (!found && !eventRooms) {
-					for (RoomDept rd: location.getRoomDepts())
-						if (department.contains(rd.getDepartment().getDeptCode())) { found = true; break; }
-				}
 				if (!found) continue;
 			}
+			if (building != null && !building.isEmpty() && (!location.isRoom() || !building.contains(location.getBuildingAbbreviation()))) {
+				// all but the building filter match, candidate for the nearby locations
+				if (nearby && location.hasCoordinates()) other.add(location);
+				continue;
+			}
 			ret.add(location);
 		}
 		
@@ -348,85 +355,40 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		if (nearby && building != null && !building.isEmpty() && (limit <= 0 || ret.size() < limit)) {
 			double allowedDistance = ApplicationProperty.EventNearByDistance.doubleValue();
 			Set<Coordinates> coord = new HashSet<Coordinates>();
-			for (Location location: ret)
+			for (Entry location: ret)
 				coord.add(new Coordinates(location));
-
-			String buildingOnlyFilter = "";
-			for (String b: building)
-				buildingOnlyFilter += (buildingOnlyFilter.isEmpty() ? "" : " or ") + "b.abbreviation = '" + b + "'";
 			
 			if (coord.isEmpty()) {
-				for (Building b: (List<Building>)hibSession.createQuery("select b from Building b where" +
-						" b.session.uniqueId = :sessionId and (" + buildingOnlyFilter + ")").setLong("sessionId", sessionId).list()) {
-					coord.add(new Coordinates(-b.getUniqueId(), b.getCoordinateX(), b.getCoordinateY()));
+				for (String b: building) {
+					Entry e = catalogue.getBuilding(b);
+					if (e != null) coord.add(new Coordinates(e));
 				}
 			}
 			
-			if (!coord.isEmpty()) {
-				locations: for (Location location: locations) {
-					if (ids != null && !ids.isEmpty() && !ids.contains(location.getUniqueId().toString())) continue;
-					if (building != null && !building.isEmpty() && (location instanceof Room) && building.contains(((Room)location).getBuilding().getAbbreviation())) continue;
-					if (size != null && !size.isEmpty() && (location.getCapacity() < min || location.getCapacity() > max)) continue;
-					if (query != null && !query.match(new LocationMatcher(location, featureTypes))) continue;
-					if (type != null && !type.isEmpty() && !type.contains(location.getRoomType().getLabel())) continue;
-					if (feature != null && !feature.isEmpty()) {
-						for (String f: feature) {
-							boolean found = false;
-							for (RoomFeature rf: location.getFeatures())
-								if (rf instanceof GlobalRoomFeature) {
-									if (f.equals(rf.getLabel())) { found = true; break; }
-								} else if (rf instanceof DepartmentRoomFeature && groupFeaturedept != null && !groupFeaturedept.isEmpty()) {
-									if (groupFeaturedept.contains(((DepartmentRoomFeature)rf).getDepartment().getDeptCode()) && f.equals(rf.getLabel())) { found = true; break; }
-								}
-							if (!found) continue locations;
-						}
-					}
-					if (group != null && !group.isEmpty()) {
-						boolean found = false;
-						for (RoomGroup rg: location.getRoomGroups()) {
-							if (rg.isGlobal()) {
-								if (group.contains(rg.getName())) { found = true; break; }
-							} else if (groupFeaturedept != null && !groupFeaturedept.isEmpty() && groupFeaturedept.contains(rg.getDepartment().getDeptCode())) {
-								if (group.contains(rg.getName())) { found = true; break; }	
-							}
-						}
-						if (!found) continue;
-					}
-					if (department == null || department.isEmpty()) {
-					} else if (department.contains("Final")) {
-						if (!location.hasFinalExamsEnabled()) continue;
-					} else if (department.contains("Midterm")) {
-						if (!location.hasMidtermExamsEnabled()) continue;
-					} else if (!department.contains("Managed")) {
-						boolean found = false;
-						if ((eventRooms || allRooms) && location.getEventDepartment() != null && location.getEventDepartment().isAllowEvents() && department.contains(location.getEventDepartment().getDeptCode()))
-							found = true;
-						if (!found && !eventRooms) {
-							for (RoomDept rd: location.getRoomDepts())
-								if (department.contains(rd.getDepartment().getDeptCode())) { found = true; break; }
-						}
-						if (!found) continue;
-					}
-					Coordinates c = new Coordinates(location);
-					Double distance = null;
-					for (Coordinates x: coord) {
-						double d = c.distance(x);
-						if (distance == null || distance > d) distance = d;
-					}
-					if (distance != null && distance <= allowedDistance) {
-						ret.add(location);
-						if (distances != null) distances.put(location.getUniqueId(), distance);
-					}
+			Map<Entry, Double> near = new HashMap<Entry, Double>();
+			for (Coordinates x: coord) {
+				if (!x.hasCoordinates()) continue;
+				for (Entry location: catalogue.getNearbyCandidates(x.x(), x.y(), x.id(), allowedDistance)) {
+					if (!other.contains(location)) continue;
+					double d = catalogue.getDistance(location, x.getEntry());
+					Double distance = near.get(location);
+					if (distance == null || distance > d) near.put(location, d);
+				}
+			}
+			for (Map.Entry<Entry, Double> e: near.entrySet()) {
+				if (e.getValue() <= allowedDistance) {
+					ret.add(e.getKey());
+					distances.put(e.getKey().getId(), e.getValue());
 				}
 			}
 		}
 		
 		final boolean sortBySize = (size != null && !size.isEmpty());
-		Collections.sort(ret, new Comparator<Location>() {
+		Collections.sort(ret, new Comparator<Entry>() {
 			@Override
-			public int compare(Location l1, Location l2) {
-				Double d1 = distances.get(l1.getUniqueId());
-				Double d2 = distances.get(l2.getUniqueId());
+			public int compare(Entry l1, Entry l2) {
+				Double d1 = distances.get(l1.getId());
+				Double d2 = distances.get(l2.getId());
 				if (d1 == null && d2 != null) return -1;
 				if (d1 != null && d2 == null) return 1;
 				if (d1 != null) {
@@ -456,9 +418,9 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		fixRoomFeatureTypes(request);
 
 		Map<Long, Double> distances = new HashMap<Long, Double>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), new Query(suggestionQuery(request.getText())), 20, distances, null)) {
+		for (Entry location: entries(RoomCatalogue.getInstance(request.getSessionId()), request.getOptions(), new Query(suggestionQuery(request.getText())), 20, distances, null)) {
 			String hint = location.getRoomTypeLabel() + ", " + location.getCapacity() + " seats";
-			Double dist = distances.get(location.getUniqueId());
+			Double dist = distances.get(location.getId());
 			if (dist != null) hint += ", " + Math.round(dist) + " m";
 			response.addSuggestion(location.getLabel(), location.getLabel(), "(" + hint + ")");
 		}
@@ -469,17 +431,17 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		fixRoomFeatureTypes(request);
 
 		Map<Long, Double> distances = new HashMap<Long, Double>();
-		for (Location location: locations(request.getSessionId(), request.getOptions(), new Query(request.getText()), -1, distances, null)) {
-			Double dist = distances.get(location.getUniqueId());
+		for (Entry location: entries(RoomCatalogue.getInstance(request.getSessionId()), request.getOptions(), new Query(request.getText()), -1, distances, null)) {
+			Double dist = distances.get(location.getId());
 			response.addResult(new Entity(
-					location.getUniqueId(),
+					location.getId(),
 					location.getDisplayName(),
 					location.getLabel(),
 					"permId", location.getPermanentId().toString(),
-					"type", location.getRoomType().getLabel(),
+					"type", location.getTypeLabel(),
 					"capacity", location.getCapacity().toString(),
 					"distance", String.valueOf(dist == null ? 0l : Math.round(dist)),
-					"overbook", context.hasPermission(location, Right.EventLocationOverbook) ? "1" : "0",
+					"overbook", context.hasPermission(location.getId(), "Location", Right.EventLocationOverbook) ? "1" : "0",
 					"breakTime", String.valueOf(location.getEffectiveBreakTime()),
 					"message", location.getEventMessage(),
 					"ignoreRoomCheck", location.isIgnoreRoomCheck() ? "1" : "0"
@@ -487,27 +449,15 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		}
 	}
 	
-	public DistanceMetric getDistanceMetric() {
-		if (iMetrics == null) {
-			DataProperties config = new DataProperties();
-			config.setProperty("Distances.Ellipsoid", ApplicationProperty.DistanceEllipsoid.value());
-			config.setProperty("Distances.Speed", ApplicationProperty.EventDistanceSpeed.value());
-			iMetrics = new DistanceMetric(new DataProperties(config));
-			TravelTime.populateTravelTimes(iMetrics);
-		}
-		return iMetrics;
-	}
-	
 	public class Coordinates {
-		Long iId;
-		Double iX, iY;
-		public Coordinates(Long id, Double x, Double y) { iId = id; iX = x; iY = y; }
-		public Coordinates(Location location) { iId = location.getUniqueId(); iX = location.getCoordinateX(); iY = location.getCoordinateY(); }
+		Entry iEntry;
+		public Coordinates(Entry entry) { iEntry = entry; }
 		
-		public Long id() { return iId; }
-		public Double x() { return iX; }
-		public Double y() { return iY; }
-		public boolean hasCoordinates() { return iX != null && iY != null; }
+		public Entry getEntry() { return iEntry; }
+		public Long id() { return iEntry.getId(); }
+		public Double x() { return iEntry.getX(); }
+		public Double y() { return iEntry.getY(); }
+		public boolean hasCoordinates() { return iEntry.hasCoordinates(); }
 		
 		public boolean equals(Object o) {
 			if (o == null || !(o instanceof Coordinates)) return false;
@@ -517,16 +467,8 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 			return Math.abs(c.x() - x()) < EPSILON && Math.abs(c.y() - y()) < EPSILON;
 		}
 		
-		public double distance(Coordinates c) {
-			return (hasCoordinates() && c.hasCoordinates() ? getDistanceMetric().getDistanceInMeters(id(), x(), y(), c.id(), c.x(), c.y()) : Double.POSITIVE_INFINITY); 
-		}
-		
-		public double distance(Location location) {
-			return distance(new Coordinates(location));
-		}
-		
 		public String toString() {
-			return (hasCoordinates() ? sCDF.format(iX) + "," + sCDF.format(iY) : "");
+			return (hasCoordinates() ? sCDF.format(x()) + "," + sCDF.format(y()) : "");
 		}
 		
 		public int hashCode() {
@@ -535,40 +477,47 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 	}
 	
 	public class LocationMatcher implements TermMatcher {
-		private Location iLocation;
+		private RoomCatalogue iCatalogue;
+		private Entry iLocation;
 		private Set<String> iFeatureTypes = null;
 		
-		LocationMatcher(Location location, Set<String> featureTypes) {
+		LocationMatcher(RoomCatalogue catalogue, Entry location, Set<String> featureTypes) {
+			iCatalogue = catalogue;
 			iLocation = location;
 			iFeatureTypes = featureTypes;
 		}
 		
-		public Location getLocation() { return iLocation; }
+		public Entry getLocation() { return iLocation; }
 
 		@Override
 		public boolean match(String attr, String term) {
 			if (attr == null || attr.isEmpty()) {
 				return term.isEmpty() || has(getLocation().getLabel(), term) || has(getLocation().getDisplayName(), term);
 			} else if ("feature".equals(attr) || (iFeatureTypes != null && iFeatureTypes.contains(attr.toLowerCase()))) {
-				for (RoomFeature rf: getLocation().getFeatures())
-					if (rf instanceof GlobalRoomFeature && (eq(rf.getAbbv(), term) || has(rf.getLabel(), term))) return true;
+				BitSet features = getLocation().getFeatures();
+				for (int f = features.nextSetBit(0); f >= 0; f = features.nextSetBit(f + 1)) {
+					Feature rf = iCatalogue.getFeatures().get(f);
+					if (rf.isGlobal() && (eq(rf.getAbbv(), term) || has(rf.getLabel(), term))) return true;
+				}
 				return false;
 			} else if ("group".equals(attr)) {
-				for (RoomGroup rg: getLocation().getRoomGroups())
+				BitSet groups = getLocation().getGroups();
+				for (int g = groups.nextSetBit(0); g >= 0; g = groups.nextSetBit(g + 1)) {
+					Group rg = iCatalogue.getGroups().get(g);
 					if (rg.isGlobal() && (eq(rg.getAbbv(), term) || has(rg.getName(), term))) return true;
+				}
 				return false;
 			} else if ("type".equals(attr)) {
-				return eq(getLocation().getRoomType().getReference(), term) || has(getLocation().getRoomType().getLabel(), term);
+				return eq(getLocation().getTypeReference(), term) || has(getLocation().getTypeLabel(), term);
 			} else if ("room".equals(attr)) {
 				return has(getLocation().getLabel(), term) || has(getLocation().getDisplayName(), term);
 			} else if ("starts".equals(attr)) {
-				return getLocation().getLabel().toLowerCase().startsWith(term.toLowerCase()) || (getLocation() instanceof Room && ((Room)getLocation()).getRoomNumber().toLowerCase().startsWith(term.toLowerCase()));
+				return getLocation().getLabel().toLowerCase().startsWith(term.toLowerCase()) || (getLocation().isRoom() && getLocation().getRoomNumber().toLowerCase().startsWith(term.toLowerCase()));
 			} else if ("contains".equals(attr)) {
-				return getLocation().getLabel().toLowerCase().contains(term.toLowerCase()) || (getLocation() instanceof Room && ((Room)getLocation()).getRoomNumber().toLowerCase().contains(term.toLowerCase()));
+				return getLocation().getLabel().toLowerCase().contains(term.toLowerCase()) || (getLocation().isRoom() && getLocation().getRoomNumber().toLowerCase().contains(term.toLowerCase()));
 			} else if ("building".equals(attr) || "bldg".equals(attr)) {
-				if (getLocation() instanceof Room) {
-					Building building = ((Room)getLocation()).getBuilding();
-					return eq(building.getAbbreviation(), term) || has(building.getName(), term);
+				if (getLocation().isRoom()) {
+					return eq(getLocation().getBuildingAbbreviation(), term) || has(getLocation().getBuildingName(), term);
 				}
 				return false;
 			} else if ("size".equals(attr)) {
@@ -599,27 +548,31 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 				}
 				return min <= getLocation().getCapacity() && getLocation().getCapacity() <= max;
 			} else if ("flag".equals(attr) && "event".equalsIgnoreCase(term)) {
-				return getLocation().getEventDepartment() != null && getLocation().getEventDepartment().isAllowEvents() && getLocation().getEffectiveEventStatus() != RoomTypeOption.Status.NoEventManagement;
+				return getLocation().isEventRoom();
 			} else if ("department".equals(attr) || "dept".equals(attr) || "event".equals(attr) || "control".equals(attr)) {
 				if ("midterm".equalsIgnoreCase(term))
 					return getLocation().hasMidtermExamsEnabled();
 				else if ("final".equalsIgnoreCase(term))
 					return getLocation().hasFinalExamsEnabled();
 				else if ("event".equalsIgnoreCase(term))
-					return getLocation().getEventDepartment() != null && getLocation().getEventDepartment().isAllowEvents() && getLocation().getEffectiveEventStatus() != RoomTypeOption.Status.NoEventManagement;
+					return getLocation().isEventRoom();
 				else if ("managed".equals(term))
 					return false; // not supported
 				else {
-					if (!"control".equals(attr))
-						if (getLocation().getEventDepartment() != null && (eq(getLocation().getEventDepartment().getDeptCode(), term) || eq(getLocation().getEventDepartment().getAbbreviation(), term) || has(getLocation().getEventDepartment().getName(), term)))
+					if (!"control".equals(attr)) {
+						Dept eventDept = iCatalogue.getDepartment(getLocation().getEventDepartment());
+						if (eventDept != null && (eq(eventDept.getDeptCode(), term) || eq(eventDept.getAbbreviation(), term) || has(eventDept.getName(), term)))
 							return true;
-					if (!"event".equals(attr))
-						for (RoomDept rd: getLocation().getRoomDepts()) {
-							if ("control".equals(attr) && !rd.isControl()) continue;
-							if (eq(rd.getDepartment().getDeptCode(), term) || eq(rd.getDepartment().getAbbreviation(), term) || has(rd.getDepartment().getName(), term)
-									|| (rd.getDepartment().isExternalManager() && (eq(rd.getDepartment().getExternalMgrAbbv(), term) || has(rd.getDepartment().getExternalMgrLabel(), term))))
+					}
+					if (!"event".equals(attr)) {
+						BitSet departments = ("control".equals(attr) ? getLocation().getControllingDepartments() : getLocation().getDepartments());
+						for (int d = departments.nextSetBit(0); d >= 0; d = departments.nextSetBit(d + 1)) {
+							Dept rd = iCatalogue.getDepartment(d);
+							if (eq(rd.getDeptCode(), term) || eq(rd.getAbbreviation(), term) || has(rd.getName(), term)
+									|| (rd.isExternalManager() && (eq(rd.getExternalMgrAbbv(), term) || has(rd.getExternalMgrLabel(), term))))
 								return true;
 						}
+					}
 					return false;
 				}
 			} else {
@@ -0,0 +1,378 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Meeting;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.model.Solution;
+import org.unitime.timetable.util.CalendarUtils;
+
+/**
+ * In-memory index of room occupancy of an academic session. For each day (day of the year, relative to the session start year)
+ * and location permanent id, only the time slot ranges of the approved or pending meetings (together with their meeting and event ids)
+ * are kept, sorted by the start slot, so that a room availability check is a simple interval query.<br>
+ * A day is loaded lazily (with a single query for all the rooms of the session) and it is reloaded after
+ * {@link ApplicationProperty#EventRoomOccupancyIndexTTL} seconds, to pick up changes that were not made through the event backends.
+ * Changes made by {@link SaveEventBackend} and {@link ApproveEventBackend} are applied incrementally, using {@link #update(Session, Collection, Collection)}.
+ * Writers that change many class meetings at once (e.g., {@link Solution#commitSolution(List, org.hibernate.Session, String)}) drop the index of the session
+ * instead (see {@link #invalidate(Long)}). The meetings are always queried outside of the index lock.
+ * 
+ * @author Tomas Muller
+ */
+public class RoomOccupancyIndex {
+	private static Map<Long, RoomOccupancyIndex> sIndexes = new HashMap<Long, RoomOccupancyIndex>();
+	
+	private Long iSessionId;
+	private int iSessionStartYear;
+	private Map<Integer, Day> iDays = new HashMap<Integer, Day>();
+	private Map<Long, Slots> iMeetings = new HashMap<Long, Slots>();
+	private int iLoading = 0;
+	private long iLastChangeId = 0;
+	private List<Change> iChanges = new ArrayList<Change>();
+	
+	private RoomOccupancyIndex(Long sessionId, int sessionStartYear) {
+		iSessionId = sessionId;
+		iSessionStartYear = sessionStartYear;
+	}
+	
+	/** Room occupancy index of the given academic session */
+	public static synchronized RoomOccupancyIndex getInstance(Session session) {
+		RoomOccupancyIndex index = sIndexes.get(session.getUniqueId());
+		if (index == null) {
+			index = new RoomOccupancyIndex(session.getUniqueId(), session.getSessionStartYear());
+			sIndexes.put(session.getUniqueId(), index);
+		}
+		return index;
+	}
+	
+	/** Drop the room occupancy index of the given academic session (all the days will be reloaded) */
+	public static synchronized void invalidate(Long sessionId) {
+		sIndexes.remove(sessionId);
+	}
+	
+	/** Drop all room occupancy indexes */
+	public static synchronized void invalidateAll() {
+		sIndexes.clear();
+	}
+	
+	/**
+	 * Update the room occupancy index of the given academic session (if it exists) after the given meetings have been committed
+	 * @param session academic session
+	 * @param meetings meetings that have been created or changed (meetings that are no longer approved or pending are removed from the index)
+	 * @param removed meetings that have been deleted (can be null)
+	 */
+	public static void update(Session session, Collection<Meeting> meetings, Collection<Meeting> removed) {
+		RoomOccupancyIndex index = null;
+		synchronized (RoomOccupancyIndex.class) {
+			index = sIndexes.get(session.getUniqueId());
+		}
+		if (index == null) return;
+		if (removed != null)
+			for (Meeting meeting: removed)
+				index.remove(meeting.getUniqueId());
+		if (meetings != null)
+			for (Meeting meeting: meetings)
+				index.update(meeting);
+	}
+	
+	protected static int timeToLive() {
+		return ApplicationProperty.EventRoomOccupancyIndexTTL.intValue();
+	}
+	
+	/**
+	 * Make sure that the given days are loaded (and not expired). The meetings are queried without holding the index lock, the loaded days
+	 * are then swapped in under the lock and the changes made to the index in the meantime (see {@link #update(Meeting)} and {@link #remove(Long)})
+	 * are applied on top of them.
+	 */
+	private void ensureLoaded(org.hibernate.Session hibSession, Collection<Integer> days) {
+		long now = System.currentTimeMillis();
+		long ttl = 1000l * timeToLive();
+		List<Integer> load = new ArrayList<Integer>();
+		long changeId;
+		synchronized (this) {
+			for (Integer dayOfYear: new TreeSet<Integer>(days)) {
+				Day day = iDays.get(dayOfYear);
+				if (day == null || now - day.getLoaded() >= ttl)
+					load.add(dayOfYear);
+			}
+			if (load.isEmpty()) return;
+			iLoading ++;
+			changeId = iLastChangeId;
+		}
+		try {
+			Map<Integer, Day> loaded = new HashMap<Integer, Day>();
+			for (int idx = 0; idx < load.size(); idx += 1000) {
+				List<Integer> chunk = load.subList(idx, Math.min(idx + 1000, load.size()));
+				List<Date> dates = new ArrayList<Date>(chunk.size());
+				for (Integer dayOfYear: chunk) {
+					loaded.put(dayOfYear, new Day(now));
+					dates.add(CalendarUtils.dateOfYear2date(iSessionStartYear, dayOfYear));
+				}
+				for (Object[] o: (List<Object[]>)hibSession.createQuery(
+						"select m.uniqueId, m.event.uniqueId, m.locationPermanentId, m.meetingDate, m.startPeriod, m.stopPeriod from Meeting m " +
+						"where m.meetingDate in (:dates) and m.approvalStatus <= 1 and " +
+						"m.locationPermanentId in (select l.permanentId from Location l where l.session.uniqueId = :sessionId)")
+						.setParameterList("dates", dates).setLong("sessionId", iSessionId).list()) {
+					Day day = loaded.get(CalendarUtils.date2dayOfYear(iSessionStartYear, (Date)o[3]));
+					if (day == null) continue;
+					day.add((Long)o[2], (Long)o[0], (Long)o[1], (Integer)o[4], (Integer)o[5]);
+				}
+			}
+			synchronized (this) {
+				for (Map.Entry<Integer, Day> entry: loaded.entrySet()) {
+					Day current = iDays.get(entry.getKey());
+					if (current != null && current.getLoaded() > now) continue; // loaded by a later call in the meantime
+					if (current != null) drop(current);
+					iDays.put(entry.getKey(), entry.getValue());
+					for (Slots slots: entry.getValue().getLocations().values())
+						for (int i = 0; i < slots.size(); i++)
+							iMeetings.put(slots.getMeetingId(i), slots);
+				}
+				for (Change change: iChanges)
+					if (change.getId() > changeId) apply(change);
+			}
+		} finally {
+			synchronized (this) {
+				if (--iLoading == 0) iChanges.clear();
+			}
+		}
+	}
+	
+	private void drop(Day day) {
+		for (Slots slots: day.getLocations().values())
+			for (int i = 0; i < slots.size(); i++)
+				iMeetings.remove(slots.getMeetingId(i));
+	}
+	
+	/** Apply a change, remembering it while there are days being loaded */
+	private void change(Change change) {
+		if (iLoading > 0) iChanges.add(change);
+		apply(change);
+	}
+	
+	private void apply(Change change) {
+		Slots slots = iMeetings.remove(change.getMeetingId());
+		if (slots != null) slots.remove(change.getMeetingId());
+		if (change.getDayOfYear() == null) return;
+		Day day = iDays.get(change.getDayOfYear());
+		if (day == null) return;
+		iMeetings.put(change.getMeetingId(), day.add(change.getPermanentId(), change.getMeetingId(), change.getEventId(), change.getStartSlot(), change.getEndSlot()));
+	}
+	
+	/** Remove a meeting from the index */
+	protected synchronized void remove(Long meetingId) {
+		if (meetingId == null) return;
+		change(new Change(++iLastChangeId, meetingId));
+	}
+	
+	/** Add or update a meeting, it is only added when the appropriate day is loaded (and it is approved or pending) */
+	protected synchronized void update(Meeting meeting) {
+		if (meeting.getUniqueId() == null) return;
+		if (meeting.getApprovalStatus() == null || meeting.getApprovalStatus() > 1 || meeting.getLocationPermanentId() == null || meeting.getMeetingDate() == null) {
+			change(new Change(++iLastChangeId, meeting.getUniqueId()));
+		} else {
+			change(new Change(++iLastChangeId, meeting.getUniqueId(), CalendarUtils.date2dayOfYear(iSessionStartYear, meeting.getMeetingDate()),
+					meeting.getLocationPermanentId(), meeting.getEvent().getUniqueId(), meeting.getStartPeriod(), meeting.getStopPeriod()));
+		}
+	}
+	
+	/**
+	 * Ids of meetings that overlap with the given time in the given rooms and on the given days
+	 * @param hibSession hibernate session (used to load days that are not in the index yet)
+	 * @param permanentIds location permanent ids
+	 * @param days days of the year (relative to the session start year)
+	 * @param startSlot first time slot
+	 * @param endSlot last time slot (exclusive)
+	 * @param excludeEventId ignore meetings of this event (can be null)
+	 * @param excludeMeetingId ignore this meeting (can be null)
+	 */
+	public Set<Long> getMeetingIds(org.hibernate.Session hibSession, Collection<Long> permanentIds, Collection<Integer> days, int startSlot, int endSlot, Long excludeEventId, Long excludeMeetingId) {
+		Set<Long> ret = new TreeSet<Long>();
+		if (permanentIds.isEmpty() || days.isEmpty()) return ret;
+		ensureLoaded(hibSession, days);
+		synchronized (this) {
+			for (Integer dayOfYear: days) {
+				Day day = iDays.get(dayOfYear);
+				if (day == null) continue;
+				for (Long permanentId: permanentIds) {
+					Slots slots = day.getLocations().get(permanentId);
+					if (slots != null)
+						slots.overlaps(startSlot, endSlot, excludeEventId, excludeMeetingId, ret);
+				}
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Ids of meetings that overlap with the given time in the given room and on the given day
+	 */
+	public Set<Long> getMeetingIds(org.hibernate.Session hibSession, Long permanentId, int dayOfYear, int startSlot, int endSlot, Long excludeEventId, Long excludeMeetingId) {
+		List<Long> permanentIds = new ArrayList<Long>(1); permanentIds.add(permanentId);
+		List<Integer> days = new ArrayList<Integer>(1); days.add(dayOfYear);
+		return getMeetingIds(hibSession, permanentIds, days, startSlot, endSlot, excludeEventId, excludeMeetingId);
+	}
+	
+	/** Load meetings of the given ids (together with their events) */
+	public static List<Meeting> getMeetings(org.hibernate.Session hibSession, Collection<Long> meetingIds) {
+		List<Meeting> meetings = new ArrayList<Meeting>(meetingIds.size());
+		if (meetingIds.isEmpty()) return meetings;
+		List<Long> ids = new ArrayList<Long>(meetingIds);
+		for (int idx = 0; idx < ids.size(); idx += 1000)
+			meetings.addAll((List<Meeting>)hibSession.createQuery(
+					"select m from Meeting m inner join fetch m.event where m.uniqueId in (:ids)")
+					.setParameterList("ids", ids.subList(idx, Math.min(idx + 1000, ids.size()))).list());
+		return meetings;
+	}
+	
+	/** Number of meetings in the index */
+	public synchronized int size() {
+		return iMeetings.size();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "RoomOccupancyIndex{session=" + iSessionId + ", days=" + iDays.size() + ", meetings=" + iMeetings.size() + "}";
+	}
+	
+	/**
+	 * Meetings of a day, by location permanent id
+	 */
+	private static class Day {
+		private long iLoaded;
+		private Map<Long, Slots> iLocations = new HashMap<Long, Slots>();
+		
+		Day(long loaded) { iLoaded = loaded; }
+		
+		long getLoaded() { return iLoaded; }
+		
+		Map<Long, Slots> getLocations() { return iLocations; }
+		
+		Slots add(Long permanentId, long meetingId, long eventId, int startSlot, int endSlot) {
+			Slots slots = iLocations.get(permanentId);
+			if (slots == null) {
+				slots = new Slots();
+				iLocations.put(permanentId, slots);
+			}
+			slots.add(meetingId, eventId, startSlot, endSlot);
+			return slots;
+		}
+	}
+	
+	/**
+	 * A meeting that has been updated (day of the year is set) or removed (day of the year is null)
+	 */
+	private static class Change {
+		private long iId;
+		private long iMeetingId;
+		private Integer iDayOfYear = null;
+		private Long iPermanentId = null;
+		private long iEventId;
+		private int iStartSlot, iEndSlot;
+		
+		Change(long id, long meetingId) {
+			iId = id; iMeetingId = meetingId;
+		}
+		
+		Change(long id, long meetingId, int dayOfYear, Long permanentId, long eventId, int startSlot, int endSlot) {
+			iId = id; iMeetingId = meetingId; iDayOfYear = dayOfYear; iPermanentId = permanentId; iEventId = eventId; iStartSlot = startSlot; iEndSlot = endSlot;
+		}
+		
+		long getId() { return iId; }
+		long getMeetingId() { return iMeetingId; }
+		Integer getDayOfYear() { return iDayOfYear; }
+		Long getPermanentId() { return iPermanentId; }
+		long getEventId() { return iEventId; }
+		int getStartSlot() { return iStartSlot; }
+		int getEndSlot() { return iEndSlot; }
+	}
+	
+	/**
+	 * Meetings of a room on a day: start and end slots, meeting ids, and event ids in parallel arrays, sorted by the start slot
+	 */
+	private static class Slots {
+		private int[] iStart = new int[4], iEnd = new int[4];
+		private long[] iMeetingId = new long[4], iEventId = new long[4];
+		private int iSize = 0;
+		
+		int size() { return iSize; }
+		
+		long getMeetingId(int index) { return iMeetingId[index]; }
+		
+		void add(long meetingId, long eventId, int startSlot, int endSlot) {
+			if (iSize == iStart.length) {
+				int length = 2 * iSize;
+				iStart = Arrays.copyOf(iStart, length);
+				iEnd = Arrays.copyOf(iEnd, length);
+				iMeetingId = Arrays.copyOf(iMeetingId, length);
+				iEventId = Arrays.copyOf(iEventId, length);
+			}
+			int index = iSize;
+			while (index > 0 && iStart[index - 1] > startSlot) {
+				iStart[index] = iStart[index - 1];
+				iEnd[index] = iEnd[index - 1];
+				iMeetingId[index] = iMeetingId[index - 1];
+				iEventId[index] = iEventId[index - 1];
+				index--;
+			}
+			iStart[index] = startSlot;
+			iEnd[index] = endSlot;
+			iMeetingId[index] = meetingId;
+			iEventId[index] = eventId;
+			iSize++;
+		}
+		
+		void remove(long meetingId) {
+			for (int index = 0; index < iSize; index++) {
+				if (iMeetingId[index] == meetingId) {
+					int moved = iSize - index - 1;
+					if (moved > 0) {
+						System.arraycopy(iStart, index + 1, iStart, index, moved);
+						System.arraycopy(iEnd, index + 1, iEnd, index, moved);
+						System.arraycopy(iMeetingId, index + 1, iMeetingId, index, moved);
+						System.arraycopy(iEventId, index + 1, iEventId, index, moved);
+					}
+					iSize--;
+					return;
+				}
+			}
+		}
+		
+		void overlaps(int startSlot, int endSlot, Long excludeEventId, Long excludeMeetingId, Set<Long> meetingIds) {
+			for (int index = 0; index < iSize && iStart[index] < endSlot; index++) {
+				if (iEnd[index] <= startSlot) continue;
+				if (excludeEventId != null && iEventId[index] == excludeEventId.longValue()) continue;
+				if (excludeMeetingId != null && iMeetingId[index] == excludeMeetingId.longValue()) continue;
+				meetingIds.add(iMeetingId[index]);
+			}
+		}
+	}
+}
@@ -522,6 +522,8 @@ public class SaveEventBackend extends EventAction<SaveEventRpcRequest, SaveOrApp
 			
 			tx.commit();
 			
+			RoomOccupancyIndex.update(session, event.getMeetings(), remove);
+			
 			new EventEmail(request, response).send(context);
 			
 			return response;
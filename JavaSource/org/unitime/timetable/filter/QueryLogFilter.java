@@ -26,12 +26,9 @@ import java.io.OutputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Vector;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -46,15 +43,12 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cpsolver.ifs.util.JProf;
-import org.hibernate.CacheMode;
-import org.hibernate.Session;
-import org.hibernate.Transaction;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.QueryLog;
-import org.unitime.timetable.model.dao.QueryLogDAO;
 import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.util.AuditLogWriter;
 
 /**
  * @author Tomas Muller
@@ -201,74 +195,16 @@ public class QueryLogFilter implements Filter {
 			iSaver.interrupt();
 	}
 	
-	public static class Saver extends Thread {
-		private List<QueryLog> iQueries = new Vector<QueryLog>();
-		private boolean iActive = true;
-		private int iLogLimit = -1;
+	public static class Saver extends AuditLogWriter<QueryLog> {
 		
 		public Saver() {
-			super("QueryLogSaver");
-			iLogLimit = ApplicationProperty.QueryLogLimit.intValue();
-			setDaemon(true);
+			super("QueryLogSaver", ApplicationProperty.QueryLogLimit.intValue(), ApplicationProperty.AuditLogBatchSize.intValue(), ApplicationProperty.AuditLogFlushInterval.intValue());
 		}
 		
 		@Override
-		public void interrupt() {
-			iActive = false;
-			super.interrupt();
-			try { join(); } catch (InterruptedException e) {}
+		protected void info(String message) {
+			sLog.debug(message);
 		}
-		
-		public void add(QueryLog q) {
-			if (!iActive) return;
-			synchronized (iQueries) {
-				if (iLogLimit <= 0 || iQueries.size() < iLogLimit)
-					iQueries.add(q);
-			}
-		}
-		
-		public void run() {
-			sLog.debug("Query Log Saver is up.");
-			while (true) {
-				try {
-					try {
-						sleep(60000);
-					} catch (InterruptedException e) {
-					}
-					List<QueryLog> queriesToSave = null;
-					synchronized (iQueries) {
-						if (!iQueries.isEmpty()) {
-							queriesToSave = new ArrayList<QueryLog>(iQueries);
-							iQueries.clear();
-						}
-					}
-					if (queriesToSave != null) {
-						sLog.debug("Persisting " + queriesToSave.size() + " log entries...");
-						if (iLogLimit > 0 && queriesToSave.size() >= iLogLimit)
-							sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages have been dropped.");
-						Session hibSession = QueryLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						Transaction tx = hibSession.beginTransaction();
-						try {
-							for (QueryLog q: queriesToSave)
-								hibSession.save(q);
-							hibSession.flush();
-							tx.commit();
-						} catch (Exception e) {
-							tx.rollback();
-							sLog.error("Failed to persist " + queriesToSave.size() + " log entries:" + e.getMessage(), e);
-						} finally {
-							hibSession.close();
-						}
-					}
-					if (!iActive) break;
-				} catch (Exception e) {
-					sLog.error("Failed to persist log entries:" + e.getMessage(), e);
-				}
-			}
-			sLog.debug("Query Log Saver is down.");
-		}
-		
 	}
 	
 	private static class HttpServletRequestWrapper implements InvocationHandler {
@@ -96,6 +96,7 @@ import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.UserContext;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.server.curricula.CurriculumFilterBackend;
+import org.unitime.timetable.server.curricula.ProjectedDemandEngine;
 import org.unitime.timetable.test.MakeCurriculaFromLastlikeDemands;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.NameFormat;
@@ -668,6 +669,7 @@ public class CurriculaServlet implements CurriculaService {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 
 				sLog.debug("Saved 1 curriculum (took " + sDF.format(0.001 * (System.currentTimeMillis() - s0)) +" s).");
 				return ret;
@@ -748,6 +750,7 @@ public class CurriculaServlet implements CurriculaService {
 				}
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 			} finally {
 				try {
 					if (tx != null && tx.isActive()) {
@@ -796,6 +799,7 @@ public class CurriculaServlet implements CurriculaService {
 				hibSession.delete(c);
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 				
 			} finally {
 				try {
@@ -848,6 +852,7 @@ public class CurriculaServlet implements CurriculaService {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 				
 			} finally {
 				try {
@@ -1042,6 +1047,7 @@ public class CurriculaServlet implements CurriculaService {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 				
 			} finally {
 				try {
@@ -2154,6 +2160,7 @@ public class CurriculaServlet implements CurriculaService {
 								
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 			} finally {
 				try {
 					if (tx != null && tx.isActive()) {
@@ -2222,6 +2229,7 @@ public class CurriculaServlet implements CurriculaService {
 
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 			} finally {
 				try {
 					if (tx != null && tx.isActive()) {
@@ -2261,16 +2269,24 @@ public class CurriculaServlet implements CurriculaService {
 						curricula.add(CurriculumDAO.getInstance().get(id, hibSession));
 				}
 				
+				List<AcademicClassification> classifications = (List<AcademicClassification>)hibSession.createQuery(
+						"select c from AcademicClassification c where c.session.uniqueId = :sessionId")
+						.setLong("sessionId", sessionId).setCacheable(true).list();
+				
+				ProjectedDemandEngine engine = ProjectedDemandEngine.getInstance(sessionId);
+				engine.refresh(hibSession);
+				
 				for (Curriculum c: curricula) {
 					if (c == null || !getSessionContext().hasPermission(c, Right.CurriculumEdit)) continue;
 					
-					List<AcademicClassification> classifications = (List<AcademicClassification>)hibSession.createQuery(
-							"select c from AcademicClassification c where c.session.uniqueId = :sessionId")
-							.setLong("sessionId", sessionId).setCacheable(true).list();
+					String areaAbbv = c.getAcademicArea().getAcademicAreaAbbreviation();
+					Set<String> majorCodes = new HashSet<String>();
+					for (PosMajor major: c.getMajors())
+						majorCodes.add(major.getCode());
 					
-					Hashtable<String,HashMap<String, Float>> rules = getRules(hibSession, c.getAcademicArea().getUniqueId());
+					Hashtable<String,HashMap<String, Float>> rules = engine.getRules(areaAbbv);
 					
-					Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = loadClasfMajor2ll(hibSession, c);
+					Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = engine.getClasfMajor2ll(areaAbbv, majorCodes);
 					
 					int totalProjection = 0;
 					for (AcademicClassification acadClasf: classifications) {
@@ -2313,7 +2329,7 @@ public class CurriculaServlet implements CurriculaService {
 						float shareLimit = ApplicationProperty.CurriculumLastLikeDemandsShareLimit.floatValue();
 						int enrollmentLimit = ApplicationProperty.CurriculumLastLikeDemandsEnrollmentLimit.intValue();
 
-						Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajorCourse2ll = loadClasfMajorCourse2ll(hibSession, c);
+						Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajorCourse2ll = engine.getClasfMajorCourse2ll(areaAbbv, majorCodes);
 						
 						Hashtable<Long, Float> courseTotals = new Hashtable<Long, Float>();
 						for (Map.Entry<String, Hashtable<String, Hashtable<Long, Integer>>> clasf: clasfMajorCourse2ll.entrySet()) {
@@ -2392,6 +2408,7 @@ public class CurriculaServlet implements CurriculaService {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				ProjectedDemandEngine.invalidate(getAcademicSessionId());
 			} finally {
 				try {
 					if (tx != null && tx.isActive()) {
@@ -2426,87 +2443,28 @@ public class CurriculaServlet implements CurriculaService {
 				tx = hibSession.beginTransaction();
 				Long sessionId = getAcademicSessionId();
 				
-				Hashtable<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>> course2area2major2clasf2ll = null;
-				if (includeOtherStudents) {
-					course2area2major2clasf2ll = loadCourseAreaMajorClasf2ll(hibSession);
-				}
-				
-				Hashtable<String, Hashtable<String, HashMap<String, Float>>> rules = (includeOtherStudents ? getRules(hibSession) : null);
-				
-				Hashtable<Long, List<CurriculumCourse>> course2curriculum = new Hashtable<Long, List<CurriculumCourse>>();
-				for (CurriculumCourse cc: (List<CurriculumCourse>)hibSession.createQuery(
-						"select cc from CurriculumCourse cc where cc.classification.curriculum.academicArea.session.uniqueId = :sessionId")
-						.setLong("sessionId", sessionId)
-						.setCacheable(true).list()) {
-					List<CurriculumCourse> curricula = course2curriculum.get(cc.getCourse().getUniqueId());
-					if (curricula == null) {
-						curricula = new ArrayList<CurriculumCourse>();
-						course2curriculum.put(cc.getCourse().getUniqueId(), curricula);
-					}
-					curricula.add(cc);
-				}
+				Map<Long, Integer> demands = ProjectedDemandEngine.getInstance(sessionId).getProjectedDemands(hibSession, includeOtherStudents);
 				
-				for (CourseOffering courseOffering: (List<CourseOffering>)hibSession.createQuery(
-						"select co from CourseOffering co where co.subjectArea.session.uniqueId = :sessionId")
-						.setLong("sessionId", sessionId)
-						.setCacheable(true).list()) {
-					
-					Integer oldDemand = courseOffering.getDemand();
-
-					Hashtable<String, Hashtable<String, Hashtable<String, Integer>>> area2major2clasf2ll = (course2area2major2clasf2ll == null ? null : course2area2major2clasf2ll.get(courseOffering.getUniqueId()));
-					List<CurriculumCourse> curricula = course2curriculum.get(courseOffering.getUniqueId());
-					
-					int demand = 0;
-					if (curricula != null)
-						for (CurriculumCourse curriculum: curricula) {
-							demand += Math.round(curriculum.getPercShare() * curriculum.getClassification().getNrStudents());
-							if (area2major2clasf2ll != null) {
-								String areaAbbv = curriculum.getClassification().getCurriculum().getAcademicArea().getAcademicAreaAbbreviation();
-								Hashtable<String, Hashtable<String, Integer>> major2clasf2ll = area2major2clasf2ll.get(areaAbbv);
-								if (major2clasf2ll != null) {
-									if (curriculum.getClassification().getCurriculum().getMajors().isEmpty()) {
-										area2major2clasf2ll.remove(areaAbbv);
-										/*
-										for (Hashtable<String, Integer> clasf2ll: major2clasf2ll.values()) {
-											clasf2ll.remove(curriculum.getClassification().getAcademicClassification().getCode());
-										}
-										*/
-									} else {
-										for (PosMajor major: (Collection<PosMajor>)curriculum.getClassification().getCurriculum().getMajors()) {
-											major2clasf2ll.remove(major.getCode());
-											/*
-											Hashtable<String, Integer> clasf2ll = major2clasf2ll.get(major.getCode());
-											if (clasf2ll != null)
-												clasf2ll.remove(curriculum.getClassification().getAcademicClassification().getCode());
-											*/
-										}
-									}
-								}
-							}
-						}
-					
-					if (area2major2clasf2ll != null) {
-						for (Map.Entry<String, Hashtable<String, Hashtable<String, Integer>>> areaEmajor2clasf2ll: area2major2clasf2ll.entrySet()) {
-							for (Map.Entry<String, Hashtable<String, Integer>> majorEclasf2ll: areaEmajor2clasf2ll.getValue().entrySet()) {
-								for (Map.Entry<String, Integer> clasfEll: majorEclasf2ll.getValue().entrySet()) {
-									demand += Math.round(getProjection(rules == null ? null : rules.get(areaEmajor2clasf2ll.getKey()), majorEclasf2ll.getKey(), clasfEll.getKey()) * clasfEll.getValue());
-								}
-							}
-						}
-					}
+				for (Object[] o: (List<Object[]>)hibSession.createQuery(
+						"select co.uniqueId, co.projectedDemand from CourseOffering co where co.subjectArea.session.uniqueId = :sessionId")
+						.setLong("sessionId", sessionId).list()) {
+					Long courseId = (Long)o[0];
+					Integer oldDemand = (Integer)o[1];
+					Integer demand = demands.get(courseId);
+					if (demand == null) demand = 0;
+					if (demand.equals(oldDemand)) continue;
 					
+					CourseOffering courseOffering = CourseOfferingDAO.getInstance().get(courseId, hibSession);
 					courseOffering.setProjectedDemand(demand);
 					
-					if (oldDemand == null || demand != oldDemand) {
-						ChangeLog.addChange(hibSession,
-								getSessionContext(),
-								courseOffering,
-								courseOffering.getCourseName() + " projection: " + oldDemand + " &rarr; " + demand,
-								Source.CURRICULA, 
-								Operation.UPDATE,
-								courseOffering.getSubjectArea(),
-								courseOffering.getSubjectArea().getDepartment());
-					}
+					ChangeLog.addChange(hibSession,
+							getSessionContext(),
+							courseOffering,
+							courseOffering.getCourseName() + " projection: " + oldDemand + " &rarr; " + demand,
+							Source.CURRICULA, 
+							Operation.UPDATE,
+							courseOffering.getSubjectArea(),
+							courseOffering.getSubjectArea().getDepartment());
 					
 					hibSession.saveOrUpdate(courseOffering);
 				}
@@ -3049,43 +3007,6 @@ public class CurriculaServlet implements CurriculaService {
 		return area2major2clasf2ll;
 	}
 	
-	private Hashtable<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>> loadCourseAreaMajorClasf2ll(org.hibernate.Session hibSession) {
-		Hashtable<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>> course2area2major2clasf2ll = new Hashtable<Long, Hashtable<String, Hashtable<String,Hashtable<String,Integer>>>>();
-		for (Object[] o : (List<Object[]>)hibSession.createQuery(
-				"select co.uniqueId, r.academicAreaAbbreviation, m.code, f.code, count(distinct s) from " +
-				"LastLikeCourseDemand x inner join x.student s inner join s.academicAreaClassifications a inner join s.posMajors m " +
-				"inner join a.academicClassification f inner join a.academicArea r, CourseOffering co where " +
-				"x.subjectArea.session.uniqueId = :sessionId and co.subjectArea.session.uniqueId = :sessionId and "+
-				"co.subjectArea.uniqueId = x.subjectArea.uniqueId and " +
-				"((x.coursePermId is not null and co.permId=x.coursePermId) or (x.coursePermId is null and co.courseNbr=x.courseNbr)) " +
-				"group by co.uniqueId, r.academicAreaAbbreviation, m.code, f.code")
-				.setLong("sessionId", getAcademicSessionId())
-				.setCacheable(true).list()) {
-			Long courseId = (Long)o[0];
-			String areaAbbv = (String)o[1];
-			String majorCode = (String)o[2];
-			String clasfCode = (String)o[3];
-			int lastLike = ((Number)o[4]).intValue();
-			Hashtable<String, Hashtable<String, Hashtable<String, Integer>>> area2major2clasf2ll = course2area2major2clasf2ll.get(courseId);
-			if (area2major2clasf2ll == null) {
-				area2major2clasf2ll = new Hashtable<String, Hashtable<String,Hashtable<String,Integer>>>();
-				course2area2major2clasf2ll.put(courseId, area2major2clasf2ll);
-			}
-			Hashtable<String, Hashtable<String, Integer>> major2clasf2ll = area2major2clasf2ll.get(areaAbbv);
-			if (major2clasf2ll == null) {
-				major2clasf2ll = new Hashtable<String, Hashtable<String,Integer>>();
-				area2major2clasf2ll.put(areaAbbv, major2clasf2ll);
-			}
-			Hashtable<String, Integer> clasf2ll = major2clasf2ll.get(majorCode);
-			if (clasf2ll == null) {
-				clasf2ll = new Hashtable<String, Integer>();
-				major2clasf2ll.put(majorCode, clasf2ll);
-			}
-			clasf2ll.put(clasfCode, lastLike);
-		}
-		return course2area2major2clasf2ll;
-	}
-	
 	private Hashtable<Long, Integer> loadClasf2req(org.hibernate.Session hibSession, Curriculum c) {
 		String majorIds = "";
 		for (Iterator<PosMajor> i = c.getMajors().iterator(); i.hasNext(); ) {
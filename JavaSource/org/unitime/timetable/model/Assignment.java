@@ -19,12 +19,14 @@
 */
 package org.unitime.timetable.model;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.Vector;
@@ -343,37 +345,16 @@ public class Assignment extends BaseAssignment {
 		}
 	}
 	
-    public ClassEvent generateCommittedEvent(ClassEvent event, boolean createNoRoomMeetings) {
+    /**
+     * Meetings of the committed event of this assignment (not linked to the event)
+     * @param changePast include meetings in the past
+     * @param today first day that is not in the past
+     * @param createNoRoomMeetings create meetings without a location when the assignment has no room
+     */
+    protected List<Meeting> generateCommittedMeetings(boolean changePast, Date today, boolean createNoRoomMeetings) {
+    	List<Meeting> meetings = new ArrayList<Meeting>();
     	Class_ clazz = getClazz();
-        if (event==null) {
-            event = new ClassEvent();
-            event.setClazz(clazz); clazz.setEvent(event);
-            if (getClazz().getSession().getStatusType().isTestSession()) return null;
-        }
-        event.setEventName(getClassName());
-        event.setMinCapacity(clazz.getClassLimit(this));
-        event.setMaxCapacity(clazz.getClassLimit(this));
-        
-        boolean changePast = ApplicationProperty.ClassAssignmentChangePastMeetings.isTrue();
-		Calendar cal = Calendar.getInstance(Locale.US);
-		cal.set(Calendar.HOUR_OF_DAY, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.MILLISECOND, 0);
-		Date today = cal.getTime();
-        
-		if (event.getMeetings() != null) {
-			if (changePast) {
-				event.getMeetings().clear();
-			} else {
-		    	for (Iterator<Meeting> i = event.getMeetings().iterator(); i.hasNext(); )
-		    		if (!i.next().getMeetingDate().before(today)) i.remove();
-			}
-		} else {
-			event.setMeetings(new HashSet());
-        }
-		
-		DurationModel dm = getClazz().getSchedulingSubpart().getInstrOfferingConfig().getDurationModel();
+		DurationModel dm = clazz.getSchedulingSubpart().getInstrOfferingConfig().getDurationModel();
 		TimeLocation time = getTimeLocation();
 		for (Date meetingDate: dm.getDates(clazz.getSchedulingSubpart().getMinutesPerWk(), getDatePattern(), time.getDayCode(), getMinutesPerMeeting())) {
             if (changePast || !meetingDate.before(today)) {
@@ -391,8 +372,7 @@ public class Assignment extends BaseAssignment {
                         m.setLocationPermanentId(location.getPermanentId());
                         m.setStatus(Meeting.Status.APPROVED);
                         m.setApprovalDate(getSolution().getCommitDate());
-                        m.setEvent(event);
-                        event.getMeetings().add(m);
+                        meetings.add(m);
                         created = true;
                     }
                 }
@@ -407,11 +387,75 @@ public class Assignment extends BaseAssignment {
                     m.setLocationPermanentId(null);
                     m.setStatus(Meeting.Status.APPROVED);
                     m.setApprovalDate(getSolution().getCommitDate());
-                    m.setEvent(event);
-                    event.getMeetings().add(m);
+                    meetings.add(m);
                 }
             }
 		}
+		return meetings;
+    }
+    
+    private static String getMeetingKey(Meeting m) {
+    	return m.getMeetingDate().getTime() + ":" + m.getStartPeriod() + ":" + m.getStartOffset() + ":" + m.getStopPeriod() + ":" + m.getStopOffset() + ":" + m.getLocationPermanentId();
+    }
+    
+    /**
+     * Check whether the given class event already has the meetings that {@link Assignment#generateCommittedEvent(ClassEvent, boolean)} would create
+     * (past meetings are ignored unless {@link ApplicationProperty#ClassAssignmentChangePastMeetings} is set), i.e., the event does not need to be changed.
+     */
+    public boolean isCommittedEventUpToDate(ClassEvent event, boolean createNoRoomMeetings) {
+    	if (event == null || event.getMeetings() == null) return false;
+        boolean changePast = ApplicationProperty.ClassAssignmentChangePastMeetings.isTrue();
+		Calendar cal = Calendar.getInstance(Locale.US);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		Date today = cal.getTime();
+		Set<String> current = new HashSet<String>();
+		for (Meeting m: event.getMeetings())
+			if (changePast || !m.getMeetingDate().before(today))
+				if (!current.add(getMeetingKey(m))) return false;
+		List<Meeting> meetings = generateCommittedMeetings(changePast, today, createNoRoomMeetings);
+		if (meetings.size() != current.size()) return false;
+		for (Meeting m: meetings)
+			if (!current.contains(getMeetingKey(m))) return false;
+		return true;
+    }
+
+    public ClassEvent generateCommittedEvent(ClassEvent event, boolean createNoRoomMeetings) {
+    	Class_ clazz = getClazz();
+        if (event==null) {
+            event = new ClassEvent();
+            event.setClazz(clazz); clazz.setEvent(event);
+            if (getClazz().getSession().getStatusType().isTestSession()) return null;
+        }
+        event.setEventName(getClassName());
+        event.setMinCapacity(clazz.getClassLimit(this));
+        event.setMaxCapacity(clazz.getClassLimit(this));
+        
+        boolean changePast = ApplicationProperty.ClassAssignmentChangePastMeetings.isTrue();
+		Calendar cal = Calendar.getInstance(Locale.US);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		Date today = cal.getTime();
+        
+		if (event.getMeetings() != null) {
+			if (changePast) {
+				event.getMeetings().clear();
+			} else {
+		    	for (Iterator<Meeting> i = event.getMeetings().iterator(); i.hasNext(); )
+		    		if (!i.next().getMeetingDate().before(today)) i.remove();
+			}
+		} else {
+			event.setMeetings(new HashSet());
+        }
+		
+		for (Meeting m: generateCommittedMeetings(changePast, today, createNoRoomMeetings)) {
+			m.setEvent(event);
+			event.getMeetings().add(m);
+		}
 		
 		/*
         DatePattern dp = getDatePattern();
@@ -466,10 +466,13 @@ public abstract class Location extends BaseLocation implements Comparable {
 	}
     
 	public double getDistance(Location other) {
+		return getDistance(other, new DistanceMetric(DistanceMetric.Ellipsoid.valueOf(ApplicationProperty.DistanceEllipsoid.value())));
+	}
+	
+	public double getDistance(Location other, DistanceMetric m) {
     	if (getUniqueId().equals(other.getUniqueId())) return 0.0;
     	if (this instanceof Location && isIgnoreTooFar()!=null && isIgnoreTooFar().booleanValue()) return 0.0;
     	if (other instanceof Location && other.isIgnoreTooFar()!=null && other.isIgnoreTooFar().booleanValue()) return 0.0;
-    	DistanceMetric m = new DistanceMetric(DistanceMetric.Ellipsoid.valueOf(ApplicationProperty.DistanceEllipsoid.value()));
     	return m.getDistanceInMeters(getUniqueId(), getCoordinateX(), getCoordinateY(), other.getUniqueId(), other.getCoordinateX(), other.getCoordinateY());
 	}
 	
@@ -701,6 +704,7 @@ public abstract class Location extends BaseLocation implements Comparable {
     public static double getDistance(Collection rooms1, Collection rooms2) {
         if (rooms1==null || rooms1.isEmpty() || rooms2==null || rooms2.isEmpty()) return 0;
         double maxDistance = 0;
+        DistanceMetric m = new DistanceMetric(DistanceMetric.Ellipsoid.valueOf(ApplicationProperty.DistanceEllipsoid.value()));
         for (Iterator i1=rooms1.iterator();i1.hasNext();) {
             Object o1 = i1.next();
             Location r1 = null;
@@ -715,7 +719,7 @@ public abstract class Location extends BaseLocation implements Comparable {
                     r2 = ((ExamRoomInfo)o2).getLocation();
                 else
                     r2 = (Location)o2;
-                maxDistance = Math.max(maxDistance, r1.getDistance(r2));
+                maxDistance = Math.max(maxDistance, r1.getDistance(r2, m));
             }
         }
         return maxDistance;
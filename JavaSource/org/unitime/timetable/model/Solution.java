@@ -20,6 +20,7 @@
 package org.unitime.timetable.model;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -37,6 +38,8 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
 
+import javax.transaction.Synchronization;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cpsolver.coursett.model.Placement;
@@ -44,11 +47,13 @@ import org.cpsolver.ifs.util.CSVFile;
 import org.cpsolver.ifs.util.DataProperties;
 import org.cpsolver.ifs.util.CSVFile.CSVField;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Restrictions;
 import org.unitime.commons.Debug;
 import org.unitime.commons.Email;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.events.RoomOccupancyIndex;
 import org.unitime.timetable.form.ListSolutionsForm.InfoComparator;
 import org.unitime.timetable.gwt.resources.GwtConstants;
 import org.unitime.timetable.model.base.BaseSolution;
@@ -152,7 +157,8 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 			Date today = cal.getTime();
 			
 			List<ClassEvent> events = (List<ClassEvent>)hibSession.createQuery(
-					"select e from Solution s inner join s.assignments a, ClassEvent e where e.clazz=a.clazz and s.uniqueId=:solutionId")
+					"select distinct e from ClassEvent e left join fetch e.meetings where e.clazz.uniqueId in " +
+					"(select a.clazz.uniqueId from Assignment a where a.solution.uniqueId = :solutionId)")
 					.setLong("solutionId", getUniqueId()).list();
 			for (ClassEvent event: events) {
 	        	for (Iterator<Meeting> i = event.getMeetings().iterator(); i.hasNext(); )
@@ -183,6 +189,28 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 		// Manually fix the Clazz_.committedAssignment cache.
 		for (Assignment a: getAssignments())
 			a.getClazz().setCommittedAssignment(null);
+		
+		invalidateRoomOccupancyIndex(hibSession);
+	}
+	
+	/**
+	 * Class events have been changed, drop the room occupancy index of the academic session (it is dropped again once the transaction
+	 * is completed, so that days loaded in the meantime do not keep the old meetings)
+	 */
+	protected void invalidateRoomOccupancyIndex(org.hibernate.Session hibSession) {
+		final Long sessionId = getOwner().getSession().getUniqueId();
+		RoomOccupancyIndex.invalidate(sessionId);
+		Transaction tx = hibSession.getTransaction();
+		if (tx != null && tx.isActive()) {
+			tx.registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {}
+				@Override
+				public void afterCompletion(int status) {
+					RoomOccupancyIndex.invalidate(sessionId);
+				}
+			});
+		}
 	}
 	
 	public boolean commitSolution(Vector messages, org.hibernate.Session hibSession) throws Exception {
@@ -234,29 +262,52 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
         return false;
     }
 
+	/**
+	 * Commit the solution. When {@link ApplicationProperty#SolutionCommitIncremental} is enabled, the previously committed solution
+	 * of the same owner is uncommitted in the same pass: class events of both solutions are loaded (with their meetings) by a single query,
+	 * the events that already have the appropriate meetings are not touched, only the changed classes are updated, and the events
+	 * of the classes that are no longer assigned are removed.
+	 */
 	public boolean commitSolution(List<String> messages, org.hibernate.Session hibSession, String sendNotificationPuid) throws Exception {
+		return commitSolution(messages, hibSession, sendNotificationPuid, null);
+	}
+	
+	/**
+	 * Commit the solution (see {@link Solution#commitSolution(List, org.hibernate.Session, String)}).
+	 * @param replacedSolutionIds committed solutions that are being replaced in the same batch (e.g., previously committed solutions of the other owners of a multi-owner commit),
+	 * these are ignored by the conflict checks
+	 */
+	public boolean commitSolution(List<String> messages, org.hibernate.Session hibSession, String sendNotificationPuid, Collection<Long> replacedSolutionIds) throws Exception {
+		boolean incremental = ApplicationProperty.SolutionCommitIncremental.isTrue();
 		List solutions = hibSession.createCriteria(Solution.class).add(Restrictions.eq("owner",getOwner())).list();
 		Solution uncommittedSolution = null;
+		List<Solution> previouslyCommitted = new ArrayList<Solution>();
 		for (Iterator i=solutions.iterator();i.hasNext();) {
 			Solution s = (Solution)i.next();
 			if (s.equals(this)) continue;
 			if (s.isCommited().booleanValue()) {
 				uncommittedSolution = s;
-				s.uncommitSolution(hibSession, null);
+				if (incremental)
+					previouslyCommitted.add(s);
+				else
+					s.uncommitSolution(hibSession, null);
 			}
 		}
 		if (DEBUG) sLog.debug("commit["+getUniqueId()+","+getOwner().getName()+"] -------------------------------------------------------");
 			
 		boolean isOK = true;
-		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+		boolean hasReplaced = (replacedSolutionIds != null && !replacedSolutionIds.isEmpty());
+		org.hibernate.Query roomQuery = hibSession.createQuery(
 				"select r, a1, a2 from Location r inner join r.assignments a1 inner join r.assignments a2 "+
 				"where a1.solution.uniqueId = :solutionId and a2.solution.commited = true and a2.solution.owner.uniqueId != :ownerId and " +
+				(hasReplaced ? "a2.solution.uniqueId not in (:replacedIds) and " : "") +
 				"bit_and(a1.days, a2.days) > 0 and (a1.timePattern.type = :exactType or a2.timePattern.type = :exactType or " +
 				"(a1.startSlot < a2.startSlot + a2.timePattern.slotsPerMtg and a2.startSlot < a1.startSlot + a1.timePattern.slotsPerMtg))")
 				.setLong("ownerId",getOwner().getUniqueId())
 				.setLong("solutionId",getUniqueId())
-				.setInteger("exactType", TimePattern.sTypeExactTime)
-				.list()) {
+				.setInteger("exactType", TimePattern.sTypeExactTime);
+		if (hasReplaced) roomQuery.setParameterList("replacedIds", replacedSolutionIds);
+		for (Object[] o: (List<Object[]>)roomQuery.list()) {
 			Location room = (Location)o[0];
 			Assignment a = (Assignment)o[1];
 			Assignment b = (Assignment)o[2];
@@ -266,19 +317,21 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 			}
 		}
 		
-		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+		org.hibernate.Query instructorQuery = hibSession.createQuery(
 				"select i1, a1, a2 from ClassInstructor c1 inner join c1.instructor i1 inner join c1.classInstructing.assignments a1, " +
 						"ClassInstructor c2 inner join c2.instructor i2 inner join c2.classInstructing.assignments a2 where c1.lead = true and c2.lead = true and " +
 						"i1.department.solverGroup.uniqueId = :ownerId and i2.department.solverGroup.uniqueId != :ownerId and i2.department.session = :sessionId and " +
 						"i1.externalUniqueId is not null and i1.externalUniqueId = i2.externalUniqueId and " + 
 						"a1.solution.uniqueId = :solutionId and a2.solution.commited = true and a2.solution.owner.uniqueId != :ownerId and " +
+						(hasReplaced ? "a2.solution.uniqueId not in (:replacedIds) and " : "") +
 						"bit_and(a1.days, a2.days) > 0 and (a1.timePattern.type = :exactType or a2.timePattern.type = :exactType or " +
 						"(a1.startSlot < a2.startSlot + a2.timePattern.slotsPerMtg and a2.startSlot < a1.startSlot + a1.timePattern.slotsPerMtg))")
 						.setLong("ownerId",getOwner().getUniqueId())
 						.setLong("solutionId",getUniqueId())
 						.setLong("sessionId",getOwner().getSession().getUniqueId())
-						.setInteger("exactType", TimePattern.sTypeExactTime)
-						.list()) {
+						.setInteger("exactType", TimePattern.sTypeExactTime);
+		if (hasReplaced) instructorQuery.setParameterList("replacedIds", replacedSolutionIds);
+		for (Object[] o: (List<Object[]>)instructorQuery.list()) {
 			DepartmentalInstructor instructor = (DepartmentalInstructor)o[0];
 			Assignment a = (Assignment)o[1];
 			Assignment b = (Assignment)o[2];
@@ -289,6 +342,8 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 		}
 		
 		if (!isOK) {
+			for (Solution s: previouslyCommitted)
+				s.uncommitSolution(hibSession, null);
 			if (sendNotificationPuid!=null) sendNotification(uncommittedSolution, this, sendNotificationPuid, false, messages);
 			return false;
 		}
@@ -347,18 +402,37 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 		        }
 		    }
 		}
+		List<Long> solutionIds = new ArrayList<Long>();
+		solutionIds.add(getUniqueId());
+		for (Solution s: previouslyCommitted) {
+			if (DEBUG) sLog.debug("uncommit["+s.getUniqueId()+","+s.getOwner().getName()+"] -------------------------------------------------------");
+			s.setCommitDate(null);
+			s.setCommited(Boolean.FALSE);
+			hibSession.update(s);
+			solutionIds.add(s.getUniqueId());
+		}
         Hashtable<Long,ClassEvent> classEvents = new Hashtable();
         for (Iterator i=hibSession.createQuery(
-                "select e from Solution s inner join s.assignments a, ClassEvent e where e.clazz=a.clazz and s.uniqueId=:solutionId")
-                .setLong("solutionId",getUniqueId())
-                .iterate(); i.hasNext();) {
+                "select distinct e from ClassEvent e left join fetch e.meetings where e.clazz.uniqueId in " +
+                "(select a.clazz.uniqueId from Assignment a where a.solution.uniqueId in (:solutionIds))")
+                .setParameterList("solutionIds",solutionIds)
+                .list().iterator(); i.hasNext();) {
             ClassEvent e = (ClassEvent)i.next();
             classEvents.put(e.getClazz().getUniqueId(),e);
         }
+        int unchanged = 0;
 		for (Iterator i=getAssignments().iterator();i.hasNext();) {
 		    Assignment a = (Assignment)i.next();
-		    ClassEvent event = a.generateCommittedEvent(classEvents.get(a.getClassId()),true);
-		    classEvents.remove(a.getClassId());
+		    ClassEvent original = classEvents.remove(a.getClassId());
+		    if (incremental && original != null && a.isCommittedEventUpToDate(original, true)) {
+		    	// same meetings as before -- only update the name and capacity (if changed)
+		    	original.setEventName(a.getClassName());
+		    	original.setMinCapacity(a.getClazz().getClassLimit(a));
+		    	original.setMaxCapacity(a.getClazz().getClassLimit(a));
+		    	unchanged++;
+		    	continue;
+		    }
+		    ClassEvent event = a.generateCommittedEvent(original,true);
 		    if (event != null && !event.getMeetings().isEmpty()) {
 		        event.setMainContact(contact);
     			if (event.getNotes() == null)
@@ -414,11 +488,18 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 			}
 		}
 		
+		if (DEBUG) sLog.debug("commit["+getUniqueId()+","+getOwner().getName()+"]: " + unchanged + " of " + getAssignments().size() + " class events unchanged");
+		
 		if (sendNotificationPuid!=null) sendNotification(uncommittedSolution, this, sendNotificationPuid, true, messages);
 
 		// Manually fix the Clazz_.committedAssignment cache.
+		for (Solution s: previouslyCommitted)
+			for (Assignment a: s.getAssignments())
+				a.getClazz().setCommittedAssignment(null);
 		for (Assignment a: getAssignments())
 			a.getClazz().setCommittedAssignment(a);
+		
+		invalidateRoomOccupancyIndex(hibSession);
 
 		return true;
 	}
@@ -652,21 +733,10 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 	}
 	
 	private void deleteObjects(org.hibernate.Session hibSession, String objectName, String idQuery) {
-		Iterator idIterator = hibSession.createQuery(idQuery).setLong("solutionId",getUniqueId()).iterate();
-		StringBuffer ids = new StringBuffer();
-		int idx = 0;
-		while (idIterator.hasNext()) {
-			ids.append(idIterator.next()); idx++;
-			if (idx==100) {
-				hibSession.createQuery("delete "+objectName+" as x where x.uniqueId in ("+ids+")").executeUpdate();
-				ids = new StringBuffer();
-				idx = 0;
-			} else if (idIterator.hasNext()) {
-				ids.append(",");
-			}
-		}
-		if (idx>0)
-			hibSession.createQuery("delete "+objectName+" as x where x.uniqueId in ("+ids+")").executeUpdate();
+		List<Long> ids = (List<Long>)hibSession.createQuery(idQuery).setLong("solutionId",getUniqueId()).list();
+		for (int idx = 0; idx < ids.size(); idx += 1000)
+			hibSession.createQuery("delete "+objectName+" as x where x.uniqueId in (:ids)")
+				.setParameterList("ids", ids.subList(idx, Math.min(idx + 1000, ids.size()))).executeUpdate();
 	}
 	
 	public void delete(org.hibernate.Session hibSession) {
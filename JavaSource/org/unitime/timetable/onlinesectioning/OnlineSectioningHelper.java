@@ -271,6 +271,41 @@ public class OnlineSectioningHelper {
     	iMessageHandlers.add(h);
     }
     
+    /**
+     * Helper to be used by a worker thread (e.g., of a mass update of students). The worker helper has the same user and cache mode,
+     * but its own hibernate session (that is to be closed by the worker) and its own log (see {@link OnlineSectioningHelper#merge(OnlineSectioningHelper)}).
+     * Messages are passed to the message handlers of this helper (one message at a time).
+     */
+    public OnlineSectioningHelper createWorkerHelper() {
+    	OnlineSectioningHelper helper = new OnlineSectioningHelper(new _RootDAO().createNewSession(), iUser, iCacheMode);
+    	if (iCacheMode != null) helper.getHibSession().setCacheMode(iCacheMode);
+    	final OnlineSectioningHelper parent = this;
+    	helper.addMessageHandler(new MessageHandler() {
+			@Override
+			public void onMessage(Message message) {
+				synchronized (parent) {
+					for (MessageHandler h: parent.iMessageHandlers)
+						h.onMessage(message);
+				}
+			}
+			
+			@Override
+			public boolean isDebugEnabled() {
+				return parent.isDebugEnabled();
+			}
+		});
+    	return helper;
+    }
+    
+    /**
+     * Merge actions and messages logged by a worker helper (see {@link OnlineSectioningHelper#createWorkerHelper()}) into the log of this helper
+     */
+    public synchronized void merge(OnlineSectioningHelper worker) {
+    	OnlineSectioningLog.Log log = worker.getLog();
+    	iLog.addAllAction(log.getActionList());
+    	iLog.addAllMessage(log.getMessageList());
+    }
+    
     public static class Message {
     	private LogLevel iLevel;
     	private String iMessage;
@@ -25,29 +25,40 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.CacheMode;
+import org.hibernate.Transaction;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Session;
-import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.dao.OnlineSectioningLogDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
-import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.util.AuditLogWriter;
 
 /**
+ * Online sectioning log writer. Actions are recorded using the {@link AuditLogWriter} (records over the
+ * {@link ApplicationProperty#OnlineSchedulingLogLimit} are dropped and counted) and persisted
+ * as soon as there is at least {@link ApplicationProperty#OnlineSchedulingLogBatchSize} of them, or when
+ * {@link ApplicationProperty#OnlineSchedulingLogFlushInterval} elapses. Missing student external ids are
+ * looked up in bulk, the records are inserted using JDBC batches (see hibernate.jdbc.batch_size).
+ * When {@link ApplicationProperty#OnlineSchedulingLogFile} is set, the actions are also written into the file by the writer thread
+ * as soon as they are taken from the queue, independently of the database (the file is flushed once per chunk).
+ * Actions dropped because of the limit are counted in the file.
+ * 
  * @author Tomas Muller
  */
-public class OnlineSectioningLogger extends Thread {
+public class OnlineSectioningLogger extends AuditLogWriter<OnlineSectioningLog.Action> {
 	private static Log sLog = LogFactory.getLog(OnlineSectioningLogger.class);
-	private List<OnlineSectioningLog.Action> iActions = new Vector<OnlineSectioningLog.Action>();
-	private boolean iActive = false;
 	private boolean iEnabled = false;
-	private int iLogLimit = -1;
+	private int iBatchSize = 100;
 	private PrintWriter iOut = null;
 	
 	private static OnlineSectioningLogger sInstance = null;
@@ -66,20 +77,15 @@ public class OnlineSectioningLogger extends Thread {
 	
 	public static void stopLogger() {
 		if (sInstance != null) {
-			sInstance.iActive = false;
 			sInstance.interrupt();
-			try {
-				sInstance.join();
-			} catch (InterruptedException e) {}
 			sInstance = null;
 		}
 	}
 	
 	private OnlineSectioningLogger() {
-		super("OnlineSectioningLogger");
-		setDaemon(true);
+		super("OnlineSectioningLogger", ApplicationProperty.OnlineSchedulingLogLimit.intValue(), ApplicationProperty.OnlineSchedulingLogBatchSize.intValue(), ApplicationProperty.OnlineSchedulingLogFlushInterval.intValue());
 		iEnabled = ApplicationProperty.OnlineSchedulingLoggingEnabled.isTrue(); 
-		iLogLimit = ApplicationProperty.OnlineSchedulingLogLimit.intValue();
+		iBatchSize = Math.max(1, ApplicationProperty.OnlineSchedulingLogBatchSize.intValue());
 		try {
 			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null)
 				iOut = new PrintWriter(new FileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
@@ -90,92 +96,116 @@ public class OnlineSectioningLogger extends Thread {
 	
 	public boolean isEnabled() { return iEnabled; }
 	public void setEnabled(boolean enabled) { iEnabled = enabled; }
-	public boolean isActive() { return iActive; }
 
 	public void record(OnlineSectioningLog.Log log) {
 		if (log == null || !isEnabled() || !isActive()) return;
 		for (OnlineSectioningLog.Action action: log.getActionList()) {
 			if (action.hasStartTime() && action.hasStudent() && action.hasOperation() && action.hasSession()) {
-				synchronized (iActions) {
-					if (iLogLimit <= 0 || iActions.size() < iLogLimit)
-						iActions.add(action);
-				}
-				if (iOut != null) {
-					synchronized (iOut) {
-						iOut.print(OnlineSectioningLog.Log.newBuilder().addAction(action).build().toString());
-						iOut.flush();
-					}
-				}
+				add(action);
 			}
 		}
 	}
 	
-	public void run() {
-		sLog.info("Online Sectioning Logger is up.");
+	@Override
+	protected void stopped() {
+		if (iOut != null) {
+			iOut.flush(); iOut.close();
+		}
+	}
+	
+	@Override
+	protected byte[] toBytes(OnlineSectioningLog.Action action) {
+		return action.toByteArray();
+	}
+	
+	@Override
+	protected OnlineSectioningLog.Action fromBytes(byte[] data) throws IOException {
+		return OnlineSectioningLog.Action.parseFrom(data);
+	}
+	
+	@Override
+	protected void persist(List<OnlineSectioningLog.Action> actionsToSave) {
+		sLog.debug("Persisting " + actionsToSave.size() + " actions...");
+		org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
+		hibSession.setCacheMode(CacheMode.IGNORE);
+		Transaction tx = hibSession.beginTransaction();
 		try {
-			iActive = true;
-			while (true) {
-				try {
-					sleep(60000);
-				} catch (InterruptedException e) {
+			Map<Long, String> externalIds = getStudentExternalIds(actionsToSave, hibSession);
+			Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
+			int count = 0;
+			for (OnlineSectioningLog.Action q: actionsToSave) {
+				org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
+				log.setAction(q.toByteArray());
+				log.setOperation(q.getOperation());
+				String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
+				if (studentExternalId == null || studentExternalId.isEmpty()) {
+					studentExternalId = externalIds.get(q.getStudent().getUniqueId());
+					if (studentExternalId == null || studentExternalId.isEmpty()) continue;
 				}
-				List<OnlineSectioningLog.Action> actionsToSave = null;
-				synchronized (iActions) {
-					if (!iActions.isEmpty()) {
-						actionsToSave = new ArrayList<OnlineSectioningLog.Action>(iActions);
-						iActions.clear();
-					}
+				log.setStudent(studentExternalId);
+				log.setTimeStamp(new Date(q.getStartTime()));
+				if (q.hasResult())
+					log.setResult(q.getResult().getNumber());
+				if (q.hasUser() && q.getUser().hasExternalId())
+					log.setUser(q.getUser().getExternalId());
+				Long sessionId = q.getSession().getUniqueId();
+				Session session = sessions.get(sessionId);
+				if (session == null) {
+					session = SessionDAO.getInstance().get(sessionId, hibSession);
+					sessions.put(sessionId, session);
 				}
-				try {
-					if (actionsToSave != null) {
-						sLog.debug("Persisting " + actionsToSave.size() + " actions...");
-						if (iLogLimit > 0 && actionsToSave.size() >= iLogLimit)
-							sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages have been dropped.");
-						org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						try {
-							Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
-							for (OnlineSectioningLog.Action q: actionsToSave) {
-								org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
-								log.setAction(q.toByteArray());
-								log.setOperation(q.getOperation());
-								String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
-								if (studentExternalId == null || studentExternalId.isEmpty()) {
-									Student student = StudentDAO.getInstance().get(q.getStudent().getUniqueId(), hibSession);
-									if (student == null) continue;
-									studentExternalId = student.getExternalUniqueId();
-								}
-								log.setStudent(studentExternalId);
-								log.setTimeStamp(new Date(q.getStartTime()));
-								if (q.hasResult())
-									log.setResult(q.getResult().getNumber());
-								if (q.hasUser() && q.getUser().hasExternalId())
-									log.setUser(q.getUser().getExternalId());
-								Long sessionId = q.getSession().getUniqueId();
-								Session session = sessions.get(sessionId);
-								if (session == null) {
-									session = SessionDAO.getInstance().get(sessionId, hibSession);
-									sessions.put(sessionId, session);
-								}
-								log.setSession(session);
-								hibSession.save(log);
-							}
-							hibSession.flush();
-						} finally {
-							hibSession.close();
-						}
-					}
-				} catch (Throwable t) {
-					sLog.warn("Failed to save " + actionsToSave.size() + " log actions: " + t.getMessage(), t);
+				log.setSession(session);
+				hibSession.save(log);
+				if (++count % iBatchSize == 0) {
+					hibSession.flush(); hibSession.clear();
 				}
-				if (!iActive) break;
 			}
-		} catch (Throwable t) {
-			sLog.error("Online Sectioning Logger failed: " + t.getMessage(), t);
+			hibSession.flush();
+			tx.commit();
+		} catch (RuntimeException e) {
+			tx.rollback();
+			throw e;
 		} finally {
-			iActive = false;
-			if (iOut != null) { iOut.flush(); iOut.close(); }
+			hibSession.close();
 		}
-		sLog.info("Online Sectioning Logger is down.");	}
+	}
+	
+	@Override
+	protected void drained(List<OnlineSectioningLog.Action> actions) {
+		if (iOut != null) {
+			for (OnlineSectioningLog.Action action: actions)
+				iOut.print(OnlineSectioningLog.Log.newBuilder().addAction(action).build().toString());
+			iOut.flush();
+		}
+	}
+	
+	@Override
+	protected void dropped(long count) {
+		if (iOut != null) {
+			iOut.println("# " + count + " actions have been dropped (limit of unpersisted actions reached)");
+			iOut.flush();
+		}
+	}
+	
+	private Map<Long, String> getStudentExternalIds(List<OnlineSectioningLog.Action> actions, org.hibernate.Session hibSession) {
+		Set<Long> studentIds = new HashSet<Long>();
+		for (OnlineSectioningLog.Action q: actions)
+			if (!q.getStudent().hasExternalId() || q.getStudent().getExternalId().isEmpty())
+				if (q.getStudent().hasUniqueId()) studentIds.add(q.getStudent().getUniqueId());
+		Map<Long, String> externalIds = new HashMap<Long, String>();
+		if (studentIds.isEmpty()) return externalIds;
+		List<Long> ids = new ArrayList<Long>(1000);
+		for (Iterator<Long> i = studentIds.iterator(); i.hasNext(); ) {
+			ids.add(i.next());
+			if (ids.size() == 1000 || !i.hasNext()) {
+				for (Object[] o: (List<Object[]>)hibSession.createQuery(
+						"select s.uniqueId, s.externalUniqueId from Student s where s.uniqueId in :studentIds")
+						.setParameterList("studentIds", ids).list())
+					externalIds.put((Long)o[0], (String)o[1]);
+				ids.clear();
+			}
+		}
+		return externalIds;
+	}
 
 }
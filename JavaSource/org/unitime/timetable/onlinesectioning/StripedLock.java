@@ -0,0 +1,300 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Exclusive lock on a set of ids (offering ids and negated student ids).
+ * The ids are hashed into a fixed number of stripes, each with its own monitor. A lock is acquired stripe by stripe in the
+ * ascending order of the stripe index (so that two lock requests cannot deadlock), and a release only wakes up
+ * the threads that are waiting on the stripes that were released.
+ * Only the ids that are currently locked are kept in memory.
+ * 
+ * @author Tomas Muller
+ */
+public class StripedLock {
+	private Log iLog;
+	private Stripe[] iStripes;
+	private int iMask;
+	private Semaphore iAllLock = new Semaphore(1, true);
+	private AtomicLong iAcquired = new AtomicLong(0), iContended = new AtomicLong(0), iWaitTime = new AtomicLong(0), iMaxWaitTime = new AtomicLong(0);
+
+	public StripedLock(int nrStripes) {
+		iLog = LogFactory.getLog(StripedLock.class.getName() + ".lock");
+		init(nrStripes);
+	}
+
+	public StripedLock(AcademicSessionInfo session, int nrStripes) {
+		iLog = LogFactory.getLog(StripedLock.class.getName() + ".lock[" + session.toCompactString() + "]");
+		init(nrStripes);
+	}
+
+	private void init(int nrStripes) {
+		int size = 1;
+		while (size < nrStripes) size <<= 1;
+		iStripes = new Stripe[size];
+		for (int i = 0; i < size; i++)
+			iStripes[i] = new Stripe();
+		iMask = size - 1;
+	}
+
+	private int stripe(Long id) {
+		long h = id.longValue() * 0x9E3779B97F4A7C15l;
+		return ((int)(h ^ (h >>> 32))) & iMask;
+	}
+
+	public Unlock lock(Long... ids) {
+		List<Long> list = new ArrayList<Long>(ids.length);
+		for (Long id: ids)
+			list.add(id);
+		return lock(list);
+	}
+
+	public Unlock lock(Collection<Long> ids) {
+		if (ids == null || ids.isEmpty()) return new Unlock(new TreeMap<Integer, Set<Long>>());
+		if (iLog.isDebugEnabled()) iLog.debug("Locking " + ids + " ...");
+		TreeMap<Integer, Set<Long>> stripes = new TreeMap<Integer, Set<Long>>();
+		for (Long id: ids) {
+			int idx = stripe(id);
+			Set<Long> set = stripes.get(idx);
+			if (set == null) {
+				set = new HashSet<Long>();
+				stripes.put(idx, set);
+			}
+			set.add(id);
+		}
+		long t0 = System.nanoTime();
+		boolean contended = false;
+		for (Map.Entry<Integer, Set<Long>> e: stripes.entrySet())
+			if (iStripes[e.getKey()].lock(e.getValue())) contended = true;
+		record(contended, System.nanoTime() - t0);
+		if (iLog.isDebugEnabled()) iLog.debug("Locked: " + ids);
+		return new Unlock(stripes);
+	}
+
+	public UnlockAll lockAll() {
+		iLog.debug("Locking all ...");
+		long t0 = System.nanoTime();
+		iAllLock.acquireUninterruptibly();
+		boolean contended = false;
+		for (Stripe stripe: iStripes)
+			if (stripe.lockAll()) contended = true;
+		record(contended, System.nanoTime() - t0);
+		iLog.debug("Locked: all");
+		return new UnlockAll();
+	}
+
+	public void unlockAll() {
+		iLog.debug("Unlocking all ...");
+		for (int i = iStripes.length - 1; i >= 0; i--)
+			iStripes[i].unlockAll();
+		iAllLock.release();
+		iLog.debug("Unlocked: all");
+	}
+
+	private void unlock(TreeMap<Integer, Set<Long>> stripes) {
+		if (stripes.isEmpty()) return;
+		if (iLog.isDebugEnabled()) iLog.debug("Unlocking " + stripes.values() + " ...");
+		for (Map.Entry<Integer, Set<Long>> e: stripes.descendingMap().entrySet())
+			iStripes[e.getKey()].unlock(e.getValue());
+		if (iLog.isDebugEnabled()) iLog.debug("Unlocked: " + stripes.values());
+	}
+
+	private void record(boolean contended, long waitTime) {
+		iAcquired.incrementAndGet();
+		if (contended) {
+			iContended.incrementAndGet();
+			iWaitTime.addAndGet(waitTime);
+			long max = iMaxWaitTime.get();
+			while (waitTime > max && !iMaxWaitTime.compareAndSet(max, waitTime))
+				max = iMaxWaitTime.get();
+		}
+	}
+
+	public Set<Long> locked() {
+		Set<Long> ret = new TreeSet<Long>();
+		for (Stripe stripe: iStripes)
+			stripe.locked(ret);
+		return ret;
+	}
+
+	public boolean isLocked(Long id) {
+		return iStripes[stripe(id)].isLocked(id);
+	}
+
+	/** Number of stripes */
+	public int getNrStripes() { return iStripes.length; }
+
+	/** Number of acquired locks (including lock all) */
+	public long getNrAcquired() { return iAcquired.get(); }
+
+	/** Number of locks that had to wait for another lock to be released */
+	public long getNrContended() { return iContended.get(); }
+
+	/** Total time spent waiting for a lock in milliseconds */
+	public double getWaitTime() { return iWaitTime.get() / 1000000.0; }
+
+	/** Longest time spent waiting for a lock in milliseconds */
+	public double getMaxWaitTime() { return iMaxWaitTime.get() / 1000000.0; }
+
+	/** Number of threads currently waiting for a lock */
+	public int getNrWaiting() {
+		int waiting = 0;
+		for (Stripe stripe: iStripes)
+			waiting += stripe.iWaiting;
+		return waiting;
+	}
+
+	@Override
+	public String toString() {
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		long acquired = getNrAcquired(), contended = getNrContended();
+		return "StripedLock{stripes=" + getNrStripes() + ", acquired=" + acquired +
+				", contended=" + contended + (acquired == 0 ? "" : " (" + df.format(100.0 * contended / acquired) + "%)") +
+				", avgWait=" + (contended == 0 ? "0" : df.format(getWaitTime() / contended)) + " ms" +
+				", maxWait=" + df.format(getMaxWaitTime()) + " ms, waiting=" + getNrWaiting() + "}";
+	}
+
+	private static class Stripe {
+		private ReentrantLock iLock = new ReentrantLock();
+		private Condition iReleased = iLock.newCondition();
+		private Set<Long> iLocked = new HashSet<Long>();
+		private boolean iAll = false;
+		private volatile int iWaiting = 0;
+
+		private boolean canLock(Set<Long> ids) {
+			if (iAll) return false;
+			if (iLocked.isEmpty()) return true;
+			for (Long id: ids)
+				if (iLocked.contains(id)) return false;
+			return true;
+		}
+
+		private boolean lock(Set<Long> ids) {
+			iLock.lock();
+			try {
+				boolean contended = false;
+				while (!canLock(ids)) {
+					contended = true;
+					iWaiting ++;
+					iReleased.awaitUninterruptibly();
+					iWaiting --;
+				}
+				iLocked.addAll(ids);
+				return contended;
+			} finally {
+				iLock.unlock();
+			}
+		}
+
+		private void unlock(Set<Long> ids) {
+			iLock.lock();
+			try {
+				iLocked.removeAll(ids);
+				if (iWaiting > 0) iReleased.signalAll();
+			} finally {
+				iLock.unlock();
+			}
+		}
+
+		private boolean lockAll() {
+			iLock.lock();
+			try {
+				boolean contended = false;
+				while (iAll || !iLocked.isEmpty()) {
+					contended = true;
+					iWaiting ++;
+					iReleased.awaitUninterruptibly();
+					iWaiting --;
+				}
+				iAll = true;
+				return contended;
+			} finally {
+				iLock.unlock();
+			}
+		}
+
+		private void unlockAll() {
+			iLock.lock();
+			try {
+				iAll = false;
+				if (iWaiting > 0) iReleased.signalAll();
+			} finally {
+				iLock.unlock();
+			}
+		}
+
+		private void locked(Set<Long> ret) {
+			iLock.lock();
+			try {
+				ret.addAll(iLocked);
+			} finally {
+				iLock.unlock();
+			}
+		}
+
+		private boolean isLocked(Long id) {
+			iLock.lock();
+			try {
+				return iLocked.contains(id);
+			} finally {
+				iLock.unlock();
+			}
+		}
+	}
+
+	public class Unlock implements OnlineSectioningServer.Lock {
+		private TreeMap<Integer, Set<Long>> iStripeIds;
+
+		private Unlock(TreeMap<Integer, Set<Long>> stripeIds) {
+			iStripeIds = stripeIds;
+		}
+
+		public void release() {
+			unlock(iStripeIds);
+		}
+	}
+
+	public class UnlockAll implements OnlineSectioningServer.Lock {
+
+		private UnlockAll() {
+		}
+
+		public void release() {
+			unlockAll();
+		}
+	}
+}
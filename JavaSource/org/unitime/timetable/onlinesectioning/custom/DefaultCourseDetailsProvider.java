@@ -44,8 +44,8 @@ import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.model.CourseOffering;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.custom.purdue.BannerTermProvider;
+import org.unitime.timetable.util.TemplateEngine;
 
-import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
@@ -110,11 +110,7 @@ public class DefaultCourseDetailsProvider implements CourseDetailsProvider, Cour
 			return MSG.infoCourseDetailsNotAvailable(subject, courseNbr);
 
 		try {
-			Configuration cfg = new Configuration();
-			cfg.setClassForTemplateLoading(DefaultCourseDetailsProvider.class, "");
-			cfg.setLocale(Localization.getJavaLocale());
-			cfg.setOutputEncoding("utf-8");
-			Template template = cfg.getTemplate("details.ftl");
+			Template template = TemplateEngine.getTemplate(DefaultCourseDetailsProvider.class, "", "details.ftl");
 			Map<String, Object> input = new HashMap<String, Object>();
 			input.put("msg", MSG);
 			input.put("const", CONST);
@@ -29,8 +29,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
-import org.unitime.timetable.onlinesectioning.MultiLock;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.StripedLock;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
@@ -41,7 +41,7 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
  */
 public abstract class AbstractLockingServer extends AbstractServer {
 	private ReentrantReadWriteLock iLock = new ReentrantReadWriteLock();
-	private MultiLock iMultiLock;
+	private StripedLock iStripedLock;
 	private Map<Long, Lock> iOfferingLocks = new Hashtable<Long, Lock>();
 	
 	public AbstractLockingServer(OnlineSectioningServerContext context) throws SectioningException {
@@ -50,10 +50,22 @@ public abstract class AbstractLockingServer extends AbstractServer {
 	
 	@Override
 	protected void load(OnlineSectioningServerContext context) {
-		iMultiLock = new MultiLock(getAcademicSession());
+		iStripedLock = new StripedLock(getAcademicSession(), getConfig().getPropertyInt("Locking.Stripes", 1024));
 		super.load(context);
 	}
 	
+	@Override
+	public void unload() {
+		super.unload();
+		if (iStripedLock != null)
+			iLog.info("Locking: " + iStripedLock);
+	}
+	
+	/** Student and offering lock, providing contention statistics (see {@link StripedLock#getNrContended()}, {@link StripedLock#getWaitTime()}, etc.) */
+	public StripedLock getStudentOfferingLock() {
+		return iStripedLock;
+	}
+	
 	@Override
 	public Lock readLock() {
 		if (iLock == null)
@@ -129,7 +141,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		} finally {
 			iLock.readLock().unlock();
 		}
-		return iMultiLock.lock(ids);
+		return iStripedLock.lock(ids);
 	}
 	
 	@Override
@@ -152,7 +164,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		} finally {
 			iLock.readLock().unlock();
 		}
-		return iMultiLock.lock(ids);
+		return iStripedLock.lock(ids);
 	}
 	
 	private Long getOfferingIdFromCourseName(String courseName) {
@@ -198,7 +210,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		} finally {
 			iLock.readLock().unlock();
 		}
-		return iMultiLock.lock(ids);
+		return iStripedLock.lock(ids);
 	}
 
 	@Override
@@ -213,7 +225,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		synchronized (iOfferingLocks) {
 			if (iOfferingLocks.containsKey(offeringId)) return;
 		}
-		Lock lock = iMultiLock.lock(offeringId);
+		Lock lock = iStripedLock.lock(offeringId);
 		synchronized (iOfferingLocks) {
 			if (iOfferingLocks.containsKey(offeringId))
 				lock.release();
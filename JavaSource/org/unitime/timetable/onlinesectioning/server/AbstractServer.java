@@ -32,7 +32,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -48,7 +47,6 @@ import org.cpsolver.studentsct.online.expectations.OverExpectedCriterion;
 import org.cpsolver.studentsct.online.selection.StudentSchedulingAssistantWeights;
 import org.hibernate.CacheMode;
 import org.unitime.localization.impl.Localization;
-import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
 import org.unitime.timetable.gwt.shared.SectioningException;
@@ -60,10 +58,10 @@ import org.unitime.timetable.model.SolverPredefinedSetting;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.TravelTime;
 import org.unitime.timetable.model.dao.SessionDAO;
-import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.CacheElement;
 import org.unitime.timetable.onlinesectioning.HasCacheMode;
+import org.unitime.timetable.onlinesectioning.HasExecutionKeys;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
@@ -77,7 +75,6 @@ import org.unitime.timetable.onlinesectioning.model.XTime;
 import org.unitime.timetable.onlinesectioning.updates.CheckAllOfferingsAction;
 import org.unitime.timetable.onlinesectioning.updates.PersistExpectedSpacesAction;
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
-import org.unitime.timetable.util.Formats;
 import org.unitime.timetable.util.MemoryCounter;
 
 /**
@@ -90,7 +87,6 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	private DataProperties iConfig = null;
 	
 	protected AsyncExecutor iExecutor;
-	private Queue<Runnable> iExecutorQueue = new LinkedList<Runnable>();
 	private HashSet<CacheElement<Long>> iOfferingsToPersistExpectedSpaces = new HashSet<CacheElement<Long>>();
 	private static ThreadLocal<LinkedList<OnlineSectioningHelper>> sHelper = new ThreadLocal<LinkedList<OnlineSectioningHelper>>();
 	protected Map<String, Object> iProperties = new HashMap<String, Object>();
@@ -109,7 +105,10 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			AcademicSessionInfo academicSession = new AcademicSessionInfo(session);
 			iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + academicSession.toCompactString() + "]");
 			iProperties.put("AcademicSession", academicSession);
-			iExecutor = new AsyncExecutor(academicSession);
+			iExecutor = new AsyncExecutor(academicSession, iLog,
+					iConfig.getPropertyInt("AsyncExecutor.Threads", 4),
+					iConfig.getPropertyInt("AsyncExecutor.QueueSize", 10000),
+					iConfig.getPropertyLong("AsyncExecutor.QueueTimeout", 1000));
 			iExecutor.start();
 		} finally {
 			hibSession.close();
@@ -188,10 +187,23 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	@Override
 	public long getMemUsage() {
 		Runtime rt = Runtime.getRuntime();
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		Map<String, String> info = new HashMap<String, String>();
+		long total = estimateMemUsage(info);
+		iLog.info("Total Allocated " + df.format(total / 1024.0) + " kB (of " + df.format((rt.totalMemory() - rt.freeMemory()) / 1048576.0) + " MB), details: " + ToolBox.dict2string(info, 2));
+		return total;
+	}
+	
+	/**
+	 * Estimate memory used by the server, by going through all its fields (larger maps and collections are sampled).
+	 * Servers that keep track of their memory usage as the data are changed can override this method.
+	 * @param info details (field name, formatted size) to be logged
+	 * @return estimated memory usage in bytes
+	 */
+	protected long estimateMemUsage(Map<String, String> info) {
 		MemoryCounter mc = new MemoryCounter();
 		DecimalFormat df = new DecimalFormat("#,##0.00");
 		long total = 0; // mc.estimate(this);
-		Map<String, String> info = new HashMap<String, String>();
 		Class clazz = getClass();
 		while (clazz != null) {
 			Field[] fields = clazz.getDeclaredFields();
@@ -215,7 +227,6 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			}
 			clazz = clazz.getSuperclass();
 		}
-		iLog.info("Total Allocated " + df.format(total / 1024.0) + " kB (of " + df.format((rt.totalMemory() - rt.freeMemory()) / 1048576.0) + " MB), details: " + ToolBox.dict2string(info, 2));
 		return total;
 	}
 	
@@ -311,6 +322,19 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			sHelper.remove();
 	}
 	
+	/**
+	 * Bind the given helper to the current thread as the current helper of the server, until the returned lock is released.
+	 * To be used by worker threads that process a part of an action on behalf of the thread executing it (e.g., {@link org.unitime.timetable.onlinesectioning.updates.StudentUpdateBatch}).
+	 */
+	public Lock bindHelper(OnlineSectioningHelper helper) {
+		setCurrentHelper(helper);
+		return new Lock() {
+			public void release() {
+				releaseCurrentHelper();
+			}
+		};
+	}
+	
 	protected OnlineSectioningLog.Entity getSystemUser() {
 		return OnlineSectioningLog.Entity.newBuilder()
 				.setExternalId(StudentClassEnrollment.SystemChange.SYSTEM.name())
@@ -396,71 +420,34 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	@Override
 	public <E> void execute(final OnlineSectioningAction<E> action, final OnlineSectioningLog.Entity user, final ServerCallback<E> callback) throws SectioningException {
 		final String locale = Localization.getLocale();
-		synchronized (iExecutorQueue) {
-			iExecutorQueue.offer(new Runnable() {
-				@Override
-				public void run() {
-					Localization.setLocale(locale);
-					try {
-						callback.onSuccess(execute(action, user));
-					} catch (Throwable t) {
-						callback.onFailure(t);
-					}
-				}
-				
-				@Override
-				public String toString() {
-					return action.name();
+		iExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Localization.setLocale(locale);
+				try {
+					callback.onSuccess(execute(action, user));
+				} catch (Throwable t) {
+					callback.onFailure(t);
 				}
-			});
-			iExecutorQueue.notify();
-		}
+			}
+			
+			@Override
+			public String toString() {
+				return action.name();
+			}
+		}, action instanceof HasExecutionKeys ? ((HasExecutionKeys)action).getExecutionKeys() : null);
 	}
 	
-	public class AsyncExecutor extends Thread {
-		private boolean iStop = false;
-		
-		public AsyncExecutor(AcademicSessionInfo session) {
-			setName("AsyncExecutor[" + session + "]");
-			setDaemon(true);
-		}
-		
-		public void run() {
-			try {
-				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
-				Runnable job;
-				while (!iStop) {
-					synchronized (iExecutorQueue) {
-						job = iExecutorQueue.poll();
-						if (job == null) {
-							try {
-								iLog.info("Executor is waiting for a new job...");
-								iExecutorQueue.wait();
-							} catch (InterruptedException e) {}
-							continue;
-						}		
-					}
-					job.run();
-					if (_RootDAO.closeCurrentThreadSessions())
-						iLog.debug("Job " + job + " did not close current-thread hibernate session.");
-				}
-				iLog.info("Executor stopped.");
-			} finally {
-				ApplicationProperties.setSessionId(null);
-				Localization.removeLocale();
-				Formats.removeFormats();
-			}
-		}
-		
+	/** Asynchronous executor of the server, providing queue and timing statistics (see {@link AsyncExecutor#getQueueSize()}, {@link AsyncExecutor#getAverageWaitTime()}, etc.) */
+	public AsyncExecutor getExecutor() {
+		return iExecutor;
 	}
 	
 	@Override
 	public void unload() {
 		if (iExecutor != null) {
-			iExecutor.iStop = true;
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.notify();
-			}
+			iExecutor.stop();
+			iLog.info("Executor: " + iExecutor);
 		}
 		if (iMasterThread != null)
 			iMasterThread.dispose();
@@ -641,20 +628,17 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 		
 		private void executeLoadOnMaster() {
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.offer(new Runnable() {
-					@Override
-					public void run() {
-						loadOnMaster(iContext);
-					}
-					
-					@Override
-					public String toString() {
-						return "load-on-master";
-					}
-				});
-				iExecutorQueue.notify();
-			};
+			iExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					loadOnMaster(iContext);
+				}
+				
+				@Override
+				public String toString() {
+					return "load-on-master";
+				}
+			}, null);
 		}
 		
 		@Override
@@ -0,0 +1,284 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
+import org.unitime.timetable.util.Formats;
+
+/**
+ * Asynchronous executor of an online sectioning server. Jobs are executed by a pool of worker threads.
+ * Jobs with execution keys (see {@link org.unitime.timetable.onlinesectioning.HasExecutionKeys}) can run in parallel,
+ * but two jobs sharing a key are always executed in the order in which they were submitted.
+ * A job with no keys is executed alone, after all the jobs submitted before it are finished.<br>
+ * The queue is bounded: when it is full, a submitting thread (that is not one of the workers) waits up to the given
+ * timeout for some space before the job is queued anyway.
+ * 
+ * @author Tomas Muller
+ */
+public class AsyncExecutor {
+	private Log iLog;
+	private AcademicSessionInfo iSession;
+	private LinkedList<Job> iQueue = new LinkedList<Job>();
+	private Set<Long> iRunningKeys = new HashSet<Long>();
+	private int iRunning = 0;
+	private boolean iExclusive = false;
+	private boolean iStop = false;
+	private int iMaxQueueSize;
+	private long iQueueTimeout;
+	private List<Worker> iWorkers = new ArrayList<Worker>();
+	private long iExecuted = 0, iOverflows = 0, iWaitTime = 0, iMaxWaitTime = 0, iExecutionTime = 0;
+
+	public AsyncExecutor(AcademicSessionInfo session, Log log, int nrThreads, int maxQueueSize, long queueTimeout) {
+		iSession = session;
+		iLog = log;
+		iMaxQueueSize = maxQueueSize;
+		iQueueTimeout = queueTimeout;
+		for (int i = 0; i < Math.max(1, nrThreads); i++)
+			iWorkers.add(new Worker(nrThreads <= 1 ? "AsyncExecutor[" + session + "]" : "AsyncExecutor-" + (1 + i) + "[" + session + "]"));
+	}
+
+	public void start() {
+		for (Worker worker: iWorkers)
+			worker.start();
+	}
+
+	public void stop() {
+		synchronized (iQueue) {
+			iStop = true;
+			iQueue.notifyAll();
+		}
+	}
+
+	/**
+	 * Queue a job
+	 * @param job job to be executed
+	 * @param keys execution keys, null or empty if the job is to be executed alone
+	 */
+	public void execute(Runnable job, Collection<Long> keys) {
+		Job j = new Job(job, keys);
+		synchronized (iQueue) {
+			if (iMaxQueueSize > 0 && iQueue.size() >= iMaxQueueSize && !(Thread.currentThread() instanceof Worker)) {
+				long end = System.currentTimeMillis() + iQueueTimeout;
+				long wait;
+				while (!iStop && iQueue.size() >= iMaxQueueSize && (wait = end - System.currentTimeMillis()) > 0) {
+					try {
+						iQueue.wait(wait);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				if (iQueue.size() >= iMaxQueueSize) {
+					iOverflows ++;
+					iLog.warn("Executor queue is full (" + iQueue.size() + " jobs), queuing " + job + " anyway.");
+				}
+			}
+			iQueue.offer(j);
+			iQueue.notifyAll();
+		}
+	}
+
+	private Job next() {
+		synchronized (iQueue) {
+			while (!iStop) {
+				Job job = pick();
+				if (job != null) {
+					iRunning ++;
+					if (job.isExclusive())
+						iExclusive = true;
+					else
+						iRunningKeys.addAll(job.getKeys());
+					long wait = System.currentTimeMillis() - job.getCreated();
+					iWaitTime += wait;
+					if (wait > iMaxWaitTime) iMaxWaitTime = wait;
+					iQueue.notifyAll();
+					return job;
+				}
+				try {
+					if (iLog.isDebugEnabled()) iLog.debug("Executor is waiting for a new job...");
+					iQueue.wait();
+				} catch (InterruptedException e) {}
+			}
+			return null;
+		}
+	}
+
+	private Job pick() {
+		if (iExclusive || iQueue.isEmpty()) return null;
+		Set<Long> blocked = new HashSet<Long>(iRunningKeys);
+		for (Iterator<Job> i = iQueue.iterator(); i.hasNext(); ) {
+			Job job = i.next();
+			if (job.isExclusive()) {
+				// nothing submitted after an exclusive job can start before it
+				if (iRunning > 0 || !blocked.isEmpty()) return null;
+				i.remove();
+				return job;
+			}
+			if (!job.isBlocked(blocked)) {
+				i.remove();
+				return job;
+			}
+			blocked.addAll(job.getKeys());
+		}
+		return null;
+	}
+
+	private void done(Job job, long executionTime) {
+		synchronized (iQueue) {
+			iRunning --;
+			if (job.isExclusive())
+				iExclusive = false;
+			else
+				iRunningKeys.removeAll(job.getKeys());
+			iExecuted ++;
+			iExecutionTime += executionTime;
+			iQueue.notifyAll();
+		}
+	}
+
+	/** Number of jobs waiting in the queue */
+	public int getQueueSize() {
+		synchronized (iQueue) {
+			return iQueue.size();
+		}
+	}
+
+	/** Number of jobs that are being executed */
+	public int getNrRunning() {
+		synchronized (iQueue) {
+			return iRunning;
+		}
+	}
+
+	/** Number of executed jobs */
+	public long getNrExecuted() {
+		synchronized (iQueue) {
+			return iExecuted;
+		}
+	}
+
+	/** Number of jobs that were queued over the queue limit */
+	public long getNrOverflows() {
+		synchronized (iQueue) {
+			return iOverflows;
+		}
+	}
+
+	/** Average time a job spent in the queue (in milliseconds) */
+	public double getAverageWaitTime() {
+		synchronized (iQueue) {
+			return iExecuted == 0 ? 0.0 : ((double)iWaitTime) / iExecuted;
+		}
+	}
+
+	/** Longest time a job spent in the queue (in milliseconds) */
+	public long getMaxWaitTime() {
+		synchronized (iQueue) {
+			return iMaxWaitTime;
+		}
+	}
+
+	/** Average execution time of a job (in milliseconds) */
+	public double getAverageExecutionTime() {
+		synchronized (iQueue) {
+			return iExecuted == 0 ? 0.0 : ((double)iExecutionTime) / iExecuted;
+		}
+	}
+
+	@Override
+	public String toString() {
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		synchronized (iQueue) {
+			return "AsyncExecutor{threads=" + iWorkers.size() + ", queued=" + iQueue.size() + ", running=" + iRunning +
+					", executed=" + iExecuted + ", overflows=" + iOverflows +
+					", avgWait=" + df.format(getAverageWaitTime()) + " ms, maxWait=" + iMaxWaitTime + " ms" +
+					", avgExec=" + df.format(getAverageExecutionTime()) + " ms}";
+		}
+	}
+
+	private static class Job {
+		private Runnable iJob;
+		private Set<Long> iKeys;
+		private long iCreated = System.currentTimeMillis();
+
+		Job(Runnable job, Collection<Long> keys) {
+			iJob = job;
+			iKeys = (keys == null ? new HashSet<Long>() : new HashSet<Long>(keys));
+		}
+
+		Runnable getJob() { return iJob; }
+		Set<Long> getKeys() { return iKeys; }
+		long getCreated() { return iCreated; }
+		boolean isExclusive() { return iKeys.isEmpty(); }
+
+		boolean isBlocked(Set<Long> keys) {
+			for (Long key: iKeys)
+				if (keys.contains(key)) return true;
+			return false;
+		}
+
+		@Override
+		public String toString() { return iJob.toString(); }
+	}
+
+	private class Worker extends Thread {
+
+		Worker(String name) {
+			setName(name);
+			setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				ApplicationProperties.setSessionId(iSession.getUniqueId());
+				Job job;
+				while ((job = next()) != null) {
+					long t0 = System.currentTimeMillis();
+					try {
+						job.getJob().run();
+					} catch (Throwable t) {
+						iLog.error("Job " + job + " failed: " + t.getMessage(), t);
+					} finally {
+						done(job, System.currentTimeMillis() - t0);
+					}
+					if (_RootDAO.closeCurrentThreadSessions())
+						iLog.debug("Job " + job + " did not close current-thread hibernate session.");
+				}
+				iLog.info("Executor stopped.");
+			} finally {
+				ApplicationProperties.setSessionId(null);
+				Localization.removeLocale();
+				Formats.removeFormats();
+			}
+		}
+	}
+}
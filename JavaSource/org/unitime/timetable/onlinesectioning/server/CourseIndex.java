@@ -0,0 +1,204 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+
+/**
+ * Prefix index over course names and titles, used to look up courses by a (partial) query
+ * without iterating over all the courses of an academic session.<br>
+ * Course names are indexed under the course name, the course name followed by the title,
+ * and the course name followed by a dash and the title (see {@link XCourseId#matchCourseName(String)}).
+ * Titles are indexed under the title and every suffix of the title that follows a space
+ * (see {@link XCourseId#matchTitle(String)}). All keys are in lower case.<br>
+ * The index has its own read/write lock, so that it can be updated from a cache listener.
+ * The course matcher is only evaluated after the lock is released.
+ * 
+ * @author Tomas Muller
+ */
+public class CourseIndex {
+	private ReentrantReadWriteLock iLock = new ReentrantReadWriteLock();
+	private Map<Long, XCourseId> iCourses = new HashMap<Long, XCourseId>();
+	private NavigableMap<String, Set<XCourseId>> iNames = new TreeMap<String, Set<XCourseId>>();
+	private NavigableMap<String, Set<XCourseId>> iTitles = new TreeMap<String, Set<XCourseId>>();
+
+	public CourseIndex() {}
+
+	public CourseIndex(Collection<? extends XCourseId> courses) {
+		for (XCourseId course: courses)
+			add(course);
+	}
+
+	/** Add a course to the index (an older version of the course with the same id is replaced) */
+	public void add(XCourseId course) {
+		iLock.writeLock().lock();
+		try {
+			XCourseId old = iCourses.put(course.getCourseId(), course);
+			if (old != null) unindex(old);
+			index(course);
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	/** Remove a course from the index */
+	public void remove(XCourseId course) {
+		remove(course.getCourseId());
+	}
+
+	/** Remove a course with the given course offering id from the index */
+	public void remove(Long courseId) {
+		iLock.writeLock().lock();
+		try {
+			XCourseId old = iCourses.remove(courseId);
+			if (old != null) unindex(old);
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	/** Remove all courses from the index */
+	public void clear() {
+		iLock.writeLock().lock();
+		try {
+			iCourses.clear();
+			iNames.clear();
+			iTitles.clear();
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	/** Number of indexed courses */
+	public int size() {
+		iLock.readLock().lock();
+		try {
+			return iCourses.size();
+		} finally {
+			iLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find courses matching the given query, returns the same results as checking
+	 * {@link XCourseId#matchCourseName(String)} and (when the limit is not reached and the query has at least three characters)
+	 * {@link XCourseId#matchTitle(String)} for every course.
+	 */
+	public SubSet<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
+		String queryInLowerCase = query.toLowerCase();
+		SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
+
+		Set<XCourseId> nameMatches = new HashSet<XCourseId>();
+		iLock.readLock().lock();
+		try {
+			for (Set<XCourseId> courses: prefix(iNames, queryInLowerCase).values())
+				nameMatches.addAll(courses);
+		} finally {
+			iLock.readLock().unlock();
+		}
+		for (XCourseId c: nameMatches)
+			if (matcher == null || matcher.match(c)) ret.add(c);
+
+		if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
+			Set<XCourseId> titleMatches = new HashSet<XCourseId>();
+			iLock.readLock().lock();
+			try {
+				for (Set<XCourseId> courses: prefix(iTitles, queryInLowerCase).values())
+					for (XCourseId c: courses)
+						if (!nameMatches.contains(c)) titleMatches.add(c);
+			} finally {
+				iLock.readLock().unlock();
+			}
+			for (XCourseId c: titleMatches)
+				if (matcher == null || matcher.match(c)) ret.add(c);
+		}
+
+		return ret;
+	}
+
+	private static NavigableMap<String, Set<XCourseId>> prefix(NavigableMap<String, Set<XCourseId>> map, String prefix) {
+		return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+	private static List<String> nameKeys(XCourseId course) {
+		List<String> keys = new ArrayList<String>(3);
+		String name = course.getCourseName().toLowerCase();
+		keys.add(name);
+		if (course.getTitle() != null) {
+			String title = course.getTitle().toLowerCase();
+			keys.add(name + " " + title);
+			keys.add(name + " - " + title);
+		}
+		return keys;
+	}
+
+	private static List<String> titleKeys(XCourseId course) {
+		List<String> keys = new ArrayList<String>();
+		if (course.getTitle() == null) return keys;
+		String title = course.getTitle().toLowerCase();
+		keys.add(title);
+		for (int idx = title.indexOf(' '); idx >= 0; idx = title.indexOf(' ', idx + 1))
+			keys.add(title.substring(idx + 1));
+		return keys;
+	}
+
+	private void index(XCourseId course) {
+		for (String key: nameKeys(course))
+			add(iNames, key, course);
+		for (String key: titleKeys(course))
+			add(iTitles, key, course);
+	}
+
+	private void unindex(XCourseId course) {
+		for (String key: nameKeys(course))
+			remove(iNames, key, course);
+		for (String key: titleKeys(course))
+			remove(iTitles, key, course);
+	}
+
+	private static void add(Map<String, Set<XCourseId>> map, String key, XCourseId course) {
+		Set<XCourseId> courses = map.get(key);
+		if (courses == null) {
+			courses = new HashSet<XCourseId>();
+			map.put(key, courses);
+		}
+		courses.add(course);
+	}
+
+	private static void remove(Map<String, Set<XCourseId>> map, String key, XCourseId course) {
+		Set<XCourseId> courses = map.get(key);
+		if (courses != null) {
+			courses.remove(course);
+			if (courses.isEmpty()) map.remove(key);
+		}
+	}
+}
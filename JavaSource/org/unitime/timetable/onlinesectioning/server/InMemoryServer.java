@@ -23,10 +23,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.unitime.timetable.gwt.shared.SectioningException;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
 import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
 import org.unitime.timetable.onlinesectioning.match.StudentMatcher;
@@ -34,6 +39,7 @@ import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
 import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
 import org.unitime.timetable.onlinesectioning.model.XExpectations;
 import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
@@ -45,11 +51,19 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 public class InMemoryServer extends AbstractLockingServer {
 	private Hashtable<Long, XCourseId> iCourseForId = new Hashtable<Long, XCourseId>();
 	private Hashtable<String, TreeSet<XCourseId>> iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+	private CourseIndex iCourseIndex = new CourseIndex();
 	
 	private Hashtable<Long, XStudent> iStudentTable = new Hashtable<Long, XStudent>();
 	private Hashtable<Long, XOffering> iOfferingTable = new Hashtable<Long, XOffering>();
 	private Hashtable<Long, List<XCourseRequest>> iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
 	private Hashtable<Long, XExpectations> iExpectations = new Hashtable<Long, XExpectations>();
+	private Hashtable<Long, XEnrollments> iEnrollments = new Hashtable<Long, XEnrollments>();
+	private MemoryAccounting iMemoryAccounting = new MemoryAccounting();
+	private StudentFilterIndex iStudentFilterIndex = new StudentFilterIndex();
+	private AtomicLong iEpoch = new AtomicLong(0);
+	private volatile ServerSnapshot iSnapshot = null;
+	private ThreadLocal<ServerSnapshot> iThreadSnapshot = new ThreadLocal<ServerSnapshot>();
+	private ConcurrentHashMap<String, Long> iLastChange = new ConcurrentHashMap<String, Long>();
 	
 	public InMemoryServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
@@ -60,17 +74,7 @@ public class InMemoryServer extends AbstractLockingServer {
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
-			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
-			String queryInLowerCase = query.toLowerCase();
-			for (XCourseId c : iCourseForId.values()) {
-				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-			}
-			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
-				for (XCourseId c : iCourseForId.values()) {
-					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-				}
-			}
-			return ret;
+			return iCourseIndex.findCourses(query, limit, matcher);
 		} finally {
 			lock.release();
 		}
@@ -78,6 +82,8 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public Collection<XCourseId> findCourses(CourseMatcher matcher) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.findCourses(matcher, this);
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
@@ -93,6 +99,8 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public Collection<XStudent> findStudents(StudentMatcher matcher) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.findStudents(matcher, this);
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
@@ -135,6 +143,8 @@ public class InMemoryServer extends AbstractLockingServer {
 	
 	@Override
 	public XCourse getCourse(Long courseId) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.getCourse(courseId);
 		Lock lock = readLock();
 		try {
 			return toCourse(iCourseForId.get(courseId));
@@ -145,6 +155,8 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public XStudent getStudent(Long studentId) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.getStudent(studentId);
 		Lock lock = readLock();
 		try {
 			return iStudentTable.get(studentId);
@@ -155,6 +167,8 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public XOffering getOffering(Long offeringId) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.getOffering(offeringId);
 		Lock lock = readLock();
 		try {
 			return iOfferingTable.get(offeringId);
@@ -165,6 +179,8 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public Collection<XCourseRequest> getRequests(Long offeringId) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.getRequests(offeringId);
 		Lock lock = readLock();
 		try {
 			return iOfferingRequests.get(offeringId);
@@ -173,8 +189,28 @@ public class InMemoryServer extends AbstractLockingServer {
 		}		
 	}
 
+	@Override
+	public XEnrollments getEnrollments(Long offeringId) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.getEnrollments(offeringId);
+		Lock lock = readLock();
+		try {
+			XEnrollments enrollments = iEnrollments.get(offeringId);
+			if (enrollments == null) {
+				enrollments = new XEnrollments(offeringId, iOfferingRequests.get(offeringId));
+				iEnrollments.put(offeringId, enrollments);
+				iMemoryAccounting.updateEnrollments(offeringId, enrollments);
+			}
+			return enrollments;
+		} finally {
+			lock.release();
+		}
+	}
+
 	@Override
 	public XExpectations getExpectations(Long offeringId) {
+		ServerSnapshot snapshot = iThreadSnapshot.get();
+		if (snapshot != null) return snapshot.getExpectations(offeringId);
 		Lock lock = readLock();
 		try {
 			XExpectations expectations = iExpectations.get(offeringId);
@@ -186,9 +222,12 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public void update(XExpectations expectations) {
+		int size = MemoryAccounting.sizeOf(expectations);
 		Lock lock = writeLock();
 		try {
+			changed();
 			iExpectations.put(expectations.getOfferingId(), expectations);
+			iMemoryAccounting.updateExpectations(expectations.getOfferingId(), size);
 		} finally {
 			lock.release();
 		}
@@ -198,11 +237,15 @@ public class InMemoryServer extends AbstractLockingServer {
 	public void remove(XStudent student) {
 		Lock lock = writeLock();
 		try {
+			changed();
 			XStudent oldStudent = iStudentTable.remove(student.getStudentId());
+			iMemoryAccounting.removeStudent(student.getStudentId());
+			iStudentFilterIndex.remove(student.getStudentId());
 			if (oldStudent != null) {
 				for (XRequest request: oldStudent.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+							removeEnrollments(course.getOfferingId());
 							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 							if (requests != null) requests.remove(request);
 						}
@@ -214,14 +257,19 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public void update(XStudent student, boolean updateRequests) {
+		int size = MemoryAccounting.sizeOf(student);
 		Lock lock = writeLock();
 		try {
+			changed();
 			XStudent oldStudent = iStudentTable.put(student.getStudentId(), student);
+			iMemoryAccounting.update(student.getStudentId(), size);
+			iStudentFilterIndex.update(student);
 			if (updateRequests) {
 				if (oldStudent != null) {
 					for (XRequest request: oldStudent.getRequests())
 						if (request instanceof XCourseRequest)
 							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+								removeEnrollments(course.getOfferingId());
 								List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 								if (requests != null) requests.remove(request);
 							}
@@ -229,6 +277,7 @@ public class InMemoryServer extends AbstractLockingServer {
 				for (XRequest request: student.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+							removeEnrollments(course.getOfferingId());
 							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 							if (requests == null) {
 								requests = new ArrayList<XCourseRequest>();
@@ -250,8 +299,10 @@ public class InMemoryServer extends AbstractLockingServer {
 	protected void remove(XOffering offering, boolean removeExpectations) {
 		Lock lock = writeLock();
 		try {
+			changed();
 			for (XCourse course: offering.getCourses()) {
 				iCourseForId.remove(course.getCourseId());
+				iCourseIndex.remove(course);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses != null) {
 					courses.remove(course);
@@ -262,8 +313,12 @@ public class InMemoryServer extends AbstractLockingServer {
 				}
 			}
 			iOfferingTable.remove(offering.getOfferingId());
-			if (removeExpectations)
+			iMemoryAccounting.removeOffering(offering.getOfferingId());
+			removeEnrollments(offering.getOfferingId());
+			if (removeExpectations) {
 				iExpectations.remove(offering.getOfferingId());
+				iMemoryAccounting.removeExpectations(offering.getOfferingId());
+			}
 		} finally {
 			lock.release();
 		}
@@ -271,15 +326,19 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public void update(XOffering offering) {
+		int size = MemoryAccounting.sizeOf(offering);
 		Lock lock = writeLock();
 		try {
+			changed();
 			XOffering oldOffering = iOfferingTable.get(offering.getOfferingId());
 			if (oldOffering != null)
 				remove(oldOffering, false);
 			
 			iOfferingTable.put(offering.getOfferingId(), offering);
+			iMemoryAccounting.updateOffering(offering.getOfferingId(), size);
 			for (XCourse course: offering.getCourses()) {
 				iCourseForId.put(course.getCourseId(), course);
+				iCourseIndex.add(course);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses == null) {
 					courses = new TreeSet<XCourseId>();
@@ -300,11 +359,17 @@ public class InMemoryServer extends AbstractLockingServer {
 	public void clearAll() {
 		Lock lock = writeLock();
 		try {
+			changed();
 			iStudentTable.clear();
 			iOfferingTable.clear();
 			iCourseForId.clear();
 			iCourseForName.clear();
+			iCourseIndex.clear();
 			iOfferingRequests.clear();
+			iEnrollments.clear();
+			iMemoryAccounting.clear();
+			iStudentFilterIndex.clear();
+			iSnapshot = null;
 		} finally {
 			lock.release();
 		}
@@ -314,17 +379,124 @@ public class InMemoryServer extends AbstractLockingServer {
 	public void clearAllStudents() {
 		Lock lock = writeLock();
 		try {
+			changed();
 			iStudentTable.clear();
 			iOfferingRequests.clear();
+			iEnrollments.clear();
+			iMemoryAccounting.clearStudents();
+			iStudentFilterIndex.clear();
+			iSnapshot = null;
+		} finally {
+			lock.release();
+		}
+	}
+
+	private void removeEnrollments(Long offeringId) {
+		if (iEnrollments.remove(offeringId) != null)
+			iMemoryAccounting.removeEnrollments(offeringId);
+	}
+
+	@Override
+	protected long estimateMemUsage(Map<String, String> info) {
+		iMemoryAccounting.getInfo(info);
+		return iMemoryAccounting.getTotal();
+	}
+	
+	/** Memory accounting of the server, kept up to date as students, offerings, and expected spaces are updated */
+	public MemoryAccounting getMemoryAccounting() {
+		return iMemoryAccounting;
+	}
+	
+	/** A write operation: increment the epoch, remember the epoch of the last change made by the user of the current helper (if known) */
+	private void changed() {
+		long epoch = iEpoch.incrementAndGet();
+		OnlineSectioningLog.Entity user = getCurrentHelper().getUser();
+		if (user != null && user.hasExternalId())
+			iLastChange.put(user.getExternalId(), epoch);
+	}
+	
+	/** Number of changes made to the server so far (each write operation increments the epoch by one) */
+	public long getEpoch() {
+		return iEpoch.get();
+	}
+	
+	/**
+	 * Read-only snapshot of the server. The last snapshot is reused when there were no changes since it was taken
+	 * or when it is not older than the given age, otherwise a new snapshot is taken (under the read lock).
+	 * @param maxAge maximal age of a snapshot that is behind the server, in milliseconds (zero to only reuse a snapshot that is up to date)
+	 */
+	public ServerSnapshot getSnapshot(long maxAge) {
+		ServerSnapshot snapshot = iSnapshot;
+		if (snapshot != null && (snapshot.getEpoch() == iEpoch.get() || (maxAge > 0 && snapshot.getAge() <= maxAge))) return snapshot;
+		Lock lock = readLock();
+		try {
+			snapshot = iSnapshot;
+			if (snapshot != null && snapshot.getEpoch() == iEpoch.get()) return snapshot;
+			snapshot = new ServerSnapshot(iEpoch.get(), iStudentTable, iOfferingTable, iCourseForId, iOfferingRequests, iExpectations);
+			iSnapshot = snapshot;
+			return snapshot;
 		} finally {
 			lock.release();
 		}
 	}
+	
+	/**
+	 * Bind a read-only snapshot of the server (see {@link #getSnapshot(long)}) to the current thread. Until the returned lock is released,
+	 * the read methods (students, offerings, course requests, enrollments, expectations, and course and student matching) called
+	 * by this thread are served from the snapshot, without taking the server's read lock.
+	 * The maximal age of a snapshot that is behind the server is given by the Snapshot.MaxAge parameter (in milliseconds, defaults to 10 seconds,
+	 * so that the tables are copied at most once per this interval however often the server changes; a report may therefore not yet reflect the latest changes.
+	 * Zero only reuses a snapshot while the server has not changed, -1 disables the snapshots).
+	 * The maximal age is not used when the user of the helper has changed the server since the last snapshot was taken, so that
+	 * the user's own changes are always reflected in the report.
+	 * The age of the snapshot and the number of changes made since it was taken are recorded as options of the helper's action
+	 * (snapshot-age in milliseconds and snapshot-behind).
+	 * @return a lock that is to be released once the report is done
+	 */
+	public Lock readSnapshot(OnlineSectioningHelper helper) {
+		long maxAge = getConfig().getPropertyLong("Snapshot.MaxAge", 10000l);
+		if (maxAge < 0 || iThreadSnapshot.get() != null)
+			return new Lock() {
+				public void release() {}
+			};
+		String userId = (helper != null && helper.getUser() != null && helper.getUser().hasExternalId() ? helper.getUser().getExternalId() : null);
+		Long lastChange = (userId == null ? null : iLastChange.get(userId));
+		ServerSnapshot snapshot = getSnapshot(lastChange == null ? maxAge : 0);
+		if (lastChange != null && snapshot.getEpoch() >= lastChange)
+			iLastChange.remove(userId, lastChange);
+		if (helper != null) {
+			helper.logOption("snapshot-age", String.valueOf(snapshot.getAge()));
+			helper.logOption("snapshot-behind", String.valueOf(snapshot.getNrChangesBehind(this)));
+		}
+		iThreadSnapshot.set(snapshot);
+		return new Lock() {
+			public void release() {
+				iThreadSnapshot.remove();
+			}
+		};
+	}
+	
+	/** Read-only snapshot bound to the current thread (see {@link #readSnapshot(OnlineSectioningHelper)}), null if there is none */
+	public ServerSnapshot getThreadSnapshot() {
+		return iThreadSnapshot.get();
+	}
+	
+	@Override
+	public void unload() {
+		super.unload();
+		iSnapshot = null;
+	}
+	
+	/** Student filter index of the server, kept up to date as students are updated (to be used under the read lock) */
+	public StudentFilterIndex getStudentFilterIndex() {
+		return iStudentFilterIndex;
+	}
 
 	@Override
 	public XCourseRequest assign(XCourseRequest request, XEnrollment enrollment) {
 		Lock lock = writeLock();
 		try {
+			changed();
 			XStudent student = iStudentTable.get(request.getStudentId());
 			for (XRequest r: student.getRequests()) {
 				if (r.equals(request)) {
@@ -332,6 +504,7 @@ public class InMemoryServer extends AbstractLockingServer {
 
 					// remove old requests
 					for (XCourseId course: cr.getCourseIds()) {
+						removeEnrollments(course.getOfferingId());
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests != null) requests.remove(cr);
 					}
@@ -341,6 +514,7 @@ public class InMemoryServer extends AbstractLockingServer {
 					
 					// put new requests
 					for (XCourseId course: cr.getCourseIds()) {
+						removeEnrollments(course.getOfferingId());
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests == null) {
 							requests = new ArrayList<XCourseRequest>();
@@ -348,6 +522,7 @@ public class InMemoryServer extends AbstractLockingServer {
 						}
 						requests.add(cr);
 					}
+					iMemoryAccounting.update(student);
 					
 					return cr;
 				}
@@ -362,6 +537,7 @@ public class InMemoryServer extends AbstractLockingServer {
 	public XCourseRequest waitlist(XCourseRequest request, boolean waitlist) {
 		Lock lock = writeLock();
 		try {
+			changed();
 			XStudent student = iStudentTable.get(request.getStudentId());
 			for (XRequest r: student.getRequests()) {
 				if (r.equals(request)) {
@@ -369,6 +545,7 @@ public class InMemoryServer extends AbstractLockingServer {
 
 					// remove old requests
 					for (XCourseId course: cr.getCourseIds()) {
+						removeEnrollments(course.getOfferingId());
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests != null) requests.remove(cr);
 					}
@@ -378,6 +555,7 @@ public class InMemoryServer extends AbstractLockingServer {
 					
 					// put new requests
 					for (XCourseId course: cr.getCourseIds()) {
+						removeEnrollments(course.getOfferingId());
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests == null) {
 							requests = new ArrayList<XCourseRequest>();
@@ -385,6 +563,7 @@ public class InMemoryServer extends AbstractLockingServer {
 						}
 						requests.add(cr);
 					}
+					iMemoryAccounting.update(student);
 					
 					return cr;
 				}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.unitime.timetable.onlinesectioning.model.XAcademicAreaCode;
+import org.unitime.timetable.onlinesectioning.model.XConfig;
+import org.unitime.timetable.onlinesectioning.model.XCourse;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XDistribution;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XInstructor;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
+import org.unitime.timetable.onlinesectioning.model.XReservation;
+import org.unitime.timetable.onlinesectioning.model.XRoom;
+import org.unitime.timetable.onlinesectioning.model.XSection;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.model.XSubpart;
+
+/**
+ * Memory accounting of an online sectioning server. The size of a student (including its course requests, enrollments, and
+ * its entries in the offering requests table), an offering (including its courses, configurations, sections, reservations,
+ * distributions, and its entries in the course tables and the course index), the expected spaces of an offering, or
+ * the cached enrollments of an offering is computed when the object is put in the server, and the running totals are updated accordingly.
+ * This way, the memory usage of the server can be retrieved at any time without walking (or sampling) the whole server.<br>
+ * The sizes are computed by a simple size model of each type (a fixed size per object and per reference, plus the length of the strings),
+ * which only needs to count the contained objects, so it is cheap enough to be computed before the server's write lock is taken
+ * (see {@link #sizeOf(XStudent)}, {@link #sizeOf(XOffering)}, and {@link #sizeOf(XExpectations)}).<br>
+ * The update methods of the students, offerings, and expected spaces are not thread-safe, they are expected to be called under the server's write lock.
+ * The cached enrollments can be updated under the read lock. The getters can be called at any time.
+ * 
+ * @author Tomas Muller
+ */
+public class MemoryAccounting {
+	/** Estimated size of an object header */
+	private static final int sObjectSize = 16;
+	/** Estimated size of a reference */
+	private static final int sRefSize = 8;
+	/** Estimated size of a hash table entry (entry object with key, value, next, and hash + slot in the table) */
+	private static final int sEntrySize = 32;
+	/** Estimated size of a tree map entry (entry object with key, value, left, right, parent, and color) */
+	private static final int sTreeEntrySize = 40;
+	/** Estimated size of a Long key */
+	private static final int sKeySize = 16;
+	/** Estimated size of an empty collection (array list, hash map, or hash set) */
+	private static final int sCollectionSize = 64;
+
+	private Map<Long, Integer> iStudents = new HashMap<Long, Integer>();
+	private Map<Long, Integer> iOfferings = new HashMap<Long, Integer>();
+	private Map<Long, Integer> iExpectations = new HashMap<Long, Integer>();
+	private Map<Long, Integer> iEnrollments = new ConcurrentHashMap<Long, Integer>();
+	private AtomicLong iStudentsSize = new AtomicLong(0), iOfferingsSize = new AtomicLong(0), iExpectationsSize = new AtomicLong(0), iEnrollmentsSize = new AtomicLong(0);
+	private AtomicLong iUpdates = new AtomicLong(0);
+
+	private static int sizeOf(String string) {
+		return string == null ? 0 : 40 + 2 * string.length();
+	}
+
+	private static int sizeOfStrings(List<String> strings) {
+		int size = sCollectionSize + sRefSize * strings.size();
+		for (String string: strings)
+			size += sizeOf(string);
+		return size;
+	}
+
+	private static int sizeOfCodes(List<XAcademicAreaCode> codes) {
+		int size = sCollectionSize + sRefSize * codes.size();
+		for (XAcademicAreaCode code: codes)
+			size += sObjectSize + 2 * sRefSize + sizeOf(code.getArea()) + sizeOf(code.getCode());
+		return size;
+	}
+
+	private static int sizeOf(XCourseId course) {
+		return sObjectSize + 6 * sRefSize + sizeOf(course.getCourseName()) + sizeOf(course.getTitle());
+	}
+
+	private static int sizeOf(XEnrollment enrollment) {
+		return sObjectSize + 8 * sRefSize + sCollectionSize + (sEntrySize + sKeySize) * enrollment.getSectionIds().size() +
+				(enrollment.getApproval() == null ? 0 : sObjectSize + 3 * sRefSize + sizeOf(enrollment.getApproval().getExternalId()) + sizeOf(enrollment.getApproval().getName()));
+	}
+
+	/**
+	 * Estimated size of a student, including its requests and enrollments. The references from the offering requests table and
+	 * the hash table entry of the student table are included as well.
+	 */
+	public static int sizeOf(XStudent student) {
+		int size = sEntrySize + sKeySize + sObjectSize + 10 * sRefSize +
+				sizeOf(student.getName()) + sizeOf(student.getExternalId()) + sizeOf(student.getEmail()) + sizeOf(student.getStatus()) +
+				sizeOfCodes(student.getAcademicAreaClasiffications()) + sizeOfCodes(student.getMajors()) +
+				sizeOfStrings(student.getGroups()) + sizeOfStrings(student.getAccomodations()) +
+				sCollectionSize + sRefSize * student.getRequests().size();
+		for (XRequest request: student.getRequests()) {
+			size += sObjectSize + 4 * sRefSize;
+			if (request instanceof XCourseRequest) {
+				XCourseRequest cr = (XCourseRequest)request;
+				size += 6 * sRefSize + sCollectionSize;
+				for (XCourseId course: cr.getCourseIds())
+					size += 2 * sRefSize + sizeOf(course); // course id + reference from the offering requests table
+				if (cr.getEnrollment() != null) size += sizeOf(cr.getEnrollment());
+				size += sizeOf(cr.getEnrollmentMessage());
+			} else {
+				size += sRefSize + sObjectSize + 4 * sRefSize; // free time
+			}
+		}
+		return size;
+	}
+
+	private static int sizeOf(XSection section) {
+		int size = sObjectSize + 16 * sRefSize + sizeOf(section.getName()) + sizeOf(section.getNote()) + sizeOf(section.getSubpartName()) + sizeOf(section.getInstructionalType()) +
+				2 * sCollectionSize + 2 * (sEntrySize + sKeySize) * section.getNameByCourse().size() + 
+				(section.getTime() == null ? 0 : sObjectSize + 6 * sRefSize + sCollectionSize);
+		for (String name: section.getNameByCourse().values())
+			size += sizeOf(name);
+		size += sCollectionSize + sRefSize * section.getRooms().size();
+		for (XRoom room: section.getRooms())
+			size += sObjectSize + 6 * sRefSize + sizeOf(room.getName()) + sizeOf(room.getExternalId());
+		size += sCollectionSize + sRefSize * section.getInstructors().size();
+		for (XInstructor instructor: section.getInstructors())
+			size += sObjectSize + 4 * sRefSize + sizeOf(instructor.getName()) + sizeOf(instructor.getExternalId()) + sizeOf(instructor.getEmail());
+		return size;
+	}
+
+	/**
+	 * Estimated size of an offering, including its courses, configurations, sections, reservations, and distributions.
+	 * The entries of the offering in the offering table, the offering requests table (the list itself), the course tables
+	 * (course by id, course by name), and the course index (course by id, name, and title) are included as well.
+	 */
+	public static int sizeOf(XOffering offering) {
+		int size = sEntrySize + sKeySize + sObjectSize + 8 * sRefSize + sizeOf(offering.getName()) +
+				sEntrySize + sKeySize + sCollectionSize; // offering requests
+		size += sCollectionSize + sRefSize * offering.getCourses().size();
+		for (XCourse course: offering.getCourses()) {
+			size += sizeOf(course) + 12 * sRefSize + sizeOf(course.getSubjectArea()) + sizeOf(course.getCourseNumber()) + sizeOf(course.getDepartment()) +
+					sizeOf(course.getConsentLabel()) + sizeOf(course.getConsentAbbv()) + sizeOf(course.getNote()) + sizeOf(course.getCreditAbbv()) + sizeOf(course.getCreditText());
+			size += sEntrySize + sKeySize; // course by id
+			size += sTreeEntrySize + sEntrySize + sCollectionSize + sizeOf(course.getCourseNameInLowerCase()); // course by name
+			size += sEntrySize + sKeySize + 2 * (sTreeEntrySize + sEntrySize + sCollectionSize) + sizeOf(course.getCourseNameInLowerCase()) + sizeOf(course.getTitle()); // course index
+		}
+		size += sCollectionSize + sRefSize * offering.getConfigs().size();
+		for (XConfig config: offering.getConfigs()) {
+			size += sObjectSize + 6 * sRefSize + sizeOf(config.getName()) + sCollectionSize + sRefSize * config.getSubparts().size();
+			for (XSubpart subpart: config.getSubparts()) {
+				size += sObjectSize + 10 * sRefSize + sizeOf(subpart.getName()) + sizeOf(subpart.getInstructionalType()) + sCollectionSize + sRefSize * subpart.getSections().size();
+				for (XSection section: subpart.getSections())
+					size += sizeOf(section);
+			}
+		}
+		size += sCollectionSize + sRefSize * offering.getReservations().size();
+		for (XReservation reservation: offering.getReservations()) {
+			size += sObjectSize + 12 * sRefSize + 2 * sCollectionSize + (sEntrySize + sKeySize) * reservation.getConfigsIds().size();
+			for (Map.Entry<Long, Set<Long>> e: reservation.getSections().entrySet())
+				size += sEntrySize + sKeySize + sCollectionSize + (sEntrySize + sKeySize) * e.getValue().size();
+		}
+		size += sCollectionSize + sRefSize * offering.getDistributions().size();
+		for (XDistribution distribution: offering.getDistributions())
+			size += sObjectSize + 4 * sRefSize + 2 * sCollectionSize + (sEntrySize + sKeySize) * (distribution.getOfferingIds().size() + distribution.getSectionIds().size());
+		return size;
+	}
+
+	/** Estimated size of the expected spaces of an offering, including the hash table entry of the expectations table */
+	public static int sizeOf(XExpectations expectations) {
+		return sEntrySize + sKeySize + sObjectSize + 2 * sRefSize + sCollectionSize + (sEntrySize + sKeySize + sObjectSize + 8) * expectations.toMap().size();
+	}
+
+	/** Estimated size of the cached enrollments of an offering, including the hash table entry of the enrollments table */
+	public static int sizeOf(XEnrollments enrollments) {
+		int size = sEntrySize + sKeySize + sObjectSize + 8 * sRefSize + 6 * sCollectionSize + sRefSize * enrollments.getRequests().size();
+		if (enrollments.getEnrollments() != null)
+			for (XEnrollment enrollment: enrollments.getEnrollments())
+				size += 3 * sRefSize + 2 * sRefSize * enrollment.getSectionIds().size();
+		return size;
+	}
+
+	private void put(Map<Long, Integer> sizes, AtomicLong total, Long id, int size) {
+		iUpdates.incrementAndGet();
+		Integer old = sizes.put(id, size);
+		total.addAndGet(old == null ? size : size - old);
+	}
+
+	private static void remove(Map<Long, Integer> sizes, AtomicLong total, Long id) {
+		Integer old = sizes.remove(id);
+		if (old != null) total.addAndGet(-old);
+	}
+
+	/** A student was added, replaced, or its requests have changed */
+	public void update(XStudent student) {
+		update(student.getStudentId(), sizeOf(student));
+	}
+
+	/** A student was added, replaced, or its requests have changed, size computed by {@link #sizeOf(XStudent)} */
+	public void update(Long studentId, int size) {
+		put(iStudents, iStudentsSize, studentId, size);
+	}
+
+	/** A student was removed */
+	public void removeStudent(Long studentId) {
+		remove(iStudents, iStudentsSize, studentId);
+	}
+
+	/** An offering was added or replaced, size computed by {@link #sizeOf(XOffering)} */
+	public void updateOffering(Long offeringId, int size) {
+		put(iOfferings, iOfferingsSize, offeringId, size);
+	}
+
+	/** An offering was removed */
+	public void removeOffering(Long offeringId) {
+		remove(iOfferings, iOfferingsSize, offeringId);
+	}
+
+	/** Expected spaces of an offering were added or replaced, size computed by {@link #sizeOf(XExpectations)} */
+	public void updateExpectations(Long offeringId, int size) {
+		put(iExpectations, iExpectationsSize, offeringId, size);
+	}
+
+	/** Expected spaces of an offering were removed */
+	public void removeExpectations(Long offeringId) {
+		remove(iExpectations, iExpectationsSize, offeringId);
+	}
+
+	/** Enrollments of an offering were cached (can be called under the read lock) */
+	public void updateEnrollments(Long offeringId, XEnrollments enrollments) {
+		put(iEnrollments, iEnrollmentsSize, offeringId, sizeOf(enrollments));
+	}
+
+	/** Cached enrollments of an offering were dropped */
+	public void removeEnrollments(Long offeringId) {
+		remove(iEnrollments, iEnrollmentsSize, offeringId);
+	}
+
+	/** All students (and hence all cached enrollments) were removed */
+	public void clearStudents() {
+		iStudents.clear();
+		iStudentsSize.set(0);
+		iEnrollments.clear();
+		iEnrollmentsSize.set(0);
+	}
+
+	/** All students and offerings were removed */
+	public void clear() {
+		clearStudents();
+		iOfferings.clear();
+		iOfferingsSize.set(0);
+	}
+
+	/** Memory used by students (in bytes) */
+	public long getStudentsSize() { return iStudentsSize.get(); }
+
+	/** Memory used by offerings (in bytes) */
+	public long getOfferingsSize() { return iOfferingsSize.get(); }
+
+	/** Memory used by expected spaces (in bytes) */
+	public long getExpectationsSize() { return iExpectationsSize.get(); }
+
+	/** Memory used by cached enrollments (in bytes) */
+	public long getEnrollmentsSize() { return iEnrollmentsSize.get(); }
+
+	/** Memory used by the accounting itself (in bytes) */
+	public long getOverhead() {
+		return (iStudents.size() + iOfferings.size() + iExpectations.size() + iEnrollments.size()) * (sEntrySize + sKeySize + 16l);
+	}
+
+	/** Total memory used by the accounted objects (in bytes) */
+	public long getTotal() {
+		return getStudentsSize() + getOfferingsSize() + getExpectationsSize() + getEnrollmentsSize();
+	}
+
+	/** Number of updates made so far */
+	public long getNrUpdates() { return iUpdates.get(); }
+
+	/** Fill in details, in the same format as {@link AbstractServer#estimateMemUsage(Map)} */
+	public void getInfo(Map<String, String> info) {
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		info.put("students", df.format(getStudentsSize() / 1024.0) + " kB (" + iStudents.size() + " records)");
+		info.put("offerings", df.format(getOfferingsSize() / 1024.0) + " kB (" + iOfferings.size() + " records)");
+		info.put("expectations", df.format(getExpectationsSize() / 1024.0) + " kB (" + iExpectations.size() + " records)");
+		info.put("enrollments", df.format(getEnrollmentsSize() / 1024.0) + " kB (" + iEnrollments.size() + " records)");
+		info.put("accounting", df.format(getOverhead() / 1024.0) + " kB (" + getNrUpdates() + " updates)");
+	}
+
+	@Override
+	public String toString() {
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		return "MemoryAccounting{students=" + df.format(getStudentsSize() / 1024.0) + " kB" +
+				", offerings=" + df.format(getOfferingsSize() / 1024.0) + " kB" +
+				", expectations=" + df.format(getExpectationsSize() / 1024.0) + " kB" +
+				", enrollments=" + df.format(getEnrollmentsSize() / 1024.0) + " kB" +
+				", updates=" + getNrUpdates() + "}";
+	}
+}
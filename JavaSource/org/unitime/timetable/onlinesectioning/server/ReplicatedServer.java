@@ -44,6 +44,11 @@ import org.infinispan.distexec.DistributedCallable;
 import org.infinispan.distexec.DistributedExecutorService;
 import org.infinispan.jmx.CacheJmxRegistration;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.infinispan.transaction.LockingMode;
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
@@ -78,6 +83,7 @@ public class ReplicatedServer extends AbstractServer {
 	private Cache<Long, Set<XCourseRequest>> iOfferingRequests;
 	private Cache<Long, XExpectations> iExpectations;
 	private Cache<Long, Boolean> iOfferingLocks;
+	private CourseIndex iCourseIndex;
 
 	public ReplicatedServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
@@ -106,6 +112,12 @@ public class ReplicatedServer extends AbstractServer {
 		iOfferingRequests = getCache("OfferingRequests");
 		iExpectations = getCache("Expectations");
 		iOfferingLocks = getCache("OfferingLocks");
+		
+		// register the listener first, so that no update is missed while the index is being built (add and remove are idempotent)
+		iCourseIndex = new CourseIndex();
+		iCourseForId.addListener(new CourseIndexListener());
+		for (XCourseId course: iCourseForId.values())
+			iCourseIndex.add(course);
 
 		Map<String, Object> original = new HashMap<String, Object>(iProperties);
 		iProperties = getCache("Config");
@@ -131,6 +143,7 @@ public class ReplicatedServer extends AbstractServer {
 	@Override
 	public void unload() {
 		super.unload();
+		iCourseIndex.clear();
 		removeCache(iCourseForId);
 		removeCache(iCourseForName);
 		removeCache(iStudentTable);
@@ -605,7 +618,10 @@ public class ReplicatedServer extends AbstractServer {
 
 		@Override
 		public Collection<XCourseId> call() throws Exception {
-			if (iMatcher != null) iMatcher.setServer(getLocalServer(iSessionId));
+			OnlineSectioningServer server = getLocalServer(iSessionId);
+			if (iMatcher != null) iMatcher.setServer(server);
+			if (iQuery != null && server instanceof ReplicatedServer && ((ReplicatedServer)server).iCourseIndex != null)
+				return ((ReplicatedServer)server).iCourseIndex.findCourses(iQuery, iLimit, iMatcher);
 			SubSet<XCourseId> ret = new SubSet<XCourseId>(iLimit, new CourseComparator(iQuery));
 			for (XCourseId c : iCache.values()) {
 				if (iQuery != null && !c.matchCourseName(iQuery)) continue;
@@ -623,6 +639,22 @@ public class ReplicatedServer extends AbstractServer {
 		}
 	}
 	
+	@Listener(sync=true)
+	public class CourseIndexListener {
+		
+		@CacheEntryModified
+		public void modified(CacheEntryModifiedEvent<Long, XCourseId> event) {
+			if (!event.isPre() && event.getValue() != null)
+				iCourseIndex.add(event.getValue());
+		}
+		
+		@CacheEntryRemoved
+		public void removed(CacheEntryRemovedEvent<Long, XCourseId> event) {
+			if (event.isPre())
+				iCourseIndex.remove(event.getKey());
+		}
+	}
+	
 	public static class GetKeysCallable<T> implements DistributedCallable<Long, T, Collection<Long>>, Serializable {
 		private static final long serialVersionUID = 1L;
 		private transient Cache<Long, T> iCache;
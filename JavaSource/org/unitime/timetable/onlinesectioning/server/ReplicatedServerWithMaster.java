@@ -51,6 +51,7 @@ import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
 import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
 import org.unitime.timetable.onlinesectioning.model.XExpectations;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequestSet;
 import org.unitime.timetable.onlinesectioning.model.XOffering;
@@ -66,9 +67,11 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 	private EmbeddedCacheManager iCacheManager;
 	private Map<Long, XCourseId> iCourseForId;
 	private Map<String, XCourseIdSet> iCourseForName;
+	private CourseIndex iCourseIndex;
 	private Cache<Long, XStudent> iStudentTable;
 	private Cache<Long, XOffering> iOfferingTable;
 	private Map<Long, XCourseRequestSet> iOfferingRequests;
+	private Map<Long, XEnrollments> iEnrollments;
 	private Cache<Long, XExpectations> iExpectations;
 	private Cache<Long, Boolean> iOfferingLocks;
 
@@ -94,9 +97,11 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		iCacheManager = context.getCacheManager();
 		iCourseForId = new Hashtable<Long, XCourseId>();
 		iCourseForName = new Hashtable<String, XCourseIdSet>();
+		iCourseIndex = new CourseIndex();
 		iStudentTable = getCache("StudentTable");
 		iOfferingTable = getCache("OfferingTable");
 		iOfferingRequests = new HashMap<Long, XCourseRequestSet>();
+		iEnrollments = new Hashtable<Long, XEnrollments>();
 		iExpectations = getCache("Expectations");
 		iOfferingLocks = getCache("OfferingLocks");
 		
@@ -138,17 +143,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
-			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
-			String queryInLowerCase = query.toLowerCase();
-			for (XCourseId c : iCourseForId.values()) {
-				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-			}
-			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
-				for (XCourseId c : iCourseForId.values()) {
-					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-				}
-			}
-			return ret;
+			return iCourseIndex.findCourses(query, limit, matcher);
 		} finally {
 			lock.release();
 		}
@@ -252,6 +247,21 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		}		
 	}
 
+	@Override
+	public XEnrollments getEnrollments(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			XEnrollments enrollments = iEnrollments.get(offeringId);
+			if (enrollments == null) {
+				enrollments = new XEnrollments(offeringId, iOfferingRequests.get(offeringId));
+				iEnrollments.put(offeringId, enrollments);
+			}
+			return enrollments;
+		} finally {
+			lock.release();
+		}
+	}
+
 	@Override
 	public XExpectations getExpectations(Long offeringId) {
 		Lock lock = readLock();
@@ -335,6 +345,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			iOfferingTable.clear();
 			iExpectations.clear();
 			iOfferingLocks.clear();
+			iEnrollments.clear();
 		} finally {
 			lock.release();
 		}
@@ -347,6 +358,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			iStudentTable.clear();
+			iEnrollments.clear();
 		} finally {
 			lock.release();
 		}
@@ -582,6 +594,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			try {
 				for (XCourse course: offering.getCourses()) {
 					iCourseForId.remove(course.getCourseId());
+					iCourseIndex.remove(course);
 					XCourseIdSet courses = iCourseForName.get(course.getCourseNameInLowerCase());
 					if (courses != null) {
 						courses.remove(course);
@@ -601,6 +614,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			try {
 				for (XCourse course: offering.getCourses()) {
 					iCourseForId.put(course.getCourseId(), new XCourseId(course));
+					iCourseIndex.add(new XCourseId(course));
 					XCourseIdSet courses = iCourseForName.get(course.getCourseNameInLowerCase());
 					if (courses == null) {
 						courses = new XCourseIdSet();
@@ -648,6 +662,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 				for (XRequest request: oldStudent.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+							iEnrollments.remove(course.getOfferingId());
 							XCourseRequestSet requests = iOfferingRequests.get(course.getOfferingId());
 							if (requests != null) {
 								if (!requests.remove(request))
@@ -668,6 +683,7 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 				for (XRequest request: student.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
+							iEnrollments.remove(course.getOfferingId());
 							XCourseRequestSet requests = iOfferingRequests.get(course.getOfferingId());
 							if (requests == null)
 								requests = new XCourseRequestSet();
@@ -0,0 +1,156 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.match.StudentMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourse;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+
+/**
+ * Read-only snapshot of the tables of an in-memory online sectioning server (students, offerings, courses, course requests of each offering,
+ * and expected spaces), taken at a given epoch (number of changes made to the server so far, see {@link InMemoryServer#getEpoch()}).
+ * Long read-only reports (e.g., the online student sectioning status page) can run against a snapshot without taking the server's
+ * read lock for every student or offering they look up, and so without stalling (or being stalled by) the enrollment changes.
+ * The snapshot is taken under the read lock, it is shared by all the reports and it is replaced by a newer one
+ * when the server has changed (unless a maximal age of the snapshot is configured, see {@link InMemoryServer#getSnapshot(long)}).<br>
+ * The tables are copied, the objects are shared with the server. Changes that replace or remove an object (e.g., a student update)
+ * are not visible in the snapshot, changes made on an object in place (e.g., an enrollment change of a course request) are.
+ * The snapshot is therefore not a consistent point-in-time view of the server, it is only meant to decouple the reports from the server's lock.
+ * 
+ * @author Tomas Muller
+ */
+public class ServerSnapshot {
+	private long iEpoch;
+	private long iCreated;
+	private Map<Long, XStudent> iStudentTable;
+	private Map<Long, XOffering> iOfferingTable;
+	private Map<Long, XCourseId> iCourseForId;
+	private Map<Long, List<XCourseRequest>> iOfferingRequests;
+	private Map<Long, XExpectations> iExpectations;
+	private Map<Long, XEnrollments> iEnrollments = new Hashtable<Long, XEnrollments>();
+	
+	ServerSnapshot(long epoch, Map<Long, XStudent> students, Map<Long, XOffering> offerings, Map<Long, XCourseId> courses,
+			Map<Long, List<XCourseRequest>> offeringRequests, Map<Long, XExpectations> expectations) {
+		iEpoch = epoch;
+		iCreated = System.currentTimeMillis();
+		iStudentTable = new HashMap<Long, XStudent>(students);
+		iOfferingTable = new HashMap<Long, XOffering>(offerings);
+		iCourseForId = new HashMap<Long, XCourseId>(courses);
+		iOfferingRequests = new HashMap<Long, List<XCourseRequest>>(Math.max(16, 2 * offeringRequests.size()));
+		for (Map.Entry<Long, List<XCourseRequest>> e: offeringRequests.entrySet())
+			iOfferingRequests.put(e.getKey(), new ArrayList<XCourseRequest>(e.getValue()));
+		iExpectations = new HashMap<Long, XExpectations>(expectations);
+	}
+	
+	/** Server epoch at which the snapshot was taken */
+	public long getEpoch() { return iEpoch; }
+	
+	/** Time when the snapshot was taken */
+	public long getCreated() { return iCreated; }
+	
+	/** Age of the snapshot in milliseconds */
+	public long getAge() { return System.currentTimeMillis() - iCreated; }
+	
+	/** Number of changes made to the server since the snapshot was taken */
+	public long getNrChangesBehind(InMemoryServer server) {
+		return server.getEpoch() - iEpoch;
+	}
+	
+	public XStudent getStudent(Long studentId) {
+		return iStudentTable.get(studentId);
+	}
+	
+	public XOffering getOffering(Long offeringId) {
+		return iOfferingTable.get(offeringId);
+	}
+	
+	public XCourse getCourse(Long courseId) {
+		XCourseId course = iCourseForId.get(courseId);
+		if (course == null) return null;
+		if (course instanceof XCourse)
+			return (XCourse)course;
+		XOffering offering = getOffering(course.getOfferingId());
+		return offering == null ? null : offering.getCourse(course);
+	}
+	
+	public Collection<XCourseRequest> getRequests(Long offeringId) {
+		return iOfferingRequests.get(offeringId);
+	}
+	
+	public XEnrollments getEnrollments(Long offeringId) {
+		XEnrollments enrollments = iEnrollments.get(offeringId);
+		if (enrollments == null) {
+			enrollments = new XEnrollments(offeringId, iOfferingRequests.get(offeringId));
+			iEnrollments.put(offeringId, enrollments);
+		}
+		return enrollments;
+	}
+	
+	public XExpectations getExpectations(Long offeringId) {
+		XExpectations expectations = iExpectations.get(offeringId);
+		return expectations == null ? new XExpectations(offeringId) : expectations;
+	}
+	
+	public Collection<XCourseId> findCourses(CourseMatcher matcher, OnlineSectioningServer server) {
+		if (matcher != null) matcher.setServer(server);
+		Set<XCourseId> ret = new TreeSet<XCourseId>();
+		for (XCourseId c : iCourseForId.values())
+			if (matcher.match(c)) ret.add(c);
+		return ret;
+	}
+	
+	public Collection<XStudent> findStudents(StudentMatcher matcher, OnlineSectioningServer server) {
+		if (matcher != null) matcher.setServer(server);
+		List<XStudent> ret = new ArrayList<XStudent>();
+		for (XStudent s: iStudentTable.values())
+			if (matcher.match(s)) ret.add(s);
+		return ret;
+	}
+	
+	/** Unique ids of the students of the snapshot matching the given student filter (see {@link StudentFilterIndex#matches(XStudent, Map)}) */
+	public Set<Long> getStudentIds(Map<String, Set<String>> options) {
+		Set<Long> ret = new HashSet<Long>();
+		for (XStudent s: iStudentTable.values())
+			if (StudentFilterIndex.matches(s, options)) ret.add(s.getStudentId());
+		return ret;
+	}
+	
+	@Override
+	public String toString() {
+		return "ServerSnapshot{epoch=" + iEpoch + ", age=" + getAge() + " ms, students=" + iStudentTable.size() + ", offerings=" + iOfferingTable.size() + "}";
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.unitime.timetable.onlinesectioning.model.XAcademicAreaCode;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+
+/**
+ * In-memory index of student attributes used by the student filter of the online student sectioning status page
+ * (see {@link org.unitime.timetable.onlinesectioning.status.SectioningStatusFilterAction}).
+ * Each student gets a dense index (indexes of removed students are reused) and for each academic area &amp; classification,
+ * major, group, accommodation and status there is a bit set of the students that have it. Filter intersections and facet counts
+ * are then computed using bit set operations instead of database queries.<br>
+ * Academic area and classification are indexed as pairs, so that a filter with both an area and a classification
+ * only matches students that have the two on the same academic area classification (just like the database query does).
+ * The students are indexed by their attributes at the time of the update (the index does not keep a reference to the student).<br>
+ * The update methods are not thread-safe, they are expected to be called under the server's write lock.
+ * The query methods are expected to be called under (at least) the server's read lock.
+ * 
+ * @author Tomas Muller
+ */
+public class StudentFilterIndex {
+	private Map<Long, Entry> iEntries = new HashMap<Long, Entry>();
+	private long[] iStudentIds = new long[1024];
+	private BitSet iStudents = new BitSet();
+	private Map<String, Map<String, BitSet>> iAreaClassifications = new HashMap<String, Map<String, BitSet>>();
+	private Map<String, BitSet> iMajors = new HashMap<String, BitSet>();
+	private Map<String, BitSet> iGroups = new HashMap<String, BitSet>();
+	private Map<String, BitSet> iAccommodations = new HashMap<String, BitSet>();
+	private Map<String, BitSet> iStatuses = new HashMap<String, BitSet>();
+	
+	/** A student was added or updated (e.g., its status has changed) */
+	public void update(XStudent student) {
+		Entry entry = iEntries.get(student.getStudentId());
+		if (entry == null) {
+			entry = new Entry(iStudents.nextClearBit(0));
+			iEntries.put(student.getStudentId(), entry);
+			if (entry.iIndex >= iStudentIds.length) {
+				long[] ids = new long[Math.max(2 * iStudentIds.length, entry.iIndex + 1)];
+				System.arraycopy(iStudentIds, 0, ids, 0, iStudentIds.length);
+				iStudentIds = ids;
+			}
+			iStudentIds[entry.iIndex] = student.getStudentId();
+			iStudents.set(entry.iIndex);
+		} else {
+			entry.clear();
+		}
+		for (XAcademicAreaCode aac: student.getAcademicAreaClasiffications()) {
+			Map<String, BitSet> classifications = iAreaClassifications.get(aac.getArea());
+			if (classifications == null) {
+				classifications = new HashMap<String, BitSet>();
+				iAreaClassifications.put(aac.getArea(), classifications);
+			}
+			entry.add(classifications, aac.getCode());
+		}
+		for (XAcademicAreaCode major: student.getMajors())
+			entry.add(iMajors, major.getCode());
+		for (String group: student.getGroups())
+			entry.add(iGroups, group);
+		for (String accommodation: student.getAccomodations())
+			entry.add(iAccommodations, accommodation);
+		entry.add(iStatuses, student.getStatus());
+	}
+	
+	/** A student was removed */
+	public void remove(Long studentId) {
+		Entry entry = iEntries.remove(studentId);
+		if (entry != null) {
+			entry.clear();
+			iStudents.clear(entry.iIndex);
+		}
+	}
+	
+	/** All students were removed */
+	public void clear() {
+		iEntries.clear();
+		iStudents.clear();
+		iAreaClassifications.clear();
+		iMajors.clear();
+		iGroups.clear();
+		iAccommodations.clear();
+		iStatuses.clear();
+	}
+	
+	/** Number of indexed students */
+	public int size() {
+		return iEntries.size();
+	}
+	
+	/**
+	 * Students matching the given filter
+	 * @param options filter options (option name, e.g., area, classification, major, group, accommodation, or status, and the values; a null status value stands for the default status)
+	 * @param exclude options to be ignored
+	 * @return bit set of student indexes (see {@link #getStudentIds(BitSet)})
+	 */
+	public BitSet getStudents(Map<String, Set<String>> options, String... exclude) {
+		Set<String> excluded = new HashSet<String>();
+		for (String e: exclude) excluded.add(e);
+		BitSet students = (BitSet)iStudents.clone();
+		Set<String> areas = get(options, "area", excluded), classifications = get(options, "classification", excluded);
+		if (areas != null || classifications != null)
+			students.and(getAreaClassifications(areas, classifications));
+		and(students, iMajors, get(options, "major", excluded));
+		and(students, iGroups, get(options, "group", excluded));
+		and(students, iAccommodations, get(options, "accommodation", excluded));
+		and(students, iStatuses, get(options, "status", excluded));
+		return students;
+	}
+	
+	/**
+	 * Facet counts
+	 * @param option option to be counted (area, classification, major, group, accommodation, or status)
+	 * @param options filter options (see {@link #getStudents(Map, String...)})
+	 * @param exclude options to be ignored (typically including the counted option)
+	 * @return number of matching students for each value of the given option (ordered by the value, values with no matching students are skipped)
+	 */
+	public Map<String, Integer> count(String option, Map<String, Set<String>> options, String... exclude) {
+		Map<String, Integer> counts = new TreeMap<String, Integer>();
+		if ("area".equals(option) || "classification".equals(option)) {
+			Set<String> excluded = new HashSet<String>();
+			for (String e: exclude) excluded.add(e);
+			String[] base = new String[exclude.length + 2];
+			System.arraycopy(exclude, 0, base, 0, exclude.length);
+			base[exclude.length] = "area"; base[exclude.length + 1] = "classification";
+			BitSet students = getStudents(options, base);
+			Set<String> areas = get(options, "area", excluded), classifications = get(options, "classification", excluded);
+			Set<String> values = new HashSet<String>();
+			if ("area".equals(option)) {
+				values.addAll(iAreaClassifications.keySet());
+			} else {
+				for (Map<String, BitSet> c: iAreaClassifications.values())
+					values.addAll(c.keySet());
+			}
+			for (String value: values) {
+				Set<String> single = new HashSet<String>(); single.add(value);
+				BitSet match = ("area".equals(option) ? getAreaClassifications(single, classifications) : getAreaClassifications(areas, single));
+				match.and(students);
+				int count = match.cardinality();
+				if (count > 0) counts.put(value, count);
+			}
+		} else {
+			BitSet students = getStudents(options, exclude);
+			Map<String, BitSet> postings = getPostings(option);
+			if (postings == null) return counts;
+			for (Map.Entry<String, BitSet> e: postings.entrySet()) {
+				if (e.getKey() == null) continue;
+				BitSet match = (BitSet)e.getValue().clone();
+				match.and(students);
+				int count = match.cardinality();
+				if (count > 0) counts.put(e.getKey(), count);
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Number of matching students with no status set (default status)
+	 * @param options filter options (see {@link #getStudents(Map, String...)})
+	 * @param exclude options to be ignored (typically including the status)
+	 */
+	public int countDefaultStatus(Map<String, Set<String>> options, String... exclude) {
+		BitSet students = getStudents(options, exclude);
+		BitSet match = iStatuses.get(null);
+		if (match == null) return 0;
+		students.and(match);
+		return students.cardinality();
+	}
+	
+	/**
+	 * Check whether the given student matches the given filter, the same way as {@link #getStudents(Map, String...)} does
+	 * (used to evaluate the filter on a student that is not indexed, e.g., on a server snapshot)
+	 * @param options filter options (see {@link #getStudents(Map, String...)})
+	 */
+	public static boolean matches(XStudent student, Map<String, Set<String>> options) {
+		Set<String> excluded = new HashSet<String>();
+		Set<String> areas = get(options, "area", excluded), classifications = get(options, "classification", excluded);
+		if (areas != null || classifications != null) {
+			boolean match = false;
+			for (XAcademicAreaCode aac: student.getAcademicAreaClasiffications())
+				if ((areas == null || areas.contains(aac.getArea())) && (classifications == null || classifications.contains(aac.getCode()))) {
+					match = true; break;
+				}
+			if (!match) return false;
+		}
+		Set<String> majors = get(options, "major", excluded);
+		if (majors != null) {
+			boolean match = false;
+			for (XAcademicAreaCode major: student.getMajors())
+				if (majors.contains(major.getCode())) { match = true; break; }
+			if (!match) return false;
+		}
+		if (!containsAny(get(options, "group", excluded), student.getGroups())) return false;
+		if (!containsAny(get(options, "accommodation", excluded), student.getAccomodations())) return false;
+		Set<String> statuses = get(options, "status", excluded);
+		if (statuses != null && !statuses.contains(student.getStatus())) return false;
+		return true;
+	}
+	
+	private static boolean containsAny(Set<String> values, Collection<String> attributes) {
+		if (values == null) return true;
+		for (String attribute: attributes)
+			if (values.contains(attribute)) return true;
+		return false;
+	}
+	
+	/** Student unique ids of the given student indexes */
+	public Set<Long> getStudentIds(BitSet students) {
+		Set<Long> ids = new HashSet<Long>(Math.max(16, 2 * students.cardinality()));
+		for (int i = students.nextSetBit(0); i >= 0; i = students.nextSetBit(i + 1))
+			ids.add(iStudentIds[i]);
+		return ids;
+	}
+	
+	private Map<String, BitSet> getPostings(String option) {
+		if ("major".equals(option)) return iMajors;
+		if ("group".equals(option)) return iGroups;
+		if ("accommodation".equals(option)) return iAccommodations;
+		if ("status".equals(option)) return iStatuses;
+		return null;
+	}
+	
+	private static Set<String> get(Map<String, Set<String>> options, String option, Set<String> excluded) {
+		if (excluded.contains(option)) return null;
+		Set<String> values = (options == null ? null : options.get(option));
+		return (values == null || values.isEmpty() ? null : values);
+	}
+	
+	private BitSet getAreaClassifications(Set<String> areas, Set<String> classifications) {
+		BitSet students = new BitSet();
+		for (Map.Entry<String, Map<String, BitSet>> a: iAreaClassifications.entrySet()) {
+			if (areas != null && !areas.contains(a.getKey())) continue;
+			for (Map.Entry<String, BitSet> c: a.getValue().entrySet()) {
+				if (classifications != null && !classifications.contains(c.getKey())) continue;
+				students.or(c.getValue());
+			}
+		}
+		return students;
+	}
+	
+	private static void and(BitSet students, Map<String, BitSet> postings, Collection<String> values) {
+		if (values == null) return;
+		BitSet match = new BitSet();
+		for (String value: values) {
+			BitSet posting = postings.get(value);
+			if (posting != null) match.or(posting);
+		}
+		students.and(match);
+	}
+	
+	/**
+	 * Index of a student, together with the bit sets the student has been added to
+	 */
+	private static class Entry {
+		private int iIndex;
+		private List<BitSet> iPostings = new ArrayList<BitSet>();
+		
+		private Entry(int index) {
+			iIndex = index;
+		}
+		
+		private void add(Map<String, BitSet> postings, String value) {
+			BitSet posting = postings.get(value);
+			if (posting == null) {
+				posting = new BitSet();
+				postings.put(value, posting);
+			}
+			posting.set(iIndex);
+			iPostings.add(posting);
+		}
+		
+		private void clear() {
+			for (BitSet posting: iPostings)
+				posting.clear(iIndex);
+			iPostings.clear();
+		}
+	}
+}
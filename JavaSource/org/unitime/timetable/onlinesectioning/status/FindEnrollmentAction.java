@@ -38,6 +38,7 @@ import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
 import org.unitime.timetable.onlinesectioning.model.XAcademicAreaCode;
 import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
@@ -51,6 +52,7 @@ import org.unitime.timetable.onlinesectioning.model.XRoom;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
 
 /**
  * @author Tomas Muller
@@ -88,6 +90,15 @@ public class FindEnrollmentAction implements OnlineSectioningAction<List<ClassAs
 
 	@Override
 	public List<ClassAssignmentInterface.Enrollment> execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		Lock snapshot = (server instanceof InMemoryServer ? ((InMemoryServer)server).readSnapshot(helper) : null);
+		try {
+			return find(server, helper);
+		} finally {
+			if (snapshot != null) snapshot.release();
+		}
+	}
+	
+	protected List<ClassAssignmentInterface.Enrollment> find(OnlineSectioningServer server, OnlineSectioningHelper helper) {
 		List<ClassAssignmentInterface.Enrollment> ret = new ArrayList<ClassAssignmentInterface.Enrollment>();
 		XCourse course = server.getCourse(courseId());
 		if (course == null) return ret;
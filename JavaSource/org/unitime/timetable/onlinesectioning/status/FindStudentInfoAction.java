@@ -38,6 +38,7 @@ import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
 import org.unitime.timetable.onlinesectioning.match.AbstractStudentMatcher;
 import org.unitime.timetable.onlinesectioning.model.XAcademicAreaCode;
 import org.unitime.timetable.onlinesectioning.model.XConfig;
@@ -50,6 +51,7 @@ import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
 import org.unitime.timetable.onlinesectioning.status.FindEnrollmentInfoAction.FindEnrollmentInfoCourseMatcher;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.CourseRequestMatcher;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.StudentMatcher;
@@ -95,7 +97,16 @@ public class FindStudentInfoAction implements OnlineSectioningAction<List<Studen
 	}
 	
 	@Override
-	public List<StudentInfo> execute(final OnlineSectioningServer server, final OnlineSectioningHelper helper) {
+	public List<StudentInfo> execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		Lock snapshot = (server instanceof InMemoryServer ? ((InMemoryServer)server).readSnapshot(helper) : null);
+		try {
+			return find(server, helper);
+		} finally {
+			if (snapshot != null) snapshot.release();
+		}
+	}
+	
+	protected List<StudentInfo> find(final OnlineSectioningServer server, final OnlineSectioningHelper helper) {
 		Map<Long, StudentInfo> students = new HashMap<Long, StudentInfo>();
 		
 		int gEnrl = 0, gWait = 0, gRes = 0, gUnasg = 0;
@@ -38,12 +38,17 @@ import org.unitime.timetable.model.DepartmentalInstructor;
 import org.unitime.timetable.model.OfferingConsentType;
 import org.unitime.timetable.model.Session;
 import org.unitime.timetable.model.Student;
+import org.unitime.timetable.model.StudentSectioningStatus;
 import org.unitime.timetable.model.SubjectArea;
 import org.unitime.timetable.model.TimetableManager;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
+import org.unitime.timetable.onlinesectioning.server.ServerSnapshot;
+import org.unitime.timetable.onlinesectioning.server.StudentFilterIndex;
 import org.unitime.timetable.util.Constants;
 
 /**
@@ -76,6 +81,39 @@ public class SectioningStatusFilterAction implements OnlineSectioningAction<Filt
 	public FilterRpcResponse load(OnlineSectioningServer server, OnlineSectioningHelper helper) {
 		FilterRpcResponse response = new FilterRpcResponse();
 		
+		StudentFilterIndex index = getStudentFilterIndex(server);
+		if (index != null) {
+			Lock lock = server.readLock();
+			try {
+				loadFacets(response, index, server, helper);
+			} finally {
+				lock.release();
+			}
+		} else {
+			loadFacets(response, server, helper);
+		}
+		
+		List<Entity> assignment = new ArrayList<Entity>();
+		assignment.add(new Entity(0l, "Assigned", "Assigned"));
+		assignment.add(new Entity(1l, "Reserved", "Reserved"));
+		assignment.add(new Entity(2l, "Not Assigned", "Not Assigned"));
+		assignment.add(new Entity(3l, "Wait-Listed", "Wait-Listed"));
+		response.add("assignment", assignment);
+		
+		List<Entity> consent = new ArrayList<Entity>();
+		consent.add(new Entity(-1l, "Consent", "Any Consent Needed"));
+		for (OfferingConsentType type: OfferingConsentType.getConsentTypeList())
+			consent.add(new Entity(type.getUniqueId(), type.getAbbv(), type.getLabel()));
+		consent.add(new Entity(-2l, "No Consent", "Consent Not Needed"));
+		consent.add(new Entity(-3l, "Waiting", "Consent Waiting Approval"));
+		consent.add(new Entity(-4l, "Approved", "Consent Approved"));
+		consent.add(new Entity(-5l, "To Do", "Waiting My Approval"));
+		response.add("consent", consent);
+		
+		return response;
+	}
+	
+	protected void loadFacets(FilterRpcResponse response, OnlineSectioningServer server, OnlineSectioningHelper helper) {
 		StudentQuery query = getQuery(iRequest, server);
 		
 		List<Entity> areas = new ArrayList<Entity>();
@@ -174,25 +212,107 @@ public class SectioningStatusFilterAction implements OnlineSectioningAction<Filt
 		}
 		if (states.size() > 1)
 			response.add("status", states);
+	}
+	
+	/**
+	 * Facets computed from the student filter index of the server (the server must be read locked).
+	 * The index only contains codes, the matching entities are looked up using cacheable queries.
+	 */
+	protected void loadFacets(FilterRpcResponse response, StudentFilterIndex index, OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		Map<String, Set<String>> options = getIndexOptions(iRequest);
+		Long sessionId = server.getAcademicSession().getUniqueId();
 		
-		List<Entity> assignment = new ArrayList<Entity>();
-		assignment.add(new Entity(0l, "Assigned", "Assigned"));
-		assignment.add(new Entity(1l, "Reserved", "Reserved"));
-		assignment.add(new Entity(2l, "Not Assigned", "Not Assigned"));
-		assignment.add(new Entity(3l, "Wait-Listed", "Wait-Listed"));
-		response.add("assignment", assignment);
+		response.add("area", entities(index.count("area", options, "area", "major"),
+				"select a.academicAreaAbbreviation, a.uniqueId, a.title from AcademicArea a where a.session.uniqueId = :sessionId", sessionId, helper));
 		
-		List<Entity> consent = new ArrayList<Entity>();
-		consent.add(new Entity(-1l, "Consent", "Any Consent Needed"));
-		for (OfferingConsentType type: OfferingConsentType.getConsentTypeList())
-			consent.add(new Entity(type.getUniqueId(), type.getAbbv(), type.getLabel()));
-		consent.add(new Entity(-2l, "No Consent", "Consent Not Needed"));
-		consent.add(new Entity(-3l, "Waiting", "Consent Waiting Approval"));
-		consent.add(new Entity(-4l, "Approved", "Consent Approved"));
-		consent.add(new Entity(-5l, "To Do", "Waiting My Approval"));
-		response.add("consent", consent);
+		if (iRequest.hasOption("area"))
+			response.add("major", entities(index.count("major", options, "major"),
+					"select m.code, m.uniqueId, m.name from PosMajor m where m.session.uniqueId = :sessionId", sessionId, helper));
 		
-		return response;
+		response.add("classification", entities(index.count("classification", options, "classification"),
+				"select c.code, c.uniqueId, c.name from AcademicClassification c where c.session.uniqueId = :sessionId", sessionId, helper));
+		
+		response.add("group", entities(index.count("group", options, "group"),
+				"select g.groupAbbreviation, g.uniqueId, g.groupName from StudentGroup g where g.session.uniqueId = :sessionId", sessionId, helper));
+		
+		response.add("accommodation", entities(index.count("accommodation", options, "accommodation"),
+				"select a.abbreviation, a.uniqueId, a.name from StudentAccomodation a where a.session.uniqueId = :sessionId", sessionId, helper));
+		
+		List<Entity> states = new ArrayList<Entity>();
+		int defaultStatus = index.countDefaultStatus(options, "status");
+		if (defaultStatus > 0) {
+			Session session = SessionDAO.getInstance().get(sessionId, helper.getHibSession());
+			Entity s;
+			if (session.getDefaultSectioningStatus() == null) {
+				s = new Entity(0l, "Not Set", "No Restrictions (Default)");
+			} else {
+				s = new Entity(session.getDefaultSectioningStatus().getUniqueId(), "Not Set", session.getDefaultSectioningStatus().getReference() + " (Default)", "hint", session.getDefaultSectioningStatus().getLabel());
+			}
+			s.setCount(defaultStatus);
+			states.add(s);
+		}
+		Map<String, Integer> statusCounts = index.count("status", options, "status");
+		if (!statusCounts.isEmpty()) {
+			Map<String, StudentSectioningStatus> statuses = new HashMap<String, StudentSectioningStatus>();
+			for (StudentSectioningStatus status: (List<StudentSectioningStatus>)helper.getHibSession().createQuery(
+					"from StudentSectioningStatus").setCacheable(true).list())
+				statuses.put(status.getReference(), status);
+			for (Map.Entry<String, Integer> e: statusCounts.entrySet()) {
+				StudentSectioningStatus status = statuses.get(e.getKey());
+				if (status == null) continue;
+				Entity s = new Entity(status.getUniqueId(), status.getReference(), status.getReference(), "hint", status.getLabel());
+				s.setCount(e.getValue());
+				states.add(s);
+			}
+		}
+		if (states.size() > 1)
+			response.add("status", states);
+	}
+	
+	private static List<Entity> entities(Map<String, Integer> counts, String query, Long sessionId, OnlineSectioningHelper helper) {
+		List<Entity> entities = new ArrayList<Entity>();
+		if (counts.isEmpty()) return entities;
+		Map<String, Object[]> lookup = new HashMap<String, Object[]>();
+		for (Object[] o: (List<Object[]>)helper.getHibSession().createQuery(query).setLong("sessionId", sessionId).setCacheable(true).list())
+			if (!lookup.containsKey((String)o[0])) lookup.put((String)o[0], o);
+		for (Map.Entry<String, Integer> e: counts.entrySet()) {
+			Object[] o = lookup.get(e.getKey());
+			if (o == null) continue;
+			Entity entity = new Entity(
+					(Long)o[1],
+					(String)o[0],
+					(String)o[2]);
+			entity.setCount(e.getValue());
+			entities.add(entity);
+		}
+		return entities;
+	}
+	
+	/**
+	 * Student filter index of the server, if the server has one and the filter can be evaluated using the index
+	 * (the student option, matching student names, is always evaluated using the database)
+	 */
+	protected StudentFilterIndex getStudentFilterIndex(OnlineSectioningServer server) {
+		if (server instanceof InMemoryServer && !iRequest.hasOptions("student"))
+			return ((InMemoryServer)server).getStudentFilterIndex();
+		return null;
+	}
+	
+	/** Filter options in the format of the {@link StudentFilterIndex} (default status Not Set is represented by null) */
+	protected static Map<String, Set<String>> getIndexOptions(FilterRpcRequest request) {
+		Map<String, Set<String>> options = new HashMap<String, Set<String>>();
+		if (!request.hasOptions()) return options;
+		for (Map.Entry<String, Set<String>> e: request.getOptions().entrySet()) {
+			if ("status".equals(e.getKey())) {
+				Set<String> states = new HashSet<String>();
+				for (String s: e.getValue())
+					states.add("Not Set".equals(s) ? null : s);
+				options.put(e.getKey(), states);
+			} else {
+				options.put(e.getKey(), e.getValue());
+			}
+		}
+		return options;
 	}
 	
 	public FilterRpcResponse suggestions(OnlineSectioningServer server, OnlineSectioningHelper helper) {
@@ -523,7 +643,24 @@ public class SectioningStatusFilterAction implements OnlineSectioningAction<Filt
 		}
 	}
 	
+	/**
+	 * Unique ids of the students matching the filter. When the current thread has a server snapshot bound (see {@link InMemoryServer#readSnapshot(OnlineSectioningHelper)}),
+	 * the students are evaluated against the snapshot: using the index if the server has not changed since the snapshot was taken,
+	 * using the students of the snapshot otherwise.
+	 */
 	public Set<Long> getStudentIds(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		StudentFilterIndex index = getStudentFilterIndex(server);
+		if (index != null) {
+			ServerSnapshot snapshot = ((InMemoryServer)server).getThreadSnapshot();
+			Lock lock = server.readLock();
+			try {
+				if (snapshot == null || snapshot.getEpoch() == ((InMemoryServer)server).getEpoch())
+					return index.getStudentIds(index.getStudents(getIndexOptions(iRequest)));
+			} finally {
+				lock.release();
+			}
+			return snapshot.getStudentIds(getIndexOptions(iRequest));
+		}
 		return new HashSet<Long>((List<Long>)getQuery(iRequest, server).select("distinct s.uniqueId").query(helper.getHibSession()).list());
 	}
 
@@ -27,6 +27,7 @@ import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.StudentSectioningStatus;
 import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.model.dao.StudentSectioningStatusDAO;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
@@ -63,48 +64,61 @@ public class ChangeStudentStatus implements OnlineSectioningAction<Boolean> {
 	public Collection<Long> getStudentIds() { return iStudentIds; }
 
 	@Override
-	public Boolean execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+	public Boolean execute(final OnlineSectioningServer server, OnlineSectioningHelper helper) {
 		StudentSectioningStatus status = (hasStatus() ? (StudentSectioningStatus)helper.getHibSession().createQuery(
 				"from StudentSectioningStatus where reference = :ref").setString("ref", getStatus()).uniqueResult() : null);
-		for (Long studentId: getStudentIds()) {
-			Lock lock = server.lockStudent(studentId, null, true);
+		final Long statusId = (status == null ? null : status.getUniqueId());
+		StudentUpdateBatch.execute(server, getStudentIds(), helper, new StudentUpdateBatch.StudentUpdate() {
+			@Override
+			public boolean update(Long studentId, OnlineSectioningHelper h) {
+				changeStatus(studentId, statusId, server, h);
+				return true;
+			}
+		});
+		return true;			
+	}
+	
+	/**
+	 * Change status of a single student (in its own transaction, under the student lock)
+	 */
+	protected void changeStatus(Long studentId, Long statusId, OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		Lock lock = server.lockStudent(studentId, null, true);
+		try {
+			XStudent student = server.getStudent(studentId);
+			helper.beginTransaction();
 			try {
-				XStudent student = server.getStudent(studentId);
-				helper.beginTransaction();
-				try {
-					Student dbStudent = StudentDAO.getInstance().get(studentId, helper.getHibSession());
-					if (student != null && dbStudent != null) {
-						
-						OnlineSectioningLog.Action.Builder action = helper.addAction(this, server.getAcademicSession());
-						action.setStudent(OnlineSectioningLog.Entity.newBuilder()
-							.setUniqueId(student.getStudentId())
-							.setExternalId(student.getExternalId())
-							.setName(student.getName()));
-						if (status != null) {
-							action.addOther(OnlineSectioningLog.Entity.newBuilder()
-									.setUniqueId(status.getUniqueId())
-									.setName(status.getLabel())
-									.setExternalId(status.getReference())
-									.setType(OnlineSectioningLog.Entity.EntityType.OTHER));
-						}
-						
-						student.setStatus(getStatus());
-						dbStudent.setSectioningStatus(status);
-						helper.getHibSession().saveOrUpdate(dbStudent);
-						server.update(student, false);
+				Student dbStudent = StudentDAO.getInstance().get(studentId, helper.getHibSession());
+				if (student != null && dbStudent != null) {
+					StudentSectioningStatus status = (statusId == null ? null : StudentSectioningStatusDAO.getInstance().get(statusId, helper.getHibSession()));
+					
+					OnlineSectioningLog.Action.Builder action = helper.addAction(this, server.getAcademicSession());
+					action.setStudent(OnlineSectioningLog.Entity.newBuilder()
+						.setUniqueId(student.getStudentId())
+						.setExternalId(student.getExternalId())
+						.setName(student.getName()));
+					if (status != null) {
+						action.addOther(OnlineSectioningLog.Entity.newBuilder()
+								.setUniqueId(status.getUniqueId())
+								.setName(status.getLabel())
+								.setExternalId(status.getReference())
+								.setType(OnlineSectioningLog.Entity.EntityType.OTHER));
 					}
-					helper.commitTransaction();
-				} catch (Exception e) {
-					helper.rollbackTransaction();
-					if (e instanceof SectioningException) throw (SectioningException)e;
-					throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
+					
+					student.setStatus(getStatus());
+					dbStudent.setSectioningStatus(status);
+					helper.getHibSession().saveOrUpdate(dbStudent);
+					server.update(student, false);
 				}
-
-			} finally {
-				lock.release();
+				helper.commitTransaction();
+			} catch (Exception e) {
+				helper.rollbackTransaction();
+				if (e instanceof SectioningException) throw (SectioningException)e;
+				throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
 			}
+
+		} finally {
+			lock.release();
 		}
-		return true;			
 	}
 
 	@Override
@@ -45,6 +45,7 @@ import org.unitime.timetable.model.dao.Class_DAO;
 import org.unitime.timetable.model.dao.CourseOfferingDAO;
 import org.unitime.timetable.model.dao.StudentDAO;
 import org.unitime.timetable.onlinesectioning.HasCacheMode;
+import org.unitime.timetable.onlinesectioning.HasExecutionKeys;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
@@ -66,7 +67,7 @@ import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
-public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolean> implements HasCacheMode {
+public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolean> implements HasCacheMode, HasExecutionKeys {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 	private Collection<Long> iOfferingIds;
@@ -84,6 +85,9 @@ public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolea
 	}
 	
 	public Collection<Long> getOfferingIds() { return iOfferingIds; }
+	
+	@Override
+	public Collection<Long> getExecutionKeys() { return getOfferingIds(); }
 
 	@Override
 	public Boolean execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
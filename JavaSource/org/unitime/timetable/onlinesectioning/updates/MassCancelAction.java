@@ -19,22 +19,24 @@
 */
 package org.unitime.timetable.onlinesectioning.updates;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.cpsolver.studentsct.model.Enrollment;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
 import org.unitime.timetable.gwt.shared.SectioningException;
-import org.unitime.timetable.model.ClassWaitList;
-import org.unitime.timetable.model.CourseDemand;
-import org.unitime.timetable.model.CourseRequest;
 import org.unitime.timetable.model.Student;
-import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentSectioningStatus;
 import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.model.dao.StudentSectioningStatusDAO;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
@@ -90,124 +92,61 @@ public class MassCancelAction implements OnlineSectioningAction<Boolean>{
 	public String getCC() { return iCC; }
 
 	@Override
-	public Boolean execute(OnlineSectioningServer server, final OnlineSectioningHelper helper) {
+	public Boolean execute(final OnlineSectioningServer server, final OnlineSectioningHelper helper) {
 		if (!server.getAcademicSession().isSectioningEnabled())
 			throw new SectioningException(MSG.exceptionNotSupportedFeature());
 		
 		if (!CustomStudentEnrollmentHolder.isAllowWaitListing())
 			throw new SectioningException(MSG.exceptionNotSupportedFeature());
 
-		Exception caughtException = null;
-		Set<Long> offeringsToCheck = new HashSet<Long>();
+		final Exception[] caughtException = new Exception[] { null };
+		final Set<Long> offeringsToCheck = Collections.synchronizedSet(new HashSet<Long>());
+		final Map<Long, XStudent> studentsToEmail = Collections.synchronizedMap(new LinkedHashMap<Long, XStudent>());
+		final Map<Long, List<Enrollment>> spacesToUpdate = new HashMap<Long, List<Enrollment>>();
 		
-		OnlineSectioningServer.ServerCallback<Boolean> emailSent = new OnlineSectioningServer.ServerCallback<Boolean>() {
+		StudentUpdateBatch.execute(server, getStudentIds(), helper, new StudentUpdateBatch.StudentUpdate() {
 			@Override
-			public void onFailure(Throwable exception) {
-				helper.error("Student email failed: " + exception.getMessage(), exception);
+			public boolean update(Long studentId, OnlineSectioningHelper h) {
+				Exception exception = cancel(studentId, server, h, offeringsToCheck, studentsToEmail, spacesToUpdate);
+				if (exception != null)
+					synchronized (caughtException) { caughtException[0] = exception; }
+				return true;
 			}
-			@Override
-			public void onSuccess(Boolean result) {
-			}
-		};
+		});
 		
-		for (Long studentId: getStudentIds()) {
-			Lock lock = server.lockStudent(studentId, null, true);
+		// expected spaces are updated once all the students are updated, one offering at a time
+		// (the expectations of an offering are shared by all the students, the chunks only lock their own students)
+		for (Map.Entry<Long, List<Enrollment>> entry: spacesToUpdate.entrySet()) {
+			Lock lock = server.lockOffering(entry.getKey(), null, true);
 			try {
-				helper.beginTransaction();
-				try {
-					Student student = StudentDAO.getInstance().get(studentId, helper.getHibSession());
-					if (student != null) {
-						OnlineSectioningLog.Action.Builder action = helper.addAction(this, server.getAcademicSession());
-						
-						action.setStudent(OnlineSectioningLog.Entity.newBuilder()
-							.setUniqueId(student.getUniqueId())
-							.setExternalId(student.getExternalUniqueId())
-							.setName(helper.getStudentNameFormat().format(student)));
-						
-						for (Iterator<StudentClassEnrollment> i = student.getClassEnrollments().iterator(); i.hasNext(); ) {
-							StudentClassEnrollment enrl = i.next();
-							enrl.getClazz().getStudentEnrollments().remove(enrl);
-							/*
-							if (enrl.getCourseRequest() != null)
-								enrl.getCourseRequest().getClassEnrollments().remove(enrl);
-								*/
-							helper.getHibSession().delete(enrl);
-							i.remove();
-						}
-
-						for (Iterator<CourseDemand> i = student.getCourseDemands().iterator(); i.hasNext(); ) {
-							CourseDemand cd = i.next();
-							if (cd.getFreeTime() != null)
-								helper.getHibSession().delete(cd.getFreeTime());
-							for (Iterator<CourseRequest> j = cd.getCourseRequests().iterator(); j.hasNext(); ) {
-								CourseRequest cr = j.next();
-								for (Iterator<ClassWaitList> k = cr.getClassWaitLists().iterator(); k.hasNext(); ) {
-									helper.getHibSession().delete(k.next());
-									k.remove();
-								}
-								helper.getHibSession().delete(cr);
-								j.remove();
-							}
-							helper.getHibSession().delete(cd);
-							i.remove();
-						}
-						
-						student.setSectioningStatus(getStatus());
-						
-						helper.getHibSession().saveOrUpdate(student);
-						helper.getHibSession().flush();
-						
-						XStudent oldStudent = server.getStudent(studentId);
-						XStudent newStudent = null;
-						try {
-							newStudent = ReloadAllData.loadStudent(student, null, server, helper);
-							server.update(newStudent, true);
-						} catch (Exception e) {
-							if (e instanceof RuntimeException)
-								throw (RuntimeException)e;
-							throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
-						}
-						
-						if (oldStudent != null) {
-							for (XRequest oldRequest: oldStudent.getRequests()) {
-								XEnrollment oldEnrollment = (oldRequest instanceof XCourseRequest ? ((XCourseRequest)oldRequest).getEnrollment() : null);
-								if (oldEnrollment == null) continue; // free time or not assigned
-								offeringsToCheck.add(oldEnrollment.getOfferingId());
-								XOffering offering = server.getOffering(oldEnrollment.getOfferingId());
-								EnrollStudent.updateSpace(server,
-										null,
-										oldEnrollment == null ? null : SectioningRequest.convert(oldStudent, (XCourseRequest)oldRequest, server, offering, oldEnrollment),
-										offering);
-							}
-							OnlineSectioningLog.Enrollment.Builder enrollment = OnlineSectioningLog.Enrollment.newBuilder();
-							enrollment.setType(OnlineSectioningLog.Enrollment.EnrollmentType.STORED);
-							for (XRequest oldRequest: oldStudent.getRequests()) {
-								XEnrollment oldEnrollment = (oldRequest instanceof XCourseRequest ? ((XCourseRequest)oldRequest).getEnrollment() : null);
-								if (oldEnrollment != null)
-									for (XSection section: server.getOffering(oldEnrollment.getOfferingId()).getSections(oldEnrollment))
-										enrollment.addSection(OnlineSectioningHelper.toProto(section, oldEnrollment));
-							}
-							action.addEnrollment(enrollment);
-						}
-						
-						if (iEmail && ApplicationProperty.OnlineSchedulingEmailConfirmation.isTrue()) {
-							StudentEmail email = server.createAction(StudentEmail.class).forStudent(studentId).oldStudent(oldStudent);
-							email.setCC(getCC());
-							email.setEmailSubject(getSubject() == null || getSubject().isEmpty() ? MSG.defaulSubjectMassCancel() : getSubject());
-							email.setMessage(getMessage());
-							server.execute(email, helper.getUser(), emailSent);
-						}
-					}
-					helper.commitTransaction();
-				} catch (Exception e) {
-					helper.rollbackTransaction();
-					caughtException = e;
-				}
+				XOffering offering = server.getOffering(entry.getKey());
+				for (Enrollment oldEnrollment: entry.getValue())
+					EnrollStudent.updateSpace(server, null, oldEnrollment, offering);
 			} finally {
 				lock.release();
 			}
 		}
 		
+		// emails are sent once all the students are updated
+		if (!studentsToEmail.isEmpty()) {
+			OnlineSectioningServer.ServerCallback<Boolean> emailSent = new OnlineSectioningServer.ServerCallback<Boolean>() {
+				@Override
+				public void onFailure(Throwable exception) {
+					helper.error("Student email failed: " + exception.getMessage(), exception);
+				}
+				@Override
+				public void onSuccess(Boolean result) {
+				}
+			};
+			for (Map.Entry<Long, XStudent> entry: studentsToEmail.entrySet()) {
+				StudentEmail email = server.createAction(StudentEmail.class).forStudent(entry.getKey()).oldStudent(entry.getValue()).sendLater(true);
+				email.setCC(getCC());
+				email.setEmailSubject(getSubject() == null || getSubject().isEmpty() ? MSG.defaulSubjectMassCancel() : getSubject());
+				email.setMessage(getMessage());
+				server.execute(email, helper.getUser(), emailSent);
+			}
+		}
+		
 		OnlineSectioningServer.ServerCallback<Boolean> offeringChecked = new OnlineSectioningServer.ServerCallback<Boolean>() {
 			@Override
 			public void onFailure(Throwable exception) {
@@ -223,14 +162,123 @@ public class MassCancelAction implements OnlineSectioningAction<Boolean>{
 			server.execute(server.createAction(CheckOfferingAction.class).forOfferings(offeringId), helper.getUser(), offeringChecked);
 		}
 		
-		if (caughtException != null) {
-			if (caughtException instanceof SectioningException)
-				throw (SectioningException)caughtException;
-			throw new SectioningException(MSG.exceptionUnknown(caughtException.getMessage()), caughtException);
+		if (caughtException[0] != null) {
+			if (caughtException[0] instanceof SectioningException)
+				throw (SectioningException)caughtException[0];
+			throw new SectioningException(MSG.exceptionUnknown(caughtException[0].getMessage()), caughtException[0]);
 		}
 		
 		return true;
 	}
+	
+	/**
+	 * Cancel a single student (in its own transaction, under the student lock).
+	 * The dropped enrollments are only collected in spacesToUpdate, the expected spaces are updated by the caller.
+	 * @return exception, if the cancellation has failed
+	 */
+	protected Exception cancel(Long studentId, OnlineSectioningServer server, OnlineSectioningHelper helper, Set<Long> offeringsToCheck, Map<Long, XStudent> studentsToEmail, Map<Long, List<Enrollment>> spacesToUpdate) {
+		Lock lock = server.lockStudent(studentId, null, true);
+		try {
+			helper.beginTransaction();
+			try {
+				org.hibernate.Session hibSession = helper.getHibSession();
+				Student student = StudentDAO.getInstance().get(studentId, hibSession);
+				if (student != null) {
+					OnlineSectioningLog.Action.Builder action = helper.addAction(this, server.getAcademicSession());
+					
+					action.setStudent(OnlineSectioningLog.Entity.newBuilder()
+						.setUniqueId(student.getUniqueId())
+						.setExternalId(student.getExternalUniqueId())
+						.setName(helper.getStudentNameFormat().format(student)));
+					
+					// bulk delete enrollments, wait-lists, and course demands (including requests, options, messages, and free times)
+					hibSession.createQuery(
+							"delete ClassWaitList where courseRequest.uniqueId in (select r.uniqueId from CourseRequest r where r.courseDemand.student.uniqueId = :studentId)"
+							).setLong("studentId", studentId).executeUpdate();
+					hibSession.createQuery(
+							"delete CourseRequestOption where courseRequest.uniqueId in (select r.uniqueId from CourseRequest r where r.courseDemand.student.uniqueId = :studentId)"
+							).setLong("studentId", studentId).executeUpdate();
+					hibSession.createQuery(
+							"delete StudentClassEnrollment where student.uniqueId = :studentId"
+							).setLong("studentId", studentId).executeUpdate();
+					hibSession.createQuery(
+							"delete CourseRequest where courseDemand.uniqueId in (select d.uniqueId from CourseDemand d where d.student.uniqueId = :studentId)"
+							).setLong("studentId", studentId).executeUpdate();
+					hibSession.createQuery(
+							"delete StudentEnrollmentMessage where courseDemand.uniqueId in (select d.uniqueId from CourseDemand d where d.student.uniqueId = :studentId)"
+							).setLong("studentId", studentId).executeUpdate();
+					List<Long> freeTimeIds = (List<Long>)hibSession.createQuery(
+							"select d.freeTime.uniqueId from CourseDemand d where d.student.uniqueId = :studentId and d.freeTime is not null"
+							).setLong("studentId", studentId).list();
+					hibSession.createQuery(
+							"delete CourseDemand where student.uniqueId = :studentId"
+							).setLong("studentId", studentId).executeUpdate();
+					if (!freeTimeIds.isEmpty())
+						hibSession.createQuery(
+								"delete FreeTime where uniqueId in (:freeTimeIds)"
+								).setParameterList("freeTimeIds", freeTimeIds).executeUpdate();
+					student.getClassEnrollments().clear();
+					student.getCourseDemands().clear();
+					
+					if (getStatus() != null)
+						student.setSectioningStatus(StudentSectioningStatusDAO.getInstance().get(getStatus().getUniqueId(), hibSession));
+					else
+						student.setSectioningStatus(null);
+					
+					hibSession.saveOrUpdate(student);
+					hibSession.flush();
+					
+					XStudent oldStudent = server.getStudent(studentId);
+					XStudent newStudent = null;
+					try {
+						newStudent = ReloadAllData.loadStudent(student, null, server, helper);
+						server.update(newStudent, true);
+					} catch (Exception e) {
+						if (e instanceof RuntimeException)
+							throw (RuntimeException)e;
+						throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
+					}
+					
+					if (oldStudent != null) {
+						for (XRequest oldRequest: oldStudent.getRequests()) {
+							XEnrollment oldEnrollment = (oldRequest instanceof XCourseRequest ? ((XCourseRequest)oldRequest).getEnrollment() : null);
+							if (oldEnrollment == null) continue; // free time or not assigned
+							offeringsToCheck.add(oldEnrollment.getOfferingId());
+							XOffering offering = server.getOffering(oldEnrollment.getOfferingId());
+							Enrollment dropped = SectioningRequest.convert(oldStudent, (XCourseRequest)oldRequest, server, offering, oldEnrollment);
+							synchronized (spacesToUpdate) {
+								List<Enrollment> enrollments = spacesToUpdate.get(oldEnrollment.getOfferingId());
+								if (enrollments == null) {
+									enrollments = new ArrayList<Enrollment>();
+									spacesToUpdate.put(oldEnrollment.getOfferingId(), enrollments);
+								}
+								enrollments.add(dropped);
+							}
+						}
+						OnlineSectioningLog.Enrollment.Builder enrollment = OnlineSectioningLog.Enrollment.newBuilder();
+						enrollment.setType(OnlineSectioningLog.Enrollment.EnrollmentType.STORED);
+						for (XRequest oldRequest: oldStudent.getRequests()) {
+							XEnrollment oldEnrollment = (oldRequest instanceof XCourseRequest ? ((XCourseRequest)oldRequest).getEnrollment() : null);
+							if (oldEnrollment != null)
+								for (XSection section: server.getOffering(oldEnrollment.getOfferingId()).getSections(oldEnrollment))
+									enrollment.addSection(OnlineSectioningHelper.toProto(section, oldEnrollment));
+						}
+						action.addEnrollment(enrollment);
+					}
+					
+					if (iEmail && ApplicationProperty.OnlineSchedulingEmailConfirmation.isTrue())
+						studentsToEmail.put(studentId, oldStudent);
+				}
+				helper.commitTransaction();
+				return null;
+			} catch (Exception e) {
+				helper.rollbackTransaction();
+				return e;
+			}
+		} finally {
+			lock.release();
+		}
+	}
 
 	@Override
 	public String name() {
@@ -35,6 +35,8 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -48,6 +50,8 @@ import java.util.regex.Pattern;
 import javax.activation.DataSource;
 import javax.imageio.ImageIO;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.cpsolver.ifs.util.ToolBox;
 import org.unitime.commons.Email;
 import org.unitime.localization.impl.Localization;
@@ -60,6 +64,7 @@ import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.model.StudentSectioningStatus;
 import org.unitime.timetable.model.TimetableManager;
 import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.onlinesectioning.HasExecutionKeys;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
@@ -82,8 +87,8 @@ import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.Formats;
 import org.unitime.timetable.util.Formats.Format;
+import org.unitime.timetable.util.TemplateEngine;
 
-import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
@@ -92,8 +97,9 @@ import freemarker.template.TemplateException;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
-public class StudentEmail implements OnlineSectioningAction<Boolean> {
+public class StudentEmail implements OnlineSectioningAction<Boolean>, HasExecutionKeys {
 	private static final long serialVersionUID = 1L;
+	private static Log sLog = LogFactory.getLog(StudentEmail.class);
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 	private static StudentSectioningConstants CONST = Localization.create(StudentSectioningConstants.class);
 	private static GwtMessages GWT = Localization.create(GwtMessages.class);
@@ -110,6 +116,7 @@ public class StudentEmail implements OnlineSectioningAction<Boolean> {
 	private XEnrollment iOldEnrollment;
 	private XStudent iOldStudent;
 	private XStudent iStudent;
+	private boolean iSendLater = false;
 	
 	public StudentEmail forStudent(Long studentId) {
 		iStudentId = studentId;
@@ -127,7 +134,21 @@ public class StudentEmail implements OnlineSectioningAction<Boolean> {
 		return this;
 	}
 	
+	/**
+	 * Put the email in the mail queue (see {@link Email#sendLater(Email.DeliveryListener)}) instead of sending it right away.
+	 * The emailed time stamp of the student is then only updated once the email has been delivered, and the action returns true as soon
+	 * as the email is queued. Meant for bulk notifications (e.g., {@link MassCancelAction}), interactive callers should send the email right away.
+	 */
+	public StudentEmail sendLater(boolean sendLater) {
+		iSendLater = sendLater;
+		return this;
+	}
+	
 	public Long getStudentId() { return iStudentId; }
+	public boolean isSendLater() { return iSendLater; }
+	
+	@Override
+	public Collection<Long> getExecutionKeys() { return Collections.singleton(-getStudentId()); }
 
 	public Date getTimeStamp() { return iTimeStamp; }
 	private String getSubject() { return iSubject; }
@@ -334,6 +355,23 @@ public class StudentEmail implements OnlineSectioningAction<Boolean> {
 						
 						helper.logOption("email", html.replace("<img src='cid:timetable.png' border='0' alt='Timetable Image'/>", buffer.toString()));
 
+						if (isSendLater()) {
+							final String messageId = email.getMessageId();
+							email.sendLater(new Email.DeliveryListener() {
+								@Override
+								public void onDelivered() {
+									if (messageId != null)
+										sLastMessage.put(getStudentId(), messageId);
+									emailed(server, getStudentId(), new Date());
+								}
+								@Override
+								public void onFailure(Exception exception) {
+									sLog.warn("Failed to send email to student " + getStudentId() + ": " + exception.getMessage());
+								}
+							});
+							return true;
+						}
+						
 						email.send();
 						
 						String messageId = email.getMessageId();
@@ -370,6 +408,38 @@ public class StudentEmail implements OnlineSectioningAction<Boolean> {
 		}
 	}
 
+	/**
+	 * Record the emailed time stamp of a student, once a queued email has been delivered (called from the mail queue thread)
+	 */
+	private static void emailed(OnlineSectioningServer server, Long studentId, Date ts) {
+		org.hibernate.Session hibSession = StudentDAO.getInstance().createNewSession();
+		org.hibernate.Transaction tx = hibSession.beginTransaction();
+		try {
+			org.unitime.timetable.model.Student dbStudent = StudentDAO.getInstance().get(studentId, hibSession);
+			if (dbStudent != null) {
+				dbStudent.setScheduleEmailedDate(ts);
+				hibSession.saveOrUpdate(dbStudent);
+			}
+			hibSession.flush();
+			tx.commit();
+		} catch (RuntimeException e) {
+			tx.rollback();
+			throw e;
+		} finally {
+			hibSession.close();
+		}
+		Lock lock = server.lockStudent(studentId, null, true);
+		try {
+			XStudent student = server.getStudent(studentId);
+			if (student != null) {
+				student.setEmailTimeStamp(ts);
+				server.update(student, false);
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
 	@Override
 	public String name() {
 		return "student-email";
@@ -424,11 +494,7 @@ public class StudentEmail implements OnlineSectioningAction<Boolean> {
 	};
 	
 	private String generateMessage(org.unitime.timetable.model.Student student, OnlineSectioningServer server, OnlineSectioningHelper helper)  throws IOException, TemplateException {
-		Configuration cfg = new Configuration();
-		cfg.setClassForTemplateLoading(StudentEmail.class, "/");
-		cfg.setLocale(Localization.getJavaLocale());
-		cfg.setOutputEncoding("utf-8");
-		Template template = cfg.getTemplate(ApplicationProperty.OnlineSchedulingEmailTemplate.value());
+		Template template = TemplateEngine.getTemplate(StudentEmail.class, "/", ApplicationProperty.OnlineSchedulingEmailTemplate.value());
 		Map<String, Object> input = new HashMap<String, Object>();
 		
 		input.put("msg", MSG);
@@ -0,0 +1,162 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.updates;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
+import org.unitime.timetable.gwt.shared.SectioningException;
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
+import org.unitime.timetable.util.Formats;
+
+/**
+ * Batched update of many students (e.g., {@link MassCancelAction} or {@link ChangeStudentStatus}).
+ * The students are split into chunks (see {@link ApplicationProperty#OnlineSchedulingMassUpdateChunkSize}) that are
+ * processed in parallel (see {@link ApplicationProperty#OnlineSchedulingMassUpdateThreads}). Each chunk is processed by a single thread,
+ * with its own helper and hibernate session (see {@link OnlineSectioningHelper#createWorkerHelper()}), one student at a time. The worker helper
+ * is bound to the thread as the current helper of the server (see {@link AbstractServer#bindHelper(OnlineSectioningHelper)}) and the thread
+ * inherits the academic session and the locale of the calling thread. The update of a student is expected to lock the student and to use its own transaction.
+ * As the chunks only lock their own students, the update must not modify data shared by the students (e.g., the expected spaces of an offering);
+ * such changes are to be collected and applied by the caller once all the students are updated. When there is only one chunk (or one thread), the students
+ * are updated one by one in the calling thread, using the given helper.
+ * 
+ * @author Tomas Muller
+ */
+public class StudentUpdateBatch {
+	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
+	
+	/**
+	 * Update of a single student
+	 */
+	public static interface StudentUpdate {
+		/**
+		 * Update the given student
+		 * @param studentId student unique id
+		 * @param helper helper to use (helper of the calling thread or of the worker thread)
+		 * @return true if the update is to continue with the next student, false to stop the update of the remaining students of the chunk
+		 */
+		public boolean update(Long studentId, OnlineSectioningHelper helper);
+	}
+	
+	/**
+	 * Update the given students
+	 * @param server online sectioning server
+	 * @param studentIds students to update
+	 * @param helper helper of the calling thread
+	 * @param update update of a single student
+	 */
+	public static void execute(OnlineSectioningServer server, Collection<Long> studentIds, OnlineSectioningHelper helper, StudentUpdate update) {
+		int chunkSize = Math.max(1, ApplicationProperty.OnlineSchedulingMassUpdateChunkSize.intValue());
+		int nrThreads = Math.min(ApplicationProperty.OnlineSchedulingMassUpdateThreads.intValue(), (studentIds.size() + chunkSize - 1) / chunkSize);
+		if (nrThreads <= 1) {
+			for (Long studentId: studentIds)
+				if (!update.update(studentId, helper)) break;
+			return;
+		}
+		
+		List<Long> chunk = new ArrayList<Long>(chunkSize);
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (Long studentId: studentIds) {
+			chunk.add(studentId);
+			if (chunk.size() == chunkSize) {
+				chunks.add(new Chunk(server, chunk, helper, update));
+				chunk = new ArrayList<Long>(chunkSize);
+			}
+		}
+		if (!chunk.isEmpty())
+			chunks.add(new Chunk(server, chunk, helper, update));
+		
+		helper.debug("Updating " + studentIds.size() + " students in " + chunks.size() + " chunks using " + nrThreads + " threads.");
+		ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+		try {
+			List<Future<OnlineSectioningHelper>> futures = new ArrayList<Future<OnlineSectioningHelper>>();
+			for (Chunk c: chunks)
+				futures.add(executor.submit(c));
+			RuntimeException exception = null;
+			for (Future<OnlineSectioningHelper> future: futures) {
+				try {
+					helper.merge(future.get());
+				} catch (ExecutionException e) {
+					if (exception == null)
+						exception = (e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new SectioningException(MSG.exceptionUnknown(e.getCause().getMessage()), e.getCause()));
+				} catch (InterruptedException e) {
+					if (exception == null)
+						exception = new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
+				}
+			}
+			if (exception != null) throw exception;
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private static class Chunk implements Callable<OnlineSectioningHelper> {
+		private OnlineSectioningServer iServer;
+		private List<Long> iStudentIds;
+		private OnlineSectioningHelper iHelper;
+		private StudentUpdate iUpdate;
+		private Long iSessionId;
+		private String iLocale;
+		
+		private Chunk(OnlineSectioningServer server, List<Long> studentIds, OnlineSectioningHelper helper, StudentUpdate update) {
+			iServer = server; iStudentIds = studentIds; iHelper = helper; iUpdate = update;
+			iSessionId = (server.getAcademicSession() == null ? ApplicationProperties.getSessionId() : server.getAcademicSession().getUniqueId());
+			iLocale = Localization.getLocale();
+		}
+		
+		@Override
+		public OnlineSectioningHelper call() {
+			ApplicationProperties.setSessionId(iSessionId);
+			Localization.setLocale(iLocale);
+			OnlineSectioningHelper helper = iHelper.createWorkerHelper();
+			Lock bound = (iServer instanceof AbstractServer ? ((AbstractServer)iServer).bindHelper(helper) : null);
+			try {
+				for (Long studentId: iStudentIds)
+					if (!iUpdate.update(studentId, helper)) break;
+				return helper;
+			} catch (RuntimeException e) {
+				// log what has been done so far
+				iHelper.merge(helper);
+				throw e;
+			} finally {
+				if (bound != null) bound.release();
+				if (helper.getHibSession().isOpen()) helper.getHibSession().close();
+				_RootDAO.rollbackCurrentThreadSessions();
+				ApplicationProperties.setSessionId(null);
+				Localization.removeLocale();
+				Formats.removeFormats();
+			}
+		}
+	}
+}
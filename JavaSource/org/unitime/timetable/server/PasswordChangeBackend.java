@@ -49,8 +49,8 @@ import org.unitime.timetable.model.dao.UserDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.util.Constants;
+import org.unitime.timetable.util.TemplateEngine;
 
-import freemarker.template.Configuration;
 import freemarker.template.Template;
 
 /**
@@ -103,12 +103,7 @@ public class PasswordChangeBackend implements GwtRpcImplementation<PasswordChang
 					Email email = Email.createEmail();
 					email.setSubject(MESSAGES.emailPasswordChange());
 					
-					Configuration cfg = new Configuration();
-					cfg.setClassForTemplateLoading(PasswordChangeBackend.class, "");
-					cfg.setLocale(Localization.getJavaLocale());
-					cfg.setOutputEncoding("utf-8");
-					cfg.setEncoding(Localization.getJavaLocale(), "utf-8");
-					Template template = cfg.getTemplate("PasswordResetEmail.ftl");
+					Template template = TemplateEngine.getTemplate(PasswordChangeBackend.class, "", "PasswordResetEmail.ftl");
 					Map<String, Object> input = new HashMap<String, Object>();
 					input.put("msg", MESSAGES);
 					input.put("const", CONSTANTS);
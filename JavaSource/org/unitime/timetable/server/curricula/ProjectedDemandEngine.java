@@ -0,0 +1,459 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.server.curricula;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.unitime.timetable.model.CourseOffering;
+import org.unitime.timetable.model.InstructionalOffering;
+
+/**
+ * Incremental computation of course projected demands. For each academic session, the engine keeps the last-like
+ * student aggregates (number of last-like students for each course, academic area, major, and classification), the
+ * projection rules, and the curriculum contributions of each course, together with the last computed projected demands.
+ * On each call only the parts that have changed are reloaded and only the courses that are affected by the changes
+ * (changed last-like demands, projection rules of the course's academic areas and classifications, or curriculum courses)
+ * are recomputed.<br>
+ * Changes in the last-like course demands are detected using a cheap signature query (counts and sums of the unique ids
+ * of the last-like course demands, the students' academic area classifications, majors, and course offerings, and the last
+ * change log record of a course or instructional offering), the aggregates are only reloaded when the signature changes.
+ * The course and curriculum edit pages call {@link #invalidate(Long)} to force a reload. Engines of the last few academic sessions are kept.
+ * 
+ * @author Tomas Muller
+ */
+public class ProjectedDemandEngine {
+	private static Logger sLog = Logger.getLogger(ProjectedDemandEngine.class);
+	private static final int sMaxEngines = 3;
+	private static Map<Long, ProjectedDemandEngine> sEngines = new LinkedHashMap<Long, ProjectedDemandEngine>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, ProjectedDemandEngine> eldest) {
+			return size() > sMaxEngines;
+		}
+	};
+	
+	private Long iSessionId;
+	private String iLastLikeSignature = null;
+	private Hashtable<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>> iCourseAreaMajorClasf2ll = new Hashtable<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>>();
+	private Hashtable<String, Hashtable<String, Hashtable<String, Integer>>> iAreaMajorClasf2ll = new Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>();
+	private Map<String, Set<Long>> iArea2courses = new HashMap<String, Set<Long>>();
+	private Hashtable<String, Hashtable<String, HashMap<String, Float>>> iRules = null;
+	private Map<Long, CourseCurricula> iCurricula = null;
+	private Map<Long, Integer> iDemands = null;
+	private Set<Long> iChanged = new HashSet<Long>();
+	private boolean iIncludeOtherStudents = false;
+	
+	private ProjectedDemandEngine(Long sessionId) {
+		iSessionId = sessionId;
+	}
+	
+	/** Engine of the given academic session */
+	public static ProjectedDemandEngine getInstance(Long sessionId) {
+		synchronized (sEngines) {
+			ProjectedDemandEngine engine = sEngines.get(sessionId);
+			if (engine == null) {
+				engine = new ProjectedDemandEngine(sessionId);
+				sEngines.put(sessionId, engine);
+			}
+			return engine;
+		}
+	}
+	
+	/** Drop all cached data of the given academic session */
+	public static void invalidate(Long sessionId) {
+		synchronized (sEngines) {
+			sEngines.remove(sessionId);
+		}
+	}
+	
+	/**
+	 * Reload last-like demands (when changed) and projection rules. The affected courses are remembered and
+	 * recomputed on the next call of {@link #getProjectedDemands(org.hibernate.Session, boolean)}.
+	 */
+	public synchronized void refresh(org.hibernate.Session hibSession) {
+		refreshLastLike(hibSession, iChanged);
+		refreshRules(hibSession, iChanged);
+	}
+	
+	/**
+	 * Signature of the last-like data of the session (row counts and id sums). It only detects added or removed rows,
+	 * the imports that may change the rows in place (last-like course demands and students) invalidate the engine instead.
+	 */
+	protected String getLastLikeSignature(org.hibernate.Session hibSession) {
+		Object[] demands = (Object[])hibSession.createQuery(
+				"select count(x), sum(x.uniqueId), max(x.uniqueId) from LastLikeCourseDemand x where x.subjectArea.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).uniqueResult();
+		Object[] classifications = (Object[])hibSession.createQuery(
+				"select count(a), sum(a.uniqueId) from AcademicAreaClassification a where a.student.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).uniqueResult();
+		Object[] majors = (Object[])hibSession.createQuery(
+				"select count(m), sum(m.uniqueId) from Student s inner join s.posMajors m where s.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).uniqueResult();
+		Object[] courses = (Object[])hibSession.createQuery(
+				"select count(co), sum(co.uniqueId), max(co.uniqueId) from CourseOffering co where co.subjectArea.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).uniqueResult();
+		Object lastChange = hibSession.createQuery(
+				"select max(c.uniqueId) from ChangeLog c where c.session.uniqueId = :sessionId and c.objectType in (:types)")
+				.setLong("sessionId", iSessionId).setParameterList("types", new String[] {CourseOffering.class.getName(), InstructionalOffering.class.getName()})
+				.uniqueResult();
+		return demands[0] + ":" + demands[1] + ":" + demands[2] + "|" + classifications[0] + ":" + classifications[1] + "|" + majors[0] + ":" + majors[1] +
+				"|" + courses[0] + ":" + courses[1] + ":" + courses[2] + "|" + lastChange;
+	}
+	
+	protected void refreshLastLike(org.hibernate.Session hibSession, Set<Long> changed) {
+		String signature = getLastLikeSignature(hibSession);
+		if (signature.equals(iLastLikeSignature)) return;
+		long t0 = System.currentTimeMillis();
+		
+		Hashtable<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>> course2area2major2clasf2ll = new Hashtable<Long, Hashtable<String, Hashtable<String,Hashtable<String,Integer>>>>();
+		Map<String, Set<Long>> area2courses = new HashMap<String, Set<Long>>();
+		for (Object[] o : (List<Object[]>)hibSession.createQuery(
+				"select co.uniqueId, r.academicAreaAbbreviation, m.code, f.code, count(distinct s) from " +
+				"LastLikeCourseDemand x inner join x.student s inner join s.academicAreaClassifications a inner join s.posMajors m " +
+				"inner join a.academicClassification f inner join a.academicArea r, CourseOffering co where " +
+				"x.subjectArea.session.uniqueId = :sessionId and co.subjectArea.session.uniqueId = :sessionId and "+
+				"co.subjectArea.uniqueId = x.subjectArea.uniqueId and " +
+				"((x.coursePermId is not null and co.permId=x.coursePermId) or (x.coursePermId is null and co.courseNbr=x.courseNbr)) " +
+				"group by co.uniqueId, r.academicAreaAbbreviation, m.code, f.code")
+				.setLong("sessionId", iSessionId).list()) {
+			Long courseId = (Long)o[0];
+			String areaAbbv = (String)o[1];
+			String majorCode = (String)o[2];
+			String clasfCode = (String)o[3];
+			int lastLike = ((Number)o[4]).intValue();
+			Hashtable<String, Hashtable<String, Hashtable<String, Integer>>> area2major2clasf2ll = course2area2major2clasf2ll.get(courseId);
+			if (area2major2clasf2ll == null) {
+				area2major2clasf2ll = new Hashtable<String, Hashtable<String,Hashtable<String,Integer>>>();
+				course2area2major2clasf2ll.put(courseId, area2major2clasf2ll);
+			}
+			Hashtable<String, Hashtable<String, Integer>> major2clasf2ll = area2major2clasf2ll.get(areaAbbv);
+			if (major2clasf2ll == null) {
+				major2clasf2ll = new Hashtable<String, Hashtable<String,Integer>>();
+				area2major2clasf2ll.put(areaAbbv, major2clasf2ll);
+			}
+			Hashtable<String, Integer> clasf2ll = major2clasf2ll.get(majorCode);
+			if (clasf2ll == null) {
+				clasf2ll = new Hashtable<String, Integer>();
+				major2clasf2ll.put(majorCode, clasf2ll);
+			}
+			clasf2ll.put(clasfCode, lastLike);
+			Set<Long> courses = area2courses.get(areaAbbv);
+			if (courses == null) {
+				courses = new HashSet<Long>();
+				area2courses.put(areaAbbv, courses);
+			}
+			courses.add(courseId);
+		}
+		
+		Hashtable<String, Hashtable<String, Hashtable<String, Integer>>> area2major2clasf2ll = new Hashtable<String, Hashtable<String,Hashtable<String,Integer>>>();
+		for (Object[] o : (List<Object[]>)hibSession.createQuery(
+				"select a.academicAreaAbbreviation, m.code, f.code, count(distinct s) from LastLikeCourseDemand x inner join x.student s " +
+				"inner join s.academicAreaClassifications ac inner join ac.academicClassification f inner join ac.academicArea a " +
+				"inner join s.posMajors m where x.subjectArea.session.uniqueId = :sessionId " +
+				"group by a.academicAreaAbbreviation, m.code, f.code")
+				.setLong("sessionId", iSessionId).list()) {
+			String area = (String)o[0];
+			String major = (String)o[1];
+			String clasf = (String)o[2];
+			int students = ((Number)o[3]).intValue();
+			Hashtable<String, Hashtable<String, Integer>> majorClasf2ll = area2major2clasf2ll.get(area);
+			if (majorClasf2ll == null) {
+				majorClasf2ll = new Hashtable<String, Hashtable<String,Integer>>();
+				area2major2clasf2ll.put(area, majorClasf2ll);
+			}
+			Hashtable<String, Integer> clasf2ll = majorClasf2ll.get(major);
+			if (clasf2ll == null) {
+				clasf2ll = new Hashtable<String, Integer>();
+				majorClasf2ll.put(major, clasf2ll);
+			}
+			clasf2ll.put(clasf, students);
+		}
+		
+		for (Map.Entry<Long, Hashtable<String, Hashtable<String, Hashtable<String, Integer>>>> e: course2area2major2clasf2ll.entrySet())
+			if (!e.getValue().equals(iCourseAreaMajorClasf2ll.get(e.getKey()))) changed.add(e.getKey());
+		for (Long courseId: iCourseAreaMajorClasf2ll.keySet())
+			if (!course2area2major2clasf2ll.containsKey(courseId)) changed.add(courseId);
+		
+		iCourseAreaMajorClasf2ll = course2area2major2clasf2ll;
+		iAreaMajorClasf2ll = area2major2clasf2ll;
+		iArea2courses = area2courses;
+		iLastLikeSignature = signature;
+		sLog.debug("Last-like demands reloaded, " + changed.size() + " courses changed (took " + (System.currentTimeMillis() - t0) + " ms).");
+	}
+	
+	protected void refreshRules(org.hibernate.Session hibSession, Set<Long> changed) {
+		Hashtable<String, Hashtable<String, HashMap<String, Float>>> area2clasf2major2proj = new Hashtable<String, Hashtable<String,HashMap<String,Float>>>();
+		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+				"select a.academicAreaAbbreviation, m.code, f.code, r.projection from CurriculumProjectionRule r " +
+				"inner join r.academicArea a inner join r.academicClassification f left outer join r.major m " +
+				"where a.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).list()) {
+			String areaAbbv = (String)o[0];
+			String majorCode = (o[1] == null ? "" : (String)o[1]);
+			String clasfCode = (String)o[2];
+			Float projection = (Float)o[3];
+			Hashtable<String, HashMap<String, Float>> clasf2major2proj = area2clasf2major2proj.get(areaAbbv);
+			if (clasf2major2proj == null) {
+				clasf2major2proj = new Hashtable<String, HashMap<String,Float>>();
+				area2clasf2major2proj.put(areaAbbv, clasf2major2proj);
+			}
+			HashMap<String, Float> major2proj = clasf2major2proj.get(clasfCode);
+			if (major2proj == null) {
+				major2proj = new HashMap<String, Float>();
+				clasf2major2proj.put(clasfCode, major2proj);
+			}
+			major2proj.put(majorCode, projection);
+		}
+		
+		if (iRules != null) {
+			Set<String> areas = new HashSet<String>(area2clasf2major2proj.keySet()); areas.addAll(iRules.keySet());
+			for (String area: areas) {
+				Hashtable<String, HashMap<String, Float>> oldRules = iRules.get(area);
+				Hashtable<String, HashMap<String, Float>> newRules = area2clasf2major2proj.get(area);
+				if (oldRules == null ? newRules == null : oldRules.equals(newRules)) continue;
+				Set<String> clasfs = new HashSet<String>();
+				if (oldRules != null) clasfs.addAll(oldRules.keySet());
+				if (newRules != null) clasfs.addAll(newRules.keySet());
+				Set<Long> courses = iArea2courses.get(area);
+				if (courses == null) continue;
+				for (String clasf: clasfs) {
+					HashMap<String, Float> oldProj = (oldRules == null ? null : oldRules.get(clasf));
+					HashMap<String, Float> newProj = (newRules == null ? null : newRules.get(clasf));
+					if (oldProj == null ? newProj == null : oldProj.equals(newProj)) continue;
+					courses: for (Long courseId: courses) {
+						if (changed.contains(courseId)) continue;
+						for (Hashtable<String, Integer> clasf2ll: iCourseAreaMajorClasf2ll.get(courseId).get(area).values())
+							if (clasf2ll.containsKey(clasf)) { changed.add(courseId); continue courses; }
+					}
+				}
+			}
+		}
+		iRules = area2clasf2major2proj;
+	}
+	
+	protected Map<Long, CourseCurricula> loadCurricula(org.hibernate.Session hibSession) {
+		Map<Long, Set<String>> curriculum2majors = new HashMap<Long, Set<String>>();
+		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+				"select c.uniqueId, m.code from Curriculum c inner join c.majors m where c.academicArea.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).list()) {
+			Long curriculumId = (Long)o[0];
+			Set<String> majors = curriculum2majors.get(curriculumId);
+			if (majors == null) {
+				majors = new HashSet<String>();
+				curriculum2majors.put(curriculumId, majors);
+			}
+			majors.add((String)o[1]);
+		}
+		
+		Map<Long, CourseCurricula> course2curricula = new HashMap<Long, CourseCurricula>();
+		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+				"select cc.course.uniqueId, cc.percShare, f.nrStudents, a.academicAreaAbbreviation, c.uniqueId " +
+				"from CurriculumCourse cc inner join cc.classification f inner join f.curriculum c inner join c.academicArea a " +
+				"where a.session.uniqueId = :sessionId")
+				.setLong("sessionId", iSessionId).list()) {
+			Long courseId = (Long)o[0];
+			Float percShare = (Float)o[1];
+			Integer nrStudents = (Integer)o[2];
+			String areaAbbv = (String)o[3];
+			Long curriculumId = (Long)o[4];
+			CourseCurricula curricula = course2curricula.get(courseId);
+			if (curricula == null) {
+				curricula = new CourseCurricula();
+				course2curricula.put(courseId, curricula);
+			}
+			curricula.add(Math.round(percShare * nrStudents), areaAbbv, curriculum2majors.get(curriculumId));
+		}
+		return course2curricula;
+	}
+	
+	/**
+	 * Projected demands of all courses of the academic session that have a non-zero projection. Only the courses whose
+	 * last-like demands, projection rules, or curriculum courses have changed since the last call are recomputed.
+	 * @param includeOtherStudents include last-like students that are not covered by any curriculum
+	 */
+	public synchronized Map<Long, Integer> getProjectedDemands(org.hibernate.Session hibSession, boolean includeOtherStudents) {
+		long t0 = System.currentTimeMillis();
+		if (includeOtherStudents) refresh(hibSession);
+		Set<Long> changed = iChanged;
+		iChanged = new HashSet<Long>();
+		
+		Map<Long, CourseCurricula> curricula = loadCurricula(hibSession);
+		if (iCurricula != null) {
+			for (Map.Entry<Long, CourseCurricula> e: curricula.entrySet())
+				if (!e.getValue().equals(iCurricula.get(e.getKey()))) changed.add(e.getKey());
+			for (Long courseId: iCurricula.keySet())
+				if (!curricula.containsKey(courseId)) changed.add(courseId);
+		}
+		iCurricula = curricula;
+		
+		if (iDemands == null || iIncludeOtherStudents != includeOtherStudents) {
+			iDemands = new HashMap<Long, Integer>();
+			iIncludeOtherStudents = includeOtherStudents;
+			changed.addAll(iCurricula.keySet());
+			if (includeOtherStudents) changed.addAll(iCourseAreaMajorClasf2ll.keySet());
+		}
+		
+		for (Long courseId: changed) {
+			int demand = computeDemand(courseId, includeOtherStudents);
+			if (demand == 0)
+				iDemands.remove(courseId);
+			else
+				iDemands.put(courseId, demand);
+		}
+		sLog.debug("Projected demands computed, " + changed.size() + " courses recomputed (took " + (System.currentTimeMillis() - t0) + " ms).");
+		return new HashMap<Long, Integer>(iDemands);
+	}
+	
+	protected int computeDemand(Long courseId, boolean includeOtherStudents) {
+		CourseCurricula curricula = iCurricula.get(courseId);
+		int demand = (curricula == null ? 0 : curricula.getDemand());
+		if (!includeOtherStudents) return demand;
+		Hashtable<String, Hashtable<String, Hashtable<String, Integer>>> area2major2clasf2ll = iCourseAreaMajorClasf2ll.get(courseId);
+		if (area2major2clasf2ll == null) return demand;
+		for (Map.Entry<String, Hashtable<String, Hashtable<String, Integer>>> areaEmajor2clasf2ll: area2major2clasf2ll.entrySet()) {
+			if (curricula != null && curricula.isCovered(areaEmajor2clasf2ll.getKey())) continue;
+			Hashtable<String, HashMap<String, Float>> rules = (iRules == null ? null : iRules.get(areaEmajor2clasf2ll.getKey()));
+			for (Map.Entry<String, Hashtable<String, Integer>> majorEclasf2ll: areaEmajor2clasf2ll.getValue().entrySet()) {
+				if (curricula != null && curricula.isCovered(areaEmajor2clasf2ll.getKey(), majorEclasf2ll.getKey())) continue;
+				for (Map.Entry<String, Integer> clasfEll: majorEclasf2ll.getValue().entrySet()) {
+					demand += Math.round(getProjection(rules, majorEclasf2ll.getKey(), clasfEll.getKey()) * clasfEll.getValue());
+				}
+			}
+		}
+		return demand;
+	}
+	
+	/** Projection rules of an academic area (classification code -> major code -> projection, a copy), call {@link #refresh(org.hibernate.Session)} first */
+	public synchronized Hashtable<String,HashMap<String, Float>> getRules(String areaAbbv) {
+		Hashtable<String,HashMap<String, Float>> ret = new Hashtable<String, HashMap<String,Float>>();
+		Hashtable<String,HashMap<String, Float>> rules = (iRules == null ? null : iRules.get(areaAbbv));
+		if (rules != null)
+			for (Map.Entry<String, HashMap<String, Float>> e: rules.entrySet())
+				ret.put(e.getKey(), new HashMap<String, Float>(e.getValue()));
+		return ret;
+	}
+	
+	/**
+	 * Number of last-like students of an academic area (classification code -> major code -> students), call {@link #refresh(org.hibernate.Session)} first
+	 * @param majorCodes majors of a curriculum, all majors when empty
+	 */
+	public synchronized Hashtable<String, Hashtable<String, Integer>> getClasfMajor2ll(String areaAbbv, Collection<String> majorCodes) {
+		Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = new Hashtable<String, Hashtable<String,Integer>>();
+		Hashtable<String, Hashtable<String, Integer>> major2clasf2ll = iAreaMajorClasf2ll.get(areaAbbv);
+		if (major2clasf2ll == null) return clasfMajor2ll;
+		for (Map.Entry<String, Hashtable<String, Integer>> majorEclasf2ll: major2clasf2ll.entrySet()) {
+			if (!majorCodes.isEmpty() && !majorCodes.contains(majorEclasf2ll.getKey())) continue;
+			for (Map.Entry<String, Integer> clasfEll: majorEclasf2ll.getValue().entrySet()) {
+				Hashtable<String, Integer> major2ll = clasfMajor2ll.get(clasfEll.getKey());
+				if (major2ll == null) {
+					major2ll = new Hashtable<String, Integer>();
+					clasfMajor2ll.put(clasfEll.getKey(), major2ll);
+				}
+				major2ll.put(majorEclasf2ll.getKey(), clasfEll.getValue());
+			}
+		}
+		return clasfMajor2ll;
+	}
+	
+	/**
+	 * Number of last-like students of an academic area for each course (classification code -> major code -> course id -> students), call {@link #refresh(org.hibernate.Session)} first
+	 * @param majorCodes majors of a curriculum, all majors when empty
+	 */
+	public synchronized Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> getClasfMajorCourse2ll(String areaAbbv, Collection<String> majorCodes) {
+		Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajor2course2ll = new Hashtable<String, Hashtable<String, Hashtable<Long,Integer>>>();
+		Set<Long> courses = iArea2courses.get(areaAbbv);
+		if (courses == null) return clasfMajor2course2ll;
+		for (Long courseId: courses) {
+			for (Map.Entry<String, Hashtable<String, Integer>> majorEclasf2ll: iCourseAreaMajorClasf2ll.get(courseId).get(areaAbbv).entrySet()) {
+				if (!majorCodes.isEmpty() && !majorCodes.contains(majorEclasf2ll.getKey())) continue;
+				for (Map.Entry<String, Integer> clasfEll: majorEclasf2ll.getValue().entrySet()) {
+					Hashtable<String, Hashtable<Long, Integer>> major2course2ll = clasfMajor2course2ll.get(clasfEll.getKey());
+					if (major2course2ll == null) {
+						major2course2ll = new Hashtable<String, Hashtable<Long,Integer>>();
+						clasfMajor2course2ll.put(clasfEll.getKey(), major2course2ll);
+					}
+					Hashtable<Long, Integer> course2ll = major2course2ll.get(majorEclasf2ll.getKey());
+					if (course2ll == null) {
+						course2ll = new Hashtable<Long, Integer>();
+						major2course2ll.put(majorEclasf2ll.getKey(), course2ll);
+					}
+					course2ll.put(courseId, clasfEll.getValue());
+				}
+			}
+		}
+		return clasfMajor2course2ll;
+	}
+	
+	public static float getProjection(Hashtable<String,HashMap<String, Float>> clasf2major2proj, String majorCode, String clasfCode) {
+		if (clasf2major2proj == null || clasf2major2proj.isEmpty()) return 1.0f;
+		HashMap<String, Float> major2proj = clasf2major2proj.get(clasfCode);
+		if (major2proj == null) return 1.0f;
+		Float projection = major2proj.get(majorCode);
+		if (projection == null)
+			projection = major2proj.get("");
+		return (projection == null ? 1.0f : projection);
+	}
+	
+	/**
+	 * Curriculum contributions of a course: the sum of the curriculum projected demands and the academic areas (and majors)
+	 * that are covered by the curricula (last-like students of these are not counted as other students).
+	 */
+	protected static class CourseCurricula {
+		private int iDemand = 0;
+		private Set<String> iAreas = new HashSet<String>();
+		private Set<String> iAreaMajors = new HashSet<String>();
+		
+		protected void add(int demand, String areaAbbv, Set<String> majorCodes) {
+			iDemand += demand;
+			if (majorCodes == null || majorCodes.isEmpty()) {
+				iAreas.add(areaAbbv);
+			} else {
+				for (String major: majorCodes)
+					iAreaMajors.add(areaAbbv + "|" + major);
+			}
+		}
+		
+		public int getDemand() { return iDemand; }
+		
+		public boolean isCovered(String areaAbbv) { return iAreas.contains(areaAbbv); }
+		
+		public boolean isCovered(String areaAbbv, String majorCode) { return iAreaMajors.contains(areaAbbv + "|" + majorCode); }
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof CourseCurricula)) return false;
+			CourseCurricula c = (CourseCurricula)o;
+			return iDemand == c.iDemand && iAreas.equals(c.iAreas) && iAreaMajors.equals(c.iAreaMajors);
+		}
+		
+		@Override
+		public int hashCode() {
+			return iDemand ^ iAreas.hashCode() ^ iAreaMajors.hashCode();
+		}
+	}
+}
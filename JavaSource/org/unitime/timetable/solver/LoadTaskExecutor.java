@@ -0,0 +1,154 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cpsolver.ifs.util.Progress;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.dao.TimetableManagerDAO;
+import org.unitime.timetable.model.dao._RootDAO;
+
+/**
+ * Parallel loading of the parts of the solver input data that do not depend on the other data being loaded
+ * (used by {@link TimetableDatabaseLoader} and {@link org.unitime.timetable.solver.exam.ExamDatabaseLoader}).
+ * When there are multiple loading threads (see General.LoadThreads), each submitted task is executed
+ * in parallel using its own read-only hibernate session, with the academic session id of the loader set for the thread
+ * (see {@link ApplicationProperties#setSessionId(Long)}). Otherwise, the task is executed using the loader's session
+ * when its result is needed (see {@link LoadTask#get()}).
+ * 
+ * @author Tomas Muller
+ */
+public class LoadTaskExecutor {
+	private ExecutorService iExecutor = null;
+	private List<LoadTask<?>> iTasks = new ArrayList<LoadTask<?>>();
+	private Long iSessionId;
+	private Progress iProgress;
+	
+	/**
+	 * @param nrThreads number of loading threads, the tasks are not executed in parallel when one or less
+	 * @param sessionId academic session of the loaded problem
+	 * @param progress solver progress, the load times are logged here
+	 */
+	public LoadTaskExecutor(int nrThreads, Long sessionId, Progress progress) {
+		iSessionId = sessionId;
+		iProgress = progress;
+		if (nrThreads > 1)
+			iExecutor = Executors.newFixedThreadPool(nrThreads);
+	}
+	
+	/**
+	 * Start a load task. When there are multiple loading threads, the task is executed in parallel using its own
+	 * read-only hibernate session. Otherwise, it is executed using the given session when its result is needed.
+	 */
+	public <T> LoadTask<T> submit(LoadTask<T> task) {
+		task.iExecutor = this;
+		if (iExecutor != null) {
+			org.hibernate.Session hibSession = TimetableManagerDAO.getInstance().createNewSession();
+			hibSession.setCacheMode(CacheMode.IGNORE);
+			hibSession.setFlushMode(FlushMode.MANUAL);
+			hibSession.setDefaultReadOnly(true);
+			task.iHibSession = hibSession;
+			iTasks.add(task);
+			task.iFuture = iExecutor.submit(task);
+		}
+		return task;
+	}
+	
+	/**
+	 * Stop the loading threads and close hibernate sessions of the load tasks.
+	 * The sessions are kept open until the loading is done, as the objects loaded by them may be still in use. 
+	 */
+	public void close() {
+		if (iExecutor != null) {
+			iExecutor.shutdownNow();
+			try {
+				iExecutor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {}
+			iExecutor = null;
+		}
+		for (LoadTask<?> task: iTasks)
+			if (task.getHibSession().isOpen()) task.getHibSession().close();
+		iTasks.clear();
+	}
+	
+	/**
+	 * A part of the input data that does not depend on the other data being loaded. It can be loaded in parallel with them,
+	 * see {@link LoadTaskExecutor#submit(LoadTask)}. The time needed to load the data is logged.
+	 */
+	public static abstract class LoadTask<T> implements Callable<T> {
+		private String iName;
+		private org.hibernate.Session iHibSession;
+		private LoadTaskExecutor iExecutor = null;
+		private Future<T> iFuture = null;
+		private long iTime = 0;
+		
+		protected LoadTask(String name, org.hibernate.Session hibSession) {
+			iName = name;
+			iHibSession = hibSession;
+		}
+		
+		protected abstract T execute(org.hibernate.Session hibSession);
+		
+		public org.hibernate.Session getHibSession() { return iHibSession; }
+		
+		@Override
+		public T call() throws Exception {
+			long t0 = System.currentTimeMillis();
+			ApplicationProperties.setSessionId(iExecutor.iSessionId);
+			try {
+				return execute(iHibSession);
+			} finally {
+				_RootDAO.closeCurrentThreadSessions();
+				ApplicationProperties.setSessionId(null);
+				iTime = System.currentTimeMillis() - t0;
+			}
+		}
+		
+		public T get() throws Exception {
+			DecimalFormat df = new DecimalFormat("0.00");
+			long t0 = System.currentTimeMillis();
+			if (iFuture == null) {
+				T ret = execute(iHibSession);
+				if (iExecutor != null)
+					iExecutor.iProgress.info(iName + " loaded in " + df.format(0.001 * (System.currentTimeMillis() - t0)) + " s.");
+				return ret;
+			}
+			try {
+				T ret = iFuture.get();
+				iExecutor.iProgress.info(iName + " loaded in " + df.format(0.001 * iTime) + " s (in parallel, waited " + df.format(0.001 * (System.currentTimeMillis() - t0)) + " s).");
+				return ret;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver;
+
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Solver passivation settings and metrics. Provides the inactive times after which a solver of a particular type
+ * can be passivated and keeps track of the time needed to passivate and to activate a solver of each type.
+ * The solvers are passivated by the passivation threads of the solver containers
+ * (e.g., {@link org.unitime.timetable.solver.jgroups.CourseSolverContainer}), the solvers report the times here.
+ * 
+ * @author Tomas Muller
+ */
+public class SolverPassivation {
+	private static Log sLog = LogFactory.getLog(SolverPassivation.class);
+	public static final String sTypeCourse = "course";
+	public static final String sTypeExam = "exam";
+	public static final String sTypeStudent = "student";
+	private static Map<String, Statistics> sStatistics = new HashMap<String, Statistics>();
+	
+	/**
+	 * Number of milliseconds of inactivity after which a solver of the given type can be passivated, zero if passivation is disabled.
+	 * See {@link ApplicationProperty#SolverPasivationTimeForType}, defaults to {@link ApplicationProperty#SolverPasivationTime}.
+	 */
+	public static long getInactiveTimeToPassivate(String type) {
+		Integer minutes = ApplicationProperty.SolverPasivationTimeForType.intValue(type);
+		if (minutes == null) minutes = ApplicationProperty.SolverPasivationTime.intValue();
+		return (minutes == null ? 0l : 60000l * minutes);
+	}
+	
+	private static synchronized Statistics statistics(String type) {
+		Statistics statistics = sStatistics.get(type);
+		if (statistics == null) {
+			statistics = new Statistics();
+			sStatistics.put(type, statistics);
+		}
+		return statistics;
+	}
+	
+	/** A solver of the given type has been passivated, it took the given number of milliseconds */
+	public static void passivated(String type, String puid, long time) {
+		Statistics statistics = statistics(type);
+		synchronized (statistics) {
+			statistics.iPassivations.add(time);
+		}
+		sLog.info("Solver " + puid + " (" + type + ") passivated in " + time + " ms.");
+	}
+	
+	/** A solver of the given type has been activated, it took the given number of milliseconds */
+	public static void activated(String type, String puid, long time) {
+		Statistics statistics = statistics(type);
+		synchronized (statistics) {
+			statistics.iActivations.add(time);
+		}
+		sLog.info("Solver " + puid + " (" + type + ") activated in " + time + " ms.");
+	}
+	
+	/** Passivation and activation statistics of the given solver type, null if no solver of the type has been passivated yet */
+	public static synchronized Statistics getStatistics(String type) {
+		return sStatistics.get(type);
+	}
+	
+	public static class Statistics {
+		private Counter iPassivations = new Counter(), iActivations = new Counter();
+		
+		/** Number of passivations */
+		public synchronized long getNrPassivations() { return iPassivations.iCount; }
+		/** Average passivation time in milliseconds */
+		public synchronized double getAveragePassivationTime() { return iPassivations.average(); }
+		/** Longest passivation time in milliseconds */
+		public synchronized long getMaxPassivationTime() { return iPassivations.iMax; }
+		/** Number of activations */
+		public synchronized long getNrActivations() { return iActivations.iCount; }
+		/** Average activation time in milliseconds */
+		public synchronized double getAverageActivationTime() { return iActivations.average(); }
+		/** Longest activation time in milliseconds */
+		public synchronized long getMaxActivationTime() { return iActivations.iMax; }
+		
+		@Override
+		public synchronized String toString() {
+			return "passivations=" + iPassivations + ", activations=" + iActivations;
+		}
+	}
+	
+	private static class Counter {
+		private long iCount = 0, iTotal = 0, iMax = 0;
+		
+		private void add(long time) {
+			iCount ++; iTotal += time;
+			if (time > iMax) iMax = time;
+		}
+		
+		private double average() {
+			return (iCount == 0 ? 0.0 : ((double)iTotal) / iCount);
+		}
+		
+		@Override
+		public String toString() {
+			return iCount + " (avg " + new DecimalFormat("#,##0.00").format(average()) + " ms, max " + iMax + " ms)";
+		}
+	}
+
+}
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -120,6 +121,7 @@ import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao.SolutionDAO;
 import org.unitime.timetable.model.dao.SolverGroupDAO;
 import org.unitime.timetable.model.dao.TimetableManagerDAO;
+import org.unitime.timetable.solver.LoadTaskExecutor.LoadTask;
 import org.unitime.timetable.solver.course.weights.ClassWeightProvider;
 import org.unitime.timetable.solver.course.weights.DefaultClassWeights;
 import org.unitime.timetable.solver.curricula.LastLikeStudentCourseDemands;
@@ -198,6 +200,10 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     private StudentCourseDemands iStudentCourseDemands = null;
     
     private ClassWeightProvider iClassWeightProvider = null;
+    
+    private int iNrLoadThreads = 4;
+    private LoadTaskExecutor iLoadTasks = null;
+    private Map<Long, Placement> iCommittedPlacements = new HashMap<Long, Placement>();
     private boolean iUseAmPm = true;
 
     public static enum CommittedStudentConflictsMode {
@@ -293,6 +299,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         }
         
         iUseAmPm = getModel().getProperties().getPropertyBoolean("General.UseAmPm", iUseAmPm);
+        iNrLoadThreads = getModel().getProperties().getPropertyInt("General.LoadThreads", iNrLoadThreads);
     }
     
     public int msglevel(String type, int defaultLevel) {
@@ -1391,44 +1398,75 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	return ic;
     }
     
-    private void loadInstructorAvailabilities(org.hibernate.Session hibSession, String puids) {
+    private List<Object[]> loadInstructorAvailabilities(org.hibernate.Session hibSession, String puids) {
+    	List<Object[]> availabilities = new ArrayList<Object[]>();
     	Query q = hibSession.createQuery("select distinct i.externalUniqueId, a from ClassInstructor ci inner join ci.instructor i inner join ci.classInstructing.assignments a " +
     			"where ci.lead = true and i.externalUniqueId in ("+puids+") and a.solution.owner.session.uniqueId=:sessionId and a.solution.commited=true and a.solution.owner.uniqueId not in ("+iSolverGroupIds+")");
     	q.setLong("sessionId",iSessionId.longValue());
-		for (Iterator i=q.iterate();i.hasNext();) {
+		for (Iterator i=q.list().iterator();i.hasNext();) {
 			Object[] x = (Object[])i.next();
 			String puid = (String)x[0];
 			Assignment a = (Assignment)x[1];
-			InstructorConstraint ic = (InstructorConstraint)iInstructors.get(puid);
-			Placement p = a.getPlacement();
-			ic.setNotAvailable(p);
-			if (!iLectures.containsKey(a.getClassId())) {
-				iLectures.put(a.getClassId(), p.variable());
-				getModel().addVariable(p.variable());
-			}
-			
+			availabilities.add(new Object[] {puid, a.getPlacement()});
 		}
+		return availabilities;
     }
     
-    private void loadInstructorAvailabilities(org.hibernate.Session hibSession) {
-    	iProgress.setPhase("Loading instructor availabilities ...", 1);
+    private List<Object[]> loadInstructorAvailabilities(org.hibernate.Session hibSession, List<String> instructors) {
+    	List<Object[]> availabilities = new ArrayList<Object[]>();
     	StringBuffer puids = new StringBuffer();
     	int idx = 0;
-    	for (Enumeration e=iInstructors.elements();e.hasMoreElements();) {
-    		InstructorConstraint ic = (InstructorConstraint)e.nextElement();
-    		if (ic.getPuid()==null) continue;
+    	for (String puid: instructors) {
     		if (puids.length()>0) puids.append(",");
-    		puids.append("'"+ic.getPuid()+"'"); idx++;
+    		puids.append("'"+puid+"'"); idx++;
     		if (idx==100) {
-    			loadInstructorAvailabilities(hibSession, puids.toString());
+    			availabilities.addAll(loadInstructorAvailabilities(hibSession, puids.toString()));
     			puids = new StringBuffer();
 				idx = 0;
     		}
     	}
-    	if (puids.length()>0) loadInstructorAvailabilities(hibSession, puids.toString());
+    	if (puids.length()>0) availabilities.addAll(loadInstructorAvailabilities(hibSession, puids.toString()));
+    	return availabilities;
+    }
+    
+    private LoadTask<List<Object[]>> submitInstructorAvailabilities(org.hibernate.Session hibSession) {
+    	final List<String> puids = new ArrayList<String>();
+    	for (Enumeration e=iInstructors.elements();e.hasMoreElements();) {
+    		InstructorConstraint ic = (InstructorConstraint)e.nextElement();
+    		if (ic.getPuid()!=null) puids.add(ic.getPuid());
+    	}
+    	return iLoadTasks.submit(new LoadTask<List<Object[]>>("Instructor availabilities", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return loadInstructorAvailabilities(hibSession, puids);
+			}
+		});
+    }
+    
+    private void loadInstructorAvailabilities(LoadTask<List<Object[]>> task) throws Exception {
+    	iProgress.setPhase("Loading instructor availabilities ...", 1);
+    	for (Object[] x: task.get()) {
+			InstructorConstraint ic = (InstructorConstraint)iInstructors.get((String)x[0]);
+			ic.setNotAvailable(getCommittedPlacement((Placement)x[1]));
+    	}
     	iProgress.incProgress();
     }
     
+    /**
+     * Committed placement of a class from some other solver group (that is committed). The placement is added into the model (if not there already).
+     * Placements of the same assignment loaded by different tasks (i.e., using different hibernate sessions) are merged so that there is only one instance. 
+     */
+    private Placement getCommittedPlacement(Placement placement) {
+    	Placement committed = iCommittedPlacements.get(placement.getAssignmentId());
+    	if (committed != null) return committed;
+    	iCommittedPlacements.put(placement.getAssignmentId(), placement);
+		if (!iLectures.containsKey(placement.variable().getClassId())) {
+			iLectures.put(placement.variable().getClassId(), placement.variable());
+			getModel().addVariable(placement.variable());
+		}
+		return placement;
+    }
+    
     private void loadInstructorStudentConflicts(org.hibernate.Session hibSession, String puids) {
     	for (Object[] x: (List<Object[]>)hibSession.createQuery("select s.uniqueId, s.externalUniqueId from Student s " +
     			"where s.session.uniqueId = :sessionId and s.externalUniqueId in (" + puids + ")")
@@ -1466,39 +1504,57 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	iProgress.incProgress();
     }
     
-    private void loadRoomAvailabilities(org.hibernate.Session hibSession, String roomids) {
+    private List<Object[]> loadRoomAvailabilities(org.hibernate.Session hibSession, String roomids) {
+    	List<Object[]> availabilities = new ArrayList<Object[]>();
 		Query q = hibSession.createQuery("select distinct r.uniqueId, a from Location r inner join r.assignments as a "+
 				"where r.uniqueId in ("+roomids+") and a.solution.owner.session.uniqueId=:sessionId and a.solution.commited=true and a.solution.owner.uniqueId not in ("+iSolverGroupIds+")");
 		q.setLong("sessionId",iSessionId.longValue());
-		for (Iterator i=q.iterate();i.hasNext();) {
+		for (Iterator i=q.list().iterator();i.hasNext();) {
 			Object[] x = (Object[])i.next();
 			Long roomId = (Long)x[0];
 			Assignment a = (Assignment)x[1];
-			Placement p = a.getPlacement();
-			RoomConstraint rc = (RoomConstraint)iRooms.get(roomId);
-			rc.setNotAvailable(p);
-			if (!iLectures.containsKey(a.getClassId())) {
-				iLectures.put(a.getClassId(), p.variable());
-				getModel().addVariable(p.variable());
-			}
+			availabilities.add(new Object[] {roomId, a.getPlacement()});
 		}
+		return availabilities;
     }
     
-    private void loadRoomAvailabilities(org.hibernate.Session hibSession) {
-    	iProgress.setPhase("Loading room availabilities ...", 1);
+    private List<Object[]> loadRoomAvailabilities(org.hibernate.Session hibSession, List<Long> rooms) {
+    	List<Object[]> availabilities = new ArrayList<Object[]>();
     	StringBuffer roomids = new StringBuffer();
     	int idx = 0;
-    	for (Enumeration e=iRooms.elements();e.hasMoreElements();) {
-    		RoomConstraint rc = (RoomConstraint)e.nextElement();
+    	for (Long roomId: rooms) {
     		if (roomids.length()>0) roomids.append(",");
-    		roomids.append(rc.getResourceId()); idx++;
+    		roomids.append(roomId); idx++;
     		if (idx==100) {
-    			loadRoomAvailabilities(hibSession, roomids.toString());
+    			availabilities.addAll(loadRoomAvailabilities(hibSession, roomids.toString()));
     			roomids = new StringBuffer();
     			idx = 0;
     		}
     	}
-    	if (roomids.length()>0) loadRoomAvailabilities(hibSession, roomids.toString());
+    	if (roomids.length()>0) availabilities.addAll(loadRoomAvailabilities(hibSession, roomids.toString()));
+    	return availabilities;
+    }
+    
+    private LoadTask<List<Object[]>> submitRoomAvailabilities(org.hibernate.Session hibSession) {
+    	final List<Long> roomIds = new ArrayList<Long>();
+    	for (Enumeration e=iRooms.elements();e.hasMoreElements();) {
+    		RoomConstraint rc = (RoomConstraint)e.nextElement();
+    		roomIds.add(rc.getResourceId());
+    	}
+    	return iLoadTasks.submit(new LoadTask<List<Object[]>>("Room availabilities", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return loadRoomAvailabilities(hibSession, roomIds);
+			}
+		});
+    }
+    
+    private void loadRoomAvailabilities(LoadTask<List<Object[]>> task) throws Exception {
+    	iProgress.setPhase("Loading room availabilities ...", 1);
+    	for (Object[] x: task.get()) {
+			RoomConstraint rc = (RoomConstraint)iRooms.get((Long)x[0]);
+			rc.setNotAvailable(getCommittedPlacement((Placement)x[1]));
+    	}
     	iProgress.incProgress();
     }
     
@@ -1977,6 +2033,8 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		
     		tx = hibSession.beginTransaction(); 
     		
+    		iLoadTasks = new LoadTaskExecutor(iNrLoadThreads, iSessionId, iProgress);
+    		
     		load(hibSession);
     		
     		tx.commit();
@@ -1984,6 +2042,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		iProgress.message(msglevel("loadFailed", Progress.MSGLEVEL_FATAL), "Unable to load input data, reason:"+e.getMessage(),e);
     		tx.rollback();
     	} finally {
+    		if (iLoadTasks != null) { iLoadTasks.close(); iLoadTasks = null; }
     		// here we need to close the session since this code may run in a separate thread
     		if (hibSession!=null && hibSession.isOpen()) hibSession.close();
     	}
@@ -2125,15 +2184,23 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	}
     }
     
-    private void loadCommittedStudentConflicts(org.hibernate.Session hibSession, Set<Long> offeringsToAvoid) {
-        //Load all committed assignment - student relations that may be relevant
-		List<Object[]> assignmentEnrollments = (List<Object[]>)hibSession.createQuery(
-    			"select distinct a, e.studentId, io.uniqueId from "+
-    			"Solution s inner join s.assignments a inner join s.studentEnrollments e inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering io "+
-    			"where "+
-    			"s.commited=true and s.owner.session.uniqueId=:sessionId and s.owner not in ("+iSolverGroupIds+") and "+
-    			"a.clazz=e.clazz").setLong("sessionId", iSessionId.longValue()).list();
-
+    private LoadTask<List<Object[]>> submitCommittedStudentConflicts(org.hibernate.Session hibSession) {
+    	return iLoadTasks.submit(new LoadTask<List<Object[]>>("Committed student conflicts", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+		        //Load all committed assignment - student relations that may be relevant
+				return (List<Object[]>)hibSession.createQuery(
+		    			"select distinct a, e.studentId, io.uniqueId from "+
+		    			"Solution s inner join s.assignments a inner join s.studentEnrollments e inner join a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering io "+
+		    			"where "+
+		    			"s.commited=true and s.owner.session.uniqueId=:sessionId and s.owner not in ("+iSolverGroupIds+") and "+
+		    			"a.clazz=e.clazz").setLong("sessionId", iSessionId.longValue()).list();
+			}
+		});
+    }
+    
+    private void loadCommittedStudentConflicts(LoadTask<List<Object[]>> task, Set<Long> offeringsToAvoid) throws Exception {
+    	List<Object[]> assignmentEnrollments = task.get();
     	
 		// Filter out relevant relations (relations that are for loaded students)
 		Hashtable<Assignment, Set<Student>> assignments = new Hashtable<Assignment, Set<Student>>();
@@ -2157,7 +2224,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
 		for (Iterator i1=assignmentEnrollments.iterator(); i1.hasNext();) {
 			Object[] result = (Object[])i1.next();
     		Assignment assignment = (Assignment)result[0];
-    		if (!assignments.containsKey(assignment)) hibSession.evict(assignment);
+    		if (!assignments.containsKey(assignment)) task.getHibSession().evict(assignment);
 		}
 		
 		// Make up the appropriate committed placements and propagate those through the course structure
@@ -2166,15 +2233,11 @@ public class TimetableDatabaseLoader extends TimetableLoader {
 			Map.Entry entry = (Map.Entry)i1.next();
 			Assignment assignment = (Assignment)entry.getKey();
 			HashSet students = (HashSet)entry.getValue();
-   			Placement committedPlacement = assignment.getPlacement();
+   			Placement committedPlacement = getCommittedPlacement(assignment.getPlacement());
    			for (Iterator i2=students.iterator();i2.hasNext();) {
    				Student student = (Student)i2.next();
     			student.addCommitedPlacement(committedPlacement);
    			}
-   			if (!iLectures.containsKey(assignment.getClassId())) {
-   				iLectures.put(assignment.getClassId(), committedPlacement.variable());
-    			getModel().addVariable(committedPlacement.variable());
-    		}
     		propagateCommittedAssignment(students, assignment);
     		iProgress.incProgress();
         }
@@ -2368,6 +2431,52 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	return cfg2topSubparts;
     }
     
+    private LoadTask<List<Object[]>> submitCurrentStudentEnrollments(org.hibernate.Session hibSession) {
+    	return iLoadTasks.submit(new LoadTask<List<Object[]>>("Current student enrollments", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return (List<Object[]>)hibSession.createQuery(
+    					"select distinct e.student.uniqueId, e.clazz.uniqueId from " +
+    					"StudentClassEnrollment e, Class_ c where " + 
+    					"e.courseOffering.instructionalOffering = c.schedulingSubpart.instrOfferingConfig.instructionalOffering and " +
+    					"c.managingDept.solverGroup.uniqueId in (" + iSolverGroupIds + ")").list();
+			}
+		});
+    }
+    
+    private LoadTask<List<Object[]>> submitSolutionStudentEnrollments(org.hibernate.Session hibSession, final Long solutionId, final Long solverGroupId) {
+    	return iLoadTasks.submit(new LoadTask<List<Object[]>>("Student enrollments of " + (solutionId == null ? "solver group " + solverGroupId : "solution " + solutionId), hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+        		if (solutionId != null) {
+        			return (List<Object[]>)hibSession
+        				.createQuery("select distinct e.studentId, e.clazz.uniqueId from StudentEnrollment e where e.solution.uniqueId=:solutionId")
+        				.setLong("solutionId", solutionId)
+        				.list();
+        		} else {
+        			return (List<Object[]>)hibSession
+    				.createQuery("select distinct e.studentId, e.clazz.uniqueId from StudentEnrollment e where e.solution.owner.uniqueId=:sovlerGroupId and e.solution.commited = true")
+    				.setLong("sovlerGroupId", solverGroupId)
+    				.list();
+        		}
+			}
+		});
+    }
+    
+    private LoadTask<List<Object[]>> submitOtherCommittedStudentEnrollments(org.hibernate.Session hibSession) {
+    	return iLoadTasks.submit(new LoadTask<List<Object[]>>("Other committed student enrollments", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return (List<Object[]>)hibSession.createQuery(
+    					"select distinct e.studentId, e.clazz.uniqueId from " +
+    					"StudentEnrollment e, Class_ c where " + 
+    					"e.solution.commited = true and e.solution.owner.uniqueId not in (" + iSolverGroupIds + ") and " +
+    					"e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering = c.schedulingSubpart.instrOfferingConfig.instructionalOffering and " +
+    					"c.managingDept.solverGroup.uniqueId in (" + iSolverGroupIds + ")").list();
+			}
+		});
+    }
+    
     private void load(org.hibernate.Session hibSession) throws Exception {
 		iProgress.setStatus("Loading input data ...");
 
@@ -2431,6 +2540,25 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         	getModel().getProperties().setProperty("General.SolutionId",solutionIdStr);
         }
         
+        // Start loading of the data that do not depend on the loaded classes
+        LoadTask<List<Object[]>> committedStudentConflicts = null;
+        if (iCommittedStudentConflictsMode == CommittedStudentConflictsMode.Load && !iStudentCourseDemands.isMakingUpStudents())
+        	committedStudentConflicts = submitCommittedStudentConflicts(hibSession);
+        LoadTask<List<Object[]>> currentStudentEnrollments = null, otherCommittedStudentEnrollments = null;
+        List<LoadTask<List<Object[]>>> solutionStudentEnrollments = new ArrayList<LoadTask<List<Object[]>>>();
+        if (iLoadStudentEnrlsFromSolution) {
+        	if (iStudentCourseDemands.canUseStudentClassEnrollmentsAsSolution()) {
+        		currentStudentEnrollments = submitCurrentStudentEnrollments(hibSession);
+        	} else {
+            	for (int idx=0;idx<iSolverGroupId.length;idx++) {
+            		Solution solution = (solutions == null ? null : solutions.get(iSolverGroupId[idx]));
+            		solutionStudentEnrollments.add(submitSolutionStudentEnrollments(hibSession, solution == null ? null : solution.getUniqueId(), iSolverGroupId[idx]));
+            	}
+            	if (getModel().getProperties().getPropertyBoolean("Global.LoadOtherCommittedStudentEnrls", true))
+            		otherCommittedStudentEnrollments = submitOtherCommittedStudentEnrollments(hibSession);
+        	}
+        }
+        
 		if (iSession==null)
 			iSession = (new SessionDAO()).get(iSessionId, hibSession);
 		if (iSession==null) {
@@ -2478,9 +2606,12 @@ public class TimetableDatabaseLoader extends TimetableLoader {
 			iProgress.incProgress();
 		}
 		
-		loadInstructorAvailabilities(hibSession);
+		LoadTask<List<Object[]>> instructorAvailabilities = submitInstructorAvailabilities(hibSession);
+		LoadTask<List<Object[]>> roomAvailabilities = submitRoomAvailabilities(hibSession);
+		
+		loadInstructorAvailabilities(instructorAvailabilities);
 		
-		loadRoomAvailabilities(hibSession);
+		loadRoomAvailabilities(roomAvailabilities);
 		
 		iProgress.setPhase("Loading offerings ...", iAllClasses.size());
     	Set<Long> loadedOfferings = new HashSet<Long>();
@@ -2886,7 +3017,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		iProgress.message(msglevel("hibernateFailure", Progress.MSGLEVEL_FATAL), "Hibernate session not open.");
 
     	if (iCommittedStudentConflictsMode == CommittedStudentConflictsMode.Load && !iStudentCourseDemands.isMakingUpStudents())
-    		loadCommittedStudentConflicts(hibSession, loadedOfferings);
+    		loadCommittedStudentConflicts(committedStudentConflicts, loadedOfferings);
     	else if (iCommittedStudentConflictsMode != CommittedStudentConflictsMode.Ignore)
     		makeupCommittedStudentConflicts(loadedOfferings);
     	
@@ -2897,11 +3028,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	if (iLoadStudentEnrlsFromSolution) {
     		if (iStudentCourseDemands.canUseStudentClassEnrollmentsAsSolution()) {
     			// Load real student enrollments (not saved last-like)
-    			List<Object[]> enrollments = (List<Object[]>)hibSession.createQuery(
-    					"select distinct e.student.uniqueId, e.clazz.uniqueId from " +
-    					"StudentClassEnrollment e, Class_ c where " + 
-    					"e.courseOffering.instructionalOffering = c.schedulingSubpart.instrOfferingConfig.instructionalOffering and " +
-    					"c.managingDept.solverGroup.uniqueId in (" + iSolverGroupIds + ")").list();
+    			List<Object[]> enrollments = currentStudentEnrollments.get();
     			iProgress.setPhase("Loading current student enrolments  ...", enrollments.size());
     			int totalEnrollments = 0;
     			for (Object[] o: enrollments) {
@@ -2934,19 +3061,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		} else {
     			// Load enrollments from selected / committed solutions
             	for (int idx=0;idx<iSolverGroupId.length;idx++) {
-            		Solution solution = (solutions == null ? null : solutions.get(iSolverGroupId[idx]));
-            		List studentEnrls = null;
-            		if (solution != null) {
-            			studentEnrls = hibSession
-            				.createQuery("select distinct e.studentId, e.clazz.uniqueId from StudentEnrollment e where e.solution.uniqueId=:solutionId")
-            				.setLong("solutionId", solution.getUniqueId())
-            				.list();
-            		} else {
-            			studentEnrls = hibSession
-        				.createQuery("select distinct e.studentId, e.clazz.uniqueId from StudentEnrollment e where e.solution.owner.uniqueId=:sovlerGroupId and e.solution.commited = true")
-        				.setLong("sovlerGroupId", iSolverGroupId[idx])
-        				.list();
-            		}
+            		List studentEnrls = solutionStudentEnrollments.get(idx).get();
             		iProgress.setPhase("Loading student enrolments ["+(idx+1)+"] ...",studentEnrls.size());
                 	for (Iterator i1=studentEnrls.iterator();i1.hasNext();) {
                 		Object o[] = (Object[])i1.next();
@@ -2975,14 +3090,9 @@ public class TimetableDatabaseLoader extends TimetableLoader {
                 	}
             	}
             	
-            	if (getModel().getProperties().getPropertyBoolean("Global.LoadOtherCommittedStudentEnrls", true)) {
+            	if (otherCommittedStudentEnrollments != null) {
                 	// Other committed enrollments
-        			List<Object[]> enrollments = (List<Object[]>)hibSession.createQuery(
-        					"select distinct e.studentId, e.clazz.uniqueId from " +
-        					"StudentEnrollment e, Class_ c where " + 
-        					"e.solution.commited = true and e.solution.owner.uniqueId not in (" + iSolverGroupIds + ") and " +
-        					"e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering = c.schedulingSubpart.instrOfferingConfig.instructionalOffering and " +
-        					"c.managingDept.solverGroup.uniqueId in (" + iSolverGroupIds + ")").list();
+        			List<Object[]> enrollments = otherCommittedStudentEnrollments.get();
         			iProgress.setPhase("Loading other committed student enrolments  ...", enrollments.size());
 
         			for (Object[] o: enrollments) {
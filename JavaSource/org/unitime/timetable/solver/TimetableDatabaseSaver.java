@@ -162,11 +162,17 @@ public class TimetableDatabaseSaver extends TimetableSaver {
     			
     			iProgress.setPhase("Committing solution ...", 2*solutionIds.length);
     			tx = hibSession.beginTransaction();
+    			List<Long> replacedIds = new ArrayList<Long>();
     			for (int i=0;i<solutionIds.length;i++) {
     				Solution solution = (new SolutionDAO()).get(solutionIds[i]);
     				Solution committedSolution = solution.getOwner().getCommittedSolution();
     				if (committedSolution!=null) {
-    					committedSolution.uncommitSolution(hibSession, getModel().getProperties().getProperty("General.OwnerPuid"));
+    					// with incremental commit, the committed solution is uncommitted by Solution.commitSolution (only changed classes are updated)
+    					// and it is ignored by the conflict checks of all the solutions that are being committed
+    					if (ApplicationProperty.SolutionCommitIncremental.isFalse())
+    						committedSolution.uncommitSolution(hibSession, getModel().getProperties().getProperty("General.OwnerPuid"));
+    					else
+    						replacedIds.add(committedSolution.getUniqueId());
                         refreshIds.add(committedSolution.getUniqueId());
                         touchedSolutions.add(committedSolution);
                     }
@@ -176,7 +182,7 @@ public class TimetableDatabaseSaver extends TimetableSaver {
     			for (int i=0;i<solutionIds.length;i++) {
     				Solution solution = (new SolutionDAO()).get(solutionIds[i]);
     				List<String> messages = new ArrayList<String>();
-    				solution.commitSolution(messages,hibSession, getModel().getProperties().getProperty("General.OwnerPuid"));
+    				solution.commitSolution(messages,hibSession, getModel().getProperties().getProperty("General.OwnerPuid"), replacedIds);
     				touchedSolutions.add(solution);
     				for (String m: messages) {
     					iProgress.error("Unable to commit: "+m);
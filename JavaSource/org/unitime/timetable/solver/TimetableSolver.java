@@ -1576,7 +1576,9 @@ public class TimetableSolver extends ParallelSolver<Lecture, Placement> implemen
 
 		System.gc();
 		sLog.debug(" -- memory usage before activation:"+org.unitime.commons.Debug.getMem());
+		long t0 = System.currentTimeMillis();
 		restore(iPassivationFolder, iPassivationPuid, true);
+		SolverPassivation.activated(SolverPassivation.sTypeCourse, iPassivationPuid, System.currentTimeMillis() - t0);
         System.gc();
         sLog.debug(" -- memory usage after activation:"+org.unitime.commons.Debug.getMem());
 		
@@ -1597,9 +1599,11 @@ public class TimetableSolver extends ParallelSolver<Lecture, Placement> implemen
 		
 		iPassivationFolder = folder;
 		iPassivationPuid = puid;
+		long t0 = System.currentTimeMillis();
 		backup(iPassivationFolder, iPassivationPuid);
 
    		disposeNoInherit(false);
+   		SolverPassivation.passivated(SolverPassivation.sTypeCourse, puid, System.currentTimeMillis() - t0);
         System.gc();
         sLog.debug(" -- memory usage after passivation:"+org.unitime.commons.Debug.getMem());
 		
@@ -1608,7 +1612,7 @@ public class TimetableSolver extends ParallelSolver<Lecture, Placement> implemen
 	}
 
 	public synchronized boolean passivateIfNeeded(File folder, String puid) {
-		long inactiveTimeToPassivate = 60000l * ApplicationProperty.SolverPasivationTime.intValue();
+		long inactiveTimeToPassivate = SolverPassivation.getInactiveTimeToPassivate(SolverPassivation.sTypeCourse);
 		if (isPassivated() || inactiveTimeToPassivate <= 0 || timeFromLastUsed() < inactiveTimeToPassivate || isWorking()) return false;
 		return passivate(folder, puid);
 	}
@@ -19,10 +19,13 @@
 */
 package org.unitime.timetable.solver.curricula;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cpsolver.ifs.util.DataProperties;
@@ -30,18 +33,23 @@ import org.cpsolver.ifs.util.Progress;
 import org.unitime.timetable.model.CourseOffering;
 import org.unitime.timetable.model.InstructionalOffering;
 import org.unitime.timetable.model.Session;
-import org.unitime.timetable.model.SubjectArea;
+import org.unitime.timetable.model.dao.CourseOfferingDAO;
 
 
 /**
+ * Last-like student course demands. All last-like course demands of the academic session are loaded at once
+ * (on the first call of {@link #getDemands(CourseOffering)} or {@link #getCourses(Long)}) into a {@link LastLikeDemandsIndex}.
+ * The student sets of a course and the courses of a student are created from the index on the first request and cached.
+ * 
  * @author Tomas Muller
  */
 public class LastLikeStudentCourseDemands implements StudentCourseDemands {
 	protected org.hibernate.Session iHibSession;
 	protected Hashtable<String, Set<WeightedStudentId>> iDemandsForPemId = new Hashtable<String, Set<WeightedStudentId>>();
 	protected Hashtable<Long, Hashtable<String, Set<WeightedStudentId>>> iDemandsForSubjectCourseNbr = new Hashtable<Long, Hashtable<String,Set<WeightedStudentId>>>();
-	protected Hashtable<Long, Set<WeightedCourseOffering>> iStudentRequests = null;
+	protected Hashtable<Long, Set<WeightedCourseOffering>> iStudentRequests = new Hashtable<Long, Set<WeightedCourseOffering>>();
 	protected Long iSessionId = null;
+	private volatile LastLikeDemandsIndex iIndex = null;
 	
 	public LastLikeStudentCourseDemands(DataProperties properties) {
 	}
@@ -65,53 +73,31 @@ public class LastLikeStudentCourseDemands implements StudentCourseDemands {
 		return 1.0f;
 	}
 	
-	protected Hashtable<String, Set<WeightedStudentId>> loadSubject(SubjectArea subject) {
-		Hashtable<String, Set<WeightedStudentId>> demandsForCourseNbr = new Hashtable<String, Set<WeightedStudentId>>();
-		iDemandsForSubjectCourseNbr.put(subject.getUniqueId(), demandsForCourseNbr);
-		for (Object[] d: (List<Object[]>)iHibSession.createQuery("select d.courseNbr, s.uniqueId, d.coursePermId, "+
-				"a.academicAreaAbbreviation, f.code, m.code " +
-				"from LastLikeCourseDemand d inner join d.student s left outer join s.academicAreaClassifications c left outer join s.posMajors m " +
-				"left outer join c.academicArea a left outer join c.academicClassification f where " +
-				"d.subjectArea.uniqueId=:subjectAreaId")
-				.setLong("subjectAreaId", subject.getUniqueId()).setCacheable(true).list()) {
-			String courseNbr = (String)d[0];
-			String coursePermId = (String)d[2];
-			String areaAbbv = (String)d[3];
-			String clasfCode = (String)d[4];
-			String majorCode = (String)d[5];
-			WeightedStudentId studentId = new WeightedStudentId((Long)d[1], getProjection(areaAbbv, clasfCode, majorCode));
-			studentId.setStats(areaAbbv, clasfCode, majorCode);
-			studentId.setCurriculum(areaAbbv == null ? null : majorCode == null ? areaAbbv : areaAbbv + "/" + majorCode);
-			Set<WeightedStudentId> studentIds = demandsForCourseNbr.get(courseNbr);
-			if (studentIds == null) {
-				studentIds = new HashSet<WeightedStudentId>();
-				demandsForCourseNbr.put(courseNbr, studentIds);
-			}
-			studentIds.add(studentId);
-			
-			if (coursePermId!=null) {
-			    studentIds = iDemandsForPemId.get(coursePermId);
-			    if (studentIds==null) {
-                    studentIds = new HashSet<WeightedStudentId>();
-                    iDemandsForPemId.put(coursePermId, studentIds);
-                }
-                studentIds.add(studentId);
+	/**
+	 * Last-like demands index, loaded on the first call (the projections, see {@link #getProjection(String, String, String)},
+	 * must be available by then)
+	 */
+	protected LastLikeDemandsIndex getIndex() {
+		LastLikeDemandsIndex index = iIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = iIndex;
+				if (index == null) {
+					index = new LastLikeDemandsIndex(this, iHibSession, iSessionId);
+					iIndex = index;
+				}
 			}
 		}
-		return demandsForCourseNbr;
+		return index;
 	}
 	
 	@Override
 	public Set<WeightedStudentId> getDemands(CourseOffering course) {
-		Hashtable<String, Set<WeightedStudentId>> demandsForCourseNbr = iDemandsForSubjectCourseNbr.get(course.getSubjectArea().getUniqueId());
-		if (demandsForCourseNbr == null) {
-			demandsForCourseNbr = loadSubject(course.getSubjectArea());
-		}
 		Set<WeightedStudentId> studentIds = null;
 		if (course.getPermId() != null)
-			studentIds = iDemandsForPemId.get(course.getPermId());
+			studentIds = getDemandsForPermId(course.getPermId());
 		if (studentIds == null)
-			studentIds = demandsForCourseNbr.get(course.getCourseNbr());
+			studentIds = getDemandsForCourseNbr(course.getSubjectArea().getUniqueId(), course.getCourseNbr());
 
 		if (course.getDemandOffering() != null && !course.getDemandOffering().equals(course)) {
 			if (studentIds == null)
@@ -128,38 +114,267 @@ public class LastLikeStudentCourseDemands implements StudentCourseDemands {
 		return studentIds;
 	}
 	
+	protected Set<WeightedStudentId> getDemandsForPermId(String coursePermId) {
+		synchronized (iDemandsForPemId) {
+			Set<WeightedStudentId> studentIds = iDemandsForPemId.get(coursePermId);
+			if (studentIds == null) {
+				studentIds = getIndex().getStudents(getIndex().getRowsForPermId(coursePermId));
+				if (studentIds == null) return null;
+				iDemandsForPemId.put(coursePermId, studentIds);
+			}
+			return studentIds;
+		}
+	}
+	
+	protected Set<WeightedStudentId> getDemandsForCourseNbr(Long subjectAreaId, String courseNbr) {
+		synchronized (iDemandsForSubjectCourseNbr) {
+			Hashtable<String, Set<WeightedStudentId>> demandsForCourseNbr = iDemandsForSubjectCourseNbr.get(subjectAreaId);
+			if (demandsForCourseNbr == null) {
+				demandsForCourseNbr = new Hashtable<String, Set<WeightedStudentId>>();
+				iDemandsForSubjectCourseNbr.put(subjectAreaId, demandsForCourseNbr);
+			}
+			Set<WeightedStudentId> studentIds = demandsForCourseNbr.get(courseNbr);
+			if (studentIds == null) {
+				studentIds = getIndex().getStudents(getIndex().getRowsForCourseNbr(subjectAreaId, courseNbr));
+				if (studentIds == null) return null;
+				demandsForCourseNbr.put(courseNbr, studentIds);
+			}
+			return studentIds;
+		}
+	}
+	
 	@Override
 	public Set<WeightedCourseOffering> getCourses(Long studentId) {
-		if (iStudentRequests == null) {
-			iStudentRequests = new Hashtable<Long, Set<WeightedCourseOffering>>();
-			for (Object[] o : (List<Object[]>)iHibSession.createQuery(
-					"select s.uniqueId, co, " +
-					"a.academicAreaAbbreviation, f.code, m.code " +
-					"from LastLikeCourseDemand x inner join x.student s left outer join s.academicAreaClassifications c left outer join s.posMajors m " +
-					"left outer join c.academicArea a left outer join c.academicClassification f, CourseOffering co where " +
-					"x.subjectArea.session.uniqueId = :sessionId and "+
-					"co.subjectArea.uniqueId = x.subjectArea.uniqueId and " +
-					"((x.coursePermId is not null and co.permId=x.coursePermId) or (x.coursePermId is null and co.courseNbr=x.courseNbr))")
-					.setLong("sessionId", iSessionId)
-					.setCacheable(true).list()) {
-				Long sid = (Long)o[0];
-				CourseOffering co = (CourseOffering)o[1];
-				String areaAbbv = (String)o[2];
-				String clasfCode = (String)o[3];
-				String majorCode = (String)o[4];
-				Set<WeightedCourseOffering> courses = iStudentRequests.get(sid);
-				if (courses == null) {
-					courses = new HashSet<WeightedCourseOffering>();
-					iStudentRequests.put(sid, courses);
+		synchronized (iStudentRequests) {
+			Set<WeightedCourseOffering> courses = iStudentRequests.get(studentId);
+			if (courses == null) {
+				LastLikeDemandsIndex index = getIndex();
+				int[] rows = index.getRowsForStudent(studentId);
+				if (rows == null) return null;
+				courses = new HashSet<WeightedCourseOffering>();
+				for (int row: rows) {
+					long[] courseIds = index.getCourseIds(row);
+					if (courseIds == null) continue;
+					for (long courseId: courseIds)
+						courses.add(new WeightedCourseOffering(CourseOfferingDAO.getInstance().get(courseId, iHibSession), index.getWeight(row)));
 				}
-				courses.add(new WeightedCourseOffering(co, getProjection(areaAbbv, clasfCode, majorCode)));
+				iStudentRequests.put(studentId, courses);
 			}
+			return courses;
 		}
-		return iStudentRequests.get(studentId);
 	}
 
 	@Override
 	public Double getEnrollmentPriority(Long studentId, Long courseId) {
 		return null;
 	}
+	
+	/**
+	 * Compact in-memory index of the last-like course demands of an academic session. There is one row for each
+	 * last-like course demand and academic area, classification, and major of the student, stored in primitive arrays
+	 * (student id, index of the area-classification-major combination, index of the matching course offerings).
+	 * The rows are indexed by course permanent id, by subject area and course number, and by student.
+	 * Once created, the index is never changed and it can be used by multiple threads at once.
+	 */
+	public static class LastLikeDemandsIndex {
+		private static final int[] sNoRows = new int[0];
+		// rows
+		private long[] iRowStudentIds;
+		private int[] iRowStats;
+		private int[] iRowCourses;
+		// area-classification-major combinations
+		private String[] iAreas, iClasfs, iMajors;
+		private float[] iWeights;
+		// matching course offerings
+		private long[][] iCourseIds;
+		// indexes
+		private Map<String, int[]> iPermId2rows = new HashMap<String, int[]>();
+		private Map<Long, Map<String, int[]>> iSubject2courseNbr2rows = new HashMap<Long, Map<String, int[]>>();
+		private Map<Long, int[]> iStudent2rows = new HashMap<Long, int[]>();
+		
+		public LastLikeDemandsIndex(LastLikeStudentCourseDemands demands, org.hibernate.Session hibSession, Long sessionId) {
+			// course offerings: subject area -> perm id / course number -> course offering ids
+			Map<Long, Map<String, List<Long>>> subject2permId2courses = new HashMap<Long, Map<String, List<Long>>>();
+			Map<Long, Map<String, List<Long>>> subject2courseNbr2courses = new HashMap<Long, Map<String, List<Long>>>();
+			for (Object[] o: (List<Object[]>)hibSession.createQuery(
+					"select co.uniqueId, co.subjectArea.uniqueId, co.courseNbr, co.permId from CourseOffering co where co.subjectArea.session.uniqueId = :sessionId")
+					.setLong("sessionId", sessionId).setCacheable(true).list()) {
+				Long courseId = (Long)o[0];
+				Long subjectId = (Long)o[1];
+				String courseNbr = (String)o[2];
+				String permId = (String)o[3];
+				add(subject2courseNbr2courses, subjectId, courseNbr, courseId);
+				if (permId != null)
+					add(subject2permId2courses, subjectId, permId, courseId);
+			}
+			
+			List<Long> studentIds = new ArrayList<Long>();
+			List<Integer> stats = new ArrayList<Integer>();
+			List<Integer> courses = new ArrayList<Integer>();
+			Map<String, Integer> stats2index = new HashMap<String, Integer>();
+			List<String[]> statsList = new ArrayList<String[]>();
+			Map<String, Integer> courses2index = new HashMap<String, Integer>();
+			List<long[]> coursesList = new ArrayList<long[]>();
+			Map<String, List<Integer>> permId2rows = new HashMap<String, List<Integer>>();
+			Map<Long, Map<String, List<Integer>>> subject2courseNbr2rows = new HashMap<Long, Map<String, List<Integer>>>();
+			Map<Long, List<Integer>> student2rows = new HashMap<Long, List<Integer>>();
+			
+			for (Object[] d: (List<Object[]>)hibSession.createQuery("select d.subjectArea.uniqueId, d.courseNbr, d.coursePermId, s.uniqueId, "+
+					"a.academicAreaAbbreviation, f.code, m.code " +
+					"from LastLikeCourseDemand d inner join d.student s left outer join s.academicAreaClassifications c left outer join s.posMajors m " +
+					"left outer join c.academicArea a left outer join c.academicClassification f where " +
+					"d.subjectArea.session.uniqueId = :sessionId")
+					.setLong("sessionId", sessionId).setCacheable(true).list()) {
+				Long subjectId = (Long)d[0];
+				String courseNbr = (String)d[1];
+				String coursePermId = (String)d[2];
+				Long studentId = (Long)d[3];
+				String areaAbbv = (String)d[4];
+				String clasfCode = (String)d[5];
+				String majorCode = (String)d[6];
+				int row = studentIds.size();
+				
+				String statsKey = areaAbbv + "|" + clasfCode + "|" + majorCode;
+				Integer statsIndex = stats2index.get(statsKey);
+				if (statsIndex == null) {
+					statsIndex = statsList.size();
+					statsList.add(new String[] { areaAbbv, clasfCode, majorCode });
+					stats2index.put(statsKey, statsIndex);
+				}
+				
+				String coursesKey = subjectId + (coursePermId == null ? "|N|" + courseNbr : "|P|" + coursePermId);
+				Integer coursesIndex = courses2index.get(coursesKey);
+				if (coursesIndex == null) {
+					List<Long> courseIds = get(coursePermId == null ? subject2courseNbr2courses : subject2permId2courses, subjectId, coursePermId == null ? courseNbr : coursePermId);
+					if (courseIds == null) {
+						coursesIndex = -1;
+					} else {
+						coursesIndex = coursesList.size();
+						long[] ids = new long[courseIds.size()];
+						for (int i = 0; i < ids.length; i++) ids[i] = courseIds.get(i);
+						coursesList.add(ids);
+					}
+					courses2index.put(coursesKey, coursesIndex);
+				}
+				
+				studentIds.add(studentId);
+				stats.add(statsIndex);
+				courses.add(coursesIndex);
+				add(subject2courseNbr2rows, subjectId, courseNbr, row);
+				if (coursePermId != null) {
+					List<Integer> rows = permId2rows.get(coursePermId);
+					if (rows == null) {
+						rows = new ArrayList<Integer>();
+						permId2rows.put(coursePermId, rows);
+					}
+					rows.add(row);
+				}
+				List<Integer> rows = student2rows.get(studentId);
+				if (rows == null) {
+					rows = new ArrayList<Integer>();
+					student2rows.put(studentId, rows);
+				}
+				rows.add(row);
+			}
+			
+			iRowStudentIds = new long[studentIds.size()];
+			iRowStats = new int[studentIds.size()];
+			iRowCourses = new int[studentIds.size()];
+			for (int row = 0; row < iRowStudentIds.length; row++) {
+				iRowStudentIds[row] = studentIds.get(row);
+				iRowStats[row] = stats.get(row);
+				iRowCourses[row] = courses.get(row);
+			}
+			iAreas = new String[statsList.size()];
+			iClasfs = new String[statsList.size()];
+			iMajors = new String[statsList.size()];
+			iWeights = new float[statsList.size()];
+			for (int i = 0; i < iWeights.length; i++) {
+				String[] s = statsList.get(i);
+				iAreas[i] = s[0]; iClasfs[i] = s[1]; iMajors[i] = s[2];
+				iWeights[i] = demands.getProjection(s[0], s[1], s[2]);
+			}
+			iCourseIds = coursesList.toArray(new long[coursesList.size()][]);
+			for (Map.Entry<String, List<Integer>> e: permId2rows.entrySet())
+				iPermId2rows.put(e.getKey(), toArray(e.getValue()));
+			for (Map.Entry<Long, Map<String, List<Integer>>> e: subject2courseNbr2rows.entrySet()) {
+				Map<String, int[]> courseNbr2rows = new HashMap<String, int[]>();
+				for (Map.Entry<String, List<Integer>> f: e.getValue().entrySet())
+					courseNbr2rows.put(f.getKey(), toArray(f.getValue()));
+				iSubject2courseNbr2rows.put(e.getKey(), courseNbr2rows);
+			}
+			for (Map.Entry<Long, List<Integer>> e: student2rows.entrySet())
+				iStudent2rows.put(e.getKey(), toArray(e.getValue()));
+		}
+		
+		private static <T> void add(Map<Long, Map<String, List<T>>> table, Long key1, String key2, T value) {
+			Map<String, List<T>> map = table.get(key1);
+			if (map == null) {
+				map = new HashMap<String, List<T>>();
+				table.put(key1, map);
+			}
+			List<T> list = map.get(key2);
+			if (list == null) {
+				list = new ArrayList<T>();
+				map.put(key2, list);
+			}
+			list.add(value);
+		}
+		
+		private static <T> List<T> get(Map<Long, Map<String, List<T>>> table, Long key1, String key2) {
+			Map<String, List<T>> map = table.get(key1);
+			return (map == null ? null : map.get(key2));
+		}
+		
+		private static int[] toArray(List<Integer> list) {
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+			return array;
+		}
+		
+		/** Rows of the last-like course demands with the given course permanent id, null if there are none */
+		public int[] getRowsForPermId(String coursePermId) {
+			return iPermId2rows.get(coursePermId);
+		}
+		
+		/** Rows of the last-like course demands with the given subject area and course number, null if there are none */
+		public int[] getRowsForCourseNbr(Long subjectAreaId, String courseNbr) {
+			Map<String, int[]> courseNbr2rows = iSubject2courseNbr2rows.get(subjectAreaId);
+			return (courseNbr2rows == null ? null : courseNbr2rows.get(courseNbr));
+		}
+		
+		/** Rows of the last-like course demands of the given student, null if there are none */
+		public int[] getRowsForStudent(Long studentId) {
+			return iStudent2rows.get(studentId);
+		}
+		
+		public long getStudentId(int row) { return iRowStudentIds[row]; }
+		public String getArea(int row) { return iAreas[iRowStats[row]]; }
+		public String getClasf(int row) { return iClasfs[iRowStats[row]]; }
+		public String getMajor(int row) { return iMajors[iRowStats[row]]; }
+		public float getWeight(int row) { return iWeights[iRowStats[row]]; }
+		
+		/** Course offerings matching the last-like course demand of the given row, null if there are none */
+		public long[] getCourseIds(int row) {
+			return iRowCourses[row] < 0 ? null : iCourseIds[iRowCourses[row]];
+		}
+		
+		/** Number of rows */
+		public int size() { return iRowStudentIds.length; }
+		
+		/** Students of the given rows (first row of each student is used), null if there are no rows */
+		public Set<WeightedStudentId> getStudents(int[] rows) {
+			if (rows == null) return null;
+			Set<WeightedStudentId> students = new HashSet<WeightedStudentId>(Math.max(16, 2 * rows.length));
+			for (int row: rows) {
+				WeightedStudentId student = new WeightedStudentId(getStudentId(row), getWeight(row));
+				if (students.contains(student)) continue;
+				String areaAbbv = getArea(row), majorCode = getMajor(row);
+				student.setStats(areaAbbv, getClasf(row), majorCode);
+				student.setCurriculum(areaAbbv == null ? null : majorCode == null ? areaAbbv : areaAbbv + "/" + majorCode);
+				students.add(student);
+			}
+			return students;
+		}
+	}
 }
@@ -52,6 +52,8 @@ import org.cpsolver.ifs.model.Constraint;
 import org.cpsolver.ifs.util.Progress;
 import org.cpsolver.ifs.util.ToolBox;
 import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Transaction;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -73,11 +75,11 @@ import org.unitime.timetable.model.RoomFeaturePref;
 import org.unitime.timetable.model.RoomGroupPref;
 import org.unitime.timetable.model.RoomPref;
 import org.unitime.timetable.model.TravelTime;
-import org.unitime.timetable.model.dao.DistributionPrefDAO;
-import org.unitime.timetable.model.dao.EventDAO;
 import org.unitime.timetable.model.dao.ExamDAO;
 import org.unitime.timetable.model.dao.ExamTypeDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
+import org.unitime.timetable.solver.LoadTaskExecutor;
+import org.unitime.timetable.solver.LoadTaskExecutor.LoadTask;
 import org.unitime.timetable.solver.jgroups.SolverServerImplementation;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.RoomAvailability;
@@ -105,6 +107,9 @@ public class ExamDatabaseLoader extends ExamLoader {
     
     private boolean iRoomAvailabilityTimeStampIsSet = false;
     
+    private int iNrLoadThreads = 4;
+    private LoadTaskExecutor iLoadTasks = null;
+    
     public ExamDatabaseLoader(ExamModel model, Assignment<Exam, ExamPlacement> assignment) {
         super(model, assignment);
         iProgress = Progress.getInstance(model);
@@ -112,6 +117,7 @@ public class ExamDatabaseLoader extends ExamLoader {
         iExamTypeId = model.getProperties().getPropertyLong("Exam.Type", null);
         iLoadSolution = model.getProperties().getPropertyBoolean("General.LoadSolution", true);
         iInstructorFormat = getModel().getProperties().getProperty("General.InstructorFormat", DepartmentalInstructor.sNameFormatLastFist);
+        iNrLoadThreads = getModel().getProperties().getPropertyInt("General.LoadThreads", iNrLoadThreads);
     }
     
     private String getExamLabel(org.unitime.timetable.model.Exam exam) {
@@ -129,6 +135,16 @@ public class ExamDatabaseLoader extends ExamLoader {
         Transaction tx = null;
         try {
             tx = hibSession.beginTransaction();
+            
+            iLoadTasks = new LoadTaskExecutor(iNrLoadThreads, iSessionId, iProgress);
+            
+            // start loading the data that do not depend on the model being built
+            ExamType type = ExamTypeDAO.getInstance().get(iExamTypeId, hibSession);
+            boolean considerEventConflicts = ApplicationProperty.ExaminationConsiderEventConflicts.isTrue(type.getReference());
+            List<LoadTask<ExamEnrollments>> enrollments = submitStudentEnrollments(hibSession);
+            LoadTask<List<DistributionPref>> distributions = submitDistributions(hibSession);
+            List<LoadTask<List<Object[]>>> events = (considerEventConflicts ? submitEventAvailabilities(hibSession) : null);
+            
             TravelTime.populateTravelTimes(getModel().getDistanceMetric(), iSessionId, hibSession);
             loadPeriods();
             loadRooms();
@@ -141,10 +157,9 @@ public class ExamDatabaseLoader extends ExamLoader {
             if (availability != null) loadRoomAvailability(availability);
 
             loadExams();
-            loadStudents();
-            loadDistributions();
-            ExamType type = ExamTypeDAO.getInstance().get(iExamTypeId, hibSession);
-            if (ApplicationProperty.ExaminationConsiderEventConflicts.isTrue(type.getReference())) loadAvailabilitiesFromEvents();
+            loadStudents(enrollments);
+            loadDistributions(distributions);
+            if (considerEventConflicts) loadAvailabilitiesFromEvents(events);
             if (ApplicationProperty.ExaminationCreateSameRoomConstraints.isTrue(type.getReference())) makeupSameRoomConstraints();
             getModel().init();
             getModel().clearAssignmentContexts(getAssignment());
@@ -156,6 +171,7 @@ public class ExamDatabaseLoader extends ExamLoader {
             if (tx!=null) tx.rollback();
             throw e;
         } finally {
+            if (iLoadTasks != null) { iLoadTasks.close(); iLoadTasks = null; }
     		// here we need to close the session since this code may run in a separate thread
     		if (hibSession!=null && hibSession.isOpen()) hibSession.close();
         }
@@ -512,55 +528,78 @@ public class ExamDatabaseLoader extends ExamLoader {
         return rooms;
     }
     
-    protected void loadStudents() {
-        loadStudents(
-                new ExamDAO().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.clazz c "+
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeClass+" and "+
-                "o.ownerId=c.uniqueId").setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list(),
-                "class");
-        loadStudents(
-                new ExamDAO().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.clazz c " +
-                "inner join c.schedulingSubpart.instrOfferingConfig ioc " +
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeConfig+" and "+
-                "o.ownerId=ioc.uniqueId").setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list(),
-                "config");
-        loadStudents(
-                new ExamDAO().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.courseOffering co " +
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeCourse+" and "+
-                "o.ownerId=co.uniqueId").setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list(),
-                "course");
-        loadStudents(
-                new ExamDAO().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.courseOffering.instructionalOffering io " +
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeOffering+" and "+
-                "o.ownerId=io.uniqueId").setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list(),
-                "offering");
+    private static final String[][] sEnrollmentQueries = new String[][] {
+    	new String[] {"class",
+    			"select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
+    	        "Exam x inner join x.owners o, "+
+    	        "StudentClassEnrollment e inner join e.clazz c "+
+    	        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
+    	        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeClass+" and "+
+    	        "o.ownerId=c.uniqueId"},
+    	new String[] {"config",
+    	        "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
+    	        "Exam x inner join x.owners o, "+
+    	        "StudentClassEnrollment e inner join e.clazz c " +
+    	        "inner join c.schedulingSubpart.instrOfferingConfig ioc " +
+    	        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
+    	        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeConfig+" and "+
+    	        "o.ownerId=ioc.uniqueId"},
+    	new String[] {"course",
+    	        "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
+    	        "Exam x inner join x.owners o, "+
+    	        "StudentClassEnrollment e inner join e.courseOffering co " +
+    	        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
+    	        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeCourse+" and "+
+    	        "o.ownerId=co.uniqueId"},
+    	new String[] {"offering",
+    	        "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
+    	        "Exam x inner join x.owners o, "+
+    	        "StudentClassEnrollment e inner join e.courseOffering.instructionalOffering io " +
+    	        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
+    	        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeOffering+" and "+
+    	        "o.ownerId=io.uniqueId"}
+    };
+    
+    /**
+     * Student enrollments of all four exam owner types, each read by a single forward-only scroll
+     * into an {@link ExamEnrollments} table (no lists of result rows are created).
+     */
+    private List<LoadTask<ExamEnrollments>> submitStudentEnrollments(org.hibernate.Session hibSession) {
+    	List<LoadTask<ExamEnrollments>> tasks = new ArrayList<LoadTask<ExamEnrollments>>();
+    	for (final String[] query: sEnrollmentQueries) {
+    		tasks.add(iLoadTasks.submit(new LoadTask<ExamEnrollments>("Student enrollments (" + query[0] + ")", hibSession) {
+    			@Override
+    			protected ExamEnrollments execute(org.hibernate.Session hibSession) {
+    				ExamEnrollments enrollments = new ExamEnrollments(query[0]);
+    				ScrollableResults rows = hibSession.createQuery(query[1])
+    						.setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId)
+    						.setFetchSize(1000).scroll(ScrollMode.FORWARD_ONLY);
+    				try {
+    					while (rows.next())
+    						enrollments.add((Long)rows.get(0), (Long)rows.get(1), (Long)rows.get(2));
+    				} finally {
+    					rows.close();
+    				}
+    				return enrollments;
+    			}
+    		}));
+    	}
+    	return tasks;
+    }
+    
+    protected void loadStudents(List<LoadTask<ExamEnrollments>> tasks) throws Exception {
+    	for (LoadTask<ExamEnrollments> task: tasks)
+    		loadStudents(task.get());
     }
     
-    protected void loadStudents(Collection enrl, String phase) {
+    protected void loadStudents(ExamEnrollments enrl) {
         HashSet notLoaded = new HashSet();
-        iProgress.setPhase("Loading students ("+phase+")...", enrl.size());
-        for (Iterator i=enrl.iterator();i.hasNext();) {
+        iProgress.setPhase("Loading students ("+enrl.getPhase()+")...", enrl.size());
+        for (int i = 0; i < enrl.size(); i++) {
             iProgress.incProgress();
-            Object[] o = (Object[])i.next();
-            Long examId = (Long)o[0];
-            Long ownerId = (Long)o[1];
-            Long studentId = (Long)o[2];
+            Long examId = enrl.getExamId(i);
+            long ownerId = enrl.getOwnerId(i);
+            Long studentId = enrl.getStudentId(i);
             ExamStudent student = (ExamStudent)iStudents.get(studentId);
             if (student==null) {
                 student = new ExamStudent(getModel(), studentId);
@@ -582,6 +621,35 @@ public class ExamDatabaseLoader extends ExamLoader {
         }
     }
     
+    /**
+     * Exam enrollments (exam id, exam owner id, and student id triplets) stored in a single primitive array.
+     */
+    protected static class ExamEnrollments {
+    	private String iPhase;
+    	private long[] iData = new long[3 * 1024];
+    	private int iSize = 0;
+    	
+    	public ExamEnrollments(String phase) { iPhase = phase; }
+    	
+    	public void add(long examId, long ownerId, long studentId) {
+    		if (3 * iSize + 3 > iData.length) {
+    			long[] data = new long[2 * iData.length];
+    			System.arraycopy(iData, 0, data, 0, 3 * iSize);
+    			iData = data;
+    		}
+    		iData[3 * iSize] = examId;
+    		iData[3 * iSize + 1] = ownerId;
+    		iData[3 * iSize + 2] = studentId;
+    		iSize ++;
+    	}
+    	
+    	public String getPhase() { return iPhase; }
+    	public int size() { return iSize; }
+    	public long getExamId(int index) { return iData[3 * index]; }
+    	public long getOwnerId(int index) { return iData[3 * index + 1]; }
+    	public long getStudentId(int index) { return iData[3 * index + 2]; }
+    }
+    
     /*
     protected void loadAvailabilities() {
         List committedAssignments = new ExamDAO().getSession().createQuery(
@@ -632,43 +700,80 @@ public class ExamDatabaseLoader extends ExamLoader {
     }
     */
     
-    protected void loadAvailabilitiesFromEvents() {
-        List overlappingClassEvents = 
-                new EventDAO().getSession().createQuery(
+    private List<LoadTask<List<Object[]>>> submitEventAvailabilities(org.hibernate.Session hibSession) {
+    	List<LoadTask<List<Object[]>>> tasks = new ArrayList<LoadTask<List<Object[]>>>();
+    	final int travelTimeClass = ApplicationProperty.ExaminationTravelTimeClass.intValue();
+    	final int travelTimeCourse = ApplicationProperty.ExaminationTravelTimeCourse.intValue();
+    	tasks.add(iLoadTasks.submit(new LoadTask<List<Object[]>>("Overlapping class events", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return (List<Object[]>)hibSession.createQuery(
                         "select distinct e.uniqueId, p.uniqueId, m from ClassEvent e inner join e.meetings m, ExamPeriod p where " +
                         "p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and m.approvalStatus = 1 and "+
                         "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
                         HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and "+
                         "(exists elements(e.clazz.studentEnrollments) or exists elements(e.clazz.classInstructors))"
                         )
-                        .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeClass.intValue())
+                        .setInteger("travelTime", travelTimeClass)
                         .setLong("examTypeId", iExamTypeId)
                         .setLong("sessionId", iSessionId)
                         .setCacheable(true)
                         .list();
-        List overlappingCourseEvents =
-                new EventDAO().getSession().createQuery(
+			}
+		}));
+    	tasks.add(iLoadTasks.submit(new LoadTask<List<Object[]>>("Overlapping course events", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return (List<Object[]>)hibSession.createQuery(
                         "select distinct e.uniqueId, p.uniqueId, m from CourseEvent e inner join e.meetings m, ExamPeriod p where " +
                         "e.reqAttendance=true and m.approvalStatus = 1 and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and "+
                         "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
                         HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate")
-                        .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
+                        .setInteger("travelTime", travelTimeCourse)
                         .setLong("examTypeId", iExamTypeId)
                         .setLong("sessionId", iSessionId)
                         .setCacheable(true)
                         .list();
+			}
+		}));
+    	tasks.add(iLoadTasks.submit(new LoadTask<List<Object[]>>("Students of overlapping class events", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return (List<Object[]>)hibSession.createQuery(
+		                "select e.uniqueId, s.student.uniqueId from ClassEvent e inner join e.meetings m inner join e.clazz.studentEnrollments s, ExamPeriod p where " +
+		                "p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and m.approvalStatus = 1 and "+
+		                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+		                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate")
+		                .setInteger("travelTime", travelTimeClass)
+		                .setLong("examTypeId", iExamTypeId)
+		                .setLong("sessionId", iSessionId)
+		                .setCacheable(true).list();
+			}
+		}));
+    	tasks.add(iLoadTasks.submit(new LoadTask<List<Object[]>>("Instructors of overlapping class events", hibSession) {
+			@Override
+			protected List<Object[]> execute(org.hibernate.Session hibSession) {
+				return (List<Object[]>)hibSession.createQuery(
+		                "select e.uniqueId, i.instructor from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors i, ExamPeriod p where " +
+		                "p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and m.approvalStatus = 1 and i.lead=true and "+
+		                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+		                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate")
+		                .setInteger("travelTime", travelTimeClass)
+		                .setLong("examTypeId", iExamTypeId)
+		                .setLong("sessionId", iSessionId)
+		                .setCacheable(true).list();
+			}
+		}));
+    	return tasks;
+    }
+    
+    protected void loadAvailabilitiesFromEvents(List<LoadTask<List<Object[]>>> tasks) throws Exception {
+        List<Object[]> overlappingClassEvents = tasks.get(0).get();
+        List<Object[]> overlappingCourseEvents = tasks.get(1).get();
         iProgress.setPhase("Loading availabilities...", overlappingClassEvents.size()+overlappingCourseEvents.size());
         
         Hashtable<Long, Set<ExamStudent>> students = new Hashtable();
-        for (Iterator i=new EventDAO().getSession().createQuery(
-                "select e.uniqueId, s.student.uniqueId from ClassEvent e inner join e.meetings m inner join e.clazz.studentEnrollments s, ExamPeriod p where " +
-                "p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and m.approvalStatus = 1 and "+
-                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
-                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate")
-                .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeClass.intValue())
-                .setLong("examTypeId", iExamTypeId)
-                .setLong("sessionId", iSessionId)
-                .setCacheable(true).list().iterator();i.hasNext();) {
+        for (Iterator i=tasks.get(2).get().iterator();i.hasNext();) {
             Object[] o = (Object[])i.next();
             Long eventId = (Long)o[0];
             Long studentId = (Long)o[1];
@@ -680,15 +785,7 @@ public class ExamDatabaseLoader extends ExamLoader {
         }
         
         Hashtable<Long, Set<ExamInstructor>> instructors = new Hashtable();
-        for (Iterator i=new EventDAO().getSession().createQuery(
-                "select e.uniqueId, i.instructor from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors i, ExamPeriod p where " +
-                "p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and m.approvalStatus = 1 and i.lead=true and "+
-                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
-                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate")
-                .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeClass.intValue())
-                .setLong("examTypeId", iExamTypeId)
-                .setLong("sessionId", iSessionId)
-                .setCacheable(true).list().iterator();i.hasNext();) {
+        for (Iterator i=tasks.get(3).get().iterator();i.hasNext();) {
             Object[] o = (Object[])i.next();
             Long eventId = (Long)o[0];
             ExamInstructor instructor = getInstructor((DepartmentalInstructor)o[1]);
@@ -823,14 +920,24 @@ public class ExamDatabaseLoader extends ExamLoader {
         }        
     }
     
-    protected void loadDistributions() {
-        List distPrefs = new DistributionPrefDAO().getSession().createQuery(
-                "select distinct d from DistributionPref d inner join d.distributionObjects o, Exam x where "+
-                "d.distributionType.examPref=true and "+
-                "o.prefGroup=x and x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "d.owner.uniqueId=:sessionId").
-                setLong("sessionId", iSessionId).
-                setLong("examTypeId", iExamTypeId).list();
+    private LoadTask<List<DistributionPref>> submitDistributions(org.hibernate.Session hibSession) {
+    	return iLoadTasks.submit(new LoadTask<List<DistributionPref>>("Distribution preferences", hibSession) {
+			@Override
+			protected List<DistributionPref> execute(org.hibernate.Session hibSession) {
+				return (List<DistributionPref>)hibSession.createQuery(
+		                "select distinct d from DistributionPref d inner join fetch d.distributionType inner join fetch d.prefLevel " +
+		                "inner join d.distributionObjects o, Exam x where "+
+		                "d.distributionType.examPref=true and "+
+		                "o.prefGroup=x and x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
+		                "d.owner.uniqueId=:sessionId").
+		                setLong("sessionId", iSessionId).
+		                setLong("examTypeId", iExamTypeId).list();
+			}
+		});
+    }
+    
+    protected void loadDistributions(LoadTask<List<DistributionPref>> task) throws Exception {
+        List distPrefs = task.get();
         iProgress.setPhase("Loading distributions...", distPrefs.size());
         for (Iterator i=distPrefs.iterator();i.hasNext();) {
             iProgress.incProgress();
@@ -66,6 +66,7 @@ import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.dao.SubjectAreaDAO;
+import org.unitime.timetable.solver.SolverPassivation;
 import org.unitime.timetable.solver.exam.ui.ExamAssignment;
 import org.unitime.timetable.solver.exam.ui.ExamAssignmentInfo;
 import org.unitime.timetable.solver.exam.ui.ExamConflictStatisticsInfo;
@@ -1277,7 +1278,9 @@ public class ExamSolver extends ParallelSolver<Exam, ExamPlacement> implements E
 
         System.gc();
         sLog.debug(" -- memory usage before activation:"+org.unitime.commons.Debug.getMem());
+        long t0 = System.currentTimeMillis();
         restore(iPassivationFolder, iPassivationPuid, true);
+        SolverPassivation.activated(SolverPassivation.sTypeExam, iPassivationPuid, System.currentTimeMillis() - t0);
         System.gc();
         sLog.debug(" -- memory usage after activation:"+org.unitime.commons.Debug.getMem());
         
@@ -1297,9 +1300,11 @@ public class ExamSolver extends ParallelSolver<Exam, ExamPlacement> implements E
         
         iPassivationFolder = folder;
         iPassivationPuid = puid;
+        long t0 = System.currentTimeMillis();
         backup(iPassivationFolder, iPassivationPuid);
 
         disposeNoInherit(false);
+        SolverPassivation.passivated(SolverPassivation.sTypeExam, puid, System.currentTimeMillis() - t0);
         
         System.gc();
         sLog.debug(" -- memory usage after passivation:"+org.unitime.commons.Debug.getMem());
@@ -1309,7 +1314,7 @@ public class ExamSolver extends ParallelSolver<Exam, ExamPlacement> implements E
     }
 
     public synchronized boolean passivateIfNeeded(File folder, String puid) {
-		long inactiveTimeToPassivate = 60000l * ApplicationProperty.SolverPasivationTime.intValue();
+		long inactiveTimeToPassivate = SolverPassivation.getInactiveTimeToPassivate(SolverPassivation.sTypeExam);
 		if (isPassivated() || inactiveTimeToPassivate <= 0 || timeFromLastUsed() < inactiveTimeToPassivate || isWorking()) return false;
         return passivate(folder, puid);
     }
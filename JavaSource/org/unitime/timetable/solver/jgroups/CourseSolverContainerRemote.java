@@ -59,6 +59,7 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 	private boolean iSaveFileInfos = false;
 	
 	private RpcDispatcher iDispatcher;
+	private RemoteMethodTable iMethods = new RemoteMethodTable(SolverProxy.class);
 		
 	public CourseSolverContainerRemote(JChannel channel, short scope, boolean saveFileInfos) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
@@ -73,6 +74,12 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 		return super.createSolver(user, config) != null;
 	}
 	
+	@Override
+	public void stop() {
+		super.stop();
+		iMethods.log(sLog);
+	}
+	
 	@Override
 	public Object invoke(String method, String user, Class[] types, Object[] args) throws Exception {
 		try {
@@ -92,7 +99,7 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 	@Override
 	public Object dispatch(Address address, String user, Method method, Object[] args) throws Exception {
 		try {
-			return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			return iMethods.dispatch(iDispatcher, address, user, method, args);
 		} catch (InvocationTargetException e) {
 			throw (Exception)e.getTargetException();
 		} catch (Exception e) {
@@ -102,6 +109,18 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 		}
 	}
 	
+	@Override
+	public byte[] invokeById(int table, int method, String user, byte[] args) throws Exception {
+		try {
+			SolverProxy solver = iCourseSolvers.get(user);
+			if (solver == null)
+				throw new Exception("Solver " + user + " does not exist.");
+			return iMethods.invoke(solver, table, method, args);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
 	public Boolean saveToFile(String name, TimetableInfo info) {
 		if (iSaveFileInfos) {
 			try {
@@ -208,10 +208,12 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 	public class DummyContainer<T> implements RemoteSolverContainer<T> {
 		protected RpcDispatcher iDispatcher;
 		protected Class<T> iClazz;
+		protected RemoteMethodTable iMethods;
 		
 		public DummyContainer(JChannel channel, short scope, Class<T> clazz) {
 			iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
 			iClazz = clazz;
+			iMethods = new RemoteMethodTable(clazz);
 		}
 		
 		@Override
@@ -254,6 +256,7 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 
 		@Override
 		public void stop() {
+			iMethods.log(sLog);
 		}
 
 		@Override
@@ -269,18 +272,23 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 		@Override
 		public Object dispatch(Address address, String user, Method method, Object[] args) throws Exception {
 			try {
-				return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+				return iMethods.dispatch(iDispatcher, address, user, method, args);
 			} catch (Exception e) {
 				sLog.debug("Excution of " + method.getName() + " on solver " + user + " failed: " + e.getMessage(), e);
 				throw e;
 			}
 		}
-
+		
 		@Override
 		public Object invoke(String method, String user, Class[] types, Object[] args) throws Exception {
 			throw new Exception("Method " + method + " not implemented.");
 		}
-
+		
+		@Override
+		public byte[] invokeById(int table, int method, String user, byte[] args) throws Exception {
+			throw new Exception("Method " + method + " not implemented.");
+		}
+		
 		@Override
 		public T createProxy(Address address, String user) {
 			SolverInvocationHandler handler = new SolverInvocationHandler(address, user);
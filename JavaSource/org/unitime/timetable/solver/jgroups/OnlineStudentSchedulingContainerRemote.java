@@ -62,6 +62,7 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 	private static Log sLog = LogFactory.getLog(OnlineStudentSchedulingContainerRemote.class);
 	
 	private RpcDispatcher iDispatcher;
+	private RemoteMethodTable iMethods = new RemoteMethodTable(OnlineSectioningServer.class);
 	private EmbeddedCacheManager iCacheManager = null;
 	private LockService iLockService;
 
@@ -101,6 +102,7 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 	@Override
 	public void stop() {
 		super.stop();
+		iMethods.log(sLog);
 		if (iCacheManager != null) {
 			iCacheManager.stop();
 			iCacheManager = null;
@@ -137,7 +139,7 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 	@Override
 	public Object dispatch(Address address, String sessionId, Method method, Object[] args) throws Exception {
 		try {
-			return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), sessionId, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			return iMethods.dispatch(iDispatcher, address, sessionId, method, args);
 		} catch (InvocationTargetException e) {
 			throw (Exception)e.getTargetException();
 		} catch (Exception e) {
@@ -147,6 +149,18 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 		}
 	}
 	
+	@Override
+	public byte[] invokeById(int table, int method, String sessionId, byte[] args) throws Exception {
+		try {
+			OnlineSectioningServer solver = iInstances.get(Long.valueOf(sessionId));
+			if (solver == null)
+				throw new Exception("Server " + sessionId + " does not exist.");
+			return iMethods.invoke(solver, table, method, args);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
 	@Override
 	public Object dispatch(Collection<Address> addresses, String sessionId, Method method, Object[] args) throws Exception {
 		try {
@@ -0,0 +1,286 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.jgroups;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Compact binary encoding of remote solver call arguments and return values.
+ * Nulls, strings, boxed primitives, dates, object arrays, and the common collections (with exactly these classes:
+ * {@link ArrayList}, {@link Vector}, {@link HashSet}, {@link HashMap}, and {@link Hashtable}) made of these are
+ * written using a one byte tag followed by the value. Any other value is written using the Java serialization,
+ * a collection containing such a value is serialized as a whole (so that the class descriptors are written only once).
+ * 
+ * @author Tomas Muller
+ */
+public class RemoteCodec {
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte LONG = 2;
+	private static final byte INTEGER = 3;
+	private static final byte BOOLEAN_TRUE = 4;
+	private static final byte BOOLEAN_FALSE = 5;
+	private static final byte DOUBLE = 6;
+	private static final byte FLOAT = 7;
+	private static final byte SHORT = 8;
+	private static final byte BYTE = 9;
+	private static final byte CHARACTER = 10;
+	private static final byte DATE = 11;
+	private static final byte OBJECT_ARRAY = 12;
+	private static final byte ARRAY_LIST = 13;
+	private static final byte VECTOR = 14;
+	private static final byte HASH_SET = 15;
+	private static final byte HASH_MAP = 16;
+	private static final byte HASHTABLE = 17;
+	private static final byte SERIALIZED = 18;
+
+	/** Encode call arguments */
+	public static byte[] encode(Object[] values) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		if (values == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(values.length);
+			for (Object value: values)
+				write(out, value);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/** Decode call arguments */
+	public static Object[] decode(byte[] data) throws IOException, ClassNotFoundException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int length = in.readInt();
+		if (length < 0) return null;
+		Object[] values = new Object[length];
+		for (int i = 0; i < length; i++)
+			values[i] = read(in);
+		return values;
+	}
+
+	/** Encode a single value (e.g., a return value) */
+	public static byte[] encodeValue(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		write(out, value);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/** Decode a single value (e.g., a return value) */
+	public static Object decodeValue(byte[] data) throws IOException, ClassNotFoundException {
+		return read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	/** True if the value (including all its elements) can be written without the Java serialization */
+	private static boolean isSimple(Object value) {
+		if (value == null) return true;
+		Class<?> clazz = value.getClass();
+		if (clazz == String.class || clazz == Long.class || clazz == Integer.class || clazz == Boolean.class ||
+			clazz == Double.class || clazz == Float.class || clazz == Short.class || clazz == Byte.class ||
+			clazz == Character.class || clazz == Date.class)
+			return true;
+		if (clazz == Object[].class) {
+			for (Object o: (Object[])value)
+				if (!isSimple(o)) return false;
+			return true;
+		}
+		if (clazz == ArrayList.class || clazz == Vector.class || clazz == HashSet.class) {
+			for (Object o: (Collection<?>)value)
+				if (!isSimple(o)) return false;
+			return true;
+		}
+		if (clazz == HashMap.class || clazz == Hashtable.class) {
+			for (Map.Entry<?, ?> e: ((Map<?, ?>)value).entrySet())
+				if (!isSimple(e.getKey()) || !isSimple(e.getValue())) return false;
+			return true;
+		}
+		return false;
+	}
+
+	private static void write(DataOutputStream out, Object value) throws IOException {
+		if (isSimple(value))
+			writeSimple(out, value);
+		else
+			writeSerialized(out, value);
+	}
+
+	private static void writeSimple(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		Class<?> clazz = value.getClass();
+		if (clazz == String.class) {
+			out.writeByte(STRING);
+			writeString(out, (String)value);
+		} else if (clazz == Long.class) {
+			out.writeByte(LONG);
+			out.writeLong((Long)value);
+		} else if (clazz == Integer.class) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer)value);
+		} else if (clazz == Boolean.class) {
+			out.writeByte((Boolean)value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+		} else if (clazz == Double.class) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double)value);
+		} else if (clazz == Float.class) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float)value);
+		} else if (clazz == Short.class) {
+			out.writeByte(SHORT);
+			out.writeShort((Short)value);
+		} else if (clazz == Byte.class) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte)value);
+		} else if (clazz == Character.class) {
+			out.writeByte(CHARACTER);
+			out.writeChar((Character)value);
+		} else if (clazz == Date.class) {
+			out.writeByte(DATE);
+			out.writeLong(((Date)value).getTime());
+		} else if (clazz == Object[].class) {
+			Object[] array = (Object[])value;
+			out.writeByte(OBJECT_ARRAY);
+			out.writeInt(array.length);
+			for (Object o: array)
+				writeSimple(out, o);
+		} else if (clazz == ArrayList.class || clazz == Vector.class || clazz == HashSet.class) {
+			Collection<?> collection = (Collection<?>)value;
+			out.writeByte(clazz == ArrayList.class ? ARRAY_LIST : clazz == Vector.class ? VECTOR : HASH_SET);
+			out.writeInt(collection.size());
+			for (Object o: collection)
+				writeSimple(out, o);
+		} else if (clazz == HashMap.class || clazz == Hashtable.class) {
+			Map<?, ?> map = (Map<?, ?>)value;
+			out.writeByte(clazz == HashMap.class ? HASH_MAP : HASHTABLE);
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> e: map.entrySet()) {
+				writeSimple(out, e.getKey());
+				writeSimple(out, e.getValue());
+			}
+		} else {
+			writeSerialized(out, value);
+		}
+	}
+
+	private static void writeSerialized(DataOutputStream out, Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(value);
+		oos.flush();
+		out.writeByte(SERIALIZED);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object read(DataInputStream in) throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case LONG:
+			return in.readLong();
+		case INTEGER:
+			return in.readInt();
+		case BOOLEAN_TRUE:
+			return Boolean.TRUE;
+		case BOOLEAN_FALSE:
+			return Boolean.FALSE;
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case SHORT:
+			return in.readShort();
+		case BYTE:
+			return in.readByte();
+		case CHARACTER:
+			return in.readChar();
+		case DATE:
+			return new Date(in.readLong());
+		case OBJECT_ARRAY:
+			Object[] array = new Object[in.readInt()];
+			for (int i = 0; i < array.length; i++)
+				array[i] = read(in);
+			return array;
+		case ARRAY_LIST:
+		case VECTOR:
+		case HASH_SET:
+			int size = in.readInt();
+			Collection collection = (tag == ARRAY_LIST ? new ArrayList(size) : tag == VECTOR ? new Vector(size) : new HashSet(Math.max(16, 2 * size)));
+			for (int i = 0; i < size; i++)
+				collection.add(read(in));
+			return collection;
+		case HASH_MAP:
+		case HASHTABLE:
+			int entries = in.readInt();
+			Map map = (tag == HASH_MAP ? new HashMap(Math.max(16, 2 * entries)) : new Hashtable(Math.max(16, 2 * entries)));
+			for (int i = 0; i < entries; i++) {
+				Object key = read(in);
+				map.put(key, read(in));
+			}
+			return map;
+		case SERIALIZED:
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return ois.readObject();
+			} finally {
+				ois.close();
+			}
+		default:
+			throw new IOException("Unknown value tag " + tag + ".");
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
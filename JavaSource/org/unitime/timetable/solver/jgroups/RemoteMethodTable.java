@@ -0,0 +1,288 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.jgroups;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jgroups.Address;
+import org.jgroups.blocks.RpcDispatcher;
+
+/**
+ * Method table of a remote solver interface (e.g., {@link org.unitime.timetable.solver.SolverProxy}).
+ * The methods of the interface are sorted by their signatures, so that both sides of a call agree on the method ids
+ * as long as they are using the same interface (this is checked using a hash of all the signatures).
+ * A remote call is then sent as the method id, the user, and the arguments encoded by the {@link RemoteCodec},
+ * instead of the method name, the parameter types, and the serialized arguments. The implementing methods are looked up
+ * only once per solver class.<br>
+ * A server that does not know the method id call or that has a different method table is called using the old,
+ * name based, invoke method.<br>
+ * Latency histograms are kept for each method, both for the calls made (round trip time) and for the calls executed.
+ * 
+ * @author Tomas Muller
+ */
+public class RemoteMethodTable {
+	private static Log sLog = LogFactory.getLog(RemoteMethodTable.class);
+	private Class<?> iInterface;
+	private Method[] iMethods;
+	private Map<String, Integer> iSignatures = new HashMap<String, Integer>();
+	private int iHash;
+	private Map<Method, Integer> iIds = new ConcurrentHashMap<Method, Integer>();
+	private Map<Class<?>, Method[]> iImplementations = new ConcurrentHashMap<Class<?>, Method[]>();
+	private Set<Address> iLegacy = Collections.newSetFromMap(new ConcurrentHashMap<Address, Boolean>());
+	private Histogram[] iCalls, iInvocations;
+
+	public RemoteMethodTable(Class<?> clazz) {
+		iInterface = clazz;
+		Map<String, Method> methods = new HashMap<String, Method>();
+		for (Method method: clazz.getMethods())
+			if (!methods.containsKey(signature(method)))
+				methods.put(signature(method), method);
+		List<String> signatures = new ArrayList<String>(methods.keySet());
+		Collections.sort(signatures);
+		iMethods = new Method[signatures.size()];
+		iCalls = new Histogram[signatures.size()];
+		iInvocations = new Histogram[signatures.size()];
+		for (int i = 0; i < signatures.size(); i++) {
+			iMethods[i] = methods.get(signatures.get(i));
+			iSignatures.put(signatures.get(i), i);
+			iCalls[i] = new Histogram();
+			iInvocations[i] = new Histogram();
+		}
+		iHash = signatures.hashCode();
+	}
+
+	private static String signature(Method method) {
+		StringBuffer s = new StringBuffer(method.getName()).append('(');
+		Class<?>[] types = method.getParameterTypes();
+		for (int i = 0; i < types.length; i++) {
+			if (i > 0) s.append(',');
+			s.append(types[i].getName());
+		}
+		return s.append(')').toString();
+	}
+
+	/** Hash of the method table, a remote call is only made when the hashes on both sides match */
+	public int getHash() { return iHash; }
+
+	/** Method id, -1 if the method is not in the table (e.g., {@link RemoteSolver#exists()}) */
+	public int getId(Method method) {
+		Integer id = iIds.get(method);
+		if (id == null) {
+			id = iSignatures.get(signature(method));
+			if (id == null) id = -1;
+			iIds.put(method, id);
+		}
+		return id;
+	}
+
+	private Method getImplementation(Class<?> clazz, int id) throws NoSuchMethodException {
+		Method[] implementations = iImplementations.get(clazz);
+		if (implementations == null) {
+			implementations = new Method[iMethods.length];
+			iImplementations.put(clazz, implementations);
+		}
+		Method implementation = implementations[id];
+		if (implementation == null) {
+			implementation = clazz.getMethod(iMethods[id].getName(), iMethods[id].getParameterTypes());
+			implementations[id] = implementation;
+		}
+		return implementation;
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		return (t instanceof InvocationTargetException ? ((InvocationTargetException)t).getTargetException() : t);
+	}
+
+	private boolean isLegacy(Address address, Exception e) {
+		Throwable t = unwrap(e);
+		if (t instanceof IncompatibleTableException || t instanceof NoSuchMethodException) {
+			sLog.info("Server " + address + " does not support " + iInterface.getSimpleName() + " calls by method id, falling back to the old invoke: " + t.getMessage());
+			iLegacy.add(address);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Call a remote solver, the remote container must implement {@link RemoteSolverContainer#invokeById(int, int, String, byte[])}.
+	 */
+	public Object dispatch(RpcDispatcher dispatcher, Address address, String user, Method method, Object[] args) throws Exception {
+		int id = getId(method);
+		if (id < 0 || iLegacy.contains(address))
+			return dispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+		long t0 = System.nanoTime();
+		try {
+			byte[] ret = dispatcher.callRemoteMethod(address, "invokeById", new Object[] { iHash, id, user, RemoteCodec.encode(args) }, new Class[] { int.class, int.class, String.class, byte[].class }, SolverServerImplementation.sFirstResponse);
+			return (ret == null ? null : RemoteCodec.decodeValue(ret));
+		} catch (Exception e) {
+			if (isLegacy(address, e))
+				return dispatch(dispatcher, address, user, method, args);
+			throw e;
+		} finally {
+			iCalls[id].record(System.nanoTime() - t0);
+		}
+	}
+
+	/**
+	 * Execute a call made by {@link #dispatch(RpcDispatcher, Address, String, Method, Object[])}
+	 * @param target solver
+	 * @param hash method table hash of the caller
+	 * @param id method id
+	 * @param args encoded arguments
+	 * @return encoded return value
+	 */
+	public byte[] invoke(Object target, int hash, int id, byte[] args) throws Exception {
+		if (hash != iHash || id < 0 || id >= iMethods.length)
+			throw new IncompatibleTableException("Method table of " + iInterface.getSimpleName() + " does not match.");
+		long t0 = System.nanoTime();
+		try {
+			return RemoteCodec.encodeValue(getImplementation(target.getClass(), id).invoke(target, RemoteCodec.decode(args)));
+		} catch (InvocationTargetException e) {
+			throw (Exception)e.getTargetException();
+		} finally {
+			iInvocations[id].record(System.nanoTime() - t0);
+		}
+	}
+
+	/** Latency of the calls made, null if the method is not in the table */
+	public Histogram getCallHistogram(Method method) {
+		int id = getId(method);
+		return (id < 0 ? null : iCalls[id]);
+	}
+
+	/** Latency of the calls executed, null if the method is not in the table */
+	public Histogram getInvocationHistogram(Method method) {
+		int id = getId(method);
+		return (id < 0 ? null : iInvocations[id]);
+	}
+
+	/** Log latency histograms of all the methods that have been called or executed */
+	public void log(Log log) {
+		if (!log.isInfoEnabled()) return;
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < iMethods.length; i++)
+			if (iCalls[i].getCount() > 0 || iInvocations[i].getCount() > 0) ids.add(i);
+		if (ids.isEmpty()) return;
+		Collections.sort(ids, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				int cmp = Long.valueOf(iCalls[i2].getTotal() + iInvocations[i2].getTotal()).compareTo(iCalls[i1].getTotal() + iInvocations[i1].getTotal());
+				return (cmp != 0 ? cmp : i1.compareTo(i2));
+			}
+		});
+		log.info(iInterface.getSimpleName() + " remote calls:");
+		for (Integer id: ids) {
+			if (iCalls[id].getCount() > 0)
+				log.info("  call " + signature(iMethods[id]) + ": " + iCalls[id]);
+			if (iInvocations[id].getCount() > 0)
+				log.info("  invoke " + signature(iMethods[id]) + ": " + iInvocations[id]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		long calls = 0, invocations = 0;
+		for (int i = 0; i < iMethods.length; i++) {
+			calls += iCalls[i].getCount();
+			invocations += iInvocations[i].getCount();
+		}
+		return "RemoteMethodTable{interface=" + iInterface.getSimpleName() + ", methods=" + iMethods.length + ", calls=" + calls + ", invocations=" + invocations + "}";
+	}
+
+	/**
+	 * Thrown when the caller's method table does not match, the caller then falls back to the old, name based, invoke method.
+	 */
+	public static class IncompatibleTableException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public IncompatibleTableException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Latency histogram with exponential buckets (1 ms, 2 ms, 5 ms, 10 ms, ..., 5 s, and above).
+	 */
+	public static class Histogram {
+		private static final long[] sLimits = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+		private AtomicLongArray iCounts = new AtomicLongArray(sLimits.length + 1);
+		private AtomicLong iCount = new AtomicLong(0), iTotal = new AtomicLong(0), iMax = new AtomicLong(0);
+
+		/** Record a call that took the given time (in nanoseconds) */
+		public void record(long nanos) {
+			long millis = nanos / 1000000;
+			int bucket = 0;
+			while (bucket < sLimits.length && millis >= sLimits[bucket]) bucket++;
+			iCounts.incrementAndGet(bucket);
+			iCount.incrementAndGet();
+			iTotal.addAndGet(nanos);
+			long max;
+			while ((max = iMax.get()) < nanos && !iMax.compareAndSet(max, nanos));
+		}
+
+		/** Number of recorded calls */
+		public long getCount() { return iCount.get(); }
+
+		/** Total time of all the recorded calls (in nanoseconds) */
+		public long getTotal() { return iTotal.get(); }
+
+		/** Average time (in milliseconds) */
+		public double getAverage() {
+			long count = iCount.get();
+			return (count == 0 ? 0.0 : iTotal.get() / 1000000.0 / count);
+		}
+
+		/** Longest time (in milliseconds) */
+		public double getMax() { return iMax.get() / 1000000.0; }
+
+		/** Upper bound of the given percentile (in milliseconds), e.g., 0.95 for the 95th percentile */
+		public double getPercentile(double percentile) {
+			long count = iCount.get(), limit = (long)Math.ceil(percentile * count), sum = 0;
+			if (count == 0) return 0.0;
+			for (int i = 0; i < sLimits.length; i++) {
+				sum += iCounts.get(i);
+				if (sum >= limit) return Math.min(sLimits[i], getMax());
+			}
+			return getMax();
+		}
+
+		@Override
+		public String toString() {
+			DecimalFormat df = new DecimalFormat("#,##0.00");
+			return "count=" + getCount() + ", avg=" + df.format(getAverage()) + " ms, 50%<=" + df.format(getPercentile(0.5)) +
+					" ms, 95%<=" + df.format(getPercentile(0.95)) + " ms, 99%<=" + df.format(getPercentile(0.99)) +
+					" ms, max=" + df.format(getMax()) + " ms";
+		}
+	}
+}
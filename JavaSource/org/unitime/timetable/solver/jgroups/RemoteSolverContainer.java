@@ -38,5 +38,7 @@ public interface RemoteSolverContainer<T> extends SolverContainer<T> {
 	
 	public Object invoke(String method, String user, Class[] types, Object[] args) throws Exception;
 	
+	public byte[] invokeById(int table, int method, String user, byte[] args) throws Exception;
+	
 	public T createProxy(Address address, String user);
 }
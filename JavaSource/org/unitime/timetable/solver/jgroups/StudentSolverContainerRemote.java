@@ -43,6 +43,7 @@ public class StudentSolverContainerRemote extends StudentSolverContainer impleme
 	private static Log sLog = LogFactory.getLog(StudentSolverContainerRemote.class);
 	
 	private RpcDispatcher iDispatcher;
+	private RemoteMethodTable iMethods = new RemoteMethodTable(StudentSolverProxy.class);
 		
 	public StudentSolverContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
@@ -57,6 +58,12 @@ public class StudentSolverContainerRemote extends StudentSolverContainer impleme
         return true;
 	}
 	
+	@Override
+	public void stop() {
+		super.stop();
+		iMethods.log(sLog);
+	}
+	
 	@Override
 	public Object invoke(String method, String user, Class[] types, Object[] args) throws Exception {
 		try {
@@ -76,7 +83,7 @@ public class StudentSolverContainerRemote extends StudentSolverContainer impleme
 	@Override
 	public Object dispatch(Address address, String user, Method method, Object[] args) throws Exception {
 		try {
-			return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			return iMethods.dispatch(iDispatcher, address, user, method, args);
 		} catch (InvocationTargetException e) {
 			throw (Exception)e.getTargetException();
 		} catch (Exception e) {
@@ -86,6 +93,18 @@ public class StudentSolverContainerRemote extends StudentSolverContainer impleme
 		}
 	}
 	
+	@Override
+	public byte[] invokeById(int table, int method, String user, byte[] args) throws Exception {
+		try {
+			StudentSolverProxy solver = iStudentSolvers.get(user);
+			if (solver == null)
+				throw new Exception("Solver " + user + " does not exist.");
+			return iMethods.invoke(solver, table, method, args);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
 	@Override
 	public StudentSolverProxy createProxy(Address address, String user) {
 		SolverInvocationHandler handler = new SolverInvocationHandler(address, user);
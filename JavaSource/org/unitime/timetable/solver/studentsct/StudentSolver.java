@@ -92,6 +92,7 @@ import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XTime;
+import org.unitime.timetable.solver.SolverPassivation;
 import org.unitime.timetable.solver.remote.BackupFileFilter;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.MemoryCounter;
@@ -659,7 +660,9 @@ public class StudentSolver extends ParallelSolver<Request, Enrollment> implement
 
         System.gc();
         sLog.debug(" -- memory usage before activation:"+org.unitime.commons.Debug.getMem());
+        long t0 = System.currentTimeMillis();
         restore(iPassivationFolder, iPassivationPuid, true);
+        SolverPassivation.activated(SolverPassivation.sTypeStudent, iPassivationPuid, System.currentTimeMillis() - t0);
         System.gc();
         sLog.debug(" -- memory usage after activation:"+org.unitime.commons.Debug.getMem());
         
@@ -679,9 +682,11 @@ public class StudentSolver extends ParallelSolver<Request, Enrollment> implement
         
         iPassivationFolder = folder;
         iPassivationPuid = puid;
+        long t0 = System.currentTimeMillis();
         backup(iPassivationFolder, iPassivationPuid);
 
         disposeNoInherit(false);
+        SolverPassivation.passivated(SolverPassivation.sTypeStudent, puid, System.currentTimeMillis() - t0);
         
         System.gc();
         sLog.debug(" -- memory usage after passivation:"+org.unitime.commons.Debug.getMem());
@@ -691,7 +696,7 @@ public class StudentSolver extends ParallelSolver<Request, Enrollment> implement
     }
 
     public synchronized boolean passivateIfNeeded(File folder, String puid) {
-		long inactiveTimeToPassivate = 60000l * ApplicationProperty.SolverPasivationTime.intValue();
+		long inactiveTimeToPassivate = SolverPassivation.getInactiveTimeToPassivate(SolverPassivation.sTypeStudent);
 		if (isPassivated() || inactiveTimeToPassivate <= 0 || timeFromLastUsed() < inactiveTimeToPassivate || isWorking()) return false;
         return passivate(folder, puid);
     }
@@ -0,0 +1,466 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Transaction;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.dao._RootDAO;
+
+/**
+ * Asynchronous writer of audit log records (e.g., query log, message log, or online sectioning log).
+ * Records are added into a bounded lock-free queue (records over the limit are dropped and counted) and persisted by this thread
+ * as soon as there is at least the batch size of them, or when the flush interval elapses. A large backlog is persisted in chunks,
+ * each in its own transaction, the chunk size is adapted to the observed latency (between one and ten batches).
+ * Records are saved with periodic flushes, so that they are inserted using JDBC batches (see hibernate.jdbc.batch_size).<br>
+ * When the database is failing or slow (a chunk takes more than {@link ApplicationProperty#AuditLogSlowFlush}), the records are
+ * spilled into a local file (in the data folder) instead and the database is tried again after {@link ApplicationProperty#AuditLogRetryInterval}.
+ * Spilled records are persisted as soon as the database is responsive again (also after a restart).
+ * 
+ * @author Tomas Muller
+ */
+public abstract class AuditLogWriter<T> extends Thread {
+	private static Log sLog = LogFactory.getLog(AuditLogWriter.class);
+	private static List<AuditLogWriter<?>> sWriters = new CopyOnWriteArrayList<AuditLogWriter<?>>();
+	
+	private Queue<T> iRecords = new ConcurrentLinkedQueue<T>();
+	private AtomicInteger iQueueSize = new AtomicInteger(0);
+	private AtomicLong iRecorded = new AtomicLong(0), iDropped = new AtomicLong(0), iPersisted = new AtomicLong(0), iFailed = new AtomicLong(0), iSpilled = new AtomicLong(0);
+	private AtomicLong iFlushes = new AtomicLong(0), iTotalLatency = new AtomicLong(0), iMaxLatency = new AtomicLong(0), iLastLatency = new AtomicLong(0);
+	private AtomicInteger iSpillBacklog = new AtomicInteger(0);
+	private long iLastDropped = 0;
+	private volatile boolean iActive = true;
+	private int iLogLimit = -1;
+	private int iBatchSize = 100, iChunkSize = 100;
+	private long iFlushInterval = 60000;
+	private boolean iSpill = true;
+	private long iSlowFlush = 10000;
+	private long iRetryInterval = 60000;
+	private volatile long iSlowSince = -1;
+	
+	/**
+	 * @param name thread name (also used to name the spill file)
+	 * @param logLimit limit on the number of records held in memory, records over the limit are dropped
+	 * @param batchSize persist the records as soon as there is at least the given number of them
+	 * @param flushInterval maximal time (in seconds) a record is held in memory before it is persisted
+	 */
+	protected AuditLogWriter(String name, int logLimit, int batchSize, int flushInterval) {
+		super(name);
+		setDaemon(true);
+		iLogLimit = logLimit;
+		iBatchSize = Math.max(1, batchSize);
+		iChunkSize = iBatchSize;
+		iFlushInterval = 1000l * Math.max(1, flushInterval);
+		iSpill = ApplicationProperty.AuditLogSpill.isTrue();
+		iSlowFlush = 1000l * ApplicationProperty.AuditLogSlowFlush.intValue();
+		iRetryInterval = 1000l * ApplicationProperty.AuditLogRetryInterval.intValue();
+	}
+	
+	/** All running writers */
+	public static List<AuditLogWriter<?>> getWriters() { return sWriters; }
+	
+	public boolean isActive() { return iActive; }
+	
+	/** Number of recorded records */
+	public long getNrRecorded() { return iRecorded.get(); }
+	/** Number of records that were dropped because the queue was full */
+	public long getNrDropped() { return iDropped.get(); }
+	/** Number of persisted records */
+	public long getNrPersisted() { return iPersisted.get(); }
+	/** Number of records that failed to persist (and could not be spilled) */
+	public long getNrFailed() { return iFailed.get(); }
+	/** Number of records that have been spilled into the local file */
+	public long getNrSpilled() { return iSpilled.get(); }
+	/** Number of records waiting in memory to be persisted */
+	public int getQueueSize() { return iQueueSize.get(); }
+	/** Number of records waiting in the spill file to be persisted */
+	public int getSpillBacklog() { return iSpillBacklog.get(); }
+	/** Number of records waiting to be persisted (in memory and in the spill file) */
+	public int getBacklog() { return getQueueSize() + getSpillBacklog(); }
+	/** Time (in milliseconds) that the last chunk took to persist */
+	public long getLastLatency() { return iLastLatency.get(); }
+	/** Maximal time (in milliseconds) a chunk took to persist */
+	public long getMaxLatency() { return iMaxLatency.get(); }
+	/** Average time (in milliseconds) a chunk took to persist */
+	public double getAverageLatency() { long flushes = iFlushes.get(); return (flushes == 0 ? 0.0 : ((double)iTotalLatency.get()) / flushes); }
+	/** The database is considered slow or failing, records are being spilled into the local file */
+	public boolean isSlow() { return iSlowSince >= 0; }
+	
+	/**
+	 * Add a record to be persisted
+	 * @return false if the record has been dropped (writer is not active or the queue is full)
+	 */
+	public boolean add(T record) {
+		if (record == null || !iActive) return false;
+		int size = iQueueSize.incrementAndGet();
+		if (iLogLimit > 0 && size > iLogLimit) {
+			iQueueSize.decrementAndGet();
+			iDropped.incrementAndGet();
+			return false;
+		}
+		iRecords.offer(record);
+		iRecorded.incrementAndGet();
+		if (size == iBatchSize) LockSupport.unpark(this);
+		return true;
+	}
+	
+	/** Stop the writer, the remaining records are persisted (or spilled) first */
+	@Override
+	public void interrupt() {
+		iActive = false;
+		super.interrupt();
+		if (Thread.currentThread() != this)
+			try { join(); } catch (InterruptedException e) {}
+	}
+	
+	/** Persist the given records (default implementation saves the records, which are expected to be Hibernate entities) */
+	protected void persist(List<T> records) throws Exception {
+		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+		hibSession.setCacheMode(CacheMode.IGNORE);
+		Transaction tx = hibSession.beginTransaction();
+		try {
+			int count = 0;
+			for (T record: records) {
+				hibSession.save(record);
+				if (++count % iBatchSize == 0) {
+					hibSession.flush(); hibSession.clear();
+				}
+			}
+			hibSession.flush();
+			tx.commit();
+		} catch (Exception e) {
+			tx.rollback();
+			throw e;
+		} finally {
+			hibSession.close();
+		}
+	}
+	
+	/** Called every time the writer wakes up (before the records are persisted) */
+	protected void idle() {}
+	
+	/** Called when the writer is stopped */
+	protected void stopped() {}
+	
+	/** Called by the writer thread when a chunk of records is taken from the queue, before it is persisted or spilled */
+	protected void drained(List<T> records) {}
+	
+	/** Called by the writer thread when records have been dropped because the queue was full */
+	protected void dropped(long count) {}
+	
+	/** Serialize a record into the spill file (default implementation uses the Java serialization) */
+	protected byte[] toBytes(T record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(record);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	/** Deserialize a record from the spill file (default implementation uses the Java serialization) */
+	@SuppressWarnings("unchecked")
+	protected T fromBytes(byte[] data) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return (T)in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			in.close();
+		}
+	}
+	
+	protected void info(String message) {
+		sLog.info(message);
+	}
+	
+	protected void warn(String message, Throwable t) {
+		if (t == null)
+			sLog.warn(message);
+		else
+			sLog.warn(message, t);
+	}
+	
+	protected File getSpillFile() {
+		return new File(ApplicationProperties.getDataFolder(), getName() + ".spill");
+	}
+	
+	private List<T> drain(int limit) {
+		List<T> records = new ArrayList<T>(Math.min(iQueueSize.get(), limit));
+		T record;
+		while (records.size() < limit && (record = iRecords.poll()) != null) {
+			iQueueSize.decrementAndGet();
+			records.add(record);
+		}
+		return records;
+	}
+	
+	@Override
+	public void run() {
+		sWriters.add(this);
+		info(getName() + " is up.");
+		try {
+			if (iSpill) iSpillBacklog.set(countSpilled(getSpillFile()));
+			while (true) {
+				long deadline = System.currentTimeMillis() + iFlushInterval;
+				long remaining;
+				while (iActive && iQueueSize.get() < iBatchSize && (remaining = deadline - System.currentTimeMillis()) > 0)
+					LockSupport.parkNanos(this, 1000000l * remaining);
+				Thread.interrupted();
+				try {
+					idle();
+				} catch (Throwable t) {
+					warn(getName() + " failed: " + t.getMessage(), t);
+				}
+				long dropped = iDropped.get();
+				if (dropped > iLastDropped) {
+					warn("The limit of " + iLogLimit + " unpersisted log records was reached, " + (dropped - iLastDropped) + " records have been dropped.", null);
+					try {
+						dropped(dropped - iLastDropped);
+					} catch (Throwable t) {
+						warn(getName() + " failed: " + t.getMessage(), t);
+					}
+					iLastDropped = dropped;
+				}
+				flush();
+				if (!iActive) break;
+			}
+		} catch (Throwable t) {
+			warn(getName() + " failed: " + t.getMessage(), t);
+		} finally {
+			iActive = false;
+			sWriters.remove(this);
+			stopped();
+		}
+		info(getName() + " is down.");
+	}
+	
+	private boolean isRetryDue() {
+		return iSlowSince < 0 || System.currentTimeMillis() - iSlowSince >= iRetryInterval;
+	}
+	
+	private void flush() {
+		List<T> records;
+		while (!(records = drain(iChunkSize)).isEmpty()) {
+			try {
+				drained(records);
+			} catch (Throwable t) {
+				warn(getName() + " failed: " + t.getMessage(), t);
+			}
+			if (iSpill && !isRetryDue()) {
+				spill(records);
+			} else if (!persistChunk(records)) {
+				if (!iSpill || !spill(records))
+					iFailed.addAndGet(records.size());
+			}
+		}
+		if (iSpill && isRetryDue() && iSpillBacklog.get() > 0)
+			replay();
+	}
+	
+	/**
+	 * Persist a chunk of records, measure the latency and adapt the chunk size
+	 * @return false if the records failed to persist
+	 */
+	private boolean persistChunk(List<T> records) {
+		long t0 = System.currentTimeMillis();
+		try {
+			persist(records);
+		} catch (Throwable t) {
+			iSlowSince = System.currentTimeMillis();
+			warn("Failed to persist " + records.size() + " log records: " + t.getMessage(), t);
+			return false;
+		}
+		long latency = System.currentTimeMillis() - t0;
+		iPersisted.addAndGet(records.size());
+		iFlushes.incrementAndGet();
+		iTotalLatency.addAndGet(latency);
+		iLastLatency.set(latency);
+		if (latency > iMaxLatency.get()) iMaxLatency.set(latency);
+		if (iSlowFlush > 0 && latency > iSlowFlush) {
+			if (!isSlow())
+				warn("Persisting " + records.size() + " log records took " + latency + " ms" + (iSpill ? ", spilling records into " + getSpillFile() + " for the next " + (iRetryInterval / 1000) + " s." : "."), null);
+			iSlowSince = System.currentTimeMillis();
+			iChunkSize = iBatchSize;
+		} else {
+			if (isSlow()) info("Persisting " + records.size() + " log records took " + latency + " ms, the database is responsive again.");
+			iSlowSince = -1;
+			if (iSlowFlush > 0 && records.size() == iChunkSize) {
+				if (4 * latency < iSlowFlush)
+					iChunkSize = Math.min(10 * iBatchSize, 2 * iChunkSize);
+				else if (2 * latency > iSlowFlush)
+					iChunkSize = Math.max(iBatchSize, iChunkSize / 2);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Append records to the spill file
+	 * @return false if the records could not be written
+	 */
+	private boolean spill(List<T> records) {
+		File file = getSpillFile();
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			try {
+				for (T record: records) {
+					byte[] data = toBytes(record);
+					out.writeInt(data.length);
+					out.write(data);
+				}
+				out.flush();
+			} finally {
+				out.close();
+			}
+			iSpilled.addAndGet(records.size());
+			iSpillBacklog.addAndGet(records.size());
+			return true;
+		} catch (IOException e) {
+			warn("Failed to spill " + records.size() + " log records into " + file + ": " + e.getMessage(), e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Persist the records of the spill file. When a chunk fails (or the database becomes slow), the chunk and all the remaining records are
+	 * spilled again and the writer backs off for {@link ApplicationProperty#AuditLogRetryInterval} before the next replay.
+	 * A record that cannot be deserialized is skipped (using its length prefix). When the file cannot be read any further, the records read so far
+	 * are spilled again and the rest of the file is kept (with the .failed extension) instead of being deleted.
+	 */
+	private void replay() {
+		File file = getSpillFile();
+		File replay = new File(file.getParentFile(), file.getName() + ".replay");
+		if (!file.exists() || (replay.exists() && !replay.delete()) || !file.renameTo(replay)) return;
+		iSpillBacklog.set(0);
+		info("Persisting spilled log records from " + file + "...");
+		List<T> records = new ArrayList<T>(iChunkSize);
+		boolean complete = false;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(replay)));
+			try {
+				while (true) {
+					int length;
+					try {
+						length = in.readInt();
+					} catch (EOFException e) {
+						break;
+					}
+					if (length < 0)
+						throw new IOException("invalid record length " + length);
+					byte[] data = new byte[length];
+					try {
+						in.readFully(data);
+					} catch (EOFException e) {
+						warn("Skipping a truncated log record at the end of " + file + ".", null);
+						iFailed.incrementAndGet();
+						break;
+					}
+					try {
+						records.add(fromBytes(data));
+					} catch (Exception e) {
+						warn("Skipping a spilled log record that cannot be read: " + e.getMessage(), e);
+						iFailed.incrementAndGet();
+					}
+					if (records.size() >= iChunkSize) {
+						persistOrSpill(records);
+						records.clear();
+					}
+				}
+				complete = true;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			warn("Failed to read spilled log records from " + file + ": " + e.getMessage(), e);
+		}
+		if (!records.isEmpty())
+			persistOrSpill(records);
+		if (complete) {
+			replay.delete();
+		} else {
+			File failed = new File(file.getParentFile(), file.getName() + "." + System.currentTimeMillis() + ".failed");
+			if (replay.renameTo(failed))
+				warn("Unread log records have been kept in " + failed + ".", null);
+		}
+	}
+	
+	/**
+	 * Persist a chunk of spilled records, spill them again when the database is not to be retried yet or when the chunk fails
+	 */
+	private void persistOrSpill(List<T> records) {
+		if (!isRetryDue() || !persistChunk(records)) {
+			if (!spill(records))
+				iFailed.addAndGet(records.size());
+		}
+	}
+	
+	private int countSpilled(File file) {
+		if (!file.exists()) return 0;
+		int count = 0;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				while (true) {
+					int length = in.readInt();
+					if (in.skipBytes(length) < length) break;
+					count ++;
+				}
+			} catch (EOFException e) {
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			warn("Failed to read spilled log records from " + file + ": " + e.getMessage(), e);
+		}
+		return count;
+	}
+	
+	@Override
+	public String toString() {
+		return getName() + "{recorded=" + getNrRecorded() + ", persisted=" + getNrPersisted() + ", dropped=" + getNrDropped() + ", failed=" + getNrFailed() +
+				", spilled=" + getNrSpilled() + ", backlog=" + getBacklog() + ", latency=" + getLastLatency() + " ms (max " + getMaxLatency() + " ms)" + (isSlow() ? ", slow" : "") + "}";
+	}
+}
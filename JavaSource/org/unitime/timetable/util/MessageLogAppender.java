@@ -19,20 +19,13 @@
 */
 package org.unitime.timetable.util;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
-import java.util.Vector;
 
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Level;
 import org.apache.log4j.spi.LoggingEvent;
-import org.hibernate.CacheMode;
-import org.hibernate.Session;
-import org.hibernate.Transaction;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.MessageLog;
-import org.unitime.timetable.model.dao.MessageLogDAO;
 
 /**
  * @author Tomas Muller
@@ -70,7 +63,7 @@ public class MessageLogAppender extends AppenderSkeleton {
 	@Override
 	protected void append(LoggingEvent event) {
 		if (!event.getLevel().isGreaterOrEqual(getMinLevel())) return;
-		if (event.getLogger().equals(MessageLogAppender.class.getName())) return;
+		if (event.getLoggerName().equals(MessageLogAppender.class.getName()) || event.getLoggerName().equals(AuditLogWriter.class.getName())) return;
 		
 		MessageLog m = new MessageLog();
 		m.setLevel(event.getLevel().toInt());
@@ -107,75 +100,34 @@ public class MessageLogAppender extends AppenderSkeleton {
 		getSaver().add(m);
 	}
 	
-	public static class Saver extends Thread {
-		private List<MessageLog> iMessages = new Vector<MessageLog>();
-		private boolean iActive = true;
-		private int iLogLimit = 5000;
-		private int iCleanupInterval = 180;
+	public static class Saver extends AuditLogWriter<MessageLog> {
+		private long iCleanupInterval = 180;
 		private int iCleanupDays = 14;
-		private long iCounter = 0;
+		private long iLastCleanup;
 		
 		public Saver() {
-			super("MessageLogSaver");
-			iLogLimit = ApplicationProperty.MessageLogLimit.intValue();
-			iCleanupInterval = ApplicationProperty.MessageLogCleanupInterval.intValue();
+			super("MessageLogSaver", ApplicationProperty.MessageLogLimit.intValue(), ApplicationProperty.AuditLogBatchSize.intValue(), ApplicationProperty.AuditLogFlushInterval.intValue());
+			iCleanupInterval = 60000l * ApplicationProperty.MessageLogCleanupInterval.intValue();
 			iCleanupDays = ApplicationProperty.LogCleanupMessageLog.intValue();
-			setDaemon(true);
+			iLastCleanup = System.currentTimeMillis();
 		}
 		
 		@Override
-		public void interrupt() {
-			iActive = false;
-			super.interrupt();
-			try { join(); } catch (InterruptedException e) {}
-		}
-		
-		public void add(MessageLog m) {
-			if (!iActive) return;
-			synchronized (iMessages) {
-				if (iLogLimit <= 0 || iMessages.size() < iLogLimit)
-					iMessages.add(m);
+		protected void idle() {
+			if (System.currentTimeMillis() - iLastCleanup >= iCleanupInterval) {
+				iLastCleanup = System.currentTimeMillis();
+				LogCleaner.cleanupMessageLog(iCleanupDays);
 			}
 		}
 		
-		public void run() {
-			while (true) {
-				try {
-					try {
-						sleep(60000);
-					} catch (InterruptedException e) {
-					}
-					iCounter++;
-					if ((iCounter % iCleanupInterval) == 0) LogCleaner.cleanupMessageLog(iCleanupDays);
-					List<MessageLog> messagesToSave = null;
-					synchronized (iMessages) {
-						if (!iMessages.isEmpty()) {
-							messagesToSave = new ArrayList<MessageLog>(iMessages);
-							iMessages.clear();
-						}
-					}
-					if (messagesToSave != null) {
-						Session hibSession = MessageLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						Transaction tx = hibSession.beginTransaction();
-						try {
-							for (MessageLog m: messagesToSave)
-								hibSession.save(m);
-							hibSession.flush();
-							tx.commit();
-						} catch (Exception e) {
-							tx.rollback();
-							System.err.println("Failed to persist " + messagesToSave.size() + " log entries:" + e.getMessage());
-						} finally {
-							hibSession.close();
-						}
-					}
-					if (!iActive) break;
-				} catch (Exception e) {
-					System.err.println("Failed to persist log entries:" + e.getMessage());
-				}
-			}
+		@Override
+		protected void info(String message) {
 		}
 		
+		@Override
+		protected void warn(String message, Throwable t) {
+			System.err.println(message);
+			if (t != null) t.printStackTrace(System.err);
+		}
 	}
 }
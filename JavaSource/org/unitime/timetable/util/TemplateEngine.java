@@ -0,0 +1,83 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * 
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * 
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Shared FreeMarker template engine. There is one configuration for each class (and base path) the templates are loaded with,
+ * so that the parsed templates are cached by the configuration instead of being loaded and parsed for each email (or page).
+ * The cached templates are checked for changes (and reloaded when changed) at most once in {@link ApplicationProperty#TemplateUpdateDelay} seconds.
+ * 
+ * @author Tomas Muller
+ */
+public class TemplateEngine {
+	private static Map<String, Configuration> sConfigurations = new ConcurrentHashMap<String, Configuration>();
+	
+	/**
+	 * Shared configuration for templates loaded with the given class
+	 * @param clazz class to load templates with (see {@link Configuration#setClassForTemplateLoading(Class, String)})
+	 * @param basePath base path of the templates, relative to the package of the class unless it starts with a slash
+	 */
+	public static Configuration getConfiguration(Class<?> clazz, String basePath) {
+		String key = clazz.getName() + ":" + basePath;
+		Configuration cfg = sConfigurations.get(key);
+		if (cfg == null) {
+			synchronized (sConfigurations) {
+				cfg = sConfigurations.get(key);
+				if (cfg == null) {
+					cfg = new Configuration();
+					cfg.setClassForTemplateLoading(clazz, basePath);
+					cfg.setOutputEncoding("utf-8");
+					cfg.setDefaultEncoding("utf-8");
+					cfg.setTemplateUpdateDelay(ApplicationProperty.TemplateUpdateDelay.intValue());
+					sConfigurations.put(key, cfg);
+				}
+			}
+		}
+		return cfg;
+	}
+	
+	/**
+	 * Cached template of the current locale (see {@link Localization#getJavaLocale()})
+	 * @param clazz class to load templates with
+	 * @param basePath base path of the templates
+	 * @param name template name
+	 */
+	public static Template getTemplate(Class<?> clazz, String basePath, String name) throws IOException {
+		return getConfiguration(clazz, basePath).getTemplate(name, Localization.getJavaLocale());
+	}
+	
+	/**
+	 * Drop all cached templates
+	 */
+	public static void clearCache() {
+		for (Configuration cfg: sConfigurations.values())
+			cfg.clearTemplateCache();
+	}
+}
@@ -19,10 +19,15 @@
 */
 package org.unitime.timetable.util.queue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -33,12 +38,19 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.unitime.commons.Email;
+import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.form.ExamPdfReportForm;
@@ -54,6 +66,7 @@ import org.unitime.timetable.model.dao.ExamDAO;
 import org.unitime.timetable.model.dao.ExamTypeDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao.SubjectAreaDAO;
+import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.reports.exam.InstructorExamReport;
 import org.unitime.timetable.reports.exam.PdfLegacyExamReport;
 import org.unitime.timetable.reports.exam.StudentExamReport;
@@ -307,9 +320,9 @@ public class PdfExamReportQueueItem extends QueueItem {
             Hashtable<ExamInstructorInfo,File> ireports = null;
             Hashtable<Student,File> sreports = null;
             Session session = getSession();
+            String ext = (iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf");
+            List<ReportTask> tasks = new ArrayList<ReportTask>();
             for (int i=0;i<iForm.getReports().length;i++) {
-            	iProgress = 0.1 + (0.8 / iForm.getReports().length) * i;
-                setStatus("Generating "+iForm.getReports()[i]+"...");
                 Class reportClass = ExamPdfReportForm.sRegisteredReports.get(iForm.getReports()[i]);
                 String reportName = null;
                 for (Map.Entry<String, Class> entry : PdfLegacyExamReport.sRegisteredReports.entrySet())
@@ -317,78 +330,77 @@ public class PdfExamReportQueueItem extends QueueItem {
                 if (reportName==null) reportName = "r"+(i+1);
                 String name = session.getAcademicTerm()+session.getSessionStartYear()+ExamTypeDAO.getInstance().get(iForm.getExamType()).getReference()+"_"+reportName;
                 if (iForm.getAll()) {
-                    File file = ApplicationProperties.getTempFile(name, (iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf"));
-                    log("&nbsp;&nbsp;Writing <a href='temp/"+file.getName()+"'>"+reportName+"."+(iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf")+"</a>... " + (iSubjectIndependent ? " ("+exams.size()+" exams)" : ""));
-                    PdfLegacyExamReport report = (PdfLegacyExamReport)reportClass.
-                        getConstructor(int.class, File.class, Session.class, ExamType.class, Collection.class, Collection.class).
-                        newInstance(iForm.getModeIdx(), file, new SessionDAO().get(session.getUniqueId()), ExamTypeDAO.getInstance().get(iForm.getExamType()), iSubjectIndependent ? null : iForm.getSubjectAreas(), exams);
-                    report.setDirect(iForm.getDirect());
-                    report.setM2d(iForm.getM2d());
-                    report.setBtb(iForm.getBtb());
-                    report.setDispRooms(iForm.getDispRooms());
-                    report.setNoRoom(iForm.getNoRoom());
-                    report.setTotals(iForm.getTotals());
-                    report.setLimit(iForm.getLimit()==null || iForm.getLimit().length()==0?-1:Integer.parseInt(iForm.getLimit()));
-                    report.setRoomCode(iForm.getRoomCodes());
-                    report.setDispLimits(iForm.getDispLimit());
-                    report.setSince(iForm.getSince()==null || iForm.getSince().length()==0?null:Formats.getDateFormat(Formats.Pattern.DATE_ENTRY_FORMAT).parse(iForm.getSince()));
-                    report.setItype(iForm.getItype());
-                    report.setClassSchedule(iForm.getClassSchedule());
-                    report.setDispNote(iForm.getDispNote());
-                    report.setCompact(iForm.getCompact());
-                    report.printReport();
-                    report.close();
-                    output.put(reportName+"."+(iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf"),file);
-                    if (report instanceof InstructorExamReport && iForm.getEmailInstructors()) {
-                        ireports = ((InstructorExamReport)report).printInstructorReports(iForm.getModeIdx(), name, new FileGenerator(name));
-                    } else if (report instanceof StudentExamReport && iForm.getEmailStudents()) {
-                        sreports = ((StudentExamReport)report).printStudentReports(iForm.getModeIdx(), name, new FileGenerator(name));
-                    }
+                    File file = ApplicationProperties.getTempFile(name, ext);
+                    tasks.add(new ReportTask(reportClass, name, reportName+"."+ext, file, null, exams.size()));
                 } else {
                     for (int j=0;j<iForm.getSubjects().length;j++) {
                         SubjectArea subject = new SubjectAreaDAO().get(Long.valueOf(iForm.getSubjects()[j]));
-                        File file = ApplicationProperties.getTempFile(name+"_"+subject.getSubjectAreaAbbreviation(), (iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf"));
+                        File file = ApplicationProperties.getTempFile(name+"_"+subject.getSubjectAreaAbbreviation(), ext);
                         int nrExams = 0;
                         for (ExamAssignmentInfo exam : exams) {
                             if (exam.isOfSubjectArea(subject)) nrExams++;
                         }
-                        log("&nbsp;&nbsp;Writing <a href='temp/"+file.getName()+"'>"+subject.getSubjectAreaAbbreviation()+"_"+reportName+"."+(iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf")+"</a>... ("+nrExams+" exams)");
-                        List<SubjectArea> subjects = new ArrayList<SubjectArea>(); subjects.add(subject);
-                        PdfLegacyExamReport report = (PdfLegacyExamReport)reportClass.
-                            getConstructor(int.class, File.class, Session.class, ExamType.class, Collection.class, Collection.class).
-                            newInstance(iForm.getModeIdx(), file, new SessionDAO().get(session.getUniqueId()), ExamTypeDAO.getInstance().get(iForm.getExamType()), subjects, exams);
-                        report.setDirect(iForm.getDirect());
-                        report.setM2d(iForm.getM2d());
-                        report.setBtb(iForm.getBtb());
-                        report.setDispRooms(iForm.getDispRooms());
-                        report.setNoRoom(iForm.getNoRoom());
-                        report.setTotals(iForm.getTotals());
-                        report.setLimit(iForm.getLimit()==null || iForm.getLimit().length()==0?-1:Integer.parseInt(iForm.getLimit()));
-                        report.setRoomCode(iForm.getRoomCodes());
-                        report.setDispLimits(iForm.getDispLimit());
-                        report.setItype(iForm.getItype());
-                        report.setClassSchedule(iForm.getClassSchedule());
-                        report.setDispNote(iForm.getDispNote());
-                        report.setCompact(iForm.getCompact());
-                        report.printReport();
-                        report.close();
-                        output.put(subject.getSubjectAreaAbbreviation()+"_"+reportName+"."+(iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf"),file);
-                        Hashtable<String,File> files = outputPerSubject.get(subject);
+                        tasks.add(new ReportTask(reportClass, name, subject.getSubjectAreaAbbreviation()+"_"+reportName+"."+ext, file, subject, nrExams));
+                    }
+                }
+            }
+            
+            // independent reports are generated in parallel, each thread works with its own copy of the exams (and its own hibernate session)
+            int nrThreads = Math.min(tasks.size(), ApplicationProperty.ExaminationPdfReportsThreads.intValue());
+            ExecutorService executor = null;
+            if (nrThreads > 1) {
+                setStatus("Preparing exams...");
+                ExamSnapshot snapshot = new ExamSnapshot(exams);
+                executor = Executors.newFixedThreadPool(nrThreads);
+                for (ReportTask task: tasks) {
+                    task.iSnapshot = snapshot;
+                    task.iFuture = executor.submit(task);
+                }
+            } else {
+                for (ReportTask task: tasks)
+                    task.iExams = exams;
+            }
+            
+            // reports are picked up in order, when there are multiple reports they are streamed into a zip file as soon as they are ready
+            // (when the reports are emailed, the zip file is only created at the end, after the emails are sent)
+            DecimalFormat df = new DecimalFormat("0.00");
+            File zipFile = null;
+            ZipOutputStream zip = null;
+            byte[] buffer = new byte[32*1024];
+            try {
+                if (tasks.size() > 1 && !iForm.getEmail()) {
+                    zipFile = ApplicationProperties.getTempFile(session.getAcademicTerm()+session.getSessionStartYear()+ExamTypeDAO.getInstance().get(iForm.getExamType()).getReference(), "zip");
+                    zip = new ZipOutputStream(new FileOutputStream(zipFile));
+                }
+                for (int i = 0; i < tasks.size(); i++) {
+                    checkCancelled();
+                    ReportTask task = tasks.get(i);
+                    iProgress = 0.1 + (0.8 / tasks.size()) * i;
+                    setStatus("Generating "+task.iEntryName+(tasks.size() > 1 ? " ("+(i+1)+" of "+tasks.size()+")" : "")+"...");
+                    task.get();
+                    log("&nbsp;&nbsp;Writing <a href='temp/"+task.iFile.getName()+"'>"+task.iEntryName+"</a>... " + (task.iSubject != null || iSubjectIndependent ? " ("+task.iNrExams+" exams)" : "") +
+                            " done in " + df.format(0.001 * task.iTime) + " s.");
+                    output.put(task.iEntryName,task.iFile);
+                    if (task.iSubject != null) {
+                        Hashtable<String,File> files = outputPerSubject.get(task.iSubject);
                         if (files==null) {
-                            files = new Hashtable(); outputPerSubject.put(subject,files);
-                        }
-                        files.put(subject.getSubjectAreaAbbreviation()+"_"+reportName+"."+(iForm.getModeIdx()==PdfLegacyExamReport.sModeText?"txt":"pdf"),file);
-                        if (report instanceof InstructorExamReport && iForm.getEmailInstructors()) {
-                            ireports = ((InstructorExamReport)report).printInstructorReports(iForm.getModeIdx(), name, new FileGenerator(name));
-                        } else if (report instanceof StudentExamReport && iForm.getEmailStudents()) {
-                            sreports = ((StudentExamReport)report).printStudentReports(iForm.getModeIdx(), name, new FileGenerator(name));
+                            files = new Hashtable(); outputPerSubject.put(task.iSubject,files);
                         }
+                        files.put(task.iEntryName,task.iFile);
                     }
+                    if (task.iInstructorReports != null) ireports = task.iInstructorReports;
+                    if (task.iStudentReports != null) sreports = task.iStudentReports;
+                    if (zip != null)
+                        addZipEntry(zip, task.iEntryName, task.iFile, buffer);
+                }
+                if (zip != null) {
+                    zip.flush(); zip.close(); zip = null;
                 }
+            } finally {
+                if (zip != null) try { zip.close(); } catch (IOException e) {}
+                if (executor != null) executor.shutdownNow();
             }
         	iProgress = 0.9;
-            byte[] buffer = new byte[32*1024];
-            int len = 0;
             if (output.isEmpty())
                 log("<font color='orange'>No report generated.</font>");
             else if (iForm.getEmail()) {
@@ -562,34 +574,41 @@ public class PdfExamReportQueueItem extends QueueItem {
             } else if (output.size()==1) {
             	setOutput(output.elements().nextElement());
             } else {
-                FileInputStream fis = null;
-                ZipOutputStream zip = null;
-                try {
-                    File zipFile = ApplicationProperties.getTempFile(session.getAcademicTerm()+session.getSessionStartYear()+ExamTypeDAO.getInstance().get(iForm.getExamType()).getReference(), "zip");
-                    log("Writing <a href='temp/"+zipFile.getName()+"'>"+session.getAcademicTerm()+session.getSessionStartYear()+ExamTypeDAO.getInstance().get(iForm.getExamType()).getReference()+".zip</a>...");
+                if (zipFile == null) {
+                    zipFile = ApplicationProperties.getTempFile(session.getAcademicTerm()+session.getSessionStartYear()+ExamTypeDAO.getInstance().get(iForm.getExamType()).getReference(), "zip");
                     zip = new ZipOutputStream(new FileOutputStream(zipFile));
-                    for (Map.Entry<String, File> entry : output.entrySet()) {
-                        zip.putNextEntry(new ZipEntry(entry.getKey()));
-                        fis = new FileInputStream(entry.getValue());
-                        while ((len=fis.read(buffer))>0) zip.write(buffer, 0, len);
-                        fis.close(); fis = null;
-                        zip.closeEntry();
+                    try {
+                        for (Map.Entry<String, File> entry : output.entrySet())
+                            addZipEntry(zip, entry.getKey(), entry.getValue(), buffer);
+                        zip.flush();
+                    } finally {
+                        zip.close(); zip = null;
                     }
-                    zip.flush(); zip.close();
-                    setOutput(zipFile);
-                } catch (IOException e) {
-                    if (fis!=null) fis.close();
-                    if (zip!=null) zip.close();
-                    setError(e);
                 }
+                log("Writing <a href='temp/"+zipFile.getName()+"'>"+session.getAcademicTerm()+session.getSessionStartYear()+ExamTypeDAO.getInstance().get(iForm.getExamType()).getReference()+".zip</a>...");
+                setOutput(zipFile);
             }
         	iProgress = 1.0;
             setStatus("All done.");
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             fatal("Process failed.", e);
         }
 	}
 
+	private void addZipEntry(ZipOutputStream zip, String name, File file, byte[] buffer) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			int len = 0;
+			while ((len=fis.read(buffer))>0) zip.write(buffer, 0, len);
+		} finally {
+			fis.close();
+		}
+		zip.closeEntry();
+	}
+
 	@Override
 	public String name() {
 		return iName;
@@ -605,6 +624,122 @@ public class PdfExamReportQueueItem extends QueueItem {
 		return TYPE;
 	}
 	
+	/**
+	 * Generation of a single report (of all or of one subject area), including the individual instructor or student reports when they are to be emailed.
+	 * When executed in parallel, the report works with its own copy of the exams (see {@link ExamSnapshot}) and the hibernate
+	 * session of the thread, so that no hibernate objects are shared between the threads.
+	 */
+	private class ReportTask implements Callable<ReportTask> {
+		private Class iReportClass;
+		private String iName, iEntryName;
+		private File iFile;
+		private SubjectArea iSubject;
+		private Long iSubjectId = null;
+		private int iNrExams;
+		private Collection<ExamAssignmentInfo> iExams = null;
+		private ExamSnapshot iSnapshot = null;
+		private Future<ReportTask> iFuture = null;
+		private long iTime = 0;
+		private Hashtable<ExamInstructorInfo,File> iInstructorReports = null;
+		private Hashtable<Student,File> iStudentReports = null;
+		
+		private ReportTask(Class reportClass, String name, String entryName, File file, SubjectArea subject, int nrExams) {
+			iReportClass = reportClass; iName = name; iEntryName = entryName; iFile = file; iNrExams = nrExams;
+			iSubject = subject;
+			if (subject != null) iSubjectId = subject.getUniqueId();
+		}
+		
+		@Override
+		public ReportTask call() throws Exception {
+			long t0 = System.currentTimeMillis();
+			if (iSnapshot != null) {
+				ApplicationProperties.setSessionId(getSessionId());
+				Localization.setLocale(getLocale());
+			}
+			try {
+				Collection<SubjectArea> subjects = null;
+				if (iSubjectId != null) {
+					subjects = new ArrayList<SubjectArea>();
+					subjects.add(new SubjectAreaDAO().get(iSubjectId));
+				} else if (!iSubjectIndependent) {
+					subjects = new ArrayList<SubjectArea>();
+					for (SubjectArea subject: (Collection<SubjectArea>)iForm.getSubjectAreas())
+						subjects.add(new SubjectAreaDAO().get(subject.getUniqueId()));
+				}
+				PdfLegacyExamReport report = (PdfLegacyExamReport)iReportClass.
+	                    getConstructor(int.class, File.class, Session.class, ExamType.class, Collection.class, Collection.class).
+	                    newInstance(iForm.getModeIdx(), iFile, new SessionDAO().get(getSessionId()), ExamTypeDAO.getInstance().get(iForm.getExamType()), subjects,
+	                    		iSnapshot == null ? iExams : iSnapshot.getExams());
+				report.setDirect(iForm.getDirect());
+				report.setM2d(iForm.getM2d());
+				report.setBtb(iForm.getBtb());
+				report.setDispRooms(iForm.getDispRooms());
+				report.setNoRoom(iForm.getNoRoom());
+				report.setTotals(iForm.getTotals());
+				report.setLimit(iForm.getLimit()==null || iForm.getLimit().length()==0?-1:Integer.parseInt(iForm.getLimit()));
+				report.setRoomCode(iForm.getRoomCodes());
+				report.setDispLimits(iForm.getDispLimit());
+				if (iSubjectId == null)
+					report.setSince(iForm.getSince()==null || iForm.getSince().length()==0?null:Formats.getDateFormat(Formats.Pattern.DATE_ENTRY_FORMAT).parse(iForm.getSince()));
+				report.setItype(iForm.getItype());
+				report.setClassSchedule(iForm.getClassSchedule());
+				report.setDispNote(iForm.getDispNote());
+				report.setCompact(iForm.getCompact());
+				report.printReport();
+				report.close();
+				if (report instanceof InstructorExamReport && iForm.getEmailInstructors()) {
+					iInstructorReports = ((InstructorExamReport)report).printInstructorReports(iForm.getModeIdx(), iName, new FileGenerator(iName));
+				} else if (report instanceof StudentExamReport && iForm.getEmailStudents()) {
+					iStudentReports = ((StudentExamReport)report).printStudentReports(iForm.getModeIdx(), iName, new FileGenerator(iName));
+				}
+				return this;
+			} finally {
+				if (iSnapshot != null) {
+					ApplicationProperties.setSessionId(null);
+					_RootDAO.rollbackCurrentThreadSessions();
+					Localization.removeLocale();
+				}
+				iTime = System.currentTimeMillis() - t0;
+			}
+		}
+		
+		/** Wait for the report to be generated (or generate it when not executed in parallel) */
+		public ReportTask get() throws Exception {
+			if (iFuture == null) return call();
+			try {
+				return iFuture.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Immutable snapshot of the loaded exams. The exams are serialized once (the cached hibernate objects are transient),
+	 * each report generated in parallel gets its own deserialized copy.
+	 */
+	private static class ExamSnapshot {
+		private byte[] iData;
+		
+		private ExamSnapshot(Collection<ExamAssignmentInfo> exams) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(new TreeSet<ExamAssignmentInfo>(exams));
+			out.flush(); out.close();
+			iData = bytes.toByteArray();
+		}
+		
+		private TreeSet<ExamAssignmentInfo> getExams() throws IOException, ClassNotFoundException {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(iData));
+			try {
+				return (TreeSet<ExamAssignmentInfo>)in.readObject();
+			} finally {
+				in.close();
+			}
+		}
+	}
+	
 	public static class FileGenerator implements InstructorExamReport.FileGenerator {
         String iName;
         public FileGenerator(String name) {
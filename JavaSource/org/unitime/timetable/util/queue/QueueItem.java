@@ -21,9 +21,11 @@ package org.unitime.timetable.util.queue;
 
 import java.io.File;
 import java.util.Date;
+import java.util.concurrent.CancellationException;
 
 import org.apache.commons.logging.Log;
 import org.apache.log4j.Logger;
+import org.dom4j.Element;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.model.Session;
@@ -49,6 +51,8 @@ public abstract class QueueItem implements Log {
 	private Date iCreated = new Date(), iStarted = null, iFinished = null;
 	private Throwable iException = null;
 	private String iLocale = null;
+	private int iPriority = 0;
+	private volatile boolean iCancelled = false;
 	
 	private Long iId = null;
 	
@@ -69,6 +73,66 @@ public abstract class QueueItem implements Log {
 		this(owner.getCurrentAcademicSessionId(), owner);
 	}
 	
+	/**
+	 * Restore a finished item from its metadata (see {@link QueueItem#save(Element)}), used by {@link QueueProcessor} to restore finished items after a restart.
+	 */
+	protected QueueItem(Element element) {
+		iLogger = Logger.getLogger(getClass());
+		iId = Long.valueOf(element.attributeValue("id"));
+		if (element.attributeValue("session") != null)
+			iSessionId = Long.valueOf(element.attributeValue("session"));
+		iOwnerId = element.attributeValue("ownerId");
+		iOwnerName = element.attributeValue("ownerName");
+		iOwnerEmail = element.attributeValue("ownerEmail");
+		iLocale = element.attributeValue("locale");
+		iPriority = Integer.parseInt(element.attributeValue("priority", "0"));
+		iCreated = new Date(Long.parseLong(element.attributeValue("created")));
+		if (element.attributeValue("started") != null)
+			iStarted = new Date(Long.parseLong(element.attributeValue("started")));
+		if (element.attributeValue("finished") != null)
+			iFinished = new Date(Long.parseLong(element.attributeValue("finished")));
+		iStatus = element.attributeValue("status", "All done.");
+		iCancelled = "true".equals(element.attributeValue("cancelled"));
+		if (element.attributeValue("output") != null)
+			iOutput = new File(element.attributeValue("output"));
+		if (element.attributeValue("error") != null)
+			iException = new Exception(element.attributeValue("error"));
+	}
+	
+	/**
+	 * Save metadata of a finished item (not including the log)
+	 */
+	public void save(Element element) {
+		element.addAttribute("id", iId.toString());
+		element.addAttribute("type", type());
+		element.addAttribute("name", name());
+		if (iSessionId != null)
+			element.addAttribute("session", iSessionId.toString());
+		if (iOwnerId != null)
+			element.addAttribute("ownerId", iOwnerId);
+		if (iOwnerName != null)
+			element.addAttribute("ownerName", iOwnerName);
+		if (iOwnerEmail != null)
+			element.addAttribute("ownerEmail", iOwnerEmail);
+		if (iLocale != null)
+			element.addAttribute("locale", iLocale);
+		if (iPriority != 0)
+			element.addAttribute("priority", String.valueOf(iPriority));
+		element.addAttribute("created", String.valueOf(iCreated.getTime()));
+		if (iStarted != null)
+			element.addAttribute("started", String.valueOf(iStarted.getTime()));
+		if (iFinished != null)
+			element.addAttribute("finished", String.valueOf(iFinished.getTime()));
+		if (iStatus != null)
+			element.addAttribute("status", iStatus);
+		if (iCancelled)
+			element.addAttribute("cancelled", "true");
+		if (iOutput != null)
+			element.addAttribute("output", iOutput.getAbsolutePath());
+		if (iException != null)
+			element.addAttribute("error", iException.getMessage() == null ? iException.getClass().getSimpleName() : iException.getMessage());
+	}
+	
 	public Long getSessionId() { return iSessionId; }
 	public Session getSession() { return SessionDAO.getInstance().get(iSessionId); }
 	public String getOwnerId() { return iOwnerId; }
@@ -88,6 +152,8 @@ public abstract class QueueItem implements Log {
 		Localization.setLocale(getLocale());
 		try {
 			execute();
+		} catch (CancellationException e) {
+			warn("Execution cancelled.");
 		} catch (Exception e) {
 			fatal("Execution failed.", e);
 		} finally {
@@ -98,6 +164,37 @@ public abstract class QueueItem implements Log {
 		iFinished = new Date();
 		iStatus = "All done.";
 		if (iException != null) iStatus = "Failed (" + iException.getMessage() + ")";
+		else if (iCancelled) iStatus = "Cancelled.";
+	}
+	
+	/**
+	 * Item priority, items with a higher priority are executed first (defaults to zero)
+	 */
+	public int getPriority() { return iPriority; }
+	public void setPriority(int priority) { iPriority = priority; }
+	
+	/**
+	 * Request the item to be cancelled. The cancellation is cooperative: a running item is expected to check
+	 * {@link QueueItem#isCancelled()} or call {@link QueueItem#checkCancelled()} between its steps.
+	 */
+	public void cancel() { iCancelled = true; }
+	public boolean isCancelled() { return iCancelled; }
+	
+	/**
+	 * Throw {@link CancellationException} when the item has been cancelled
+	 */
+	protected void checkCancelled() throws CancellationException {
+		if (iCancelled) throw new CancellationException("Execution cancelled.");
+	}
+	
+	/** Time the item spent waiting in the queue (in milliseconds), or null if not yet started */
+	public Long getWaitTime() {
+		return (iStarted == null ? null : Long.valueOf(iStarted.getTime() - iCreated.getTime()));
+	}
+	
+	/** Execution time of the item (in milliseconds), or null if not yet finished */
+	public Long getExecutionTime() {
+		return (iStarted == null || iFinished == null ? null : Long.valueOf(iFinished.getTime() - iStarted.getTime()));
 	}
 	
 	public boolean hasOutput() { return iOutput != null && iOutput.exists() && iOutput.canRead(); }
@@ -19,29 +19,50 @@
 */
 package org.unitime.timetable.util.queue;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.SAXReader;
+import org.dom4j.io.XMLWriter;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
 
 /**
+ * Queue of long running tasks (e.g., PDF exam reports, data exchange, scripts).
+ * The tasks are executed by a pool of worker threads (see {@link ApplicationProperty#QueueProcessorThreads}, defaults to a single thread,
+ * so that the tasks are executed one after the other unless configured otherwise).
+ * The next task to execute is the one with the highest priority (see {@link QueueItem#getPriority()}), among the tasks
+ * of the same priority the tasks of users with fewer running tasks go first, and the tasks of a user that already has
+ * {@link ApplicationProperty#QueueProcessorMaxTasksPerUser} tasks running have to wait, so that one user cannot block everyone else.
+ * Finished tasks are kept for at least 10 hours; their metadata are also saved in the data folder, so that they survive a restart
+ * (see {@link ApplicationProperty#QueueProcessorPersistFinished}).
  * 
  * @author Tomas Muller
  *
  */
-
-public class QueueProcessor extends Thread {
+public class QueueProcessor {
     protected static Logger sLog = Logger.getLogger(QueueProcessor.class);
     protected static long sTimeToKeep = 1000 * 60 * 60 * 10; // Keep done items for at least 10 hours.
     protected static long sTimeToSleep = 1000 * 60 * 60; // Sleep no more than an hour.
 
-	private Queue<QueueItem> iQueue = new LinkedList<QueueItem>();
+	private List<QueueItem> iQueue = new LinkedList<QueueItem>();
 	private List<QueueItem> iFinished = new ArrayList<QueueItem>();
-	private QueueItem iItem = null;
+	private List<QueueItem> iRunning = new ArrayList<QueueItem>();
+	private List<Worker> iWorkers = new ArrayList<Worker>();
+	private Map<String, Statistics> iStatistics = new HashMap<String, Statistics>();
 	
 	private static QueueProcessor sInstance = null;
 
@@ -50,64 +71,107 @@ public class QueueProcessor extends Thread {
 	private long iLastId = 0;
 	
 	private QueueProcessor() {
-		super("QueueProcessor");
-		setDaemon(true);
+		load();
+		int nrWorkers = Math.max(1, ApplicationProperty.QueueProcessorThreads.intValue());
+		for (int i = 0; i < nrWorkers; i++) {
+			Worker worker = new Worker(nrWorkers == 1 ? "QueueProcessor" : "QueueProcessor-" + (1 + i));
+			iWorkers.add(worker);
+		}
+		for (Worker worker: iWorkers)
+			worker.start();
+		sLog.info("Queue processor is up and running (" + nrWorkers + " workers).");
 	}
 	
-	public void run() {
-		sLog.info("Queue processor is up and running.");
+	/**
+	 * Worker thread, executing the queued items one by one
+	 */
+	private class Worker extends Thread {
+		private DecimalFormat iDF = new DecimalFormat("0.00");
 		
-		// While can continue
-		while (iCanContinue) {
-			synchronized (iQueue) {
-				// Cleanup finished items (delete those that are too old)
-				long now = new Date().getTime();
-				for (Iterator<QueueItem> i = iFinished.iterator(); i.hasNext(); ) {
-					QueueItem item = i.next();
-					if (item.finished() == null || now - item.finished().getTime() > sTimeToKeep) i.remove();
-				}
-				
-				// Check for a new item from the queue
-				if (iQueue.isEmpty()) {
-					// Sleep for it, if there is nothing to do
-					sLog.info("Waiting for tasks to run...");
-					try {
-						iQueue.wait(sTimeToSleep);
-					} catch (InterruptedException e) {
-						sLog.info("Interrupted.");
+		private Worker(String name) {
+			super(name);
+			setDaemon(true);
+		}
+		
+		public void run() {
+			// While can continue
+			while (iCanContinue) {
+				QueueItem item = null;
+				synchronized (iQueue) {
+					// Cleanup finished items (delete those that are too old)
+					long now = new Date().getTime();
+					for (Iterator<QueueItem> i = iFinished.iterator(); i.hasNext(); ) {
+						QueueItem finished = i.next();
+						if (finished.finished() == null || now - finished.finished().getTime() > sTimeToKeep) i.remove();
+					}
+					
+					// Take the next item from the queue
+					item = next();
+					
+					if (item == null) {
+						// Sleep for it, if there is nothing to do
+						sLog.debug("Waiting for tasks to run...");
+						try {
+							iQueue.wait(sTimeToSleep);
+						} catch (InterruptedException e) {
+							sLog.debug("Interrupted.");
+						}
+						continue;
 					}
+					
+					iRunning.add(item);
 				}
 				
-				// Take new item from the top of the queue
-				iItem = iQueue.poll();
+				// Execute the item
+				sLog.info("Executing " + item.name());
 				
-				// Null if queue is empty
-				if (iItem == null) continue;
-			}
-			
-			// Execute the item
-			sLog.info("Executing " + iItem.name());
-			
-			iItem.executeItem();
-			
-			sLog.info("Task " + iItem.name() + (iItem.error() == null ? " is done." : " failed (" + iItem.error().getMessage() + ")."));
-
-			// Put the item into the list of finished items
-			synchronized (iQueue) {
-				iFinished.add(iItem);
+				item.executeItem();
+				
+				sLog.info("Task " + item.name() + (item.error() == null ? item.isCancelled() ? " was cancelled" : " is done" : " failed (" + item.error().getMessage() + ")") +
+						" (waited " + iDF.format(0.001 * item.getWaitTime()) + " s, executed in " + iDF.format(0.001 * item.getExecutionTime()) + " s).");
 				
-				iItem = null;
-			}				
+				// Put the item into the list of finished items
+				synchronized (iQueue) {
+					iRunning.remove(item);
+					statistics(item.type()).add(item);
+					iFinished.add(item);
+					save();
+					
+					// A task of the same user may be waiting for this one to finish
+					iQueue.notifyAll();
+				}
+			}
 		}
-		
-		sLog.info("Queue processor is down.");
-		sInstance = null;
+	}
+	
+	/**
+	 * The next item to execute (with the highest priority, of a user with the fewest running items), null if there is none.
+	 * Must be called under the queue lock.
+	 */
+	private QueueItem next() {
+		int maxPerUser = ApplicationProperty.QueueProcessorMaxTasksPerUser.intValue();
+		Map<String, Integer> running = new HashMap<String, Integer>();
+		for (QueueItem item: iRunning) {
+			if (item.getOwnerId() == null) continue;
+			Integer count = running.get(item.getOwnerId());
+			running.put(item.getOwnerId(), count == null ? 1 : count + 1);
+		}
+		QueueItem best = null; int bestRunning = 0;
+		for (QueueItem item: iQueue) {
+			Integer count = (item.getOwnerId() == null ? null : running.get(item.getOwnerId()));
+			int nrRunning = (count == null ? 0 : count.intValue());
+			if (maxPerUser > 0 && nrRunning >= maxPerUser) continue;
+			if (best == null || best.getPriority() < item.getPriority() || (best.getPriority() == item.getPriority() && bestRunning > nrRunning)) {
+				best = item; bestRunning = nrRunning;
+			}
+		}
+		if (best != null) iQueue.remove(best);
+		return best;
 	}
 	
 	public static synchronized QueueProcessor getInstance() {
 		if (sInstance == null) {
 			sInstance = new QueueProcessor();
-			sInstance.start();
 		}
 		return sInstance;
 	}
@@ -116,7 +180,7 @@ public class QueueProcessor extends Thread {
 		synchronized(iQueue) {
 			item.setId(iLastId ++);
 			iQueue.add(item);
-			iQueue.notify();
+			iQueue.notifyAll();
 		}
 	}
 	
@@ -131,12 +195,11 @@ public class QueueProcessor extends Thread {
 				ret.add(item);
 			}
 			
-			if (iItem != null) {
-				boolean add = true;
-				if (ownerId != null && !ownerId.equals(iItem.getOwnerId())) add = false;
-				if (sessionId != null && !sessionId.equals(iItem.getSessionId())) add = false;
-				if (type!=null && !type.equals(iItem.type())) add = false;
-				if (add) ret.add(iItem);
+			for (QueueItem item: iRunning) {
+				if (ownerId != null && !ownerId.equals(item.getOwnerId())) continue;
+				if (sessionId != null && !sessionId.equals(item.getSessionId())) continue;
+				if (type!=null && !type.equals(item.type())) continue;
+				ret.add(item);
 			}
 			
 			for (QueueItem item: iQueue) {
@@ -150,16 +213,100 @@ public class QueueProcessor extends Thread {
 		}
 	}
 	
+	/**
+	 * Remove a waiting or a finished item, a running item is cancelled instead (see {@link QueueItem#cancel()})
+	 */
 	public void remove(Long id) {
 		synchronized (iQueue) {
 			for (Iterator<QueueItem> i = iQueue.iterator(); i.hasNext();) {
 				QueueItem item = i.next();
 				if (id.equals(item.getId())) i.remove();
 			}
+			for (QueueItem item: iRunning) {
+				if (id.equals(item.getId())) item.cancel();
+			}
+			boolean removed = false;
 			for (Iterator<QueueItem> i = iFinished.iterator(); i.hasNext();) {
 				QueueItem item = i.next();
-				if (id.equals(item.getId())) i.remove();
+				if (id.equals(item.getId())) { i.remove(); removed = true; }
+			}
+			if (removed) save();
+		}
+	}
+	
+	private Statistics statistics(String type) {
+		synchronized (iStatistics) {
+			Statistics statistics = iStatistics.get(type);
+			if (statistics == null) {
+				statistics = new Statistics();
+				iStatistics.put(type, statistics);
+			}
+			return statistics;
+		}
+	}
+	
+	/** Wait and execution statistics of the given item type (e.g., {@link PdfExamReportQueueItem#TYPE}), null if no item of the type has been executed yet */
+	public Statistics getStatistics(String type) {
+		synchronized (iStatistics) {
+			return iStatistics.get(type);
+		}
+	}
+	
+	/** Wait and execution statistics of all the item types that have been executed so far */
+	public Map<String, Statistics> getStatistics() {
+		synchronized (iStatistics) {
+			return new HashMap<String, Statistics>(iStatistics);
+		}
+	}
+	
+	private static File getFile() {
+		return new File(ApplicationProperties.getDataFolder(), "queue.xml");
+	}
+	
+	/**
+	 * Save metadata of the finished items. Must be called under the queue lock.
+	 */
+	private void save() {
+		if (!ApplicationProperty.QueueProcessorPersistFinished.isTrue()) return;
+		try {
+			Document document = DocumentHelper.createDocument();
+			Element root = document.addElement("queue");
+			root.addAttribute("lastId", String.valueOf(iLastId));
+			for (QueueItem item: iFinished)
+				item.save(root.addElement("item"));
+			FileOutputStream out = new FileOutputStream(getFile());
+			try {
+				new XMLWriter(out, OutputFormat.createPrettyPrint()).write(document);
+				out.flush();
+			} finally {
+				out.close();
 			}
+		} catch (Exception e) {
+			sLog.warn("Failed to save finished tasks: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Load metadata of the finished items (that are not too old)
+	 */
+	private void load() {
+		if (!ApplicationProperty.QueueProcessorPersistFinished.isTrue()) return;
+		File file = getFile();
+		if (!file.exists()) return;
+		try {
+			Document document = (new SAXReader()).read(file);
+			Element root = document.getRootElement();
+			iLastId = Long.parseLong(root.attributeValue("lastId", "0"));
+			long now = new Date().getTime();
+			for (Iterator i = root.elementIterator("item"); i.hasNext(); ) {
+				QueueItem item = new FinishedQueueItem((Element)i.next());
+				iLastId = Math.max(iLastId, item.getId() + 1);
+				if (item.finished() == null || now - item.finished().getTime() > sTimeToKeep) continue;
+				iFinished.add(item);
+			}
+			sLog.info("Restored " + iFinished.size() + " finished tasks.");
+		} catch (Exception e) {
+			sLog.warn("Failed to load finished tasks: " + e.getMessage(), e);
 		}
 	}
 
@@ -168,11 +315,90 @@ public class QueueProcessor extends Thread {
 		sLog.info("Stopping queue processor...");
 		try {
 			sInstance.iCanContinue = false;
-			sInstance.interrupt();
-			sInstance.join();
+			for (Worker worker: sInstance.iWorkers)
+				worker.interrupt();
+			for (Worker worker: sInstance.iWorkers)
+				worker.join();
 		} catch (InterruptedException e) {
 		} catch (NullPointerException e) {
 		}
+		sLog.info("Queue processor is down.");
+		sInstance = null;
+	}
+	
+	/**
+	 * Finished item restored from its metadata
+	 */
+	private static class FinishedQueueItem extends QueueItem {
+		private String iType, iName;
+		
+		private FinishedQueueItem(Element element) {
+			super(element);
+			iType = element.attributeValue("type");
+			iName = element.attributeValue("name");
+		}
+
+		@Override
+		public String type() { return iType; }
+
+		@Override
+		public String name() { return iName; }
+
+		@Override
+		public double progress() { return 1.0; }
+
+		@Override
+		protected void execute() throws Exception {}
+	}
+	
+	/**
+	 * Wait and execution statistics of an item type
+	 */
+	public static class Statistics {
+		private Counter iWait = new Counter(), iExecution = new Counter();
+		
+		private synchronized void add(QueueItem item) {
+			if (item.getWaitTime() != null) iWait.add(item.getWaitTime());
+			if (item.getExecutionTime() != null) iExecution.add(item.getExecutionTime());
+		}
+		
+		/** Number of executed items */
+		public synchronized long getNrExecuted() { return iExecution.iCount; }
+		/** Total time the items spent waiting in the queue, in milliseconds */
+		public synchronized long getTotalWaitTime() { return iWait.iTotal; }
+		/** Average time an item spent waiting in the queue, in milliseconds */
+		public synchronized double getAverageWaitTime() { return iWait.average(); }
+		/** Longest time an item spent waiting in the queue, in milliseconds */
+		public synchronized long getMaxWaitTime() { return iWait.iMax; }
+		/** Total execution time in milliseconds */
+		public synchronized long getTotalExecutionTime() { return iExecution.iTotal; }
+		/** Average execution time in milliseconds */
+		public synchronized double getAverageExecutionTime() { return iExecution.average(); }
+		/** Longest execution time in milliseconds */
+		public synchronized long getMaxExecutionTime() { return iExecution.iMax; }
+		
+		@Override
+		public synchronized String toString() {
+			return "wait=" + iWait + ", execution=" + iExecution;
+		}
+	}
+	
+	private static class Counter {
+		private long iCount = 0, iTotal = 0, iMax = 0;
+		
+		private void add(long time) {
+			iCount ++; iTotal += time;
+			if (time > iMax) iMax = time;
+		}
+		
+		private double average() {
+			return (iCount == 0 ? 0.0 : ((double)iTotal) / iCount);
+		}
+		
+		@Override
+		public String toString() {
+			return iCount + " (avg " + new DecimalFormat("#,##0.00").format(average()) + " ms, max " + iMax + " ms)";
+		}
 	}
 
 }